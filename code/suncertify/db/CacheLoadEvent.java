@@ -0,0 +1,51 @@
+/*
+ * @(#)CacheLoadEvent.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.db;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event spanning the loading of all records from the
+ * database file into the cache of {@link Data}, including the indexes. Like
+ * all JFR events, it costs next to nothing while it is not being recorded.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+@Name("suncertify.CacheLoad")
+@Label("Cache Load")
+@Category({"Suncertify", "Database"})
+@Description("Loading of the database file into the record cache")
+final class CacheLoadEvent extends Event
+{
+  /**
+   * The number of valid records loaded.
+   */
+  @Label("Records")
+  long records;
+
+  /**
+   * The number of deleted record slots found.
+   */
+  @Label("Recyclable Slots")
+  long recyclableSlots;
+}
@@ -0,0 +1,397 @@
+/*
+ * @(#)ColumnStore.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * A columnar copy of the record cache. Each record field is kept in one
+ * contiguous byte array of fixed-width slots, laid out as in the database
+ * file: slot <i>n</i> of field <i>i</i> starts at byte
+ * <i>n</i>&nbsp;&times;&nbsp;<i>width<sub>i</sub></i>, where the widths are
+ * the field lengths given by the schema section of the database file. The
+ * actual length of each value is kept alongside.
+ * <p/>
+ * Field criteria are matched by comparing the bytes of the criterion with
+ * the bytes of each slot in a sequential pass over the column, rather than by
+ * following a reference to a <code>String[]</code> and from there to a
+ * <code>String</code> per record. The comparison is done by
+ * {@link Arrays#equals(byte[], int, int, byte[], int, int)}, which the JIT
+ * compiles into vectorized code. The file stores plain ASCII, so values are
+ * stored one byte per character; the rare cached value that does not fit
+ * (non-ASCII characters as handed to an update, which the file would store as
+ * '?') is marked irregular and compared as a string.
+ * <p/>
+ * Fields of low cardinality are dictionary-encoded instead: their column
+ * holds the integer code of each value in the field's
+ * {@link ValueDictionary}. An exact match then compares integers, and a
+ * prefix match tests each code against the set of codes of the values with
+ * that prefix.
+ * <p/>
+ * This class is <em>not</em> thread-safe; it is guarded by the read/write
+ * lock of the {@link Data} Singleton instance.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class ColumnStore
+{
+  /**
+   * The length marking an empty slot.
+   */
+  private static final int NULL_LENGTH = -1;
+
+  /**
+   * The length marking a slot whose value is not representable in the column
+   * and has to be compared as a string.
+   */
+  private static final int IRREGULAR_LENGTH = -2;
+
+  /**
+   * The slot widths of the columns in bytes, in the order of the fields'
+   * appearance in a record.
+   */
+  private final int[] widths;
+
+  /**
+   * The byte columns, one per record field that is not dictionary-encoded.
+   */
+  private final byte[][] columns;
+
+  /**
+   * The actual value lengths per byte column and slot.
+   */
+  private final int[][] lengths;
+
+  /**
+   * The dictionaries of the dictionary-encoded fields, null for the others.
+   */
+  private final ValueDictionary[] dictionaries;
+
+  /**
+   * The code columns, one per dictionary-encoded field.
+   */
+  private final int[][] codes;
+
+  /**
+   * The slots currently holding a record.
+   */
+  private final BitSet present = new BitSet();
+
+  /**
+   * The number of slots allocated per column.
+   */
+  private int capacity = 0;
+
+  /**
+   * Creates an empty column store. The record meta data must have been read
+   * from the database file already.
+   *
+   * @param dictionaries the dictionaries by record field, or null for a field
+   *                     that is to be stored as bytes
+   */
+  ColumnStore(final ValueDictionary[] dictionaries)
+  {
+    int nFields = DBSchema.getNumberOfFields();
+    this.dictionaries = dictionaries;
+    widths = new int[nFields];
+    columns = new byte[nFields][];
+    lengths = new int[nFields][];
+    codes = new int[nFields][];
+    for (int i = 0; i < nFields; ++i)
+    {
+      if (dictionaries[i] != null)
+      {
+        codes[i] = new int[0];
+      }
+      else
+      {
+        widths[i] = RecordMetaData.getInstance().getFieldLength(i);
+        columns[i] = new byte[0];
+        lengths[i] = new int[0];
+      }
+    }
+  }
+
+  /**
+   * Stores a record in its slot.
+   *
+   * @param recNo  the record number of the record
+   * @param record the cached record data
+   */
+  void set(final long recNo, final String[] record)
+  {
+    int slot = PrefixIndex.toBitIndex(recNo);
+    if (slot >= capacity)
+    {
+      grow(Math.max(slot + 1, 2 * capacity));
+    }
+    boolean replaced = present.get(slot);
+    for (int i = 0; i < columns.length; ++i)
+    {
+      String value = i < record.length ? record[i] : null;
+      if (codes[i] != null)
+      {
+        int code = dictionaries[i].acquire(value);
+        if (replaced)
+        {
+          dictionaries[i].release(codes[i][slot]);
+        }
+        codes[i][slot] = code;
+      }
+      else
+      {
+        lengths[i][slot] = value == null ? NULL_LENGTH : encode(value,
+          columns[i], slot * widths[i], widths[i]);
+      }
+    }
+    present.set(slot);
+  }
+
+  /**
+   * Empties the slot of a record.
+   *
+   * @param recNo the record number of the record
+   */
+  void clear(final long recNo)
+  {
+    int slot = PrefixIndex.toBitIndex(recNo);
+    present.clear(slot);
+    for (int i = 0; i < columns.length; ++i)
+    {
+      if (codes[i] != null)
+      {
+        dictionaries[i].release(codes[i][slot]);
+        codes[i][slot] = ValueDictionary.NO_CODE;
+      }
+      else
+      {
+        lengths[i][slot] = NULL_LENGTH;
+      }
+    }
+  }
+
+  /**
+   * Provides the slots currently holding a record. The bit set is owned by
+   * this store and must not be modified.
+   *
+   * @return the bit set of the record numbers of all stored records
+   */
+  BitSet getPresent()
+  {
+    return present;
+  }
+
+  /**
+   * Removes from a selection all records whose field does not exactly match
+   * a value.
+   *
+   * @param field         the index of the field within a record
+   * @param value         the value
+   * @param selection     the selection to narrow down
+   * @param from          the first record number to consider, inclusive
+   * @param to            the last record number to consider, exclusive
+   * @param cachedRecords the record cache, consulted for irregular slots
+   */
+  void selectExact(final int field, final String value,
+                   final BitSet selection, final int from, final int to,
+                   final Map<Long, String[]> cachedRecords)
+  {
+    select(field, value, true, selection, from, to, cachedRecords);
+  }
+
+  /**
+   * Removes from a selection all records whose field does not begin with a
+   * prefix.
+   *
+   * @param field         the index of the field within a record
+   * @param prefix        the prefix
+   * @param selection     the selection to narrow down
+   * @param from          the first record number to consider, inclusive
+   * @param to            the last record number to consider, exclusive
+   * @param cachedRecords the record cache, consulted for irregular slots
+   */
+  void selectPrefix(final int field, final String prefix,
+                    final BitSet selection, final int from, final int to,
+                    final Map<Long, String[]> cachedRecords)
+  {
+    select(field, prefix, false, selection, from, to, cachedRecords);
+  }
+
+  /**
+   * The scan kernel: one sequential pass over a column range.
+   *
+   * @param field         the index of the field within a record
+   * @param criterion     the value or prefix
+   * @param exact         <code>true</code> for an exact match,
+   *                      <code>false</code> for a prefix match
+   * @param selection     the selection to narrow down
+   * @param from          the first record number to consider, inclusive
+   * @param to            the last record number to consider, exclusive
+   * @param cachedRecords the record cache, consulted for irregular slots
+   */
+  private void select(final int field, final String criterion,
+                      final boolean exact, final BitSet selection,
+                      final int from, final int to,
+                      final Map<Long, String[]> cachedRecords)
+  {
+    if (codes[field] != null)
+    {
+      selectCodes(field, criterion, exact, selection, from, to);
+      return;
+    }
+    int width = widths[field];
+    byte[] column = columns[field];
+    int[] length = lengths[field];
+    // A criterion not representable in the column can match irregular
+    // slots only.
+    byte[] key = new byte[width];
+    int n = criterion.length() <= width ? encode(criterion, key, 0, width)
+      : IRREGULAR_LENGTH;
+    int end = Math.min(to, capacity);
+    for (int slot = selection.nextSetBit(from); slot >= 0 && slot < end;
+         slot = selection.nextSetBit(slot + 1))
+    {
+      int l = length[slot];
+      boolean match;
+      if (l == IRREGULAR_LENGTH)
+      {
+        String value = cachedRecords.get((long) slot)[field];
+        match = exact ? value.equals(criterion) : value.startsWith(criterion);
+      }
+      else
+      {
+        int offset = slot * width;
+        match = n >= 0 && (exact ? l == n : l >= n)
+          && Arrays.equals(column, offset, offset + n, key, 0, n);
+      }
+      if (match == false)
+      {
+        selection.clear(slot);
+      }
+    }
+    if (end < to)
+    {
+      selection.clear(Math.max(from, end), to); // Beyond the stored slots.
+    }
+  }
+
+  /**
+   * The scan kernel for dictionary-encoded fields: one sequential pass over a
+   * code column range.
+   *
+   * @param field     the index of the field within a record
+   * @param criterion the value or prefix
+   * @param exact     <code>true</code> for an exact match,
+   *                  <code>false</code> for a prefix match
+   * @param selection the selection to narrow down
+   * @param from      the first record number to consider, inclusive
+   * @param to        the last record number to consider, exclusive
+   */
+  private void selectCodes(final int field, final String criterion,
+                           final boolean exact, final BitSet selection,
+                           final int from, final int to)
+  {
+    int[] column = codes[field];
+    int end = Math.min(to, capacity);
+    if (exact)
+    {
+      int code = dictionaries[field].codeOf(criterion);
+      for (int slot = selection.nextSetBit(from); slot >= 0 && slot < end;
+           slot = selection.nextSetBit(slot + 1))
+      {
+        if (column[slot] != code || code == ValueDictionary.NO_CODE)
+        {
+          selection.clear(slot);
+        }
+      }
+    }
+    else
+    {
+      BitSet matching = dictionaries[field].codesWithPrefix(criterion);
+      for (int slot = selection.nextSetBit(from); slot >= 0 && slot < end;
+           slot = selection.nextSetBit(slot + 1))
+      {
+        if (column[slot] == ValueDictionary.NO_CODE
+          || matching.get(column[slot]) == false)
+        {
+          selection.clear(slot);
+        }
+      }
+    }
+    if (end < to)
+    {
+      selection.clear(Math.max(from, end), to); // Beyond the stored slots.
+    }
+  }
+
+  /**
+   * Encodes a value into a fixed-width slot, one byte per character.
+   *
+   * @param value  the value
+   * @param bytes  the target array
+   * @param offset the offset of the slot
+   * @param width  the width of the slot
+   * @return the number of bytes used, or {@link #IRREGULAR_LENGTH} if the
+   *         value contains non-ASCII characters or does not fit
+   */
+  private static int encode(final String value, final byte[] bytes,
+                            final int offset, final int width)
+  {
+    int n = value.length();
+    if (n > width)
+    {
+      return IRREGULAR_LENGTH;
+    }
+    for (int i = 0; i < n; ++i)
+    {
+      char c = value.charAt(i);
+      if (c > 0x7F)
+      {
+        return IRREGULAR_LENGTH;
+      }
+      bytes[offset + i] = (byte) c;
+    }
+    return n;
+  }
+
+  /**
+   * Grows all columns.
+   *
+   * @param newCapacity the new number of slots per column
+   */
+  private void grow(final int newCapacity)
+  {
+    for (int i = 0; i < columns.length; ++i)
+    {
+      if (codes[i] != null)
+      {
+        codes[i] = Arrays.copyOf(codes[i], newCapacity);
+        Arrays.fill(codes[i], capacity, newCapacity, ValueDictionary.NO_CODE);
+      }
+      else
+      {
+        columns[i] = Arrays.copyOf(columns[i], newCapacity * widths[i]);
+        lengths[i] = Arrays.copyOf(lengths[i], newCapacity);
+        Arrays.fill(lengths[i], capacity, newCapacity, NULL_LENGTH);
+      }
+    }
+    capacity = newCapacity;
+  }
+}
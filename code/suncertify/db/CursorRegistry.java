@@ -0,0 +1,258 @@
+/*
+ * @(#)CursorRegistry.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The registry of the open search cursors of the {@link Data} Singleton
+ * instance. A cursor holds a snapshot of the matches of a query as of its
+ * opening: the record numbers in ascending order together with references to
+ * the then cached record data and versions. Since the cache never modifies a
+ * record array in place but replaces it on update, the snapshot stays
+ * consistent without copying any record; records are converted only page by
+ * page as they are fetched.
+ * <p/>
+ * A cursor not accessed for longer than the timeout expires. Expired cursors
+ * are purged whenever a cursor is opened, so that cursors abandoned by
+ * vanished clients do not accumulate. This class is thread-safe and needs no
+ * lock of the <code>Data</code> Singleton instance except for taking the
+ * snapshot.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class CursorRegistry
+{
+  /**
+   * The default time after which an unused cursor expires, in milliseconds.
+   */
+  static final long DEFAULT_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+  /**
+   * The time after which an unused cursor expires, in milliseconds.
+   */
+  private final long timeoutMillis;
+
+  /**
+   * The source of cursor ids.
+   */
+  private final AtomicLong nextCursorId = new AtomicLong(1);
+
+  /**
+   * The open cursors by id.
+   */
+  private final Map<Long, Cursor> cursors =
+    new ConcurrentHashMap<Long, Cursor>();
+
+  /**
+   * Creates an empty registry.
+   *
+   * @param timeoutMillis the time after which an unused cursor expires, in
+   *                      milliseconds
+   */
+  CursorRegistry(final long timeoutMillis)
+  {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Opens a cursor over a snapshot of matching records. Must be called with
+   * the read or write lock held.
+   *
+   * @param matches        the record numbers of the matching records
+   * @param cachedRecords  the record cache
+   * @param recordVersions the versions of the cached records
+   * @return the id of the new cursor
+   */
+  long open(final BitSet matches, final Map<Long, String[]> cachedRecords,
+            final Map<Long, Long> recordVersions)
+  {
+    purgeExpired();
+    long[] recNos = new long[matches.cardinality()];
+    long[] versions = new long[recNos.length];
+    String[][] records = new String[recNos.length][];
+    int i = 0;
+    for (int recNo = matches.nextSetBit(0); recNo >= 0; recNo = matches
+      .nextSetBit(recNo + 1))
+    {
+      recNos[i] = recNo;
+      versions[i] = recordVersions.get((long) recNo);
+      records[i++] = cachedRecords.get((long) recNo);
+    }
+    long cursorId = nextCursorId.getAndIncrement();
+    cursors.put(cursorId, new Cursor(recNos, versions, records));
+    return cursorId;
+  }
+
+  /**
+   * Fetches the next page of a cursor.
+   *
+   * @param <T>      the type of the results
+   * @param cursorId the id of the cursor
+   * @param maxRows  the maximum number of records to fetch
+   * @param mapper   the converter from shared, read-only record data to
+   *                 results
+   * @return a map of (record number, result) pairs in ascending record number
+   *         order, empty once the cursor is exhausted
+   * @throws DatabaseException if there is no such cursor or it has expired
+   */
+  <T> Map<Long, T> fetch(final long cursorId, final int maxRows,
+                         final RecordMapper<T> mapper)
+  {
+    Cursor cursor = cursors.get(cursorId);
+    if (cursor == null || cursor.isExpired(System.currentTimeMillis()))
+    {
+      cursors.remove(cursorId);
+      throw new DatabaseException(String.format(Text.CURSOR_NOT_FOUND,
+        cursorId));
+    }
+    return cursor.next(maxRows, mapper);
+  }
+
+  /**
+   * Closes a cursor. Closing an unknown or expired cursor has no effect.
+   *
+   * @param cursorId the id of the cursor
+   */
+  void close(final long cursorId)
+  {
+    cursors.remove(cursorId);
+  }
+
+  /**
+   * Closes all cursors.
+   */
+  void closeAll()
+  {
+    cursors.clear();
+  }
+
+  /**
+   * Provides the number of open cursors, including expired ones not yet
+   * purged.
+   *
+   * @return the number of cursors
+   */
+  int size()
+  {
+    return cursors.size();
+  }
+
+  /**
+   * Removes all expired cursors.
+   */
+  private void purgeExpired()
+  {
+    long now = System.currentTimeMillis();
+    Iterator<Cursor> it = cursors.values().iterator();
+    while (it.hasNext())
+    {
+      if (it.next().isExpired(now))
+      {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * An open cursor.
+   */
+  private final class Cursor
+  {
+    /**
+     * The record numbers of the snapshot in ascending order.
+     */
+    private final long[] recNos;
+
+    /**
+     * The versions of the records of the snapshot.
+     */
+    private final long[] versions;
+
+    /**
+     * The record data of the snapshot, shared with the cache at the time of
+     * opening and therefore never to be modified.
+     */
+    private final String[][] records;
+
+    /**
+     * The position of the next record to fetch.
+     */
+    private int position = 0;
+
+    /**
+     * The time of the last access in milliseconds.
+     */
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    /**
+     * Creates a cursor at the beginning of a snapshot.
+     *
+     * @param recNos   the record numbers in ascending order
+     * @param versions the corresponding versions
+     * @param records  the corresponding record data
+     */
+    private Cursor(final long[] recNos, final long[] versions,
+                   final String[][] records)
+    {
+      this.recNos = recNos;
+      this.versions = versions;
+      this.records = records;
+    }
+
+    /**
+     * Tells whether the cursor has expired.
+     *
+     * @param now the current time in milliseconds
+     * @return <code>true</code> if the cursor has not been accessed within the
+     *         timeout
+     */
+    private boolean isExpired(final long now)
+    {
+      return now - lastAccess > timeoutMillis;
+    }
+
+    /**
+     * Fetches the next page and advances the cursor.
+     *
+     * @param <T>     the type of the results
+     * @param maxRows the maximum number of records to fetch
+     * @param mapper  the converter from record data to results
+     * @return the page in ascending record number order
+     */
+    private synchronized <T> Map<Long, T> next(final int maxRows,
+                                               final RecordMapper<T> mapper)
+    {
+      lastAccess = System.currentTimeMillis();
+      int end = (int) Math.min(recNos.length, (long) position
+        + Math.max(0, maxRows));
+      Map<Long, T> page = new LinkedHashMap<Long, T>();
+      for (; position < end; ++position)
+      {
+        page.put(recNos[position], mapper.map(recNos[position],
+          versions[position], records[position]));
+      }
+      return page;
+    }
+  }
+}
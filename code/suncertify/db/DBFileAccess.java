@@ -16,14 +16,23 @@
 
 package suncertify.db;
 
+import suncertify.util.JmxUtilities;
+import suncertify.util.OperationMetrics;
+import suncertify.util.OperationStatistics;
+
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,12 +40,14 @@ import java.util.logging.Logger;
  * Sole access point to the database file. All file-level access operations on
  * the database file are bundled in this class. Not thread-safe. The class is
  * designed as a singleton and as such to be accessed exclusively through the
- * thread-safe singleton instance of the data access class {@link Data}.
+ * thread-safe singleton instance of the data access class {@link Data}. Only
+ * its runtime figures, exposed through {@link DBFileAccessMXBean}, may be
+ * read from any thread.
  *
  * @author Lars Kuettner
  * @version 1.0
  */
-public final class DBFileAccess
+public final class DBFileAccess implements DBFileAccessMXBean
 {
 
   /**
@@ -64,6 +75,16 @@ public final class DBFileAccess
    */
   private static final short RECORD_DELETED = (short) 0x8000;
 
+  /**
+   * The length of the valid flag in bytes.
+   */
+  private static final int FLAG_LENGTH = Short.SIZE / Byte.SIZE;
+
+  /**
+   * The type under which the Singleton instance is registered as an MXBean.
+   */
+  private static final String MXBEAN_TYPE = "DBFileAccess";
+
   /**
    * The Singleton instance.
    */
@@ -96,6 +117,31 @@ public final class DBFileAccess
    */
   private long totalNumberOfRecords;
 
+  /**
+   * The file operations whose invocations are counted and timed.
+   */
+  private enum Operation
+  {
+    READ_RECORD, PLACE_NEW_RECORD, UPDATE_RECORD, PLACE_NEW_RECORDS,
+    UPDATE_RECORDS, PLACE_NEW_AND_UPDATE_RECORDS, DELETE_RECORD
+  }
+
+  /**
+   * The number and latencies of the invocations per file operation.
+   */
+  private final OperationMetrics<Operation> operationMetrics =
+    new OperationMetrics<Operation>(Operation.class, "file");
+
+  /**
+   * The number of bytes read by record operations.
+   */
+  private final LongAdder bytesRead = new LongAdder();
+
+  /**
+   * The number of bytes written.
+   */
+  private final LongAdder bytesWritten = new LongAdder();
+
   /**
    * Private constructor enforcing the singleton property.
    */
@@ -131,6 +177,7 @@ public final class DBFileAccess
       // Open the database location file and read the database schema,
       // i.e., the metadata (only).
       INSTANCE.initialize(databaseLocation);
+      JmxUtilities.register(MXBEAN_TYPE, INSTANCE);
     }
     return INSTANCE;
   }
@@ -381,6 +428,7 @@ public final class DBFileAccess
   {
     if (databaseLocation != null)
     {
+      JmxUtilities.unregister(MXBEAN_TYPE);
       try
       {
         randomAccessFile.close();
@@ -396,6 +444,24 @@ public final class DBFileAccess
     }
   }
 
+  @Override
+  public long getBytesRead()
+  {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getBytesWritten()
+  {
+    return bytesWritten.sum();
+  }
+
+  @Override
+  public Map<String, OperationStatistics> getOperationStatistics()
+  {
+    return operationMetrics.snapshot();
+  }
+
   /**
    * An iterator through the record numbers of valid records only. Invalid
    * records are quietly skipped in the course of iteration.
@@ -512,59 +578,69 @@ public final class DBFileAccess
   public String[] readRecord(final long recNo) throws RecordNotFoundException,
     DatabaseFileException
   {
-    if (recNo < 0 || recNo >= totalNumberOfRecords)
-    {
-      throw new RecordNotFoundException(String.format(
-        Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
-        totalNumberOfRecords));
-    }
-    long pos = offsetToStart + recNo * recordMetaData.getRecordLength();
-    short valid;
+    long start = System.nanoTime();
     try
     {
-      randomAccessFile.seek(pos);
-      valid = randomAccessFile.readShort();
-    }
-    catch (IOException e)
-    { // Can't seek or read a short value.
-      throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
-        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
-    }
-    if (valid != RECORD_VALID)
-    {
-      throw new RecordNotFoundException(String.format(
-        Text.ATTEMPTED_TO_READ_INVALID_RECORD, recNo));
-    }
-    // File pointer already at the right position.
-    String[] data = new String[DBSchema.getNumberOfFields()];
-    for (int i = 0; i < DBSchema.getNumberOfFields(); ++i)
-    {
-      byte[] bytes = new byte[recordMetaData.getFieldLength(i)];
+      if (recNo < 0 || recNo >= totalNumberOfRecords)
+      {
+        throw new RecordNotFoundException(String.format(
+          Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
+          totalNumberOfRecords));
+      }
+      long pos = offsetToStart + recNo * recordMetaData.getRecordLength();
+      short valid;
       try
       {
-        randomAccessFile.readFully(bytes);
-        // Convert bytes to String to be processed.
-        String s = new String(bytes, ENCODING);
-        // Eliminate all trailing zeroes (if any). More precisely,
-        // everything from the first zero to the end is cut (or nothing
-        // at all, if there is no zero to be found).
-        int ix = s.indexOf(0);
-        if (ix >= 0)
-        {
-          s = s.substring(0, ix); // Might even become empty string.
-        }
-        // Trim the remaining string whose zeroes have been cut already.
-        // I.e., eliminate leading and trailing spaces.
-        data[i] = s.trim();
+        randomAccessFile.seek(pos);
+        valid = randomAccessFile.readShort();
+        bytesRead.add(FLAG_LENGTH);
       }
       catch (IOException e)
-      {
-        // Format error (valid record has been found!).
+      { // Can't seek or read a short value.
         throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
           + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
       }
+      if (valid != RECORD_VALID)
+      {
+        throw new RecordNotFoundException(String.format(
+          Text.ATTEMPTED_TO_READ_INVALID_RECORD, recNo));
+      }
+      // File pointer already at the right position.
+      String[] data = new String[DBSchema.getNumberOfFields()];
+      for (int i = 0; i < DBSchema.getNumberOfFields(); ++i)
+      {
+        byte[] bytes = new byte[recordMetaData.getFieldLength(i)];
+        try
+        {
+          randomAccessFile.readFully(bytes);
+          bytesRead.add(bytes.length);
+          // Convert bytes to String to be processed.
+          String s = new String(bytes, ENCODING);
+          // Eliminate all trailing zeroes (if any). More precisely,
+          // everything from the first zero to the end is cut (or nothing
+          // at all, if there is no zero to be found).
+          int ix = s.indexOf(0);
+          if (ix >= 0)
+          {
+            s = s.substring(0, ix); // Might even become empty string.
+          }
+          // Trim the remaining string whose zeroes have been cut already.
+          // I.e., eliminate leading and trailing spaces.
+          data[i] = s.trim();
+        }
+        catch (IOException e)
+        {
+          // Format error (valid record has been found!).
+          throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
+            + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+        }
+      }
+      return data;
+    }
+    finally
+    {
+      operationMetrics.record(Operation.READ_RECORD, start);
     }
-    return data;
   }
 
   /**
@@ -595,69 +671,62 @@ public final class DBFileAccess
   public void placeNewRecord(final long recNo, final String[] data)
     throws RecordNotFoundException, DatabaseFileException
   {
-    if (recNo < 0 || recNo > totalNumberOfRecords)
-    { // >, not >=
-      throw new RecordNotFoundException(String.format(
-        Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
-        totalNumberOfRecords));
-    }
-    long pos = offsetToStart + recNo * recordMetaData.getRecordLength();
+    long start = System.nanoTime();
     try
     {
-      // Place file pointer to the beginning of the record slot.
-      randomAccessFile.seek(pos);
-      // Verify that record is either marked deleted or record is appended
-      // to the end of the file
-      if (pos != randomAccessFile.length())
-      {
-        short valid = randomAccessFile.readShort();
-        if (valid != RECORD_DELETED)
-        {
-          // Illegal state: record expected to be deleted!
-          throw new RecordNotFoundException(String.format(
-            Text.UNEXPECTED_VALID_FLAG_VALUE, valid,
-            RECORD_DELETED));
-        }
-        // Rewind to original seek position.
-        randomAccessFile.seek(pos);
+      if (recNo < 0 || recNo > totalNumberOfRecords)
+      { // >, not >=
+        throw new RecordNotFoundException(String.format(
+          Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
+          totalNumberOfRecords));
       }
-      randomAccessFile.writeShort(RECORD_VALID);
-      for (int i = 0; i < DBSchema.getNumberOfFields(); ++i)
+      long pos = offsetToStart + recNo * recordMetaData.getRecordLength();
+      RecordWriteEvent event = new RecordWriteEvent();
+      event.begin();
+      try
       {
-        // Copy data bytes into a byte array with the expected length.
-        // Arrays.copyOf(): Copies the specified array, truncating or
-        // padding with zeros (if necessary) so the copy has the
-        // specified length.
-        // Transform null pointer to empty string.
-        if (data[i] == null)
+        // Place file pointer to the beginning of the record slot.
+        randomAccessFile.seek(pos);
+        // Verify that record is either marked deleted or record is appended
+        // to the end of the file
+        if (pos != randomAccessFile.length())
         {
-          data[i] = "";
+          short valid = randomAccessFile.readShort();
+          bytesRead.add(FLAG_LENGTH);
+          if (valid != RECORD_DELETED)
+          {
+            // Illegal state: record expected to be deleted!
+            throw new RecordNotFoundException(String.format(
+              Text.UNEXPECTED_VALID_FLAG_VALUE, valid,
+              RECORD_DELETED));
+          }
+          // Rewind to original seek position.
+          randomAccessFile.seek(pos);
         }
-        byte[] bytes = Arrays.copyOf(data[i].getBytes(ENCODING),
-          recordMetaData.getFieldLength(i));
-        randomAccessFile.write(bytes);
-        if (data[i].length() > bytes.length)
+        randomAccessFile.writeShort(RECORD_VALID);
+        byte[] fields = new byte[recordMetaData.getRecordLength()
+          - FLAG_LENGTH];
+        encodeFields(data, fields, 0);
+        randomAccessFile.write(fields);
+        bytesWritten.add(FLAG_LENGTH + fields.length);
+        event.commit("create", recNo, 1, FLAG_LENGTH + fields.length);
+        // If new record has been appended to the end of the database file,
+        // i.e., not recycling an existing record slot (marked deleted),
+        // then increment the total # of records member variable.
+        if (recNo == totalNumberOfRecords)
         {
-          LOG.warning("\"" + data[i] + "\" truncated to \""
-            + new String(bytes, ENCODING) + "\"");
-          // Update data[i] with the truncated string. This is for the
-          // cache. Otherwise (no truncation performed), data[i]
-          // remains "as is".
-          data[i] = new String(bytes);
+          ++totalNumberOfRecords;
         }
       }
-      // If new record has been appended to the end of the database file,
-      // i.e., not recycling an existing record slot (marked deleted),
-      // then increment the total # of records member variable.
-      if (recNo == totalNumberOfRecords)
+      catch (IOException e)
       {
-        ++totalNumberOfRecords;
+        throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
+          + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
       }
     }
-    catch (IOException e)
+    finally
     {
-      throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
-        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+      operationMetrics.record(Operation.PLACE_NEW_RECORD, start);
     }
   }
 
@@ -681,50 +750,275 @@ public final class DBFileAccess
   public void updateRecord(final long recNo, final String[] data)
     throws RecordNotFoundException, DatabaseFileException
   {
-    if (recNo < 0 || recNo >= totalNumberOfRecords)
-    { // >=, not >
-      throw new RecordNotFoundException(String.format(
-        Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
-        totalNumberOfRecords));
+    long start = System.nanoTime();
+    try
+    {
+      if (recNo < 0 || recNo >= totalNumberOfRecords)
+      { // >=, not >
+        throw new RecordNotFoundException(String.format(
+          Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
+          totalNumberOfRecords));
+      }
+      long pos = offsetToStart + recNo * recordMetaData.getRecordLength();
+      RecordWriteEvent event = new RecordWriteEvent();
+      event.begin();
+      try
+      {
+        // Place file pointer to the beginning of the record slot.
+        randomAccessFile.seek(pos);
+        // Verify that record is marked valid as a deleted record cannot be
+        // updated.
+        short valid = randomAccessFile.readShort();
+        bytesRead.add(FLAG_LENGTH);
+        if (valid != RECORD_VALID)
+        {
+          // Illegal state: record expected to be valid!
+          throw new RecordNotFoundException(String.format(
+            Text.UNEXPECTED_VALID_FLAG_VALUE, valid, RECORD_VALID));
+        }
+        // Overwrite record data just like when creating a new record.
+        byte[] fields = new byte[recordMetaData.getRecordLength()
+          - FLAG_LENGTH];
+        encodeFields(data, fields, 0);
+        randomAccessFile.write(fields);
+        bytesWritten.add(FLAG_LENGTH + fields.length);
+        event.commit("update", recNo, 1, FLAG_LENGTH + fields.length);
+      }
+      catch (IOException e)
+      {
+        throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
+          + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+      }
+    }
+    finally
+    {
+      operationMetrics.record(Operation.UPDATE_RECORD, start);
     }
-    long pos = offsetToStart + recNo * recordMetaData.getRecordLength();
+  }
+
+  /**
+   * Places new records at predetermined empty slots in the database file, just
+   * like {@link #placeNewRecord(long, String[])} does for a single record. The
+   * records are written in groups of adjacent slots, each group with a single
+   * read to verify the valid flags and a single write, instead of several
+   * writes per record. Either all slots are verified to be empty or none is
+   * written.
+   *
+   * @param recNos the distinct record numbers of the slots to be populated.
+   *               Slots at the end of the file must be populated without
+   *               leaving a gap.
+   * @param data   the fields of the new records, <code>data[k]</code> for
+   *               <code>recNos[k]</code>, truncated as with
+   *               <code>placeNewRecord</code>
+   * @throws RecordNotFoundException if one of <code>recNos</code> is out of range or refers
+   *                                 to a record that is not marked deleted
+   * @throws DatabaseFileException   if the database file can't be accessed as needed
+   */
+  public void placeNewRecords(final long[] recNos, final String[][] data)
+    throws RecordNotFoundException, DatabaseFileException
+  {
+    long start = System.nanoTime();
     try
     {
-      // Place file pointer to the beginning of the record slot.
-      randomAccessFile.seek(pos);
-      // Verify that record is marked valid as a deleted record cannot be
-      // updated.
-      short valid = randomAccessFile.readShort();
-      if (valid != RECORD_VALID)
+      writeRecords(recNos, data, expectedFlags(recNos.length,
+        RECORD_DELETED));
+    }
+    finally
+    {
+      operationMetrics.record(Operation.PLACE_NEW_RECORDS, start);
+    }
+  }
+
+  /**
+   * Replaces the contents of valid records in the database file, just like
+   * {@link #updateRecord(long, String[])} does for a single record. The
+   * records are written in groups of adjacent slots, each group with a single
+   * read to verify the valid flags and a single write. Either all records are
+   * verified to be valid or none is written.
+   *
+   * @param recNos the distinct record numbers of the records to be updated
+   * @param data   the new fields of the records, <code>data[k]</code> for
+   *               <code>recNos[k]</code>, truncated as with
+   *               <code>updateRecord</code>
+   * @throws RecordNotFoundException if there is no valid record corresponding to one of
+   *                                 <code>recNos</code>
+   * @throws DatabaseFileException   if the database file can't be accessed as needed
+   */
+  public void updateRecords(final long[] recNos, final String[][] data)
+    throws RecordNotFoundException, DatabaseFileException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      writeRecords(recNos, data, expectedFlags(recNos.length,
+        RECORD_VALID));
+    }
+    finally
+    {
+      operationMetrics.record(Operation.UPDATE_RECORDS, start);
+    }
+  }
+
+  /**
+   * Places new records and replaces the contents of valid records in one
+   * file operation, combining {@link #placeNewRecords(long[], String[][])}
+   * and {@link #updateRecords(long[], String[][])}. Either all slots are
+   * verified or none is written, so that the new records are never written
+   * without the updated ones.
+   *
+   * @param newRecNos the distinct record numbers of the slots to be populated
+   * @param newData   the fields of the new records
+   * @param recNos    the distinct record numbers of the records to be updated
+   * @param data      the new fields of the records to be updated
+   * @throws RecordNotFoundException if one of <code>newRecNos</code> doesn't
+   *                                 refer to an empty slot or one of
+   *                                 <code>recNos</code> to a valid record
+   * @throws DatabaseFileException   if the database file can't be accessed as needed
+   */
+  public void placeNewAndUpdateRecords(final long[] newRecNos,
+                                       final String[][] newData,
+                                       final long[] recNos,
+                                       final String[][] data)
+    throws RecordNotFoundException, DatabaseFileException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      int count = newRecNos.length + recNos.length;
+      long[] allRecNos = new long[count];
+      String[][] allData = new String[count][];
+      short[] flags = new short[count];
+      for (int k = 0; k < count; ++k)
+      {
+        boolean isNew = k < newRecNos.length;
+        int i = isNew ? k : k - newRecNos.length;
+        allRecNos[k] = isNew ? newRecNos[i] : recNos[i];
+        allData[k] = isNew ? newData[i] : data[i];
+        flags[k] = isNew ? RECORD_DELETED : RECORD_VALID;
+      }
+      writeRecords(allRecNos, allData, flags);
+    }
+    finally
+    {
+      operationMetrics.record(Operation.PLACE_NEW_AND_UPDATE_RECORDS, start);
+    }
+  }
+
+  /**
+   * Creates the expected valid flags of a batch of slots that all carry the
+   * same flag.
+   *
+   * @param count the number of slots
+   * @param flag  the valid flag
+   * @return <code>count</code> times <code>flag</code>
+   */
+  private static short[] expectedFlags(final int count, final short flag)
+  {
+    short[] flags = new short[count];
+    Arrays.fill(flags, flag);
+    return flags;
+  }
+
+  /**
+   * Writes records in groups of adjacent slots. First, all groups are read
+   * and their valid flags verified, then all groups are written. Should a
+   * write fail, the groups already written are restored from what has been
+   * read and the file is cut back to its former length, as far as the file
+   * still permits.
+   *
+   * @param recNos        the distinct record numbers of the slots
+   * @param data          the fields of the records
+   * @param expectedFlags the valid flags the slots must currently carry,
+   *                      <code>expectedFlags[k]</code> for
+   *                      <code>recNos[k]</code>: {@link #RECORD_DELETED} for
+   *                      new records, which may also be appended, or
+   *                      {@link #RECORD_VALID} for updates
+   * @throws RecordNotFoundException if a record number is out of range or a
+   *                                 slot carries an unexpected valid flag
+   * @throws DatabaseFileException   if the database file can't be accessed as
+   *                                 needed
+   */
+  private void writeRecords(final long[] recNos, final String[][] data,
+                            final short[] expectedFlags)
+    throws RecordNotFoundException, DatabaseFileException
+  {
+    // Visit the records in ascending record number order.
+    Integer[] order = new Integer[recNos.length];
+    for (int k = 0; k < order.length; ++k)
+    {
+      order[k] = k;
+    }
+    Arrays.sort(order, new Comparator<Integer>()
+    {
+      @Override
+      public int compare(final Integer k1, final Integer k2)
+      {
+        return Long.valueOf(recNos[k1]).compareTo(recNos[k2]);
+      }
+    });
+    // Verify the ranges. New records may extend the file, but only
+    // contiguously.
+    long limit = totalNumberOfRecords;
+    for (int k = 0; k < order.length; ++k)
+    {
+      long recNo = recNos[order[k]];
+      if (k > 0 && recNo == recNos[order[k - 1]])
+      {
+        throw new IllegalArgumentException(String.format(
+          Text.DUPLICATE_RECORD_NUMBER, recNo));
+      }
+      if (recNo < 0 || recNo > limit
+        || (recNo == limit && expectedFlags[order[k]] != RECORD_DELETED))
       {
-        // Illegal state: record expected to be valid!
         throw new RecordNotFoundException(String.format(
-          Text.UNEXPECTED_VALID_FLAG_VALUE, valid, RECORD_VALID));
+          Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
+          totalNumberOfRecords));
       }
-      // Overwrite record data just like when creating a new record.
-      for (int i = 0; i < DBSchema.getNumberOfFields(); ++i)
+      if (recNo == limit)
+      {
+        ++limit;
+      }
+    }
+    int recordLength = recordMetaData.getRecordLength();
+    long fileLength;
+    List<Integer> groupStarts = new ArrayList<Integer>();
+    List<byte[]> groupBuffers = new ArrayList<byte[]>();
+    List<byte[]> originals = new ArrayList<byte[]>();
+    try
+    {
+      // Read and verify each group of adjacent slots.
+      fileLength = randomAccessFile.length();
+      for (int start = 0, end; start < order.length; start = end)
       {
-        // Copy data bytes into a byte array with the expected length.
-        // Arrays.copyOf(): Copies the specified array, truncating or
-        // padding with zeros (if necessary) so the copy has the
-        // specified length.
-        // Transform null pointer to empty string.
-        if (data[i] == null)
+        end = start + 1;
+        while (end < order.length
+          && recNos[order[end]] == recNos[order[end - 1]] + 1)
         {
-          data[i] = "";
+          ++end;
         }
-        byte[] bytes = Arrays.copyOf(data[i].getBytes(ENCODING),
-          recordMetaData.getFieldLength(i));
-        randomAccessFile.write(bytes);
-        if (data[i].length() > bytes.length)
+        long pos = offsetToStart + recNos[order[start]] * recordLength;
+        byte[] buffer = new byte[(end - start) * recordLength];
+        // Slots beyond the end of the file are about to be appended.
+        int existing = (int) Math.max(0, Math.min(buffer.length, fileLength
+          - pos));
+        randomAccessFile.seek(pos);
+        randomAccessFile.readFully(buffer, 0, existing);
+        bytesRead.add(existing);
+        for (int offset = 0, k = start; offset < existing; offset +=
+          recordLength, ++k)
         {
-          LOG.warning("\"" + data[i] + "\" truncated to \""
-            + new String(bytes, ENCODING) + "\"");
-          // Update data[i] with the truncated string. This is for the
-          // cache. Otherwise (no truncation performed), data[i]
-          // remains "as is".
-          data[i] = new String(bytes);
+          short valid = (short) (((buffer[offset] & 0xff) << 8)
+            | (buffer[offset + 1] & 0xff));
+          if (valid != expectedFlags[order[k]])
+          {
+            throw new RecordNotFoundException(String.format(
+              Text.UNEXPECTED_VALID_FLAG_VALUE, valid,
+              expectedFlags[order[k]]));
+          }
         }
+        groupStarts.add(start);
+        groupBuffers.add(buffer);
+        originals.add(Arrays.copyOf(buffer, existing));
       }
     }
     catch (IOException e)
@@ -732,6 +1026,130 @@ public final class DBFileAccess
       throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
         + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
     }
+    // Write each group with a single write.
+    int g = 0;
+    try
+    {
+      for (; g < groupStarts.size(); ++g)
+      {
+        int start = groupStarts.get(g);
+        byte[] buffer = groupBuffers.get(g);
+        RecordWriteEvent event = new RecordWriteEvent();
+        event.begin();
+        boolean creates = false;
+        boolean updates = false;
+        for (int offset = 0, k = start; offset < buffer.length; offset +=
+          recordLength, ++k)
+        {
+          if (expectedFlags[order[k]] == RECORD_DELETED)
+          {
+            creates = true;
+          }
+          else
+          {
+            updates = true;
+          }
+          buffer[offset] = (byte) (RECORD_VALID >> 8);
+          buffer[offset + 1] = (byte) RECORD_VALID;
+          encodeFields(data[order[k]], buffer, offset + FLAG_LENGTH);
+        }
+        randomAccessFile.seek(offsetToStart + recNos[order[start]]
+          * recordLength);
+        randomAccessFile.write(buffer);
+        bytesWritten.add(buffer.length);
+        event.commit(creates && updates ? "write" : creates ? "create"
+          : "update", recNos[order[start]], buffer.length / recordLength,
+          buffer.length);
+      }
+      totalNumberOfRecords = limit;
+    }
+    catch (IOException e)
+    {
+      // The failed write may have been partially done.
+      restoreRecords(recNos, order, groupStarts, originals, g, fileLength);
+      throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
+        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Restores the groups of slots written by a failed
+   * {@link #writeRecords(long[], String[][], short[])} to their former
+   * contents and cuts the file back to its former length. This is done on a
+   * best effort basis; a failure is logged. Package-private for testing.
+   *
+   * @param recNos      the record numbers of the slots
+   * @param order       the indexes into <code>recNos</code> in ascending
+   *                    record number order
+   * @param groupStarts the positions within <code>order</code> at which the
+   *                    groups start
+   * @param originals   the former contents of the groups, excluding appended
+   *                    slots
+   * @param failed      the index of the group whose write failed
+   * @param fileLength  the former length of the file
+   */
+  void restoreRecords(final long[] recNos, final Integer[] order,
+                      final List<Integer> groupStarts,
+                      final List<byte[]> originals, final int failed,
+                      final long fileLength)
+  {
+    try
+    {
+      for (int g = 0; g <= failed && g < groupStarts.size(); ++g)
+      {
+        randomAccessFile.seek(offsetToStart + recNos[order[groupStarts.get(g)]]
+          * recordMetaData.getRecordLength());
+        randomAccessFile.write(originals.get(g));
+        bytesWritten.add(originals.get(g).length);
+      }
+      randomAccessFile.setLength(fileLength);
+    }
+    catch (IOException e)
+    {
+      LOG.log(Level.SEVERE, Text.CANT_RESTORE_RECORDS, e);
+    }
+  }
+
+  /**
+   * Encodes the fields of a record into a buffer. Each field is truncated or
+   * padded with zeros to the length given by the record metadata. Null fields
+   * are replaced with empty strings, and truncated fields with their
+   * truncated values, within <code>data</code> itself. This is for the cache.
+   *
+   * @param data   the fields of the record
+   * @param buffer the buffer
+   * @param offset the position of the first field within the buffer
+   * @throws IOException if the encoding is not supported
+   */
+  private void encodeFields(final String[] data, final byte[] buffer,
+                            final int offset) throws IOException
+  {
+    int pos = offset;
+    for (int i = 0; i < DBSchema.getNumberOfFields(); ++i)
+    {
+      // Transform null pointer to empty string.
+      if (data[i] == null)
+      {
+        data[i] = "";
+      }
+      int fieldLength = recordMetaData.getFieldLength(i);
+      byte[] bytes = data[i].getBytes(ENCODING);
+      int length = Math.min(bytes.length, fieldLength);
+      // Copy the data bytes, truncating or padding with zeros (the buffer
+      // may hold the former contents of the slot).
+      System.arraycopy(bytes, 0, buffer, pos, length);
+      Arrays.fill(buffer, pos + length, pos + fieldLength, (byte) 0);
+      if (data[i].length() > fieldLength)
+      {
+        String truncated = new String(buffer, pos, fieldLength, ENCODING);
+        LOG.warning("\"" + data[i] + "\" truncated to \"" + truncated
+          + "\"");
+        // Update data[i] with the truncated string. Otherwise (no
+        // truncation performed), data[i] remains "as is".
+        data[i] = truncated;
+      }
+      pos += fieldLength;
+    }
   }
 
   /**
@@ -750,34 +1168,47 @@ public final class DBFileAccess
   public void deleteRecord(final long recNo) throws RecordNotFoundException,
     DatabaseFileException
   {
-    if (recNo < 0 || recNo >= totalNumberOfRecords)
-    { // >=, not >
-      throw new RecordNotFoundException(String.format(
-        Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
-        totalNumberOfRecords));
-    }
-    long pos = offsetToStart + recNo * recordMetaData.getRecordLength();
+    long start = System.nanoTime();
     try
     {
-      // Place file pointer to the beginning of the record slot.
-      randomAccessFile.seek(pos);
-      // Verify that record is marked valid as a deleted record cannot
-      // (should not) be deleted again.
-      short valid = randomAccessFile.readShort();
-      if (valid != RECORD_VALID)
-      {
-        // Illegal state: record expected to be valid!
+      if (recNo < 0 || recNo >= totalNumberOfRecords)
+      { // >=, not >
         throw new RecordNotFoundException(String.format(
-          Text.UNEXPECTED_VALID_FLAG_VALUE, valid, RECORD_VALID));
+          Text.RECORD_NUMBER_OUT_OF_RANGE, recNo,
+          totalNumberOfRecords));
+      }
+      long pos = offsetToStart + recNo * recordMetaData.getRecordLength();
+      RecordWriteEvent event = new RecordWriteEvent();
+      event.begin();
+      try
+      {
+        // Place file pointer to the beginning of the record slot.
+        randomAccessFile.seek(pos);
+        // Verify that record is marked valid as a deleted record cannot
+        // (should not) be deleted again.
+        short valid = randomAccessFile.readShort();
+        bytesRead.add(FLAG_LENGTH);
+        if (valid != RECORD_VALID)
+        {
+          // Illegal state: record expected to be valid!
+          throw new RecordNotFoundException(String.format(
+            Text.UNEXPECTED_VALID_FLAG_VALUE, valid, RECORD_VALID));
+        }
+        // Rewind to original seek position.
+        randomAccessFile.seek(pos);
+        randomAccessFile.writeShort(RECORD_DELETED);
+        bytesWritten.add(FLAG_LENGTH);
+        event.commit("delete", recNo, 1, FLAG_LENGTH);
+      }
+      catch (IOException e)
+      {
+        throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
+          + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
       }
-      // Rewind to original seek position.
-      randomAccessFile.seek(pos);
-      randomAccessFile.writeShort(RECORD_DELETED);
     }
-    catch (IOException e)
+    finally
     {
-      throw new DatabaseFileException(Text.CANT_ACCESS_DATABASE_FILE
-        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+      operationMetrics.record(Operation.DELETE_RECORD, start);
     }
   }
 }
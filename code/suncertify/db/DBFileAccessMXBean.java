@@ -0,0 +1,58 @@
+/*
+ * @(#)DBFileAccessMXBean.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.db;
+
+import suncertify.util.OperationStatistics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the database file access class. The
+ * {@link DBFileAccess} Singleton instance is registered as
+ * <code>suncertify:type=DBFileAccess</code> while the database file is open.
+ * All figures are cumulative since the class was loaded.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public interface DBFileAccessMXBean
+{
+  /**
+   * Provides the number of bytes read from the database file by record
+   * operations, the header excluded.
+   *
+   * @return the number of bytes read
+   */
+  long getBytesRead();
+
+  /**
+   * Provides the number of bytes written to the database file.
+   *
+   * @return the number of bytes written
+   */
+  long getBytesWritten();
+
+  /**
+   * Provides the number and the latencies of the invocations per file
+   * operation, such as <code>READ_RECORD</code> or
+   * <code>UPDATE_RECORDS</code>.
+   *
+   * @return a map of (operation name, statistics) pairs
+   */
+  Map<String, OperationStatistics> getOperationStatistics();
+}
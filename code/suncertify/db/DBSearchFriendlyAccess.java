@@ -62,6 +62,10 @@ public interface DBSearchFriendlyAccess extends DBAccess
 
   /**
    * @throws DatabaseException if the database file access point has been closed
+   * @throws DeadlockException if waiting for the lock would deadlock, i.e., if
+   *                           the record is locked by a thread that waits,
+   *                           directly or indirectly, for a record locked by
+   *                           the current thread
    */
   @Override
   long lockRecord(long recNo) throws RecordNotFoundException;
@@ -72,6 +76,222 @@ public interface DBSearchFriendlyAccess extends DBAccess
   @Override
   void unlock(long recNo, long cookie) throws SecurityException;
 
+  /**
+   * Reads several records at once, under a single acquisition of the
+   * database lock, so that they are read consistently with each other.
+   *
+   * @param recNos the record numbers of the records to be read
+   * @return a map of (record number, record data) pairs in the order of
+   *         <code>recNos</code>
+   * @throws DatabaseException       if the database file access point has been closed
+   * @throws RecordNotFoundException if there is no valid record corresponding to one of
+   *                                 <code>recNos</code>
+   */
+  Map<Long, String[]> readRecords(long[] recNos)
+    throws RecordNotFoundException;
+
+  /**
+   * Reads a record together with its version and converts it straight from
+   * the record cache, without copying the record data first.
+   *
+   * @param <T>    the type of the result
+   * @param recNo  the record number of the record to be read
+   * @param mapper the converter from shared, read-only record data to the
+   *               result
+   * @return the result of the mapper
+   * @throws DatabaseException       if the database file access point has been closed
+   * @throws RecordNotFoundException if there is no valid record corresponding to
+   *                                 <code>recNo</code>
+   */
+  <T> T readRecord(long recNo, RecordMapper<T> mapper)
+    throws RecordNotFoundException;
+
+  /**
+   * Reads several records together with their versions under a single
+   * acquisition of the database lock, and converts them straight from the
+   * record cache like {@link #readRecord(long, RecordMapper)}. Unlike
+   * {@link #readRecords(long[])}, records that do not exist are not an error
+   * but are left out of the result.
+   *
+   * @param <T>    the type of the results
+   * @param recNos the record numbers of the records to be read
+   * @param mapper the converter from shared, read-only record data to the
+   *               results
+   * @return a map of (record number, result) pairs of the existing records
+   *         in the order of <code>recNos</code>
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  <T> Map<Long, T> readRecords(long[] recNos, RecordMapper<T> mapper);
+
+  /**
+   * Creates several records at once, under a single acquisition of the
+   * database lock and with the disk writes coalesced into one write per group
+   * of adjacent record slots. Record numbers of deleted records are reused
+   * first, just like with {@link #createRecord(String[])}.
+   *
+   * @param data the fields of the new records
+   * @return the record numbers of the new records, in the order of
+   *         <code>data</code>
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  long[] createRecords(String[][] data);
+
+  /**
+   * Locks several records at once. The records are locked all together or not
+   * at all: if one of them is locked by a different client, the current
+   * thread waits, without holding any of the other records, until all of them
+   * are available. Therefore, batches locked this way can never deadlock each
+   * other. Records already locked by the current thread are reentered.
+   *
+   * @param recNos the record numbers of the records to be locked. A record
+   *               number given twice is locked twice.
+   * @return the cookies of the locks, in the order of <code>recNos</code>
+   * @throws DatabaseException       if the database file access point has been closed
+   * @throws RecordNotFoundException if there is no valid record corresponding to one of
+   *                                 <code>recNos</code>, in which case no record is locked
+   * @throws DeadlockException       if waiting for the records would deadlock, see
+   *                                 {@link #lockRecord(long)}. No record is locked then.
+   */
+  long[] lockRecords(long[] recNos) throws RecordNotFoundException;
+
+  /**
+   * Locks a record on behalf of an explicit lock owner rather than the
+   * current thread. Ownership decides reentrance and deadlock detection: the
+   * lock is reentered by any thread acting for the same owner, so that a
+   * client whose requests are served by varying threads - as with RMI - can
+   * lock a record in one call and lock it again in a later one. The methods
+   * without an owner parameter act for an owner bound to the current thread.
+   * Updating, deleting and unlocking are still authorized by the cookie.
+   *
+   * @param recNo the record number of the record to be locked
+   * @param owner the owner of the lock
+   * @return the cookie that must be used when the record is unlocked,
+   *         updated, or deleted
+   * @throws DatabaseException       if the database file access point has been closed
+   * @throws DeadlockException       if waiting for the lock would deadlock
+   * @throws RecordNotFoundException if there is no valid record corresponding to
+   *                                 <code>recNo</code>
+   * @see DBAccess#lockRecord(long)
+   */
+  long lockRecord(long recNo, LockOwner owner) throws RecordNotFoundException;
+
+  /**
+   * Locks several records at once on behalf of an explicit lock owner, just
+   * like {@link #lockRecords(long[])}. Records already locked by the same
+   * owner are reentered, regardless of the thread that locked them.
+   *
+   * @param recNos the record numbers of the records to be locked
+   * @param owner  the owner of the locks
+   * @return the cookies of the locks, in the order of <code>recNos</code>
+   * @throws DatabaseException       if the database file access point has been closed
+   * @throws RecordNotFoundException if there is no valid record corresponding to one of
+   *                                 <code>recNos</code>, in which case no record is locked
+   * @throws DeadlockException       if waiting for the records would deadlock. No record
+   *                                 is locked then.
+   */
+  long[] lockRecords(long[] recNos, LockOwner owner)
+    throws RecordNotFoundException;
+
+  /**
+   * Updates several locked records at once, under a single acquisition of the
+   * database lock and with the disk writes coalesced into one write per group
+   * of adjacent record slots. All records and cookies are verified before any
+   * record is written.
+   *
+   * @param recNos      the distinct record numbers of the records to be updated
+   * @param data        the new fields of the records, <code>data[k]</code> for
+   *                    <code>recNos[k]</code>
+   * @param lockCookies the cookies of the locks, <code>lockCookies[k]</code>
+   *                    for <code>recNos[k]</code>
+   * @throws DatabaseException        if the database file access point has been closed
+   * @throws IllegalArgumentException if the arrays differ in length or a record
+   *                                  number is given twice
+   * @throws RecordNotFoundException  if there is no valid record corresponding to one of
+   *                                  <code>recNos</code>
+   * @throws SecurityException        if one of the records is not locked at all or is
+   *                                  locked with a cookie other than the given one
+   */
+  void updateRecords(long[] recNos, String[][] data, long[] lockCookies)
+    throws RecordNotFoundException, SecurityException;
+
+  /**
+   * Updates a record provided that it has not been written since it was read
+   * with a given version, in a single step and without locking the record.
+   * Every write to a record assigns it a new version, greater than all
+   * versions assigned before; versions are returned with the results of
+   * searches via {@link RecordMapper}. A record currently locked by another
+   * client is not updated either. The update fails fast rather than waiting;
+   * the caller may read the record again and retry.
+   *
+   * @param recNo           the record number of the record to be updated
+   * @param expectedVersion the version the record must currently have
+   * @param data            the new fields of the record
+   * @return the new version of the record, or -1 if the record has not been
+   *         updated because its version differs from
+   *         <code>expectedVersion</code> or it is locked by another client
+   * @throws DatabaseException       if the database file access point has been closed
+   * @throws RecordNotFoundException if there is no valid record corresponding to
+   *                                 <code>recNo</code>
+   */
+  long compareAndUpdate(long recNo, long expectedVersion, String[] data)
+    throws RecordNotFoundException;
+
+  /**
+   * Updates a record provided that it has not been written since it was read
+   * with a given version, just like
+   * {@link #compareAndUpdate(long, long, String[])}, except that a record
+   * locked by the given owner is updated as well.
+   *
+   * @param recNo           the record number of the record to be updated
+   * @param expectedVersion the version the record must currently have
+   * @param data            the new fields of the record
+   * @param owner           the lock owner on whose behalf the record is updated
+   * @return the new version of the record, or -1 if the record has not been
+   *         updated because its version differs from
+   *         <code>expectedVersion</code> or it is locked by another owner
+   * @throws DatabaseException       if the database file access point has been closed
+   * @throws RecordNotFoundException if there is no valid record corresponding to
+   *                                 <code>recNo</code>
+   */
+  long compareAndUpdate(long recNo, long expectedVersion, String[] data,
+                        LockOwner owner) throws RecordNotFoundException;
+
+  /**
+   * Updates several records, each provided that it has not been written
+   * since it was read with a given version, just like
+   * {@link #compareAndUpdate(long, long, String[])}. The updates are
+   * independent of each other: each one succeeds or fails on its own. They
+   * are applied together, usually under a single acquisition of the database
+   * lock and with the disk writes coalesced.
+   *
+   * @param recNos           the record numbers of the records to be updated
+   * @param expectedVersions the versions the records must currently have, in
+   *                         the order of <code>recNos</code>
+   * @param data             the new fields of the records, in the order of
+   *                         <code>recNos</code>
+   * @return the new versions of the records in the order of
+   *         <code>recNos</code>, each -1 if the record has not been updated
+   *         because it does not exist, its version differs from the expected
+   *         one or it is locked by another client
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  long[] compareAndUpdateRecords(long[] recNos, long[] expectedVersions,
+                                 String[][] data);
+
+  /**
+   * Releases the locks on several records at once. All cookies are verified
+   * before any lock is released.
+   *
+   * @param recNos  the record numbers of the records to be unlocked
+   * @param cookies the cookies of the locks, <code>cookies[k]</code> for
+   *                <code>recNos[k]</code>
+   * @throws DatabaseException        if the database file access point has been closed
+   * @throws IllegalArgumentException if the arrays differ in length
+   * @throws SecurityException        if one of the records is locked with a cookie other
+   *                                  than the given one
+   */
+  void unlockRecords(long[] recNos, long[] cookies) throws SecurityException;
+
   /**
    * Retrieves all database records that exactly match the given criteria.
    * Field n in the database file is described by criteria[n]. A null value in
@@ -85,6 +305,167 @@ public interface DBSearchFriendlyAccess extends DBAccess
    */
   Map<Long, String[]> findByCriteriaExactMatches(String[] criteria);
 
+  /**
+   * Retrieves all database records that exactly match the given criteria and
+   * whose comma-separated specialties field contains all of (or any of) the
+   * given specialties. The criteria are interpreted just like with
+   * {@link #findByCriteriaExactMatches(String[])}. The specialties are matched
+   * as whole list items, ignoring case and surrounding blanks, so that
+   * "painting" is contained in "Roofing, Painting, Air Conditioning".
+   *
+   * @param criteria    the string array representing the search criteria
+   * @param specialties the specialties to look for. If null or empty, the
+   *                    specialties field is not constrained.
+   * @param matchAll    <code>true</code> if a record must contain all of the
+   *                    specialties, <code>false</code> if it must contain at
+   *                    least one of them
+   * @return a map of (record number, record data) pairs of all matching
+   *         records
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  Map<Long, String[]> findBySpecialties(String[] criteria,
+                                        String[] specialties, boolean matchAll);
+
+  /**
+   * Retrieves all database records that exactly match the given criteria and
+   * whose size and rate lie within the given closed intervals. The criteria
+   * are interpreted just like with
+   * {@link #findByCriteriaExactMatches(String[])}. Records whose size or rate
+   * field cannot be interpreted as a number never match a bounded interval.
+   * To leave an interval unbounded, pass <code>Long.MIN_VALUE</code> or
+   * <code>Long.MAX_VALUE</code>, respectively.
+   *
+   * @param criteria the string array representing the search criteria
+   * @param minSize  the minimum number of staff, inclusive
+   * @param maxSize  the maximum number of staff, inclusive
+   * @param minRate  the minimum hourly charge in cents, inclusive, ignoring the
+   *                 currency symbol
+   * @param maxRate  the maximum hourly charge in cents, inclusive, ignoring the
+   *                 currency symbol
+   * @return a map of (record number, record data) pairs of all matching
+   *         records
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  Map<Long, String[]> findByRanges(String[] criteria, long minSize,
+                                   long maxSize, long minRate, long maxRate);
+
+  /**
+   * Retrieves all database records that match a multi-criteria query. How
+   * the criteria are evaluated - by looking up and intersecting indexes, by
+   * testing the candidates record by record, or by a full scan - is decided
+   * per query by a cost-based planner from statistics over the records.
+   * <p/>
+   * If the query has an order or a limit, only the first matches in that
+   * order are returned, selected with a bounded heap or read off a sorted
+   * index rather than by sorting all matches.
+   *
+   * @param query the query
+   * @return a map of (record number, record data) pairs of the matching
+   *         records in the order of the query, by default in ascending
+   *         record number order
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  Map<Long, String[]> find(Query query);
+
+  /**
+   * Retrieves all database records that match a multi-criteria query and
+   * converts them into search results in a single pass straight from the
+   * record cache, without copying the record data first. The criteria are
+   * evaluated just like with {@link #find(Query)}.
+   *
+   * @param <T>    the type of the search results
+   * @param query  the query
+   * @param mapper the converter from shared, read-only record data to search
+   *               results
+   * @return a map of (record number, search result) pairs of the matching
+   *         records in the order of the query, by default in ascending
+   *         record number order
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  <T> Map<Long, T> find(Query query, RecordMapper<T> mapper);
+
+  /**
+   * Describes how a query would be executed by {@link #find(Query)}: the
+   * chosen plan, the estimated number of matches per criterion, the
+   * estimated costs and the statistics they are based on. Intended for
+   * diagnostics; the format of the description is not specified.
+   *
+   * @param query the query
+   * @return the human-readable plan description
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  String explain(Query query);
+
+  /**
+   * Provides a snapshot of the lock contention: the waits for the global
+   * read/write lock of the cache, and the record locks with the longest total
+   * wait times together with their sampled hold times and current waiters.
+   * Profiling is always on and cheap enough to be left on in production.
+   *
+   * @param maxRecords the maximum number of hottest records to include
+   * @return the lock profile
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  LockProfile getLockProfile(int maxRecords);
+
+  /**
+   * Opens a cursor over the records matching a query. The cursor works on a
+   * consistent snapshot of the matches as of its opening, unaffected by later
+   * write operations. The pages are fetched with {@link #fetch(long, int)};
+   * the cursor should be closed with {@link #closeCursor(long)} when no longer
+   * needed. A cursor not accessed for a while expires.
+   *
+   * @param query the query
+   * @return the id of the cursor
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  long openCursor(Query query);
+
+  /**
+   * Fetches the next page of records from a cursor, in ascending record
+   * number order.
+   *
+   * @param cursorId the id of the cursor as returned by
+   *                 {@link #openCursor(Query)}
+   * @param maxRows  the maximum number of records to fetch
+   * @return a map of (record number, record data) pairs in ascending record
+   *         number order, with at most <code>maxRows</code> entries. Empty
+   *         once the cursor is exhausted.
+   * @throws DatabaseException if the database file access point has been
+   *                           closed, or if there is no such cursor or it
+   *                           has expired
+   */
+  Map<Long, String[]> fetch(long cursorId, int maxRows);
+
+  /**
+   * Fetches the next page of records from a cursor and converts them
+   * straight from the snapshot, together with their versions as of the
+   * opening of the cursor, without copying the record data first.
+   *
+   * @param <T>      the type of the results
+   * @param cursorId the id of the cursor as returned by
+   *                 {@link #openCursor(Query)}
+   * @param maxRows  the maximum number of records to fetch
+   * @param mapper   the converter from shared, read-only record data to
+   *                 results
+   * @return a map of (record number, result) pairs in ascending record
+   *         number order, with at most <code>maxRows</code> entries. Empty
+   *         once the cursor is exhausted.
+   * @throws DatabaseException if the database file access point has been
+   *                           closed, or if there is no such cursor or it
+   *                           has expired
+   */
+  <T> Map<Long, T> fetch(long cursorId, int maxRows, RecordMapper<T> mapper);
+
+  /**
+   * Closes a cursor and releases its snapshot. Closing an unknown or expired
+   * cursor has no effect.
+   *
+   * @param cursorId the id of the cursor
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  void closeCursor(long cursorId);
+
   /**
    * Locks a record so that it can only be updated or deleted by this client.
    * Returned value is a cookie that must be used when the record is unlocked,
@@ -97,6 +478,8 @@ public interface DBSearchFriendlyAccess extends DBAccess
    * @return a long value representing the cookie that must be used when the
    *         record is unlocked, updated, or deleted
    * @throws DatabaseException       if the database file access point has been closed
+   * @throws DeadlockException       if waiting for the lock would deadlock, see
+   *                                 {@link #lockRecord(long)}
    * @throws RecordNotFoundException if there is no valid record corresponding to
    *                                 <code>recNo</code>
    * @see DBAccess#unlock(long, long)
@@ -16,10 +16,24 @@
 
 package suncertify.db;
 
+import suncertify.util.JmxUtilities;
+import suncertify.util.OperationMetrics;
+import suncertify.util.OperationStatistics;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.TreeSet;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -38,7 +52,7 @@ import java.util.logging.Logger;
  * @author Lars Kuettner
  * @version 1.0
  */
-public final class Data implements DBSearchFriendlyAccess
+public final class Data implements DBSearchFriendlyAccess, DataMXBean
 {
 
   /**
@@ -46,11 +60,37 @@ public final class Data implements DBSearchFriendlyAccess
    */
   private static final Logger LOG = Logger.getLogger(Data.class.getName());
 
+  /**
+   * The type under which the Singleton instance is registered as an MXBean.
+   */
+  private static final String MXBEAN_TYPE = "Data";
+
+  /**
+   * The number of hottest records included in the periodic lock profile
+   * dump.
+   */
+  private static final int LOGGED_HOTTEST_RECORDS = 10;
+
   /**
    * The Singleton instance.
    */
   private static final Data INSTANCE = new Data();
 
+  /**
+   * The record mapper returning a copy of each matching record, decoupled
+   * from the cache.
+   */
+  private static final RecordMapper<String[]> CLONING_MAPPER =
+    new RecordMapper<String[]>()
+    {
+      @Override
+      public String[] map(final long recNo, final long version,
+                          final String[] record)
+      {
+        return record.clone();
+      }
+    };
+
   /**
    * The handle to the database file access point.
    */
@@ -58,10 +98,25 @@ public final class Data implements DBSearchFriendlyAccess
 
   /**
    * The actual cache, implemented as a map of the valid (record number,
-   * record data) pairs.
+   * record data) pairs. Cached record data is immutable: it is a private copy
+   * that is replaced on update, never modified in place, so that it can be
+   * shared with search cursors and record mappers without copying.
    */
   private Map<Long, String[]> cachedRecords = null;
 
+  /**
+   * The versions of the cached records, implemented as a map of (record
+   * number, version) pairs. Each write to a record assigns it a new version.
+   */
+  private Map<Long, Long> recordVersions = null;
+
+  /**
+   * The most recently assigned version. Never reset, so that versions are
+   * unique during the entire lifetime of the application, even across record
+   * number recycling and reinitializations.
+   */
+  private long lastVersion = 0;
+
   /**
    * The collection of recyclable record numbers that is fed from deleted
    * records not yet having been reassigned, implemented as a tree set because
@@ -69,17 +124,61 @@ public final class Data implements DBSearchFriendlyAccess
    */
   private TreeSet<Long> recyclableRecordNumbers = null;
 
+  /**
+   * The indexes over the cached records together with their statistics.
+   * Maintained on each write operation, they turn the criteria of the find
+   * operations into index lookups instead of full scans over the cache.
+   */
+  private RecordIndexes recordIndexes = null;
+
+  /**
+   * The cost-based planner deciding per query how to evaluate its criteria.
+   */
+  private QueryPlanner queryPlanner = null;
+
+  /**
+   * The cache of search results, validated against per-field modification
+   * counters bumped on each write operation.
+   */
+  private SearchCache searchCache = null;
+
+  /**
+   * The open search cursors, each holding a snapshot of the matches of a
+   * query.
+   */
+  private CursorRegistry cursorRegistry = null;
+
   /**
    * The collection of currently locked records, implemented as a map of
    * (record number, lock info) pairs. On each successful lock record
    * operation, an entry into this map will be generated. Likewise, an unlock
    * record operation leads to an entry being removed from this map. If a new
    * locking request is made and this map already contains an entry from
-   * another thread, the locking operation will block until the lock will have
-   * been released. Enables reentrant locking.
+   * another lock owner, the locking operation will block until the lock will
+   * have been released. Enables reentrant locking per {@link LockOwner}.
    */
   private Map<Long, LockInfo> lockedRecordsInfo = null;
 
+  /**
+   * The wait-for graph of the record locks, implemented as a map from each
+   * lock owner to the records it currently waits for: one entry per waiting
+   * thread, since several threads may act for the same owner. The holder of
+   * such a record is found in <code>lockedRecordsInfo</code>. Before an owner
+   * starts waiting, the waiting owners are followed from the holder; leading
+   * back to the owner itself means a deadlock.
+   */
+  private Map<LockOwner, List<Long>> lockWaits = null;
+
+  /**
+   * The built-in profiler of the global read/write lock and the record locks.
+   */
+  private final LockProfiler lockProfiler = new LockProfiler();
+
+  /**
+   * The timer dumping the lock profile to the log periodically, or null.
+   */
+  private Timer lockProfileLogTimer = null;
+
   /**
    * Enables locking access on the entire cache efficiently by means of a
    * read/write lock so that multiple non-modifying read operations can take
@@ -90,16 +189,20 @@ public final class Data implements DBSearchFriendlyAccess
   /**
    * The read lock component of the reentrant read/write lock, needed for the
    * read record and find operations that can thus take place in parallel.
+   * Its waits are profiled.
    */
-  private Lock readLock = readWriteLock.readLock();
+  private Lock readLock = lockProfiler.profileReadLock(readWriteLock
+    .readLock());
 
   /**
    * The write lock component of the reentrant read/write lock, needed for all
    * operations other than read record and find, such as create, update,
    * delete, lock, unlock record, but also to enforce serial access to
-   * administrative methods like get and terminate instance.
+   * administrative methods like get and terminate instance. Its waits are
+   * profiled.
    */
-  private Lock writeLock = readWriteLock.writeLock();
+  private Lock writeLock = lockProfiler.profileWriteLock(readWriteLock
+    .writeLock());
 
   /**
    * A condition with which to signal the removal of a lock from the
@@ -112,6 +215,39 @@ public final class Data implements DBSearchFriendlyAccess
    */
   private Condition lockInfoRemoved = writeLock.newCondition();
 
+  /**
+   * The combining write path for creating and updating single records. The
+   * pending requests of all threads are applied in batches by whichever
+   * thread holds the write lock. Package-private for testing.
+   */
+  final WriteCombiner writeCombiner = new WriteCombiner(writeLock,
+    new WriteCombiner.Applier()
+    {
+      @Override
+      public void apply(final List<Mutation> batch)
+      {
+        applyMutations(batch);
+      }
+    });
+
+  /**
+   * The operations whose invocations are counted and timed.
+   */
+  private enum Operation
+  {
+    READ_RECORD, READ_RECORDS, CREATE_RECORD, CREATE_RECORDS, UPDATE_RECORD,
+    UPDATE_RECORDS, COMPARE_AND_UPDATE, COMPARE_AND_UPDATE_RECORDS,
+    DELETE_RECORD, FIND, OPEN_CURSOR,
+    FETCH, LOCK_RECORD, LOCK_RECORDS, UNLOCK_RECORD, UNLOCK_RECORDS
+  }
+
+  /**
+   * The number and latencies of the invocations per operation, recorded
+   * lock-free.
+   */
+  private final OperationMetrics<Operation> operationMetrics =
+    new OperationMetrics<Operation>(Operation.class, "data");
+
   /**
    * The Singleton constructor.
    */
@@ -156,6 +292,7 @@ public final class Data implements DBSearchFriendlyAccess
         try
         {
           INSTANCE.initialize(dBFileAccess);
+          JmxUtilities.register(MXBEAN_TYPE, INSTANCE);
         }
         catch (DatabaseException e)
         {
@@ -209,7 +346,11 @@ public final class Data implements DBSearchFriendlyAccess
   private void initialize(final DBFileAccess dBFileAccess)
   {
     Map<Long, String[]> cachedRecords = new HashMap<Long, String[]>();
+    Map<Long, Long> recordVersions = new HashMap<Long, Long>();
     TreeSet<Long> recyclableRecordNumbers = new TreeSet<Long>();
+    RecordIndexes recordIndexes = new RecordIndexes();
+    CacheLoadEvent event = new CacheLoadEvent();
+    event.begin();
 
     assert this.dBFileAccess == null;
 
@@ -225,7 +366,10 @@ public final class Data implements DBSearchFriendlyAccess
         String[] recData = null;
 
         recData = dBFileAccess.readRecord(recNo);
+        recordIndexes.intern(recData);
         cachedRecords.put(recNo, recData);
+        recordVersions.put(recNo, ++lastVersion);
+        recordIndexes.add(recNo, recData);
 
         // Update recyclableRecordNumbers if necessary (i.e., on gaps in
         // the sequence of valid record numbers). Each missing record #
@@ -250,9 +394,26 @@ public final class Data implements DBSearchFriendlyAccess
     // Assignments here b/o failure atomicity
     this.dBFileAccess = dBFileAccess;
     this.cachedRecords = cachedRecords;
+    this.recordVersions = recordVersions;
     this.recyclableRecordNumbers = recyclableRecordNumbers;
+    this.recordIndexes = recordIndexes;
+    recordIndexes.getStatistics().refresh();
+    queryPlanner = new QueryPlanner(recordIndexes, cachedRecords);
+    searchCache = new SearchCache(recordIndexes);
+    cursorRegistry = new CursorRegistry(
+      CursorRegistry.DEFAULT_TIMEOUT_MILLIS);
 
     lockedRecordsInfo = new HashMap<Long, LockInfo>();
+    lockWaits = new HashMap<LockOwner, List<Long>>();
+    lockProfiler.clearRecords();
+
+    event.end();
+    if (event.shouldCommit())
+    {
+      event.records = cachedRecords.size();
+      event.recyclableSlots = recyclableRecordNumbers.size();
+      event.commit();
+    }
   }
 
   /**
@@ -274,12 +435,25 @@ public final class Data implements DBSearchFriendlyAccess
       // (especially while unit testing) and also via the shutdown hook.
       if (INSTANCE.dBFileAccess != null)
       {
+        JmxUtilities.unregister(MXBEAN_TYPE);
         INSTANCE.dBFileAccess.terminate();
 
         INSTANCE.dBFileAccess = null;
         INSTANCE.cachedRecords = null;
+        INSTANCE.recordVersions = null;
         INSTANCE.recyclableRecordNumbers = null;
+        INSTANCE.recordIndexes = null;
+        INSTANCE.queryPlanner = null;
+        INSTANCE.searchCache = null;
+        INSTANCE.cursorRegistry.closeAll();
+        INSTANCE.cursorRegistry = null;
         INSTANCE.lockedRecordsInfo = null;
+        INSTANCE.lockWaits = null;
+      }
+      if (INSTANCE.lockProfileLogTimer != null)
+      {
+        INSTANCE.lockProfileLogTimer.cancel();
+        INSTANCE.lockProfileLogTimer = null;
       }
     }
     finally
@@ -296,6 +470,7 @@ public final class Data implements DBSearchFriendlyAccess
     throws RecordNotFoundException
   {
     String[] data;
+    long start = System.nanoTime();
     try
     {
       readLock.lock();
@@ -321,17 +496,166 @@ public final class Data implements DBSearchFriendlyAccess
     finally
     {
       readLock.unlock();
+      operationMetrics.record(Operation.READ_RECORD, start);
     }
     return data;
   }
 
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public Map<Long, String[]> readRecords(final long[] recNos)
+    throws RecordNotFoundException
+  {
+    Map<Long, String[]> records = new LinkedHashMap<Long, String[]>();
+    long start = System.nanoTime();
+    try
+    {
+      readLock.lock();
+
+      if (dBFileAccess == null)
+      {
+        throw new DatabaseException(Text.DATABASE_CLOSED);
+      }
+
+      for (long recNo : recNos)
+      {
+        String[] data = cachedRecords.get(recNo);
+        if (data == null)
+        {
+          throw new RecordNotFoundException(String.format(
+            Text.RECORD_NOT_FOUND, recNo));
+        }
+        // Clone to decouple the returned record data from the cache.
+        records.put(recNo, data.clone());
+      }
+    }
+    finally
+    {
+      readLock.unlock();
+      operationMetrics.record(Operation.READ_RECORDS, start);
+    }
+    return records;
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public <T> Map<Long, T> readRecords(final long[] recNos,
+                                      final RecordMapper<T> mapper)
+  {
+    List<Long> foundRecNos = new ArrayList<Long>(recNos.length);
+    List<String[]> foundData = new ArrayList<String[]>(recNos.length);
+    long[] versions = new long[recNos.length];
+    long start = System.nanoTime();
+    try
+    {
+      readLock.lock();
+
+      if (dBFileAccess == null)
+      {
+        throw new DatabaseException(Text.DATABASE_CLOSED);
+      }
+
+      for (long recNo : recNos)
+      {
+        String[] data = cachedRecords.get(recNo);
+        if (data != null)
+        {
+          versions[foundRecNos.size()] = recordVersions.get(recNo);
+          foundRecNos.add(recNo);
+          foundData.add(data);
+        }
+      }
+    }
+    finally
+    {
+      readLock.unlock();
+      operationMetrics.record(Operation.READ_RECORDS, start);
+    }
+    // Convert after releasing the lock; cached records are immutable.
+    Map<Long, T> records = new LinkedHashMap<Long, T>();
+    for (int i = 0; i < foundRecNos.size(); ++i)
+    {
+      long recNo = foundRecNos.get(i);
+      records.put(recNo, mapper.map(recNo, versions[i], foundData.get(i)));
+    }
+    return records;
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public <T> T readRecord(final long recNo, final RecordMapper<T> mapper)
+    throws RecordNotFoundException
+  {
+    String[] data;
+    long version;
+    long start = System.nanoTime();
+    try
+    {
+      readLock.lock();
+
+      if (dBFileAccess == null)
+      {
+        throw new DatabaseException(Text.DATABASE_CLOSED);
+      }
+
+      data = cachedRecords.get(recNo);
+      if (data == null)
+      {
+        throw new RecordNotFoundException(String.format(
+          Text.RECORD_NOT_FOUND, recNo));
+      }
+      version = recordVersions.get(recNo);
+    }
+    finally
+    {
+      readLock.unlock();
+      operationMetrics.record(Operation.READ_RECORD, start);
+    }
+    // Convert after releasing the lock; cached records are immutable.
+    return mapper.map(recNo, version, data);
+  }
+
   /**
    * @throws DatabaseException if the database file access point has been closed
    */
   @Override
   public long createRecord(final String[] data)
   {
-    long recNo = -1;
+    // Published to the combining write path. The record data may be
+    // cropped (truncated) and thus replaced in the process of writing it to
+    // the database file.
+    long start = System.nanoTime();
+    try
+    {
+      return writeCombiner.submit(Mutation.create(data));
+    }
+    catch (RecordNotFoundException e)
+    {
+      // A programming error (that never occurs, of course)
+      LOG.log(Level.SEVERE, Text.CANT_PLACE_NEW_RECORD, e);
+      throw new DatabaseException(Text.CANT_PLACE_NEW_RECORD
+        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+    }
+    finally
+    {
+      operationMetrics.record(Operation.CREATE_RECORD, start);
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public long[] createRecords(final String[][] data)
+  {
+    long[] recNos = new long[data.length];
+    long start = System.nanoTime();
     try
     {
       writeLock.lock();
@@ -341,19 +665,22 @@ public final class Data implements DBSearchFriendlyAccess
         throw new DatabaseException(Text.DATABASE_CLOSED);
       }
 
-      // Retrieve the first unused record number. If there is no unused
-      // record number, assign as the next free record number the size of
-      // the cache.
-      recNo = recyclableRecordNumbers.isEmpty() ? cachedRecords.size()
-        : recyclableRecordNumbers.pollFirst();
-      assert (cachedRecords.containsKey(recNo) == false);
+      // Assign the unused record numbers first, then append. The unused
+      // record numbers are only taken from the recycling pool once the
+      // records have been written.
+      Iterator<Long> recyclable = recyclableRecordNumbers.iterator();
+      long nextRecNo = cachedRecords.size() + recyclableRecordNumbers.size();
+      for (int k = 0; k < recNos.length; ++k)
+      {
+        recNos[k] = recyclable.hasNext() ? recyclable.next() : nextRecNo++;
+      }
       // Write-through to database file
       try
       {
         // Note: In the process of writing to the database file,
         // individual data strings may be cropped (truncated) and thus
         // replaced.
-        dBFileAccess.placeNewRecord(recNo, data);
+        dBFileAccess.placeNewRecords(recNos, data);
       }
       catch (RecordNotFoundException e)
       {
@@ -367,15 +694,19 @@ public final class Data implements DBSearchFriendlyAccess
         throw new DatabaseException(Text.CANT_PLACE_NEW_RECORD
           + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
       }
-      // Write the possibly cropped data from the database file into the
-      // cache.
-      cachedRecords.put(recNo, data);
+      for (int k = 0; k < recNos.length; ++k)
+      {
+        recyclableRecordNumbers.remove(recNos[k]);
+        assert (cachedRecords.containsKey(recNos[k]) == false);
+        cacheRecord(recNos[k], data[k]);
+      }
     }
     finally
     {
       writeLock.unlock();
+      operationMetrics.record(Operation.CREATE_RECORDS, start);
     }
-    return recNo;
+    return recNos;
   }
 
   /**
@@ -386,6 +717,29 @@ public final class Data implements DBSearchFriendlyAccess
                            final long lockCookie) throws RecordNotFoundException,
     SecurityException
   {
+    long start = System.nanoTime();
+    try
+    {
+      // Published to the combining write path.
+      writeCombiner.submit(Mutation.update(recNo, data, lockCookie));
+    }
+    finally
+    {
+      operationMetrics.record(Operation.UPDATE_RECORD, start);
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public void updateRecords(final long[] recNos, final String[][] data,
+                            final long[] lockCookies)
+    throws RecordNotFoundException, SecurityException
+  {
+    checkBatchLengths(recNos.length, data.length);
+    checkBatchLengths(recNos.length, lockCookies.length);
+    long start = System.nanoTime();
     try
     {
       writeLock.lock();
@@ -395,24 +749,31 @@ public final class Data implements DBSearchFriendlyAccess
         throw new DatabaseException(Text.DATABASE_CLOSED);
       }
 
-      // Verify that the record is in cache.
-      if (cachedRecords.containsKey(recNo) == false)
-      {
-        throw new RecordNotFoundException(String.format(
-          Text.RECORD_NOT_FOUND, recNo));
-      }
-      // Verify that record has been properly locked, i.e., locked at all
-      // and with the right cookie.
-      LockInfo lockInfo = lockedRecordsInfo.get(recNo);
-      if (lockInfo == null)
-      {
-        throw new SecurityException(String.format(
-          Text.RECORD_NOT_LOCKED, recNo));
-      }
-      if (lockInfo.getCookie() != lockCookie)
+      // Verify all records before writing any of them.
+      Set<Long> distinctRecNos = new HashSet<Long>();
+      for (int k = 0; k < recNos.length; ++k)
       {
-        throw new SecurityException(String.format(
-          Text.RECORD_COOKIE_MISMATCH, recNo, lockCookie));
+        if (distinctRecNos.add(recNos[k]) == false)
+        {
+          throw new IllegalArgumentException(String.format(
+            Text.DUPLICATE_RECORD_NUMBER, recNos[k]));
+        }
+        if (cachedRecords.containsKey(recNos[k]) == false)
+        {
+          throw new RecordNotFoundException(String.format(
+            Text.RECORD_NOT_FOUND, recNos[k]));
+        }
+        LockInfo lockInfo = lockedRecordsInfo.get(recNos[k]);
+        if (lockInfo == null)
+        {
+          throw new SecurityException(String.format(
+            Text.RECORD_NOT_LOCKED, recNos[k]));
+        }
+        if (lockInfo.getCookie() != lockCookies[k])
+        {
+          throw new SecurityException(String.format(
+            Text.RECORD_COOKIE_MISMATCH, recNos[k], lockCookies[k]));
+        }
       }
       // Write-through to database file
       try
@@ -420,7 +781,7 @@ public final class Data implements DBSearchFriendlyAccess
         // Note: In the process of writing to the database file,
         // individual data strings may be cropped (truncated) and thus
         // replaced.
-        dBFileAccess.updateRecord(recNo, data);
+        dBFileAccess.updateRecords(recNos, data);
       }
       catch (RecordNotFoundException e)
       {
@@ -434,13 +795,88 @@ public final class Data implements DBSearchFriendlyAccess
         throw new DatabaseException(Text.CANT_UPDATE_RECORD
           + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
       }
-      // Write the possibly cropped data from the database file into the
-      // cache.
-      cachedRecords.put(recNo, data);
+      for (int k = 0; k < recNos.length; ++k)
+      {
+        cacheRecord(recNos[k], data[k]);
+      }
     }
     finally
     {
       writeLock.unlock();
+      operationMetrics.record(Operation.UPDATE_RECORDS, start);
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public long compareAndUpdate(final long recNo, final long expectedVersion,
+                               final String[] data)
+    throws RecordNotFoundException
+  {
+    return compareAndUpdate(recNo, expectedVersion, data, LockOwner
+      .ofCurrentThread());
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public long compareAndUpdate(final long recNo, final long expectedVersion,
+                               final String[] data, final LockOwner owner)
+    throws RecordNotFoundException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      // Published to the combining write path.
+      return writeCombiner.submit(Mutation.compareAndUpdate(recNo,
+        expectedVersion, data, owner));
+    }
+    finally
+    {
+      operationMetrics.record(Operation.COMPARE_AND_UPDATE, start);
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public long[] compareAndUpdateRecords(final long[] recNos,
+                                        final long[] expectedVersions,
+                                        final String[][] data)
+  {
+    long start = System.nanoTime();
+    try
+    {
+      LockOwner owner = LockOwner.ofCurrentThread();
+      List<Mutation> mutations = new ArrayList<Mutation>(recNos.length);
+      for (int i = 0; i < recNos.length; ++i)
+      {
+        mutations.add(Mutation.compareAndUpdate(recNos[i],
+          expectedVersions[i], data[i], owner));
+      }
+      // Published to the combining write path all at once.
+      writeCombiner.submitAll(mutations);
+      long[] versions = new long[recNos.length];
+      for (int i = 0; i < versions.length; ++i)
+      {
+        try
+        {
+          versions[i] = mutations.get(i).getResult();
+        }
+        catch (RecordNotFoundException e)
+        {
+          versions[i] = -1;
+        }
+      }
+      return versions;
+    }
+    finally
+    {
+      operationMetrics.record(Operation.COMPARE_AND_UPDATE_RECORDS, start);
     }
   }
 
@@ -451,6 +887,7 @@ public final class Data implements DBSearchFriendlyAccess
   public void deleteRecord(final long recNo, final long lockCookie)
     throws RecordNotFoundException, SecurityException
   {
+    long start = System.nanoTime();
     try
     {
       writeLock.lock();
@@ -479,7 +916,10 @@ public final class Data implements DBSearchFriendlyAccess
           Text.RECORD_COOKIE_MISMATCH, recNo, lockCookie));
       }
       // Remove record from cache.
-      cachedRecords.remove(recNo);
+      String[] oldData = cachedRecords.remove(recNo);
+      recordVersions.remove(recNo);
+      recordIndexes.remove(recNo, oldData);
+      searchCache.recordChanged(oldData, null);
       // Memorize record number for recycling.
       recyclableRecordNumbers.add(recNo);
       // Remove record from database file.
@@ -501,12 +941,14 @@ public final class Data implements DBSearchFriendlyAccess
       }
       // Remove lock from locked records info.
       lockedRecordsInfo.remove(recNo);
+      lockProfiler.lockReleased(recNo, lockInfo);
       // Signal release of lock info.
       lockInfoRemoved.signalAll();
     }
     finally
     {
       writeLock.unlock();
+      operationMetrics.record(Operation.DELETE_RECORD, start);
     }
   }
 
@@ -516,51 +958,135 @@ public final class Data implements DBSearchFriendlyAccess
   @Override
   public long[] findByCriteria(final String[] criteria)
   {
-    long[] recordNumbers = null;
-    ArrayList<Long> recNos = new ArrayList<Long>();
+    long start = System.nanoTime();
     try
     {
-      readLock.lock();
-
-      if (dBFileAccess == null)
+      Query query = new Query();
+      query.setPrefixCriteria(criteria);
+      BitSet matches = select(query);
+      // Convert bit set to long[], in ascending record number order.
+      long[] recordNumbers = new long[matches.cardinality()];
+      int i = 0;
+      for (int recNo = matches.nextSetBit(0); recNo >= 0; recNo = matches
+        .nextSetBit(recNo + 1))
       {
-        throw new DatabaseException(Text.DATABASE_CLOSED);
+        recordNumbers[i++] = recNo;
       }
-
-      // Iterate over map
-      Iterator<Map.Entry<Long, String[]>> it = cachedRecords.entrySet()
-        .iterator();
-      while (it.hasNext())
+      return recordNumbers;
+    }
+    finally
+    {
+      operationMetrics.record(Operation.FIND, start);
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public Map<Long, String[]> findByCriteriaExactMatches(
+    final String[] criteria)
+  {
+    Query query = new Query();
+    query.setExactCriteria(criteria);
+    return find(query);
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public Map<Long, String[]> findBySpecialties(final String[] criteria,
+                                               final String[] specialties,
+                                               final boolean matchAll)
+  {
+    Query query = new Query();
+    query.setExactCriteria(criteria);
+    query.setSpecialties(specialties, matchAll);
+    return find(query);
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public Map<Long, String[]> findByRanges(final String[] criteria,
+                                          final long minSize,
+                                          final long maxSize,
+                                          final long minRate,
+                                          final long maxRate)
+  {
+    Query query = new Query();
+    query.setExactCriteria(criteria);
+    query.setSizeRange(minSize, maxSize);
+    query.setRateRange(minRate, maxRate);
+    return find(query);
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public Map<Long, String[]> find(final Query query)
+  {
+    return find(query, CLONING_MAPPER);
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public <T> Map<Long, T> find(final Query query,
+                               final RecordMapper<T> mapper)
+  {
+    long[] recNos;
+    long[] versions;
+    String[][] records;
+    long start = System.nanoTime();
+    try
+    {
+      readLock.lock();
+
+      if (dBFileAccess == null)
       {
-        Map.Entry<Long, String[]> pairs = it.next();
-        String[] record = pairs.getValue();
-        if (testPartialMatch(record, criteria))
-        {
-          recNos.add(pairs.getKey());
-        }
+        throw new DatabaseException(Text.DATABASE_CLOSED);
+      }
+
+      // Collect references to the (immutable) cached records only; the
+      // conversion takes place after releasing the lock.
+      int[] selected = TopK.select(selectMatches(query), query,
+        recordIndexes, cachedRecords);
+      recNos = new long[selected.length];
+      versions = new long[recNos.length];
+      records = new String[recNos.length][];
+      for (int i = 0; i < selected.length; ++i)
+      {
+        recNos[i] = selected[i];
+        versions[i] = recordVersions.get(recNos[i]);
+        records[i] = cachedRecords.get(recNos[i]);
       }
     }
     finally
     {
       readLock.unlock();
+      operationMetrics.record(Operation.FIND, start);
     }
-    // Convert ArrayList<Long> to long[].
-    recordNumbers = new long[recNos.size()];
-    for (int i = 0; i < recNos.size(); ++i)
+    // Sized so that the map never needs to be rehashed.
+    Map<Long, T> results = new LinkedHashMap<Long, T>(
+      recNos.length * 4 / 3 + 1);
+    for (int i = 0; i < recNos.length; ++i)
     {
-      recordNumbers[i] = recNos.get(i);
+      results.put(recNos[i], mapper.map(recNos[i], versions[i], records[i]));
     }
-    return recordNumbers;
+    return results;
   }
 
   /**
    * @throws DatabaseException if the database file access point has been closed
    */
   @Override
-  public Map<Long, String[]> findByCriteriaExactMatches(
-    final String[] criteria)
+  public String explain(final Query query)
   {
-    Map<Long, String[]> matchingRecords = new HashMap<Long, String[]>();
     try
     {
       readLock.lock();
@@ -570,86 +1096,437 @@ public final class Data implements DBSearchFriendlyAccess
         throw new DatabaseException(Text.DATABASE_CLOSED);
       }
 
-      // Iterate over map.
-      Iterator<Map.Entry<Long, String[]>> it = cachedRecords.entrySet()
-        .iterator();
-      while (it.hasNext())
+      return queryPlanner.explain(query);
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public LockProfile getLockProfile(final int maxRecords)
+  {
+    try
+    {
+      readLock.lock();
+
+      if (dBFileAccess == null)
       {
-        Map.Entry<Long, String[]> pairs = it.next();
-        String[] record = pairs.getValue();
-        if (testExactMatch(record, criteria))
-        {
-          matchingRecords.put(pairs.getKey(), pairs.getValue()
-            .clone());
-        }
+        throw new DatabaseException(Text.DATABASE_CLOSED);
       }
+
+      return lockProfiler.snapshot(lockWaits, maxRecords);
     }
     finally
     {
       readLock.unlock();
     }
-    return matchingRecords;
   }
 
   /**
-   * Matching algorithm for the original interface.
+   * Starts, changes or stops dumping the lock profile to the log
+   * periodically, at level <code>INFO</code>, with up to
+   * {@link #LOGGED_HOTTEST_RECORDS} hottest records. Dumping stops when the
+   * instance is terminated.
    *
-   * @param record   a string array representing the record to match
-   * @param criteria a string array representing the criteria the record is matched
-   *                 against
-   * @return <code>true</code> if <code>record</code> matches
-   *         <code>criteria</code>, otherwise <code>false</code>
+   * @param periodMillis the period in milliseconds, or 0 to stop dumping
    */
-  private boolean testPartialMatch(final String[] record,
-                                   final String[] criteria)
+  public void setLockProfileLogPeriod(final long periodMillis)
   {
-    for (int i = 0; i < criteria.length; ++i)
+    try
     {
-      if (criteria[i] != null
-        && (record.length <= i || record[i] == null || record[i]
-        .startsWith(criteria[i]) == false))
+      writeLock.lock();
+
+      if (lockProfileLogTimer != null)
+      {
+        lockProfileLogTimer.cancel();
+        lockProfileLogTimer = null;
+      }
+      if (periodMillis > 0)
       {
-        return false;
+        lockProfileLogTimer = new Timer(Text.LOCK_PROFILE_LOG_TIMER, true);
+        lockProfileLogTimer.schedule(new TimerTask()
+        {
+          @Override
+          public void run()
+          {
+            try
+            {
+              LOG.info(Text.LOCK_PROFILE + System.getProperty(
+                "line.separator") + getLockProfile(LOGGED_HOTTEST_RECORDS));
+            }
+            catch (DatabaseException e)
+            {
+              // Closed meanwhile; nothing to dump.
+              ;
+            }
+          }
+        }, periodMillis, periodMillis);
       }
     }
-    return true;
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Counts the cached records under the read lock.
+   */
+  @Override
+  public int getRecordCount()
+  {
+    try
+    {
+      readLock.lock();
+      return cachedRecords == null ? 0 : cachedRecords.size();
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the running estimate kept by the indexes as records enter and
+   * leave the cache, so that polling it doesn't walk the cache.
+   */
+  @Override
+  public long getCacheBytes()
+  {
+    try
+    {
+      readLock.lock();
+      return recordIndexes == null ? 0 : recordIndexes.getCacheBytes();
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Counts the locked records under the read lock.
+   */
+  @Override
+  public int getLockedRecordCount()
+  {
+    try
+    {
+      readLock.lock();
+      return lockedRecordsInfo == null ? 0 : lockedRecordsInfo.size();
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Counts the queued lock requests under the read lock.
+   */
+  @Override
+  public int getLockWaiterCount()
+  {
+    try
+    {
+      readLock.lock();
+      if (lockWaits == null)
+      {
+        return 0;
+      }
+      int count = 0;
+      for (List<Long> awaitedRecNos : lockWaits.values())
+      {
+        count += awaitedRecNos.size();
+      }
+      return count;
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Counts the open cursors under the read lock.
+   */
+  @Override
+  public int getOpenCursorCount()
+  {
+    try
+    {
+      readLock.lock();
+      return cursorRegistry == null ? 0 : cursorRegistry.size();
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Read from the lock profiler without taking a lock, as are the other
+   * lock figures.
+   */
+  @Override
+  public long getReadLockAcquisitions()
+  {
+    return lockProfiler.readLockWaits().getAcquisitions();
+  }
+
+  /**
+   * Counts the contended read lock acquisitions only.
+   */
+  @Override
+  public long getReadLockWaits()
+  {
+    return lockProfiler.readLockWaits().getWaits();
+  }
+
+  /**
+   * Sums the timed waits of the contended read lock acquisitions.
+   */
+  @Override
+  public long getReadLockWaitNanos()
+  {
+    return lockProfiler.readLockWaits().getTotalWaitNanos();
+  }
+
+  /**
+   * Counts every write lock acquisition, whether contended or not.
+   */
+  @Override
+  public long getWriteLockAcquisitions()
+  {
+    return lockProfiler.writeLockWaits().getAcquisitions();
+  }
+
+  /**
+   * Counts the contended write lock acquisitions only.
+   */
+  @Override
+  public long getWriteLockWaits()
+  {
+    return lockProfiler.writeLockWaits().getWaits();
+  }
+
+  /**
+   * Sums the timed waits of the contended write lock acquisitions.
+   */
+  @Override
+  public long getWriteLockWaitNanos()
+  {
+    return lockProfiler.writeLockWaits().getTotalWaitNanos();
+  }
+
+  /**
+   * Takes a snapshot of the operation metrics without taking a lock.
+   */
+  @Override
+  public Map<String, OperationStatistics> getOperationStatistics()
+  {
+    return operationMetrics.snapshot();
+  }
+
+  /**
+   * Dumps the profile also logged periodically, see
+   * {@link #setLockProfileLogPeriod(long)}.
+   */
+  @Override
+  public String dumpLockProfile()
+  {
+    try
+    {
+      return getLockProfile(LOGGED_HOTTEST_RECORDS).toString();
+    }
+    catch (DatabaseException e)
+    {
+      // Closed meanwhile.
+      return "";
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public long openCursor(final Query query)
+  {
+    long start = System.nanoTime();
+    try
+    {
+      readLock.lock();
+
+      if (dBFileAccess == null)
+      {
+        throw new DatabaseException(Text.DATABASE_CLOSED);
+      }
+
+      return cursorRegistry.open(selectMatches(query), cachedRecords,
+        recordVersions);
+    }
+    finally
+    {
+      readLock.unlock();
+      operationMetrics.record(Operation.OPEN_CURSOR, start);
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been
+   *                           closed, or if there is no such cursor or it
+   *                           has expired
+   */
+  @Override
+  public Map<Long, String[]> fetch(final long cursorId, final int maxRows)
+  {
+    return fetch(cursorId, maxRows, CLONING_MAPPER);
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been
+   *                           closed, or if there is no such cursor or it
+   *                           has expired
+   */
+  @Override
+  public <T> Map<Long, T> fetch(final long cursorId, final int maxRows,
+                                final RecordMapper<T> mapper)
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return openCursorRegistry().fetch(cursorId, maxRows, mapper);
+    }
+    finally
+    {
+      operationMetrics.record(Operation.FETCH, start);
+    }
   }
 
   /**
-   * Matching algorithm that is actually needed (exact rather than partial
-   * match required).
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public void closeCursor(final long cursorId)
+  {
+    openCursorRegistry().close(cursorId);
+  }
+
+  /**
+   * Provides the cursor registry. Fetching from and closing cursors works on
+   * snapshots and does not need to lock the cache.
    *
-   * @param record   a string array representing the record to match
-   * @param criteria a string array representing the criteria the record is matched
-   *                 against
-   * @return <code>true</code> if <code>record</code> matches
-   *         <code>criteria</code>, otherwise <code>false</code>
+   * @return the cursor registry
+   * @throws DatabaseException if the database file access point has been
+   *                           closed
    */
-  private boolean testExactMatch(final String[] record,
-                                 final String[] criteria)
+  private CursorRegistry openCursorRegistry()
   {
-    for (int i = 0; i < criteria.length; ++i)
+    CursorRegistry registry;
+    try
+    {
+      readLock.lock();
+      registry = cursorRegistry;
+    }
+    finally
     {
-      if (criteria[i] != null
-        && (record.length <= i || record[i] == null || record[i]
-        .equals(criteria[i]) == false))
+      readLock.unlock();
+    }
+    if (registry == null)
+    {
+      throw new DatabaseException(Text.DATABASE_CLOSED);
+    }
+    return registry;
+  }
+
+  /**
+   * Determines the record numbers of all records matching a query, as
+   * planned by the query planner.
+   *
+   * @param query the query
+   * @return a bit set of the record numbers of all matching records
+   * @throws DatabaseException if the database file access point has been
+   *                           closed
+   */
+  private BitSet select(final Query query)
+  {
+    try
+    {
+      readLock.lock();
+
+      if (dBFileAccess == null)
       {
-        return false;
+        throw new DatabaseException(Text.DATABASE_CLOSED);
       }
+
+      return selectMatches(query);
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Determines the record numbers of all records matching a query, either
+   * from the search cache or by executing the plan of the query planner.
+   * Must be called with the read or write lock held.
+   *
+   * @param query the query
+   * @return a bit set of the record numbers of all matching records
+   */
+  private BitSet selectMatches(final Query query)
+  {
+    SearchScanEvent event = new SearchScanEvent();
+    event.begin();
+    QueryPlanner.Plan plan = null;
+    BitSet matches = searchCache.get(query);
+    if (matches == null)
+    {
+      plan = queryPlanner.plan(query);
+      matches = queryPlanner.execute(plan);
+      searchCache.put(query, matches);
+    }
+    event.end();
+    if (event.shouldCommit())
+    {
+      event.criteria = query.shape();
+      event.cached = plan == null;
+      event.fullScan = plan != null && plan.isFullScan();
+      event.rowsScanned = plan == null ? 0 : plan.getRowsScanned();
+      event.rowsMatched = matches.cardinality();
+      event.commit();
     }
-    return true;
+    return matches;
   }
 
   /**
    * @throws DatabaseException if the database file access point has been closed
+   * @throws DeadlockException if waiting for the lock would deadlock
    */
   @Override
   public long lockRecord(final long recNo) throws RecordNotFoundException
   {
-    // Implements reentrant locking. If the current thread already holds the
-    // lock, a counter is incremented and the established cookie is
-    // returned.
+    return lockRecord(recNo, LockOwner.ofCurrentThread());
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   * @throws DeadlockException if waiting for the lock would deadlock
+   */
+  @Override
+  public long lockRecord(final long recNo, final LockOwner owner)
+    throws RecordNotFoundException
+  {
+    // Implements reentrant locking. If the owner already holds the lock, a
+    // counter is incremented and the established cookie is returned.
     LockInfo lockInfo = null;
+    long start = System.nanoTime();
     try
     {
       writeLock.lock();
@@ -660,9 +1537,9 @@ public final class Data implements DBSearchFriendlyAccess
       }
 
       while ((lockInfo = lockedRecordsInfo.get(recNo)) != null
-        && lockInfo.tryReenterLock() == false)
+        && lockInfo.tryReenterLock(owner) == false)
       {
-        lockInfoRemoved.awaitUninterruptibly();
+        awaitLockInfoRemoved(recNo, lockInfo, owner);
       }
       if (lockInfo == null)
       {
@@ -675,13 +1552,15 @@ public final class Data implements DBSearchFriendlyAccess
             Text.RECORD_NOT_FOUND, recNo));
         }
         // There is a record in the map with recNo as its key.
-        lockInfo = new LockInfo();
+        lockInfo = new LockInfo(owner);
         lockedRecordsInfo.put(recNo, lockInfo);
+        lockProfiler.lockGranted(recNo, lockInfo);
       }
     }
     finally
     {
       writeLock.unlock();
+      operationMetrics.record(Operation.LOCK_RECORD, start);
     }
     assert (lockInfo != null);
     return lockInfo.getCookie();
@@ -694,6 +1573,7 @@ public final class Data implements DBSearchFriendlyAccess
   public void unlockRecord(final long recNo, final long cookie)
     throws SecurityException
   {
+    long start = System.nanoTime();
     try
     {
       writeLock.lock();
@@ -717,6 +1597,7 @@ public final class Data implements DBSearchFriendlyAccess
         else if (lockInfo.getHoldCount() == 0)
         {
           lockedRecordsInfo.remove(recNo);
+          lockProfiler.lockReleased(recNo, lockInfo);
           lockInfoRemoved.signalAll();
         }
       }
@@ -730,11 +1611,146 @@ public final class Data implements DBSearchFriendlyAccess
     finally
     {
       writeLock.unlock();
+      operationMetrics.record(Operation.UNLOCK_RECORD, start);
     }
   }
 
   /**
    * @throws DatabaseException if the database file access point has been closed
+   * @throws DeadlockException if waiting for the lock would deadlock
+   */
+  @Override
+  public long[] lockRecords(final long[] recNos)
+    throws RecordNotFoundException
+  {
+    return lockRecords(recNos, LockOwner.ofCurrentThread());
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   * @throws DeadlockException if waiting for the lock would deadlock
+   */
+  @Override
+  public long[] lockRecords(final long[] recNos, final LockOwner owner)
+    throws RecordNotFoundException
+  {
+    long[] cookies = new long[recNos.length];
+    long start = System.nanoTime();
+    try
+    {
+      writeLock.lock();
+
+      if (dBFileAccess == null)
+      {
+        throw new DatabaseException(Text.DATABASE_CLOSED);
+      }
+
+      // Wait until none of the records is locked by another owner, without
+      // holding any of them meanwhile. The records are verified anew after
+      // each wait as they might have been deleted in the meantime.
+      boolean available;
+      do
+      {
+        available = true;
+        for (long recNo : recNos)
+        {
+          if (cachedRecords.containsKey(recNo) == false)
+          {
+            throw new RecordNotFoundException(String.format(
+              Text.RECORD_NOT_FOUND, recNo));
+          }
+          LockInfo lockInfo = lockedRecordsInfo.get(recNo);
+          if (lockInfo != null && lockInfo.isHeldBy(owner) == false)
+          {
+            available = false;
+            awaitLockInfoRemoved(recNo, lockInfo, owner);
+            break;
+          }
+        }
+      }
+      while (available == false);
+      // Lock them all.
+      for (int k = 0; k < recNos.length; ++k)
+      {
+        LockInfo lockInfo = lockedRecordsInfo.get(recNos[k]);
+        if (lockInfo == null)
+        {
+          lockInfo = new LockInfo(owner);
+          lockedRecordsInfo.put(recNos[k], lockInfo);
+          lockProfiler.lockGranted(recNos[k], lockInfo);
+        }
+        else
+        {
+          lockInfo.tryReenterLock(owner);
+        }
+        cookies[k] = lockInfo.getCookie();
+      }
+    }
+    finally
+    {
+      writeLock.unlock();
+      operationMetrics.record(Operation.LOCK_RECORDS, start);
+    }
+    return cookies;
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   */
+  @Override
+  public void unlockRecords(final long[] recNos, final long[] cookies)
+    throws SecurityException
+  {
+    checkBatchLengths(recNos.length, cookies.length);
+    long start = System.nanoTime();
+    try
+    {
+      writeLock.lock();
+
+      if (dBFileAccess == null)
+      {
+        throw new DatabaseException(Text.DATABASE_CLOSED);
+      }
+
+      // Verify all cookies before releasing any lock.
+      for (int k = 0; k < recNos.length; ++k)
+      {
+        LockInfo lockInfo = lockedRecordsInfo.get(recNos[k]);
+        if (lockInfo != null && lockInfo.getCookie() != cookies[k])
+        {
+          throw new SecurityException(String.format(
+            Text.RECORD_COOKIE_MISMATCH, recNos[k], cookies[k]));
+        }
+      }
+      boolean removed = false;
+      for (int k = 0; k < recNos.length; ++k)
+      {
+        LockInfo lockInfo = lockedRecordsInfo.get(recNos[k]);
+        // Records already unlocked - or deleted - are skipped, just like
+        // with unlockRecord().
+        if (lockInfo != null && lockInfo.tryRelinquishLock(cookies[k])
+          && lockInfo.getHoldCount() == 0)
+        {
+          lockedRecordsInfo.remove(recNos[k]);
+          lockProfiler.lockReleased(recNos[k], lockInfo);
+          removed = true;
+        }
+      }
+      if (removed)
+      {
+        lockInfoRemoved.signalAll();
+      }
+    }
+    finally
+    {
+      writeLock.unlock();
+      operationMetrics.record(Operation.UNLOCK_RECORDS, start);
+    }
+  }
+
+  /**
+   * @throws DatabaseException if the database file access point has been closed
+   * @throws DeadlockException if waiting for the lock would deadlock
    */
   @Override
   public long lock(final long recNo) throws RecordNotFoundException
@@ -751,4 +1767,325 @@ public final class Data implements DBSearchFriendlyAccess
   {
     unlockRecord(recNo, cookie);
   }
+
+  /**
+   * Applies a batch of mutations published to the combining write path. Must
+   * be called with the write lock held.
+   * <p/>
+   * The mutations are verified one after the other, each against the state
+   * left by the preceding ones, just as if they were applied one by one. The
+   * records of all accepted mutations are then written to the database file
+   * in one go, each record once with its final contents, and finally put
+   * into the cache. Should the database file fail, all accepted mutations
+   * fail and the cache remains unchanged. Several updates of the same record
+   * each hand back a version of their own, as if applied one by one. Only the
+   * last one's contents are cached, with its version, so the versions of the
+   * earlier ones are stale at once.
+   *
+   * @param batch the mutations in the order of their publication
+   */
+  private void applyMutations(final List<Mutation> batch)
+  {
+    if (dBFileAccess == null)
+    {
+      for (Mutation mutation : batch)
+      {
+        mutation.fail(new DatabaseException(Text.DATABASE_CLOSED));
+      }
+      return;
+    }
+    // The final contents of the records created and updated by the batch.
+    Map<Long, String[]> created = new LinkedHashMap<Long, String[]>();
+    Map<Long, String[]> updated = new LinkedHashMap<Long, String[]>();
+    // The accepted mutations, in order, and the version assigned to each.
+    List<Mutation> accepted = new ArrayList<Mutation>();
+    Map<Mutation, Long> versions = new HashMap<Mutation, Long>();
+    Iterator<Long> recyclable = recyclableRecordNumbers.iterator();
+    long nextRecNo = cachedRecords.size() + recyclableRecordNumbers.size();
+    for (Mutation mutation : batch)
+    {
+      long recNo = mutation.getRecNo();
+      try
+      {
+        switch (mutation.getKind())
+        {
+          case CREATE:
+            // Unused record numbers first, then append.
+            recNo = recyclable.hasNext() ? recyclable.next() : nextRecNo++;
+            mutation.setRecNo(recNo);
+            created.put(recNo, mutation.getData());
+            break;
+          case UPDATE:
+            if (cachedRecords.containsKey(recNo) == false)
+            {
+              throw new RecordNotFoundException(String.format(
+                Text.RECORD_NOT_FOUND, recNo));
+            }
+            LockInfo lockInfo = lockedRecordsInfo.get(recNo);
+            if (lockInfo == null)
+            {
+              throw new SecurityException(String.format(
+                Text.RECORD_NOT_LOCKED, recNo));
+            }
+            if (lockInfo.getCookie() != mutation.getGuard())
+            {
+              throw new SecurityException(String.format(
+                Text.RECORD_COOKIE_MISMATCH, recNo, mutation.getGuard()));
+            }
+            updated.put(recNo, mutation.getData());
+            break;
+          case COMPARE_AND_UPDATE:
+            Long version = recordVersions.get(recNo);
+            if (version == null)
+            {
+              throw new RecordNotFoundException(String.format(
+                Text.RECORD_NOT_FOUND, recNo));
+            }
+            // Stale if written by a preceding mutation of the batch, too.
+            // A record locked by another owner is being modified.
+            lockInfo = lockedRecordsInfo.get(recNo);
+            if (version != mutation.getGuard()
+              || updated.containsKey(recNo)
+              || (lockInfo != null
+              && lockInfo.isHeldBy(mutation.getOwner()) == false))
+            {
+              mutation.complete(-1);
+              continue;
+            }
+            updated.put(recNo, mutation.getData());
+            break;
+          default:
+            assert false;
+        }
+        accepted.add(mutation);
+        versions.put(mutation, ++lastVersion);
+      }
+      catch (RecordNotFoundException e)
+      {
+        mutation.fail(e);
+      }
+      catch (SecurityException e)
+      {
+        mutation.fail(e);
+      }
+    }
+    if (accepted.isEmpty())
+    {
+      return;
+    }
+    // Write-through to database file
+    try
+    {
+      // Note: In the process of writing to the database file, individual
+      // data strings may be cropped (truncated) and thus replaced. Creates
+      // and updates are written together so that neither is written without
+      // the other.
+      dBFileAccess.placeNewAndUpdateRecords(toArray(created.keySet()),
+        created.values().toArray(new String[created.size()][]),
+        toArray(updated.keySet()),
+        updated.values().toArray(new String[updated.size()][]));
+    }
+    catch (RecordNotFoundException e)
+    {
+      // The database file disagrees with the cache; nothing was written.
+      LOG.log(Level.SEVERE, Text.CANT_UPDATE_RECORD, e);
+      failAll(accepted, e);
+      return;
+    }
+    catch (DatabaseFileException e)
+    {
+      failAll(accepted, e);
+      return;
+    }
+    // Write the possibly cropped data from the database file into the cache
+    // and hand back the outcomes. Of several mutations of the same record,
+    // only the last one has been written.
+    for (Mutation mutation : accepted)
+    {
+      long recNo = mutation.getRecNo();
+      long version = versions.get(mutation);
+      if (mutation.getKind() == Mutation.Kind.CREATE)
+      {
+        recyclableRecordNumbers.remove(recNo);
+        cacheRecord(recNo, mutation.getData(), version);
+        mutation.complete(recNo);
+      }
+      else
+      {
+        if (updated.get(recNo) == mutation.getData())
+        {
+          cacheRecord(recNo, mutation.getData(), version);
+        }
+        mutation.complete(version);
+      }
+    }
+  }
+
+  /**
+   * Fails the accepted mutations of a batch that couldn't be written to the
+   * database file.
+   *
+   * @param accepted the accepted mutations
+   * @param cause    the reason why the batch couldn't be written
+   */
+  private static void failAll(final List<Mutation> accepted,
+                              final Exception cause)
+  {
+    // Replace checked exception with an unchecked one
+    DatabaseException failure = new DatabaseException(
+      Text.CANT_UPDATE_RECORD + Text.NESTED_EXCEPTION_IS
+        + cause.getMessage(), cause);
+    for (Mutation mutation : accepted)
+    {
+      mutation.fail(failure);
+    }
+  }
+
+  /**
+   * Converts a collection of record numbers to an array.
+   *
+   * @param recNos the record numbers
+   * @return the record numbers in iteration order
+   */
+  private static long[] toArray(final Collection<Long> recNos)
+  {
+    long[] array = new long[recNos.size()];
+    int i = 0;
+    for (long recNo : recNos)
+    {
+      array[i++] = recNo;
+    }
+    return array;
+  }
+
+  /**
+   * Puts a written record into the cache, replacing the former record data
+   * if any, and assigns it a new version. A copy is cached so that the caller
+   * cannot modify the cache (and thus invalidate the field indexes) behind
+   * its back. Must be called with the write lock held.
+   *
+   * @param recNo the record number
+   * @param data  the record data as written to the database file
+   * @return the new version of the record
+   */
+  private long cacheRecord(final long recNo, final String[] data)
+  {
+    return cacheRecord(recNo, data, ++lastVersion);
+  }
+
+  /**
+   * Puts a written record into the cache with a version assigned in
+   * advance. Must be called with the write lock held.
+   *
+   * @param recNo   the record number
+   * @param data    the record data as written to the database file
+   * @param version the new version of the record
+   * @return the new version of the record
+   */
+  private long cacheRecord(final long recNo, final String[] data,
+                           final long version)
+  {
+    String[] cachedData = data.clone();
+    recordIndexes.intern(cachedData);
+    String[] oldData = cachedRecords.put(recNo, cachedData);
+    if (oldData != null)
+    {
+      recordIndexes.remove(recNo, oldData);
+    }
+    recordIndexes.add(recNo, cachedData);
+    searchCache.recordChanged(oldData, cachedData);
+    recordVersions.put(recNo, version);
+    return version;
+  }
+
+  /**
+   * Waits for the release of a lock held by another owner, unless waiting
+   * would deadlock. Must be called with the write lock held. The wait-for
+   * graph is followed from the holder of the lock: each owner on the way
+   * leads on to the owners of all records its threads wait for; if one of
+   * them is the waiting owner, all owners of the cycle would wait forever.
+   *
+   * @param recNo    the record number of the locked record
+   * @param lockInfo the lock on the record, held by another owner
+   * @param owner    the waiting owner
+   * @throws DeadlockException if waiting for the lock would deadlock
+   */
+  private void awaitLockInfoRemoved(final long recNo, final LockInfo lockInfo,
+                                    final LockOwner owner)
+  {
+    Set<LockOwner> visited = new HashSet<LockOwner>();
+    Deque<LockOwner> holders = new ArrayDeque<LockOwner>();
+    holders.push(lockInfo.getOwner());
+    while (holders.isEmpty() == false)
+    {
+      LockOwner holder = holders.pop();
+      if (holder == owner)
+      {
+        throw new DeadlockException(String.format(Text.DEADLOCK_DETECTED,
+          recNo));
+      }
+      List<Long> holderWaits = lockWaits.get(holder);
+      if (visited.add(holder) == false || holderWaits == null)
+      {
+        // Already followed, or not blocked: the lock will be released.
+        continue;
+      }
+      for (Long awaitedRecNo : holderWaits)
+      {
+        LockInfo awaitedLockInfo = lockedRecordsInfo.get(awaitedRecNo);
+        if (awaitedLockInfo != null)
+        {
+          holders.push(awaitedLockInfo.getOwner());
+        }
+      }
+    }
+    List<Long> awaitedRecNos = lockWaits.get(owner);
+    if (awaitedRecNos == null)
+    {
+      awaitedRecNos = new ArrayList<Long>(1);
+      lockWaits.put(owner, awaitedRecNos);
+    }
+    awaitedRecNos.add(recNo);
+    RecordLockWaitEvent event = new RecordLockWaitEvent();
+    event.begin();
+    long start = System.nanoTime();
+    try
+    {
+      lockInfoRemoved.awaitUninterruptibly();
+    }
+    finally
+    {
+      // Only this thread's edge; other threads of the owner may still wait.
+      awaitedRecNos.remove(Long.valueOf(recNo));
+      if (awaitedRecNos.isEmpty())
+      {
+        lockWaits.remove(owner);
+      }
+      lockProfiler.lockWaited(recNo, System.nanoTime() - start);
+      event.end();
+      if (event.shouldCommit())
+      {
+        event.recNo = recNo;
+        event.holder = lockInfo.getOwner().toString();
+        event.waiter = owner.toString();
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Verifies that the arrays of a batch operation match in length.
+   *
+   * @param expected the length of the array of record numbers
+   * @param actual   the length of another array
+   * @throws IllegalArgumentException if the lengths differ
+   */
+  private static void checkBatchLengths(final int expected, final int actual)
+  {
+    if (expected != actual)
+    {
+      throw new IllegalArgumentException(String.format(
+        Text.BATCH_LENGTH_MISMATCH, expected, actual));
+    }
+  }
 }
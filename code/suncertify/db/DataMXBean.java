@@ -0,0 +1,138 @@
+/*
+ * @(#)DataMXBean.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.db;
+
+import suncertify.util.OperationStatistics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the data access class, through which standard
+ * JVM tooling such as JConsole watches the database at runtime. The
+ * {@link Data} Singleton instance is registered as
+ * <code>suncertify:type=Data</code> while the database is open. All figures
+ * are cumulative since the class was loaded unless stated otherwise; they
+ * read 0 while the database is closed.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public interface DataMXBean
+{
+  /**
+   * Provides the number of valid records.
+   *
+   * @return the number of records in the cache
+   */
+  int getRecordCount();
+
+  /**
+   * Estimates the memory taken by the record data in the cache. Each
+   * distinct string instance is counted once with its characters and a fixed
+   * overhead, so that values shared among records by dictionary encoding are
+   * not counted twice. The indexes are not included.
+   *
+   * @return the estimated size of the cached record data in bytes
+   */
+  long getCacheBytes();
+
+  /**
+   * Provides the number of records currently locked.
+   *
+   * @return the number of locked records
+   */
+  int getLockedRecordCount();
+
+  /**
+   * Provides the number of clients currently waiting for a record lock, that
+   * is, the total length of the record lock queues.
+   *
+   * @return the number of waiting clients
+   */
+  int getLockWaiterCount();
+
+  /**
+   * Provides the number of open cursors.
+   *
+   * @return the number of open cursors
+   */
+  int getOpenCursorCount();
+
+  /**
+   * Provides the number of acquisitions of the global read lock.
+   *
+   * @return the number of read lock acquisitions
+   */
+  long getReadLockAcquisitions();
+
+  /**
+   * Provides the number of acquisitions of the global read lock that had to
+   * wait.
+   *
+   * @return the number of read lock waits
+   */
+  long getReadLockWaits();
+
+  /**
+   * Provides the total time spent waiting for the global read lock.
+   *
+   * @return the total read lock wait time in nanoseconds
+   */
+  long getReadLockWaitNanos();
+
+  /**
+   * Provides the number of acquisitions of the global write lock.
+   *
+   * @return the number of write lock acquisitions
+   */
+  long getWriteLockAcquisitions();
+
+  /**
+   * Provides the number of acquisitions of the global write lock that had to
+   * wait.
+   *
+   * @return the number of write lock waits
+   */
+  long getWriteLockWaits();
+
+  /**
+   * Provides the total time spent waiting for the global write lock.
+   *
+   * @return the total write lock wait time in nanoseconds
+   */
+  long getWriteLockWaitNanos();
+
+  /**
+   * Provides the number and the latencies of the invocations per operation,
+   * such as <code>READ_RECORD</code>, <code>FIND</code> or
+   * <code>LOCK_RECORD</code>. The latencies include the waits for the global
+   * lock.
+   *
+   * @return a map of (operation name, statistics) pairs
+   */
+  Map<String, OperationStatistics> getOperationStatistics();
+
+  /**
+   * Describes the current lock contention in human-readable form, see
+   * {@link DBSearchFriendlyAccess#getLockProfile(int)}.
+   *
+   * @return the lock profile with up to ten hottest records, or an empty
+   *         string while the database is closed
+   */
+  String dumpLockProfile();
+}
@@ -0,0 +1,50 @@
+/* 
+ * @(#)DeadlockException.java    1.0 21/06/2010 
+ *  
+ * Candidate: Lars Kuettner 
+ * Prometric ID: sr6168243 
+ * Candidate ID: SUN581781 
+ *  
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming 
+ * Assignment (CX-310-252A) 
+ *  
+ * This class is part of the Programming Assignment of the Sun Certified 
+ * Developer for Java 2 Platform, Standard Edition certification program, must 
+ * not be used out of this context and may be used exclusively by Sun 
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+/**
+ * A runtime exception with which the data access class {@link Data} refuses a
+ * lock request that would complete a cycle of threads waiting for each
+ * other's record locks, and thus wait forever.
+ * <p/>
+ * The exception is thrown to the thread whose request would close the cycle.
+ * The locks it already holds are left untouched; the thread is expected to
+ * release them, which lets the other threads of the cycle proceed, and may
+ * then retry.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public class DeadlockException extends DatabaseException
+{
+  /**
+   * A magic version number for this class so that serialization can occur
+   * without worrying about the underlying class changing between
+   * serialization and deserialization.
+   */
+  private static final long serialVersionUID = 4711L;
+
+  /**
+   * Creates an instance of the deadlock exception class.
+   *
+   * @param message the string describing the exception
+   */
+  public DeadlockException(final String message)
+  {
+    super(message);
+  }
+}
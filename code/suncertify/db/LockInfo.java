@@ -29,11 +29,11 @@ import java.util.concurrent.atomic.AtomicLong;
  * currently locked, a request is made to the collection. If the collection
  * (map) does not contain an entry for a given record number, this record has
  * not been locked. However, if the map does contain a <code>LockInfo</code>
- * entry, the record is currently locked. The lock may be reentered if it was
- * initially granted to the current thread.
+ * entry, the record is currently locked. The lock may be reentered by the
+ * {@link LockOwner} it was initially granted to.
  * <p/>
- * As locks are reentrant, the current thread ID as well as a hold count are
- * stored, and, in addition, a cookie uniquely identifying the lock.
+ * As locks are reentrant, the owner as well as a hold count are stored, and,
+ * in addition, a cookie uniquely identifying the lock.
  *
  * @author Lars Kuettner
  * @version 1.0
@@ -46,9 +46,9 @@ public class LockInfo
   private static AtomicLong nextLockCookie = new AtomicLong();
 
   /**
-   * The ID of the thread to which the lock was granted.
+   * The owner to which the lock was granted.
    */
-  private final long lockingThreadId = Thread.currentThread().getId();
+  private final LockOwner owner;
 
   /**
    * The cookie assigned to the lock.
@@ -61,15 +61,26 @@ public class LockInfo
    */
   private int holdCount = 1;
 
+  /**
+   * Creates the information of a lock granted to an owner.
+   *
+   * @param owner the owner to which the lock is granted
+   */
+  public LockInfo(final LockOwner owner)
+  {
+    this.owner = owner;
+  }
+
   /**
    * Attempts to reenter the current lock that is already granted to some
-   * thread. On success, the hold count is incremented.
+   * owner. On success, the hold count is incremented.
    *
+   * @param owner the owner attempting to reenter the lock
    * @return true if the lock has been reentered, false otherwise
    */
-  public final boolean tryReenterLock()
+  public final boolean tryReenterLock(final LockOwner owner)
   {
-    if (Thread.currentThread().getId() == lockingThreadId)
+    if (owner == this.owner)
     {
       ++holdCount;
       return true;
@@ -80,6 +91,18 @@ public class LockInfo
     }
   }
 
+  /**
+   * Tells whether the lock has been granted to an owner, i.e., whether the
+   * owner could reenter it.
+   *
+   * @param owner the owner
+   * @return true if the lock is held by <code>owner</code>, false otherwise
+   */
+  public final boolean isHeldBy(final LockOwner owner)
+  {
+    return owner == this.owner;
+  }
+
   /**
    * Attempts to relinquish the current lock. This will succeed if the cookie
    * provided matches the cookie stored.
@@ -101,6 +124,16 @@ public class LockInfo
     }
   }
 
+  /**
+   * Getter for the owner to which the lock was granted.
+   *
+   * @return the owner of the lock
+   */
+  public final LockOwner getOwner()
+  {
+    return owner;
+  }
+
   /**
    * Getter for the cookie that was assigned to the lock upon creation.
    *
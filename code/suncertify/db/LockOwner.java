@@ -0,0 +1,85 @@
+/*
+ * @(#)LockOwner.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token identifying the owner of record locks, that is, a logical caller of
+ * the data access class {@link Data} such as a session or a job. Record locks
+ * are reentrant per owner: an owner locking a record it already holds
+ * reenters the lock, while any other owner has to wait.
+ * <p/>
+ * Callers that pass no owner act on behalf of the owner associated with the
+ * current thread, {@link #ofCurrentThread()}. A caller whose work may resume
+ * on another thread, as with asynchronous continuations, thread pools or
+ * virtual threads, should create an owner of its own and pass it on instead.
+ * <p/>
+ * Owners are compared by identity. This class is thread-safe.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public final class LockOwner
+{
+  /**
+   * A generator for the next owner ID.
+   */
+  private static final AtomicLong NEXT_ID = new AtomicLong();
+
+  /**
+   * The owners associated with the threads.
+   */
+  private static final ThreadLocal<LockOwner> THREAD_OWNERS =
+    new ThreadLocal<LockOwner>()
+    {
+      @Override
+      protected LockOwner initialValue()
+      {
+        return new LockOwner();
+      }
+    };
+
+  /**
+   * The ID of the owner, for diagnostic purposes.
+   */
+  private final long id = NEXT_ID.getAndIncrement();
+
+  /**
+   * Creates a new owner, distinct from all other owners.
+   */
+  public LockOwner()
+  {
+  }
+
+  /**
+   * Provides the owner associated with the current thread, on whose behalf
+   * record locks are acquired when no owner is passed.
+   *
+   * @return the owner of the current thread
+   */
+  public static LockOwner ofCurrentThread()
+  {
+    return THREAD_OWNERS.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "LockOwner#" + id;
+  }
+}
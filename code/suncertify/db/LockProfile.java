@@ -0,0 +1,500 @@
+/*
+ * @(#)LockProfile.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.db;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the lock contention inside the data access class, as
+ * collected by its built-in lock profiler: the waits for the global
+ * read/write lock of the cache, and per record the waits for the record
+ * locks, the (sampled) times the record locks are held, and the clients
+ * currently waiting. Intended for diagnosing latency, e.g. whether slow
+ * bookings are caused by a hot record, by the global write lock or by the
+ * database file.
+ * <p/>
+ * All times are in nanoseconds. The figures are cumulative since the
+ * database was opened, except for the global lock figures which are
+ * cumulative since the class was loaded. Instances are immutable.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ * @see DBSearchFriendlyAccess#getLockProfile(int)
+ */
+public final class LockProfile implements Serializable
+{
+  /**
+   * Serial version UID.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The waits for the global read lock.
+   */
+  private final WaitHistogram readLockWaits;
+
+  /**
+   * The waits for the global write lock.
+   */
+  private final WaitHistogram writeLockWaits;
+
+  /**
+   * The records with the longest total wait times, longest first.
+   */
+  private final List<RecordContention> hottestRecords;
+
+  /**
+   * The number of clients currently waiting, by record number.
+   */
+  private final Map<Long, Integer> currentWaiters;
+
+  /**
+   * Creates a lock profile.
+   *
+   * @param readLockWaits  the waits for the global read lock
+   * @param writeLockWaits the waits for the global write lock
+   * @param hottestRecords the records with the longest total wait times,
+   *                       longest first
+   * @param currentWaiters the number of clients currently waiting, by record
+   *                       number
+   */
+  LockProfile(final WaitHistogram readLockWaits,
+              final WaitHistogram writeLockWaits,
+              final List<RecordContention> hottestRecords,
+              final Map<Long, Integer> currentWaiters)
+  {
+    this.readLockWaits = readLockWaits;
+    this.writeLockWaits = writeLockWaits;
+    this.hottestRecords = Collections.unmodifiableList(hottestRecords);
+    this.currentWaiters = Collections.unmodifiableMap(currentWaiters);
+  }
+
+  /**
+   * Provides the waits for the global read lock, taken by all reading
+   * operations.
+   *
+   * @return the read lock wait histogram
+   */
+  public WaitHistogram getReadLockWaits()
+  {
+    return readLockWaits;
+  }
+
+  /**
+   * Provides the waits for the global write lock, taken by all modifying
+   * operations including locking and unlocking records.
+   *
+   * @return the write lock wait histogram
+   */
+  public WaitHistogram getWriteLockWaits()
+  {
+    return writeLockWaits;
+  }
+
+  /**
+   * Provides the records with the longest total wait times for their record
+   * locks.
+   *
+   * @return an unmodifiable list of the hottest records, longest total wait
+   *         time first
+   */
+  public List<RecordContention> getHottestRecords()
+  {
+    return hottestRecords;
+  }
+
+  /**
+   * Provides the number of clients currently waiting for record locks.
+   *
+   * @return an unmodifiable map of (record number, number of waiting
+   *         clients) pairs, containing the records waited for only
+   */
+  public Map<Long, Integer> getCurrentWaiters()
+  {
+    return currentWaiters;
+  }
+
+  @Override
+  public String toString()
+  {
+    String nl = System.getProperty("line.separator");
+    StringBuilder sb = new StringBuilder();
+    sb.append("Read lock:  ").append(readLockWaits).append(nl);
+    sb.append("Write lock: ").append(writeLockWaits).append(nl);
+    sb.append("Hottest records:").append(nl);
+    for (RecordContention record : hottestRecords)
+    {
+      sb.append("  ").append(record).append(nl);
+    }
+    sb.append("Current waiters: ").append(currentWaiters).append(nl);
+    return sb.toString();
+  }
+
+  /**
+   * Formats a time for humans.
+   *
+   * @param nanos the time in nanoseconds
+   * @return the formatted time with a suitable unit
+   */
+  private static String formatNanos(final long nanos)
+  {
+    if (nanos < 1000L)
+    {
+      return nanos + " ns";
+    }
+    else if (nanos < 1000000L)
+    {
+      return String.format("%.1f us", nanos / 1e3);
+    }
+    else if (nanos < 1000000000L)
+    {
+      return String.format("%.1f ms", nanos / 1e6);
+    }
+    return String.format("%.1f s", nanos / 1e9);
+  }
+
+  /**
+   * The distribution of the wait times for a lock. Bucket 0 counts the
+   * acquisitions without waiting; bucket <code>k &gt; 0</code> counts the
+   * waits of at least 2<sup>k-1</sup> and less than 2<sup>k</sup>
+   * nanoseconds, except for the last bucket, which counts all longer waits as
+   * well.
+   *
+   * @author Lars Kuettner
+   * @version 1.0
+   */
+  public static final class WaitHistogram implements Serializable
+  {
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of acquisitions.
+     */
+    private final long acquisitions;
+
+    /**
+     * The total wait time.
+     */
+    private final long totalWaitNanos;
+
+    /**
+     * The longest wait time.
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * The counts per bucket.
+     */
+    private final long[] buckets;
+
+    /**
+     * Creates a wait histogram.
+     *
+     * @param acquisitions   the number of acquisitions
+     * @param totalWaitNanos the total wait time
+     * @param maxWaitNanos   the longest wait time
+     * @param buckets        the counts per bucket
+     */
+    WaitHistogram(final long acquisitions, final long totalWaitNanos,
+                  final long maxWaitNanos, final long[] buckets)
+    {
+      this.acquisitions = acquisitions;
+      this.totalWaitNanos = totalWaitNanos;
+      this.maxWaitNanos = maxWaitNanos;
+      this.buckets = buckets;
+    }
+
+    /**
+     * Provides the number of acquisitions of the lock.
+     *
+     * @return the number of acquisitions
+     */
+    public long getAcquisitions()
+    {
+      return acquisitions;
+    }
+
+    /**
+     * Provides the number of acquisitions that had to wait.
+     *
+     * @return the number of waits
+     */
+    public long getWaits()
+    {
+      return acquisitions - buckets[0];
+    }
+
+    /**
+     * Provides the total time spent waiting for the lock.
+     *
+     * @return the total wait time in nanoseconds
+     */
+    public long getTotalWaitNanos()
+    {
+      return totalWaitNanos;
+    }
+
+    /**
+     * Provides the longest time spent waiting for the lock.
+     *
+     * @return the longest wait time in nanoseconds
+     */
+    public long getMaxWaitNanos()
+    {
+      return maxWaitNanos;
+    }
+
+    /**
+     * Provides the counts per bucket.
+     *
+     * @return a newly allocated array of the counts per bucket
+     */
+    public long[] getBuckets()
+    {
+      return buckets.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+      StringBuilder sb = new StringBuilder(String.format(
+        "acquisitions %d, waits %d, total wait %s, max wait %s",
+        acquisitions, getWaits(), formatNanos(totalWaitNanos),
+        formatNanos(maxWaitNanos)));
+      boolean waited = false;
+      for (int k = 1; k < buckets.length; ++k)
+      {
+        if (buckets[k] != 0)
+        {
+          sb.append(waited ? ", " : " [");
+          if (k < buckets.length - 1)
+          {
+            sb.append('<').append(formatNanos(1L << k));
+          }
+          else
+          {
+            sb.append(">=").append(formatNanos(1L << (k - 1)));
+          }
+          sb.append(": ").append(buckets[k]);
+          waited = true;
+        }
+      }
+      return waited ? sb.append(']').toString() : sb.toString();
+    }
+  }
+
+  /**
+   * The contention for the lock of a single record.
+   *
+   * @author Lars Kuettner
+   * @version 1.0
+   */
+  public static final class RecordContention implements Serializable
+  {
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The record number.
+     */
+    private final long recNo;
+
+    /**
+     * The number of times the lock has been granted, reentrances excluded.
+     */
+    private final long acquisitions;
+
+    /**
+     * The number of waits for the lock.
+     */
+    private final long waits;
+
+    /**
+     * The total wait time.
+     */
+    private final long totalWaitNanos;
+
+    /**
+     * The longest wait time.
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * The number of sampled hold times.
+     */
+    private final long sampledHolds;
+
+    /**
+     * The total of the sampled hold times.
+     */
+    private final long totalSampledHoldNanos;
+
+    /**
+     * The longest sampled hold time.
+     */
+    private final long maxSampledHoldNanos;
+
+    /**
+     * The number of clients currently waiting.
+     */
+    private final int currentWaiters;
+
+    /**
+     * Creates the contention figures of a record.
+     *
+     * @param recNo                 the record number
+     * @param acquisitions          the number of times the lock has been granted
+     * @param waits                 the number of waits for the lock
+     * @param totalWaitNanos        the total wait time
+     * @param maxWaitNanos          the longest wait time
+     * @param sampledHolds          the number of sampled hold times
+     * @param totalSampledHoldNanos the total of the sampled hold times
+     * @param maxSampledHoldNanos   the longest sampled hold time
+     * @param currentWaiters        the number of clients currently waiting
+     */
+    RecordContention(final long recNo, final long acquisitions,
+                     final long waits, final long totalWaitNanos,
+                     final long maxWaitNanos, final long sampledHolds,
+                     final long totalSampledHoldNanos,
+                     final long maxSampledHoldNanos, final int currentWaiters)
+    {
+      this.recNo = recNo;
+      this.acquisitions = acquisitions;
+      this.waits = waits;
+      this.totalWaitNanos = totalWaitNanos;
+      this.maxWaitNanos = maxWaitNanos;
+      this.sampledHolds = sampledHolds;
+      this.totalSampledHoldNanos = totalSampledHoldNanos;
+      this.maxSampledHoldNanos = maxSampledHoldNanos;
+      this.currentWaiters = currentWaiters;
+    }
+
+    /**
+     * Provides the record number.
+     *
+     * @return the record number
+     */
+    public long getRecNo()
+    {
+      return recNo;
+    }
+
+    /**
+     * Provides the number of times the lock has been granted, reentrances
+     * excluded.
+     *
+     * @return the number of acquisitions
+     */
+    public long getAcquisitions()
+    {
+      return acquisitions;
+    }
+
+    /**
+     * Provides the number of times a client has waited for the lock. A client
+     * waiting for several records at once is counted once per record that
+     * kept it waiting.
+     *
+     * @return the number of waits
+     */
+    public long getWaits()
+    {
+      return waits;
+    }
+
+    /**
+     * Provides the total time clients have spent waiting for the lock.
+     *
+     * @return the total wait time in nanoseconds
+     */
+    public long getTotalWaitNanos()
+    {
+      return totalWaitNanos;
+    }
+
+    /**
+     * Provides the longest time a client has spent waiting for the lock.
+     *
+     * @return the longest wait time in nanoseconds
+     */
+    public long getMaxWaitNanos()
+    {
+      return maxWaitNanos;
+    }
+
+    /**
+     * Provides the number of hold times sampled. Only a fraction of the
+     * grants is timed until the release of the lock.
+     *
+     * @return the number of sampled hold times
+     */
+    public long getSampledHolds()
+    {
+      return sampledHolds;
+    }
+
+    /**
+     * Provides the mean of the sampled hold times.
+     *
+     * @return the mean hold time in nanoseconds, or 0 if none has been
+     *         sampled
+     */
+    public long getMeanHoldNanos()
+    {
+      return sampledHolds == 0 ? 0 : totalSampledHoldNanos / sampledHolds;
+    }
+
+    /**
+     * Provides the longest of the sampled hold times.
+     *
+     * @return the longest sampled hold time in nanoseconds
+     */
+    public long getMaxHoldNanos()
+    {
+      return maxSampledHoldNanos;
+    }
+
+    /**
+     * Provides the number of clients currently waiting for the lock.
+     *
+     * @return the number of current waiters
+     */
+    public int getCurrentWaiters()
+    {
+      return currentWaiters;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format("#%d: acquisitions %d, waits %d, total wait %s, "
+        + "max wait %s, mean hold %s, max hold %s, waiters %d", recNo,
+        acquisitions, waits, formatNanos(totalWaitNanos),
+        formatNanos(maxWaitNanos), formatNanos(getMeanHoldNanos()),
+        formatNanos(maxSampledHoldNanos), currentWaiters);
+    }
+  }
+}
@@ -0,0 +1,509 @@
+/*
+ * @(#)LockProfiler.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.db;
+
+import suncertify.util.Trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The built-in lock profiler of the {@link Data} Singleton instance. It is
+ * always on, hence designed to cost next to nothing on the uncontended paths:
+ * <ul>
+ * <li>The global read and write locks are wrapped so that an acquisition
+ * first tries the lock without waiting, which is as cheap as acquiring it
+ * plainly. Only if that fails is the wait timed, so the clock is read on
+ * contended acquisitions only. Uncontended acquisitions just increment a
+ * {@link LongAdder}, which keeps the many parallel readers from contending
+ * for the counter instead.
+ * <li>Record lock waits are timed always as they block anyway.
+ * <li>Record lock hold times are sampled: one grant in
+ * {@link #HOLD_SAMPLE_INTERVAL} is timed until the lock is released.
+ * </ul>
+ * The global lock figures are thread-safe. The record figures are <em>not</em>
+ * thread-safe; they are guarded by the read/write lock of the {@link Data}
+ * Singleton instance and must be updated with its write lock held.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class LockProfiler
+{
+  /**
+   * The sampling interval of the record lock hold times.
+   */
+  static final int HOLD_SAMPLE_INTERVAL = 8;
+
+  /**
+   * The number of buckets of the wait histograms.
+   */
+  private static final int BUCKETS = 40;
+
+  /**
+   * The waits for the global read lock.
+   */
+  private final WaitRecorder readLockWaits =
+    new WaitRecorder("data.READ_LOCK_WAIT");
+
+  /**
+   * The waits for the global write lock.
+   */
+  private final WaitRecorder writeLockWaits =
+    new WaitRecorder("data.WRITE_LOCK_WAIT");
+
+  /**
+   * The figures per record lock, by record number.
+   */
+  private final Map<Long, RecordStats> recordStats =
+    new HashMap<Long, RecordStats>();
+
+  /**
+   * The grant times of the record locks whose hold times are sampled.
+   */
+  private final Map<LockInfo, Long> sampledGrants =
+    new IdentityHashMap<LockInfo, Long>();
+
+  /**
+   * The number of record locks granted, for sampling.
+   */
+  private long grants = 0;
+
+  /**
+   * Wraps the global read lock so that its waits are profiled.
+   *
+   * @param lock the read lock
+   * @return the profiled read lock
+   */
+  Lock profileReadLock(final Lock lock)
+  {
+    return new ProfiledLock(lock, readLockWaits);
+  }
+
+  /**
+   * Wraps the global write lock so that its waits are profiled.
+   *
+   * @param lock the write lock
+   * @return the profiled write lock
+   */
+  Lock profileWriteLock(final Lock lock)
+  {
+    return new ProfiledLock(lock, writeLockWaits);
+  }
+
+  /**
+   * Takes a snapshot of the waits for the global read lock. Thread-safe.
+   *
+   * @return the read lock wait histogram
+   */
+  LockProfile.WaitHistogram readLockWaits()
+  {
+    return readLockWaits.snapshot();
+  }
+
+  /**
+   * Takes a snapshot of the waits for the global write lock. Thread-safe.
+   *
+   * @return the write lock wait histogram
+   */
+  LockProfile.WaitHistogram writeLockWaits()
+  {
+    return writeLockWaits.snapshot();
+  }
+
+  /**
+   * Notes that a record lock has been granted, reentrances excluded.
+   *
+   * @param recNo    the record number
+   * @param lockInfo the lock granted
+   */
+  void lockGranted(final long recNo, final LockInfo lockInfo)
+  {
+    ++statsOf(recNo).acquisitions;
+    if (++grants % HOLD_SAMPLE_INTERVAL == 0)
+    {
+      sampledGrants.put(lockInfo, System.nanoTime());
+    }
+  }
+
+  /**
+   * Notes that a client has waited for a record lock. The wait is also added
+   * as a span to the {@link Trace} of the current request, if any.
+   *
+   * @param recNo     the record number
+   * @param waitNanos the time waited in nanoseconds
+   */
+  void lockWaited(final long recNo, final long waitNanos)
+  {
+    RecordStats stats = statsOf(recNo);
+    ++stats.waits;
+    stats.totalWaitNanos += waitNanos;
+    stats.maxWaitNanos = Math.max(stats.maxWaitNanos, waitNanos);
+    Trace.addSpan("data.RECORD_LOCK_WAIT", waitNanos);
+  }
+
+  /**
+   * Notes that a record lock has been released for good, by unlocking or
+   * deleting the record.
+   *
+   * @param recNo    the record number
+   * @param lockInfo the lock released
+   */
+  void lockReleased(final long recNo, final LockInfo lockInfo)
+  {
+    Long grantNanos = sampledGrants.remove(lockInfo);
+    if (grantNanos != null)
+    {
+      long holdNanos = System.nanoTime() - grantNanos;
+      RecordStats stats = statsOf(recNo);
+      ++stats.sampledHolds;
+      stats.totalSampledHoldNanos += holdNanos;
+      stats.maxSampledHoldNanos = Math.max(stats.maxSampledHoldNanos,
+        holdNanos);
+    }
+  }
+
+  /**
+   * Discards the record figures, e.g. when another database is opened. The
+   * global lock figures are kept.
+   */
+  void clearRecords()
+  {
+    recordStats.clear();
+    sampledGrants.clear();
+  }
+
+  /**
+   * Takes a snapshot of the figures. Must be called with the read or write
+   * lock of the {@link Data} Singleton instance held.
+   *
+   * @param lockWaits  the wait-for graph of the record locks, that is, the
+   *                   records the threads of each lock owner wait for
+   * @param maxRecords the maximum number of hottest records to include
+   * @return the lock profile
+   */
+  LockProfile snapshot(final Map<LockOwner, List<Long>> lockWaits,
+                       final int maxRecords)
+  {
+    Map<Long, Integer> currentWaiters = new HashMap<Long, Integer>();
+    for (List<Long> awaitedRecNos : lockWaits.values())
+    {
+      for (Long recNo : awaitedRecNos)
+      {
+        Integer count = currentWaiters.get(recNo);
+        currentWaiters.put(recNo, count == null ? 1 : count + 1);
+      }
+    }
+
+    List<Map.Entry<Long, RecordStats>> entries =
+      new ArrayList<Map.Entry<Long, RecordStats>>(recordStats.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<Long, RecordStats>>()
+    {
+      @Override
+      public int compare(final Map.Entry<Long, RecordStats> e1,
+                         final Map.Entry<Long, RecordStats> e2)
+      {
+        long w1 = e1.getValue().totalWaitNanos;
+        long w2 = e2.getValue().totalWaitNanos;
+        return w1 > w2 ? -1 : (w1 < w2 ? 1 : 0);
+      }
+    });
+    List<LockProfile.RecordContention> hottestRecords =
+      new ArrayList<LockProfile.RecordContention>();
+    for (Map.Entry<Long, RecordStats> entry : entries)
+    {
+      if (hottestRecords.size() == maxRecords)
+      {
+        break;
+      }
+      RecordStats stats = entry.getValue();
+      Integer waiters = currentWaiters.get(entry.getKey());
+      hottestRecords.add(new LockProfile.RecordContention(entry.getKey(),
+        stats.acquisitions, stats.waits, stats.totalWaitNanos,
+        stats.maxWaitNanos, stats.sampledHolds, stats.totalSampledHoldNanos,
+        stats.maxSampledHoldNanos, waiters == null ? 0 : waiters));
+    }
+    return new LockProfile(readLockWaits.snapshot(),
+      writeLockWaits.snapshot(), hottestRecords, currentWaiters);
+  }
+
+  /**
+   * Provides the figures of a record lock, creating them if necessary.
+   *
+   * @param recNo the record number
+   * @return the figures of the record lock
+   */
+  private RecordStats statsOf(final long recNo)
+  {
+    RecordStats stats = recordStats.get(recNo);
+    if (stats == null)
+    {
+      stats = new RecordStats();
+      recordStats.put(recNo, stats);
+    }
+    return stats;
+  }
+
+  /**
+   * The figures of a single record lock.
+   */
+  private static final class RecordStats
+  {
+    /**
+     * The number of grants, reentrances excluded.
+     */
+    private long acquisitions;
+
+    /**
+     * The number of waits.
+     */
+    private long waits;
+
+    /**
+     * The total wait time.
+     */
+    private long totalWaitNanos;
+
+    /**
+     * The longest wait time.
+     */
+    private long maxWaitNanos;
+
+    /**
+     * The number of sampled hold times.
+     */
+    private long sampledHolds;
+
+    /**
+     * The total of the sampled hold times.
+     */
+    private long totalSampledHoldNanos;
+
+    /**
+     * The longest sampled hold time.
+     */
+    private long maxSampledHoldNanos;
+  }
+
+  /**
+   * The recorder of the waits for a global lock. Each wait is also added as a
+   * span to the {@link Trace} of the current request, if any. This class is
+   * thread-safe.
+   */
+  private static final class WaitRecorder
+  {
+    /**
+     * The number of acquisitions without waiting.
+     */
+    private final LongAdder immediateAcquisitions = new LongAdder();
+
+    /**
+     * The number of waits per bucket; bucket 0 is unused.
+     */
+    private final AtomicLongArray waits = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The total wait time.
+     */
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * The longest wait time.
+     */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * The name of the trace spans of the waits.
+     */
+    private final String spanName;
+
+    /**
+     * Creates a wait recorder.
+     *
+     * @param spanName the name of the trace spans of the waits
+     */
+    WaitRecorder(final String spanName)
+    {
+      this.spanName = spanName;
+    }
+
+    /**
+     * Notes an acquisition without waiting.
+     */
+    void acquired()
+    {
+      immediateAcquisitions.increment();
+    }
+
+    /**
+     * Notes an acquisition after waiting.
+     *
+     * @param waitNanos the time waited in nanoseconds
+     */
+    void acquired(final long waitNanos)
+    {
+      int bucket = Math.min(64 - Long.numberOfLeadingZeros(Math.max(waitNanos,
+        1)), BUCKETS - 1);
+      waits.incrementAndGet(bucket);
+      totalWaitNanos.addAndGet(waitNanos);
+      long max;
+      while ((max = maxWaitNanos.get()) < waitNanos
+        && maxWaitNanos.compareAndSet(max, waitNanos) == false)
+      {
+        ;
+      }
+      Trace.addSpan(spanName, waitNanos);
+    }
+
+    /**
+     * Takes a snapshot of the waits. The snapshot is not atomic; figures
+     * recorded meanwhile may or may not be included.
+     *
+     * @return the wait histogram
+     */
+    LockProfile.WaitHistogram snapshot()
+    {
+      long[] buckets = new long[BUCKETS];
+      buckets[0] = immediateAcquisitions.sum();
+      long acquisitions = buckets[0];
+      for (int k = 1; k < BUCKETS; ++k)
+      {
+        buckets[k] = waits.get(k);
+        acquisitions += buckets[k];
+      }
+      return new LockProfile.WaitHistogram(acquisitions, totalWaitNanos.get(),
+        maxWaitNanos.get(), buckets);
+    }
+  }
+
+  /**
+   * A lock recording the waits for the lock it wraps. Conditions are those
+   * of the wrapped lock.
+   */
+  private static final class ProfiledLock implements Lock
+  {
+    /**
+     * The wrapped lock.
+     */
+    private final Lock lock;
+
+    /**
+     * The recorder of the waits.
+     */
+    private final WaitRecorder recorder;
+
+    /**
+     * Creates a profiled lock.
+     *
+     * @param lock     the lock to wrap
+     * @param recorder the recorder of the waits
+     */
+    ProfiledLock(final Lock lock, final WaitRecorder recorder)
+    {
+      this.lock = lock;
+      this.recorder = recorder;
+    }
+
+    @Override
+    public void lock()
+    {
+      boolean interrupted = false;
+      try
+      {
+        // Unlike tryLock(), a timed tryLock honors the fairness policy.
+        if (lock.tryLock(0, TimeUnit.NANOSECONDS))
+        {
+          recorder.acquired();
+          return;
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // lock() is not interruptible; keep the status for the caller.
+        interrupted = true;
+      }
+      long start = System.nanoTime();
+      lock.lock();
+      recorder.acquired(System.nanoTime() - start);
+      if (interrupted)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException
+    {
+      if (lock.tryLock(0, TimeUnit.NANOSECONDS))
+      {
+        recorder.acquired();
+        return;
+      }
+      long start = System.nanoTime();
+      lock.lockInterruptibly();
+      recorder.acquired(System.nanoTime() - start);
+    }
+
+    @Override
+    public boolean tryLock()
+    {
+      boolean acquired = lock.tryLock();
+      if (acquired)
+      {
+        recorder.acquired();
+      }
+      return acquired;
+    }
+
+    @Override
+    public boolean tryLock(final long time, final TimeUnit unit)
+      throws InterruptedException
+    {
+      long start = System.nanoTime();
+      boolean acquired = lock.tryLock(time, unit);
+      if (acquired)
+      {
+        recorder.acquired(System.nanoTime() - start);
+      }
+      return acquired;
+    }
+
+    @Override
+    public void unlock()
+    {
+      lock.unlock();
+    }
+
+    @Override
+    public Condition newCondition()
+    {
+      return lock.newCondition();
+    }
+  }
+}
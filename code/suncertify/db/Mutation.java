@@ -0,0 +1,285 @@
+/*
+ * @(#)Mutation.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A request to create or update a record, published by a client thread to the
+ * {@link WriteCombiner} and applied on its behalf by whichever thread holds the
+ * write lock. The outcome - a result or an exception - is handed back to the
+ * requesting thread.
+ * <p/>
+ * The fields describing the request are set before publication and read by
+ * the combining thread only; the outcome is set by the combining thread and
+ * published to the requesting thread through the volatile completion flag.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class Mutation
+{
+  /**
+   * The kinds of mutations.
+   */
+  enum Kind
+  {
+    /**
+     * Create a new record, see {@link Data#createRecord(String[])}.
+     */
+    CREATE,
+    /**
+     * Update a locked record, see
+     * {@link Data#updateRecord(long, String[], long)}.
+     */
+    UPDATE,
+    /**
+     * Update a record of a given version, see
+     * {@link Data#compareAndUpdate(long, long, String[])}.
+     */
+    COMPARE_AND_UPDATE
+  }
+
+  /**
+   * The kind of mutation.
+   */
+  private final Kind kind;
+
+  /**
+   * The record number; assigned by the combining thread for new records.
+   */
+  private long recNo;
+
+  /**
+   * The fields of the record to be written.
+   */
+  private final String[] data;
+
+  /**
+   * The lock cookie for an update, or the expected version for a compare and
+   * update.
+   */
+  private final long guard;
+
+  /**
+   * The owner on whose behalf record locks are checked.
+   */
+  private final LockOwner owner;
+
+  /**
+   * The requesting thread, to be woken up on completion.
+   */
+  private final Thread requester = Thread.currentThread();
+
+  /**
+   * The result: the record number of a new record, or the new version of an
+   * updated record.
+   */
+  private long result;
+
+  /**
+   * The exception to be rethrown to the requesting thread, if any.
+   */
+  private Exception failure;
+
+  /**
+   * Whether the outcome has been set. Publishes the outcome to the
+   * requesting thread.
+   */
+  private volatile boolean done = false;
+
+  /**
+   * Creates a mutation.
+   *
+   * @param kind  the kind of mutation
+   * @param recNo the record number, ignored for new records
+   * @param data  the fields of the record to be written
+   * @param guard the lock cookie or expected version, ignored for new records
+   * @param owner the owner on whose behalf record locks are checked
+   */
+  private Mutation(final Kind kind, final long recNo, final String[] data,
+                   final long guard, final LockOwner owner)
+  {
+    this.kind = kind;
+    this.owner = owner;
+    this.recNo = recNo;
+    this.data = data;
+    this.guard = guard;
+  }
+
+  /**
+   * Creates a request to create a record.
+   *
+   * @param data the fields of the new record
+   * @return the mutation
+   */
+  static Mutation create(final String[] data)
+  {
+    return new Mutation(Kind.CREATE, -1, data, 0, null);
+  }
+
+  /**
+   * Creates a request to update a locked record.
+   *
+   * @param recNo      the record number
+   * @param data       the new fields of the record
+   * @param lockCookie the cookie of the lock
+   * @return the mutation
+   */
+  static Mutation update(final long recNo, final String[] data,
+                         final long lockCookie)
+  {
+    return new Mutation(Kind.UPDATE, recNo, data, lockCookie, null);
+  }
+
+  /**
+   * Creates a request to update a record of a given version.
+   *
+   * @param recNo           the record number
+   * @param expectedVersion the version the record must have
+   * @param data            the new fields of the record
+   * @param owner           the owner on whose behalf the record may be
+   *                        locked
+   * @return the mutation
+   */
+  static Mutation compareAndUpdate(final long recNo,
+                                   final long expectedVersion,
+                                   final String[] data,
+                                   final LockOwner owner)
+  {
+    return new Mutation(Kind.COMPARE_AND_UPDATE, recNo, data,
+      expectedVersion, owner);
+  }
+
+  /**
+   * Getter for the kind of mutation.
+   *
+   * @return the kind of mutation
+   */
+  Kind getKind()
+  {
+    return kind;
+  }
+
+  /**
+   * Getter for the record number.
+   *
+   * @return the record number, or -1 for a new record not yet assigned one
+   */
+  long getRecNo()
+  {
+    return recNo;
+  }
+
+  /**
+   * Assigns the record number of a new record.
+   *
+   * @param recNo the record number
+   */
+  void setRecNo(final long recNo)
+  {
+    this.recNo = recNo;
+  }
+
+  /**
+   * Getter for the fields of the record to be written.
+   *
+   * @return the fields of the record
+   */
+  String[] getData()
+  {
+    return data;
+  }
+
+  /**
+   * Getter for the lock cookie or the expected version.
+   *
+   * @return the lock cookie for an update, or the expected version for a
+   *         compare and update
+   */
+  long getGuard()
+  {
+    return guard;
+  }
+
+  /**
+   * Getter for the owner on whose behalf record locks are checked.
+   *
+   * @return the owner, or null if locks are checked by cookie
+   */
+  LockOwner getOwner()
+  {
+    return owner;
+  }
+
+  /**
+   * Tells whether the outcome has been set.
+   *
+   * @return true if the mutation has been completed or has failed
+   */
+  boolean isDone()
+  {
+    return done;
+  }
+
+  /**
+   * Completes the mutation successfully and wakes up the requesting thread.
+   *
+   * @param result the record number of a new record, or the new version of
+   *               an updated record
+   */
+  void complete(final long result)
+  {
+    this.result = result;
+    done = true;
+    LockSupport.unpark(requester);
+  }
+
+  /**
+   * Fails the mutation and wakes up the requesting thread.
+   *
+   * @param failure the exception to be rethrown to the requesting thread
+   */
+  void fail(final Exception failure)
+  {
+    this.failure = failure;
+    done = true;
+    LockSupport.unpark(requester);
+  }
+
+  /**
+   * Provides the outcome to the requesting thread. Must not be called before
+   * the mutation is done.
+   *
+   * @return the record number of a new record, or the new version of an
+   *         updated record
+   * @throws RecordNotFoundException if the mutation has failed with this
+   *                                 exception
+   */
+  long getResult() throws RecordNotFoundException
+  {
+    if (failure instanceof RecordNotFoundException)
+    {
+      throw (RecordNotFoundException) failure;
+    }
+    if (failure != null)
+    {
+      throw (RuntimeException) failure;
+    }
+    return result;
+  }
+}
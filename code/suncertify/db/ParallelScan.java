@@ -0,0 +1,166 @@
+/*
+ * @(#)ParallelScan.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A full scan over the record cache that narrows the selection of all stored
+ * records down by a number of query terms, one term at a time, so that the
+ * field criteria are matched by sequential passes over the columns of the
+ * {@link ColumnStore}. The range of record numbers is split in halves
+ * recursively until the chunks fall below a threshold; the chunks are scanned
+ * on the common fork/join pool and their partial results merged. Small caches
+ * are scanned sequentially on the calling thread.
+ * <p/>
+ * The scan must be started with the read lock of the {@link Data} Singleton
+ * instance held. The calling thread waits for all chunks, so no writer can
+ * modify the cache while the worker threads read from it.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class ParallelScan extends RecursiveTask<BitSet>
+{
+  /**
+   * The number of record slots below which a range is scanned sequentially.
+   */
+  static final int THRESHOLD = 8192;
+
+  /**
+   * The serial version UID.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The columnar copy of the cache.
+   */
+  private final ColumnStore columns;
+
+  /**
+   * The record cache.
+   */
+  private final Map<Long, String[]> cachedRecords;
+
+  /**
+   * The terms to test, most selective first.
+   */
+  private final List<QueryTerm> terms;
+
+  /**
+   * The first record number of the range, inclusive.
+   */
+  private final int from;
+
+  /**
+   * The last record number of the range, exclusive.
+   */
+  private final int to;
+
+  /**
+   * Creates a scan over a range of record numbers.
+   *
+   * @param columns       the columnar copy of the cache
+   * @param cachedRecords the record cache
+   * @param terms         the terms to test, most selective first
+   * @param from          the first record number, inclusive
+   * @param to            the last record number, exclusive
+   */
+  private ParallelScan(final ColumnStore columns,
+                       final Map<Long, String[]> cachedRecords,
+                       final List<QueryTerm> terms, final int from,
+                       final int to)
+  {
+    this.columns = columns;
+    this.cachedRecords = cachedRecords;
+    this.terms = terms;
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * Scans all record slots of the cache.
+   *
+   * @param columns       the columnar copy of the cache
+   * @param cachedRecords the record cache
+   * @param terms         the terms to test, most selective first
+   * @param slotCount     the number of record slots, i.e., one more than the
+   *                      highest record number
+   * @return a bit set of the record numbers of all matching records
+   */
+  static BitSet scan(final ColumnStore columns,
+                     final Map<Long, String[]> cachedRecords,
+                     final List<QueryTerm> terms, final int slotCount)
+  {
+    ParallelScan task = new ParallelScan(columns, cachedRecords, terms, 0,
+      slotCount);
+    if (slotCount < THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2)
+    {
+      return task.compute();
+    }
+    return ForkJoinPool.commonPool().invoke(task);
+  }
+
+  /**
+   * Provides the number of threads a large scan is spread across.
+   *
+   * @return the parallelism of the common fork/join pool, at least 1
+   */
+  static int getParallelism()
+  {
+    return Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+  }
+
+  @Override
+  protected BitSet compute()
+  {
+    if (to - from <= THRESHOLD)
+    {
+      return scanRange();
+    }
+    int middle = (from + to) >>> 1;
+    ParallelScan lower = new ParallelScan(columns, cachedRecords, terms,
+      from, middle);
+    ParallelScan upper = new ParallelScan(columns, cachedRecords, terms,
+      middle, to);
+    lower.fork();
+    BitSet matches = upper.compute();
+    matches.or(lower.join());
+    return matches;
+  }
+
+  /**
+   * Scans the range sequentially.
+   *
+   * @return a bit set of the record numbers of the matching records within
+   *         the range
+   */
+  private BitSet scanRange()
+  {
+    BitSet selection = columns.getPresent().get(0, to);
+    selection.clear(0, from);
+    for (int k = 0; k < terms.size() && selection.isEmpty() == false; ++k)
+    {
+      terms.get(k).select(selection, from, to, cachedRecords);
+    }
+    return selection;
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * @(#)PrefixIndex.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sorted index over the values of a single record field. Maps each distinct
+ * field value to the set of record numbers holding that value. As the distinct
+ * values are kept in sorted order, all values beginning with a given prefix
+ * form a contiguous range that is found by a logarithmic lookup. This class is
+ * <em>not</em> thread-safe; it is guarded by the read/write lock of the
+ * {@link Data} Singleton instance.
+ * <p/>
+ * The sets of record numbers (postings) are implemented as bit sets since
+ * record numbers are small, densely assigned integers (deleted record numbers
+ * are recycled). Bit sets are compact and can be intersected word by word.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class PrefixIndex
+{
+  /**
+   * The sorted mapping from distinct field values to the record numbers
+   * holding them.
+   */
+  private final TreeMap<String, BitSet> postings =
+    new TreeMap<String, BitSet>();
+
+  /**
+   * Adds a (value, record number) pair to the index.
+   *
+   * @param recNo the record number of the record holding <code>value</code>
+   * @param value the field value of the record, ignored if <code>null</code>
+   */
+  void add(final long recNo, final String value)
+  {
+    if (value == null)
+    {
+      return;
+    }
+    BitSet recNos = postings.get(value);
+    if (recNos == null)
+    {
+      recNos = new BitSet();
+      postings.put(value, recNos);
+    }
+    recNos.set(toBitIndex(recNo));
+  }
+
+  /**
+   * Removes a (value, record number) pair from the index. Distinct values no
+   * longer held by any record are dropped altogether.
+   *
+   * @param recNo the record number of the record having held
+   *              <code>value</code>
+   * @param value the former field value of the record, ignored if
+   *              <code>null</code>
+   */
+  void remove(final long recNo, final String value)
+  {
+    if (value == null)
+    {
+      return;
+    }
+    BitSet recNos = postings.get(value);
+    if (recNos != null)
+    {
+      recNos.clear(toBitIndex(recNo));
+      if (recNos.isEmpty())
+      {
+        postings.remove(value);
+      }
+    }
+  }
+
+  /**
+   * Provides the record numbers per distinct value in the order of the
+   * values, for reading records off the index in sorted order. Records
+   * without a value are not contained.
+   *
+   * @param descending true for descending, false for ascending order
+   * @return a view of the bit sets of record numbers, which must not be
+   *         modified
+   */
+  Collection<BitSet> postingsInOrder(final boolean descending)
+  {
+    return descending ? postings.descendingMap().values() : postings
+      .values();
+  }
+
+  /**
+   * Provides the record numbers of all records whose field value exactly
+   * matches <code>value</code>.
+   *
+   * @param value the field value to look up
+   * @return a newly allocated bit set of matching record numbers which the
+   *         caller may modify at will
+   */
+  BitSet lookupExact(final String value)
+  {
+    BitSet recNos = postings.get(value);
+    return recNos == null ? new BitSet() : (BitSet) recNos.clone();
+  }
+
+  /**
+   * Provides the record numbers of all records whose field value begins with
+   * <code>prefix</code>.
+   *
+   * @param prefix the prefix to look up
+   * @return a newly allocated bit set of matching record numbers which the
+   *         caller may modify at will
+   */
+  BitSet lookupPrefix(final String prefix)
+  {
+    BitSet result = new BitSet();
+    for (Map.Entry<String, BitSet> entry : postings.tailMap(prefix, true)
+      .entrySet())
+    {
+      if (entry.getKey().startsWith(prefix) == false)
+      {
+        break; // End of the contiguous range of matching values.
+      }
+      result.or(entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Counts the records whose field value begins with <code>prefix</code>,
+   * but gives up if the prefix covers too many distinct values. Serves to
+   * estimate the selectivity of a prefix at bounded cost.
+   *
+   * @param prefix  the prefix to look up
+   * @param maxKeys the maximum number of distinct values to visit
+   * @return the number of matching records, or -1 if the prefix covers more
+   *         than <code>maxKeys</code> distinct values
+   */
+  int countPrefix(final String prefix, final int maxKeys)
+  {
+    int count = 0;
+    int keys = 0;
+    for (Map.Entry<String, BitSet> entry : postings.tailMap(prefix, true)
+      .entrySet())
+    {
+      if (entry.getKey().startsWith(prefix) == false)
+      {
+        break;
+      }
+      if (++keys > maxKeys)
+      {
+        return -1;
+      }
+      count += entry.getValue().cardinality();
+    }
+    return count;
+  }
+
+  /**
+   * Provides the number of distinct field values.
+   *
+   * @return the number of distinct values
+   */
+  int distinctCount()
+  {
+    return postings.size();
+  }
+
+  /**
+   * Determines the most frequent field values together with their number of
+   * occurrences.
+   *
+   * @param n the maximum number of values to return
+   * @return a map of (value, count) pairs in descending order of counts
+   */
+  Map<String, Integer> topValues(final int n)
+  {
+    List<Map.Entry<String, Integer>> counts =
+      new ArrayList<Map.Entry<String, Integer>>(postings.size());
+    for (Map.Entry<String, BitSet> entry : postings.entrySet())
+    {
+      counts.add(new AbstractMap.SimpleEntry<String, Integer>(
+        entry.getKey(), entry.getValue().cardinality()));
+    }
+    Collections.sort(counts, new Comparator<Map.Entry<String, Integer>>()
+    {
+      @Override
+      public int compare(final Map.Entry<String, Integer> e1,
+                         final Map.Entry<String, Integer> e2)
+      {
+        return e2.getValue().compareTo(e1.getValue());
+      }
+    });
+    Map<String, Integer> top = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < n && i < counts.size(); ++i)
+    {
+      top.put(counts.get(i).getKey(), counts.get(i).getValue());
+    }
+    return top;
+  }
+
+  /**
+   * Converts a record number into a bit index. Record numbers are bounded by
+   * the number of record slots in the database file.
+   *
+   * @param recNo the record number
+   * @return the corresponding bit index
+   */
+  static int toBitIndex(final long recNo)
+  {
+    assert recNo >= 0 && recNo <= Integer.MAX_VALUE;
+    return (int) recNo;
+  }
+}
@@ -0,0 +1,476 @@
+/*
+ * @(#)Query.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.Arrays;
+
+/**
+ * A multi-criteria search request to the data access class. All criteria
+ * given are combined by a logical AND; criteria not given do not constrain the
+ * search. Field criteria are string arrays organized like records, that is,
+ * criteria[n] refers to field n of a record in the order of the schema section
+ * of the database file. A null value in criteria[n] matches any field value.
+ * <p/>
+ * How a query is executed - by a full scan over the cache or by looking up
+ * and intersecting indexes - is decided by the data access class per query.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ * @see DBSearchFriendlyAccess#find(Query)
+ */
+public final class Query
+{
+  /**
+   * The order field value denoting matches in record number order.
+   */
+  public static final int NO_ORDER = -1;
+
+  /**
+   * Field criteria requiring exact matches, or null.
+   */
+  private String[] exactCriteria;
+
+  /**
+   * Field criteria requiring field values to begin with them, or null.
+   */
+  private String[] prefixCriteria;
+
+  /**
+   * The specialties a record must contain, or null.
+   */
+  private String[] specialties;
+
+  /**
+   * Whether a record must contain all of the specialties (AND) rather than
+   * any of them (OR).
+   */
+  private boolean matchAllSpecialties = true;
+
+  /**
+   * Minimum number of staff, inclusive.
+   */
+  private long minSize = Long.MIN_VALUE;
+
+  /**
+   * Maximum number of staff, inclusive.
+   */
+  private long maxSize = Long.MAX_VALUE;
+
+  /**
+   * Minimum hourly charge in cents, inclusive.
+   */
+  private long minRate = Long.MIN_VALUE;
+
+  /**
+   * Maximum hourly charge in cents, inclusive.
+   */
+  private long maxRate = Long.MAX_VALUE;
+
+  /**
+   * The index of the field to order the matches by, or {@link #NO_ORDER}.
+   */
+  private int orderField = NO_ORDER;
+
+  /**
+   * Whether the matches are ordered descending rather than ascending.
+   */
+  private boolean descending;
+
+  /**
+   * The maximum number of matches to return.
+   */
+  private int limit = Integer.MAX_VALUE;
+
+  /**
+   * Creates an unconstrained query that matches every record.
+   */
+  public Query()
+  {
+  }
+
+  /**
+   * Creates a copy of a query that is unaffected by later modifications of
+   * the original or of the criteria arrays passed to it.
+   *
+   * @param query the query to copy
+   */
+  Query(final Query query)
+  {
+    exactCriteria = query.exactCriteria == null ? null : query.exactCriteria
+      .clone();
+    prefixCriteria = query.prefixCriteria == null ? null
+      : query.prefixCriteria.clone();
+    specialties = query.specialties == null ? null : query.specialties
+      .clone();
+    matchAllSpecialties = query.matchAllSpecialties;
+    minSize = query.minSize;
+    maxSize = query.maxSize;
+    minRate = query.minRate;
+    maxRate = query.maxRate;
+    orderField = query.orderField;
+    descending = query.descending;
+    limit = query.limit;
+  }
+
+  /**
+   * Gets the exact-match criteria.
+   *
+   * @return the string array of criteria requiring exact matches, or null
+   */
+  public String[] getExactCriteria()
+  {
+    return exactCriteria;
+  }
+
+  /**
+   * Sets the exact-match criteria. A non-null value in criteria[n] matches
+   * any field value that exactly matches criteria[n].
+   *
+   * @param exactCriteria the string array of criteria, or null
+   */
+  public void setExactCriteria(final String[] exactCriteria)
+  {
+    this.exactCriteria = exactCriteria;
+  }
+
+  /**
+   * Gets the prefix criteria.
+   *
+   * @return the string array of criteria requiring prefix matches, or null
+   */
+  public String[] getPrefixCriteria()
+  {
+    return prefixCriteria;
+  }
+
+  /**
+   * Sets the prefix criteria. A non-null value in criteria[n] matches any
+   * field value that begins with criteria[n].
+   *
+   * @param prefixCriteria the string array of criteria, or null
+   */
+  public void setPrefixCriteria(final String[] prefixCriteria)
+  {
+    this.prefixCriteria = prefixCriteria;
+  }
+
+  /**
+   * Gets the specialties to look for.
+   *
+   * @return the specialties, or null
+   */
+  public String[] getSpecialties()
+  {
+    return specialties;
+  }
+
+  /**
+   * Sets the specialties to look for. They are matched against the individual
+   * items of the comma-separated specialties field, ignoring case.
+   *
+   * @param specialties the specialties, or null or empty to leave the
+   *                    specialties field unconstrained
+   * @param matchAll    <code>true</code> if a record must contain all of the
+   *                    specialties, <code>false</code> if any one suffices
+   */
+  public void setSpecialties(final String[] specialties,
+                             final boolean matchAll)
+  {
+    this.specialties = specialties;
+    this.matchAllSpecialties = matchAll;
+  }
+
+  /**
+   * Tells whether all of the specialties are required.
+   *
+   * @return <code>true</code> for AND, <code>false</code> for OR
+   */
+  public boolean isMatchAllSpecialties()
+  {
+    return matchAllSpecialties;
+  }
+
+  /**
+   * Constrains the size field (number of staff) to a closed interval. Records
+   * whose size is not a number never match a constrained size.
+   *
+   * @param min the minimum, or <code>Long.MIN_VALUE</code> for none
+   * @param max the maximum, or <code>Long.MAX_VALUE</code> for none
+   */
+  public void setSizeRange(final long min, final long max)
+  {
+    minSize = min;
+    maxSize = max;
+  }
+
+  /**
+   * Gets the minimum size.
+   *
+   * @return the minimum number of staff, inclusive
+   */
+  public long getMinSize()
+  {
+    return minSize;
+  }
+
+  /**
+   * Gets the maximum size.
+   *
+   * @return the maximum number of staff, inclusive
+   */
+  public long getMaxSize()
+  {
+    return maxSize;
+  }
+
+  /**
+   * Tells whether the size field is constrained at all.
+   *
+   * @return <code>true</code> if at least one size bound has been set
+   */
+  public boolean isSizeConstrained()
+  {
+    return minSize != Long.MIN_VALUE || maxSize != Long.MAX_VALUE;
+  }
+
+  /**
+   * Constrains the rate field (hourly charge in cents, ignoring the currency
+   * symbol) to a closed interval. Records whose rate is not an amount never
+   * match a constrained rate.
+   *
+   * @param min the minimum in cents, or <code>Long.MIN_VALUE</code> for none
+   * @param max the maximum in cents, or <code>Long.MAX_VALUE</code> for none
+   */
+  public void setRateRange(final long min, final long max)
+  {
+    minRate = min;
+    maxRate = max;
+  }
+
+  /**
+   * Gets the minimum rate.
+   *
+   * @return the minimum hourly charge in cents, inclusive
+   */
+  public long getMinRate()
+  {
+    return minRate;
+  }
+
+  /**
+   * Gets the maximum rate.
+   *
+   * @return the maximum hourly charge in cents, inclusive
+   */
+  public long getMaxRate()
+  {
+    return maxRate;
+  }
+
+  /**
+   * Tells whether the rate field is constrained at all.
+   *
+   * @return <code>true</code> if at least one rate bound has been set
+   */
+  public boolean isRateConstrained()
+  {
+    return minRate != Long.MIN_VALUE || maxRate != Long.MAX_VALUE;
+  }
+
+  /**
+   * Orders the matches by a field. The size and rate fields are compared
+   * numerically, like their ranges, and all other fields lexicographically.
+   * Records whose field is missing or, for size and rate, not a number come
+   * last in either direction. Ties are broken by ascending record number.
+   *
+   * @param field      the index of the field within a record, or
+   *                   {@link #NO_ORDER} for record number order
+   * @param descending <code>true</code> for descending, <code>false</code>
+   *                   for ascending order
+   */
+  public void setOrder(final int field, final boolean descending)
+  {
+    this.orderField = field;
+    this.descending = descending;
+  }
+
+  /**
+   * Gets the field the matches are ordered by.
+   *
+   * @return the index of the field within a record, or {@link #NO_ORDER}
+   */
+  public int getOrderField()
+  {
+    return orderField;
+  }
+
+  /**
+   * Tells whether the matches are ordered descending.
+   *
+   * @return <code>true</code> for descending, <code>false</code> for
+   *         ascending order
+   */
+  public boolean isDescending()
+  {
+    return descending;
+  }
+
+  /**
+   * Tells whether the matches are ordered by a field at all.
+   *
+   * @return <code>true</code> if an order field has been set
+   */
+  public boolean isOrdered()
+  {
+    return orderField != NO_ORDER;
+  }
+
+  /**
+   * Limits the number of matches returned to the first ones in the order of
+   * the query, e.g. the 20 cheapest. The limit applies to finding, not to
+   * cursors.
+   *
+   * @param limit the maximum number of matches, or
+   *              <code>Integer.MAX_VALUE</code> for none
+   * @throws IllegalArgumentException if the limit is negative
+   */
+  public void setLimit(final int limit)
+  {
+    if (limit < 0)
+    {
+      throw new IllegalArgumentException(String.format(Text.NEGATIVE_LIMIT,
+        limit));
+    }
+    this.limit = limit;
+  }
+
+  /**
+   * Gets the maximum number of matches returned.
+   *
+   * @return the limit, <code>Integer.MAX_VALUE</code> for none
+   */
+  public int getLimit()
+  {
+    return limit;
+  }
+
+  /**
+   * Two queries are equal if they consist of equal criteria, order and
+   * limit.
+   *
+   * @param obj the object to compare with
+   * @return <code>true</code> if <code>obj</code> is an equal query
+   */
+  @Override
+  public boolean equals(final Object obj)
+  {
+    if (obj == this)
+    {
+      return true;
+    }
+    if (obj instanceof Query == false)
+    {
+      return false;
+    }
+    Query other = (Query) obj;
+    return Arrays.equals(exactCriteria, other.exactCriteria)
+      && Arrays.equals(prefixCriteria, other.prefixCriteria)
+      && Arrays.equals(specialties, other.specialties)
+      && matchAllSpecialties == other.matchAllSpecialties
+      && minSize == other.minSize && maxSize == other.maxSize
+      && minRate == other.minRate && maxRate == other.maxRate
+      && orderField == other.orderField && descending == other.descending
+      && limit == other.limit;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    int hash = Arrays.hashCode(exactCriteria);
+    hash = 31 * hash + Arrays.hashCode(prefixCriteria);
+    hash = 31 * hash + Arrays.hashCode(specialties);
+    hash = 31 * hash + (matchAllSpecialties ? 1 : 0);
+    hash = 31 * hash + Arrays.hashCode(new long[]{minSize, maxSize, minRate,
+      maxRate});
+    hash = 31 * hash + Arrays.hashCode(new int[]{orderField,
+      descending ? 1 : 0, limit});
+    return hash;
+  }
+
+  /**
+   * Describes the shape of the criteria without their values, e.g.
+   * <code>exact[0,1] specialties(2,all) size</code> for exact criteria on
+   * fields 0 and 1, two specialties that must all be contained and a size
+   * range. Intended for diagnostics where the values must not show up.
+   *
+   * @return the shape of the criteria, empty for an unconstrained query
+   */
+  String shape()
+  {
+    StringBuilder sb = new StringBuilder();
+    appendFields(sb, "exact", exactCriteria);
+    appendFields(sb, "prefix", prefixCriteria);
+    if (specialties != null && specialties.length > 0)
+    {
+      sb.append(sb.length() == 0 ? "" : " ").append("specialties(").append(
+        specialties.length).append(matchAllSpecialties ? ",all)" : ",any)");
+    }
+    if (isSizeConstrained())
+    {
+      sb.append(sb.length() == 0 ? "" : " ").append("size");
+    }
+    if (isRateConstrained())
+    {
+      sb.append(sb.length() == 0 ? "" : " ").append("rate");
+    }
+    if (isOrdered())
+    {
+      sb.append(sb.length() == 0 ? "" : " ").append("order[").append(
+        orderField).append(descending ? ",desc]" : ",asc]");
+    }
+    if (limit != Integer.MAX_VALUE)
+    {
+      sb.append(sb.length() == 0 ? "" : " ").append("limit");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Appends the numbers of the fields constrained by field criteria.
+   *
+   * @param sb       the builder to append to
+   * @param kind     the kind of the criteria
+   * @param criteria the field criteria, or null
+   */
+  private static void appendFields(final StringBuilder sb, final String kind,
+                                   final String[] criteria)
+  {
+    String separator = (sb.length() == 0 ? "" : " ") + kind + "[";
+    for (int i = 0; criteria != null && i < criteria.length; ++i)
+    {
+      if (criteria[i] != null)
+      {
+        sb.append(separator).append(i);
+        separator = ",";
+      }
+    }
+    if (separator.equals(","))
+    {
+      sb.append(']');
+    }
+  }
+}
@@ -0,0 +1,407 @@
+/*
+ * @(#)QueryPlanner.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cost-based planner for multi-criteria {@link Query queries}. The terms of
+ * a query are ordered by their estimated number of matches as derived from
+ * the {@link Statistics}. The most selective term drives the evaluation by an
+ * index lookup; each further term is either looked up and intersected, or -
+ * if only few candidates remain - tested record by record on the candidates,
+ * whichever is estimated to be cheaper. If the criteria are so unselective
+ * that the index work exceeds the cost of simply testing every cached record,
+ * a full scan is chosen instead; on large caches, the full scan is spread
+ * across the cores by a {@link ParallelScan}. This class is <em>not</em>
+ * thread-safe; it is guarded by the read/write lock of the {@link Data}
+ * Singleton instance.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class QueryPlanner
+{
+  /**
+   * The cost of fetching a record from the cache, relative to a string
+   * comparison.
+   */
+  private static final double FETCH_COST = 0.5;
+
+  /**
+   * The fixed cost of an index lookup.
+   */
+  private static final double LOOKUP_COST = 2.0;
+
+  /**
+   * The cost per matching record of an index lookup (setting a bit).
+   */
+  private static final double LOOKUP_ROW_COST = 0.1;
+
+  /**
+   * The number of record numbers intersected per bit set word operation.
+   */
+  private static final double BITS_PER_WORD = 64.0;
+
+  /**
+   * The indexes and statistics over the cached records.
+   */
+  private final RecordIndexes indexes;
+
+  /**
+   * The record cache of the <code>Data</code> Singleton instance.
+   */
+  private final Map<Long, String[]> cachedRecords;
+
+  /**
+   * Creates a planner.
+   *
+   * @param indexes       the indexes and statistics over the cached records
+   * @param cachedRecords the record cache
+   */
+  QueryPlanner(final RecordIndexes indexes,
+               final Map<Long, String[]> cachedRecords)
+  {
+    this.indexes = indexes;
+    this.cachedRecords = cachedRecords;
+  }
+
+  /**
+   * Determines the cheapest plan for a query.
+   *
+   * @param query the query
+   * @return the plan
+   */
+  Plan plan(final Query query)
+  {
+    List<QueryTerm> terms = toTerms(query);
+    if (terms == null)
+    {
+      return new Plan(); // Unsatisfiable.
+    }
+    final Statistics statistics = indexes.getStatistics();
+    final int rows = Math.max(1, statistics.getRowCount());
+    Plan plan = new Plan(terms.size());
+    for (QueryTerm term : terms)
+    {
+      plan.estimates.add(Math.min(rows, term.estimate(statistics)));
+    }
+    // Order the terms (together with their estimates) most selective first.
+    List<Integer> order = new ArrayList<Integer>(terms.size());
+    for (int i = 0; i < terms.size(); ++i)
+    {
+      order.add(i);
+    }
+    final List<Integer> estimates = new ArrayList<Integer>(plan.estimates);
+    Collections.sort(order, new Comparator<Integer>()
+    {
+      @Override
+      public int compare(final Integer i1, final Integer i2)
+      {
+        return estimates.get(i1).compareTo(estimates.get(i2));
+      }
+    });
+    plan.estimates.clear();
+    for (int i : order)
+    {
+      plan.terms.add(terms.get(i));
+      plan.estimates.add(estimates.get(i));
+    }
+
+    // Cost of a full scan, testing the terms in order of selectivity.
+    double candidates = rows;
+    plan.scanCost = rows * FETCH_COST;
+    for (int k = 0; k < plan.terms.size(); ++k)
+    {
+      plan.scanCost += candidates * plan.terms.get(k).testCost();
+      candidates = candidates * plan.estimates.get(k) / rows;
+    }
+    if (indexes.getSlotCount() >= ParallelScan.THRESHOLD)
+    {
+      // Large caches are scanned in parallel chunks.
+      plan.scanCost /= ParallelScan.getParallelism();
+    }
+
+    if (plan.terms.isEmpty())
+    {
+      plan.fullScan = true;
+      plan.cost = plan.scanCost;
+      return plan;
+    }
+
+    // Cost of an index plan: the driver is looked up, the others are
+    // intersected or filtered, whichever is cheaper.
+    candidates = plan.estimates.get(0);
+    plan.cost = LOOKUP_COST + candidates * LOOKUP_ROW_COST;
+    boolean fetching = false;
+    for (int k = 1; k < plan.terms.size(); ++k)
+    {
+      QueryTerm term = plan.terms.get(k);
+      double intersectCost = LOOKUP_COST + plan.estimates.get(k)
+        * LOOKUP_ROW_COST + rows / BITS_PER_WORD;
+      double filterCost = candidates
+        * (term.testCost() + (fetching ? 0 : FETCH_COST));
+      if (filterCost < intersectCost)
+      {
+        plan.filters.add(term);
+        plan.cost += filterCost;
+        fetching = true;
+      }
+      else
+      {
+        plan.cost += intersectCost;
+      }
+      candidates = candidates * plan.estimates.get(k) / rows;
+    }
+    plan.fullScan = plan.scanCost < plan.cost;
+    return plan;
+  }
+
+  /**
+   * Executes a plan.
+   *
+   * @param plan the plan as returned by {@link #plan(Query)}
+   * @return a bit set of the record numbers of all matching records
+   */
+  BitSet execute(final Plan plan)
+  {
+    BitSet matches = new BitSet();
+    if (plan.empty)
+    {
+      return matches;
+    }
+    if (plan.fullScan)
+    {
+      plan.rowsScanned = indexes.getSlotCount();
+      return ParallelScan.scan(indexes.getColumnStore(), cachedRecords,
+        plan.terms, indexes.getSlotCount());
+    }
+    matches = plan.terms.get(0).lookup();
+    for (int k = 1; k < plan.terms.size() && matches.isEmpty() == false; ++k)
+    {
+      if (plan.filters.contains(plan.terms.get(k)) == false)
+      {
+        matches.and(plan.terms.get(k).lookup());
+      }
+    }
+    // The candidates are tested record by record if there are filters.
+    plan.rowsScanned = plan.filters.isEmpty() ? 0 : matches.cardinality();
+    for (QueryTerm term : plan.filters)
+    {
+      term.select(matches, 0, indexes.getSlotCount(), cachedRecords);
+    }
+    return matches;
+  }
+
+  /**
+   * Renders the plan of a query together with the underlying estimates and
+   * statistics in human-readable form.
+   *
+   * @param query the query
+   * @return the plan description
+   */
+  String explain(final Query query)
+  {
+    return plan(query) + "statistics: " + indexes.getStatistics()
+      + System.getProperty("line.separator");
+  }
+
+  /**
+   * Translates a query into its terms. Null criteria and empty prefixes do
+   * not constrain a field and yield no term.
+   *
+   * @param query the query
+   * @return the list of terms, or null if the query cannot match any record
+   *         (a criterion refers to a field beyond the end of a record)
+   */
+  private List<QueryTerm> toTerms(final Query query)
+  {
+    List<QueryTerm> terms = new ArrayList<QueryTerm>();
+    String[] exact = query.getExactCriteria();
+    for (int i = 0; exact != null && i < exact.length; ++i)
+    {
+      if (exact[i] != null)
+      {
+        if (i >= indexes.getNumberOfFields())
+        {
+          return null;
+        }
+        terms.add(new QueryTerm.Exact(i, exact[i], indexes.getFieldIndex(i),
+          indexes.getColumnStore()));
+      }
+    }
+    String[] prefix = query.getPrefixCriteria();
+    for (int i = 0; prefix != null && i < prefix.length; ++i)
+    {
+      if (prefix[i] != null && prefix[i].length() > 0)
+      {
+        if (i >= indexes.getNumberOfFields())
+        {
+          return null;
+        }
+        terms.add(new QueryTerm.Prefix(i, prefix[i], indexes
+          .getFieldIndex(i), indexes.getColumnStore()));
+      }
+    }
+    String[] specialties = query.getSpecialties();
+    if (specialties != null && specialties.length > 0)
+    {
+      terms.add(new QueryTerm.Specialties(specialties, query
+        .isMatchAllSpecialties(), indexes.getSpecialtiesField(), indexes
+        .getSpecialtyIndex()));
+    }
+    if (query.isSizeConstrained())
+    {
+      terms.add(new QueryTerm.Range(true, query.getMinSize(), query
+        .getMaxSize(), indexes.getSizeIndex()));
+    }
+    if (query.isRateConstrained())
+    {
+      terms.add(new QueryTerm.Range(false, query.getMinRate(), query
+        .getMaxRate(), indexes.getRateIndex()));
+    }
+    return terms;
+  }
+
+  /**
+   * The execution plan of a query.
+   */
+  static final class Plan
+  {
+    /**
+     * Whether the query cannot match any record.
+     */
+    private final boolean empty;
+
+    /**
+     * The terms of the query, most selective first.
+     */
+    private final List<QueryTerm> terms;
+
+    /**
+     * The estimated number of matches per term, in the order of the terms.
+     */
+    private final List<Integer> estimates;
+
+    /**
+     * The terms tested record by record rather than intersected.
+     */
+    private final List<QueryTerm> filters;
+
+    /**
+     * Whether the plan is a full scan over the cache.
+     */
+    private boolean fullScan = false;
+
+    /**
+     * The number of record slots examined record by record on execution.
+     */
+    private int rowsScanned = 0;
+
+    /**
+     * The estimated cost of the index plan.
+     */
+    private double cost = 0;
+
+    /**
+     * The estimated cost of a full scan.
+     */
+    private double scanCost = 0;
+
+    /**
+     * Creates the plan of an unsatisfiable query.
+     */
+    private Plan()
+    {
+      empty = true;
+      terms = Collections.emptyList();
+      estimates = Collections.emptyList();
+      filters = Collections.emptyList();
+    }
+
+    /**
+     * Creates an empty plan to be filled in by the planner.
+     *
+     * @param nTerms the number of terms of the query
+     */
+    private Plan(final int nTerms)
+    {
+      empty = false;
+      terms = new ArrayList<QueryTerm>(nTerms);
+      estimates = new ArrayList<Integer>(nTerms);
+      filters = new ArrayList<QueryTerm>(nTerms);
+    }
+
+    /**
+     * Tells whether the plan is a full scan over the cache.
+     *
+     * @return <code>true</code> for a full scan, <code>false</code> for an
+     *         index plan
+     */
+    boolean isFullScan()
+    {
+      return fullScan;
+    }
+
+    /**
+     * Provides the number of record slots that have been examined record by
+     * record, as opposed to being looked up in indexes, when the plan was
+     * executed.
+     *
+     * @return the number of rows scanned, 0 before execution
+     */
+    int getRowsScanned()
+    {
+      return rowsScanned;
+    }
+
+    @Override
+    public String toString()
+    {
+      String nl = System.getProperty("line.separator");
+      StringBuilder sb = new StringBuilder();
+      if (empty)
+      {
+        return sb.append("EMPTY (criterion beyond the record's fields)")
+          .append(nl).toString();
+      }
+      sb.append(fullScan ? "FULL SCAN" : "INDEX").append(
+        String.format(" (index cost %.1f, scan cost %.1f)", cost, scanCost))
+        .append(nl);
+      for (int k = 0; k < terms.size(); ++k)
+      {
+        String step;
+        if (fullScan || filters.contains(terms.get(k)))
+        {
+          step = "test";
+        }
+        else
+        {
+          step = k == 0 ? "lookup" : "and";
+        }
+        sb.append(String.format("  %-6s %s (est. %d)", step, terms.get(k),
+          estimates.get(k))).append(nl);
+      }
+      return sb.toString();
+    }
+  }
+}
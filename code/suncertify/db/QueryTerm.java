@@ -0,0 +1,428 @@
+/*
+ * @(#)QueryTerm.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * A single condition of a {@link Query}, such as "name equals X" or "rate
+ * between A and B". A term can be evaluated in two ways: as an index lookup
+ * yielding the set of all matching record numbers at once, or by narrowing
+ * down a given selection of records - field criteria by a pass over their
+ * column in the {@link ColumnStore}, other terms by testing each record. The
+ * {@link QueryPlanner} decides per term which way is cheaper, based on the
+ * estimated number of matching records.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+abstract class QueryTerm
+{
+  /**
+   * Estimates the number of records matching this term.
+   *
+   * @param statistics the statistics over the cached records
+   * @return the estimated number of matching records
+   */
+  abstract int estimate(Statistics statistics);
+
+  /**
+   * Determines all matching records by means of an index.
+   *
+   * @return a newly allocated bit set of the matching record numbers
+   */
+  abstract BitSet lookup();
+
+  /**
+   * Tests an individual record.
+   *
+   * @param recNo  the record number of the record
+   * @param record the cached record data
+   * @return <code>true</code> if the record matches this term
+   */
+  abstract boolean test(long recNo, String[] record);
+
+  /**
+   * Provides the cost of testing an individual record relative to a string
+   * comparison.
+   *
+   * @return the relative cost of {@link #test(long, String[])}
+   */
+  abstract double testCost();
+
+  /**
+   * Removes from a selection of records all those not matching this term.
+   * Unless overridden, each selected record is tested individually.
+   *
+   * @param selection     the selection to narrow down
+   * @param from          the first record number to consider, inclusive
+   * @param to            the last record number to consider, exclusive
+   * @param cachedRecords the record cache
+   */
+  void select(final BitSet selection, final int from, final int to,
+              final Map<Long, String[]> cachedRecords)
+  {
+    for (int recNo = selection.nextSetBit(from); recNo >= 0 && recNo < to;
+         recNo = selection.nextSetBit(recNo + 1))
+    {
+      if (test(recNo, cachedRecords.get((long) recNo)) == false)
+      {
+        selection.clear(recNo);
+      }
+    }
+  }
+
+  /**
+   * An exact match of a record field.
+   */
+  static final class Exact extends QueryTerm
+  {
+    /**
+     * The index of the field within a record.
+     */
+    private final int field;
+
+    /**
+     * The value to match.
+     */
+    private final String value;
+
+    /**
+     * The sorted index over the field.
+     */
+    private final PrefixIndex index;
+
+    /**
+     * The columnar copy of the cache.
+     */
+    private final ColumnStore columns;
+
+    /**
+     * Creates an exact match term.
+     *
+     * @param field   the index of the field within a record
+     * @param value   the value to match
+     * @param index   the sorted index over the field
+     * @param columns the columnar copy of the cache
+     */
+    Exact(final int field, final String value, final PrefixIndex index,
+          final ColumnStore columns)
+    {
+      this.field = field;
+      this.value = value;
+      this.index = index;
+      this.columns = columns;
+    }
+
+    @Override
+    int estimate(final Statistics statistics)
+    {
+      return statistics.estimateExact(field, value);
+    }
+
+    @Override
+    BitSet lookup()
+    {
+      return index.lookupExact(value);
+    }
+
+    @Override
+    boolean test(final long recNo, final String[] record)
+    {
+      return record.length > field && value.equals(record[field]);
+    }
+
+    @Override
+    double testCost()
+    {
+      return 1.0;
+    }
+
+    @Override
+    void select(final BitSet selection, final int from, final int to,
+                final Map<Long, String[]> cachedRecords)
+    {
+      columns.selectExact(field, value, selection, from, to, cachedRecords);
+    }
+
+    @Override
+    public String toString()
+    {
+      return "field " + field + " = \"" + value + "\"";
+    }
+  }
+
+  /**
+   * A prefix match of a record field.
+   */
+  static final class Prefix extends QueryTerm
+  {
+    /**
+     * The index of the field within a record.
+     */
+    private final int field;
+
+    /**
+     * The prefix to match.
+     */
+    private final String prefix;
+
+    /**
+     * The sorted index over the field.
+     */
+    private final PrefixIndex index;
+
+    /**
+     * The columnar copy of the cache.
+     */
+    private final ColumnStore columns;
+
+    /**
+     * Creates a prefix match term.
+     *
+     * @param field   the index of the field within a record
+     * @param prefix  the prefix to match
+     * @param index   the sorted index over the field
+     * @param columns the columnar copy of the cache
+     */
+    Prefix(final int field, final String prefix, final PrefixIndex index,
+           final ColumnStore columns)
+    {
+      this.field = field;
+      this.prefix = prefix;
+      this.index = index;
+      this.columns = columns;
+    }
+
+    @Override
+    int estimate(final Statistics statistics)
+    {
+      return statistics.estimatePrefix(field, prefix);
+    }
+
+    @Override
+    BitSet lookup()
+    {
+      return index.lookupPrefix(prefix);
+    }
+
+    @Override
+    boolean test(final long recNo, final String[] record)
+    {
+      return record.length > field && record[field] != null
+        && record[field].startsWith(prefix);
+    }
+
+    @Override
+    double testCost()
+    {
+      return 1.0;
+    }
+
+    @Override
+    void select(final BitSet selection, final int from, final int to,
+                final Map<Long, String[]> cachedRecords)
+    {
+      columns.selectPrefix(field, prefix, selection, from, to,
+        cachedRecords);
+    }
+
+    @Override
+    public String toString()
+    {
+      return "field " + field + " starts with \"" + prefix + "\"";
+    }
+  }
+
+  /**
+   * A match of all or any of a number of specialties.
+   */
+  static final class Specialties extends QueryTerm
+  {
+    /**
+     * The normalized specialties to match.
+     */
+    private final String[] specialties;
+
+    /**
+     * Whether all specialties are required (AND) rather than any (OR).
+     */
+    private final boolean matchAll;
+
+    /**
+     * The index of the specialties field within a record.
+     */
+    private final int field;
+
+    /**
+     * The inverted index over the specialties.
+     */
+    private final SpecialtyIndex index;
+
+    /**
+     * Creates a specialties match term.
+     *
+     * @param specialties the specialties to match, in any case
+     * @param matchAll    <code>true</code> for AND, <code>false</code> for OR
+     * @param field       the index of the specialties field within a record
+     * @param index       the inverted index over the specialties
+     */
+    Specialties(final String[] specialties, final boolean matchAll,
+                final int field, final SpecialtyIndex index)
+    {
+      this.specialties = new String[specialties.length];
+      for (int i = 0; i < specialties.length; ++i)
+      {
+        this.specialties[i] = SpecialtyIndex.normalize(specialties[i]);
+      }
+      this.matchAll = matchAll;
+      this.field = field;
+      this.index = index;
+    }
+
+    @Override
+    int estimate(final Statistics statistics)
+    {
+      return statistics.estimateSpecialties(specialties, matchAll);
+    }
+
+    @Override
+    BitSet lookup()
+    {
+      return index.lookup(specialties, matchAll);
+    }
+
+    @Override
+    boolean test(final long recNo, final String[] record)
+    {
+      String[] tokens = SpecialtyIndex.tokenize(record[field]);
+      for (String specialty : specialties)
+      {
+        boolean contained = false;
+        for (String token : tokens)
+        {
+          if (token.equals(specialty))
+          {
+            contained = true;
+            break;
+          }
+        }
+        if (contained != matchAll)
+        {
+          // Missing one of all, or found one of any.
+          return contained;
+        }
+      }
+      return matchAll;
+    }
+
+    @Override
+    double testCost()
+    {
+      return 8.0; // Tokenizing the field.
+    }
+
+    @Override
+    public String toString()
+    {
+      StringBuilder sb = new StringBuilder("specialties contain ");
+      sb.append(matchAll ? "all of" : "any of");
+      for (String specialty : specialties)
+      {
+        sb.append(" \"").append(specialty).append('"');
+      }
+      return sb.toString();
+    }
+  }
+
+  /**
+   * A closed interval over a numeric column (size or rate).
+   */
+  static final class Range extends QueryTerm
+  {
+    /**
+     * Whether this is a size range rather than a rate range.
+     */
+    private final boolean size;
+
+    /**
+     * The lower bound, inclusive.
+     */
+    private final long min;
+
+    /**
+     * The upper bound, inclusive.
+     */
+    private final long max;
+
+    /**
+     * The numeric column and range index.
+     */
+    private final RangeIndex index;
+
+    /**
+     * Creates a range term.
+     *
+     * @param size  <code>true</code> for the size column,
+     *              <code>false</code> for the rate column
+     * @param min   the lower bound, inclusive
+     * @param max   the upper bound, inclusive
+     * @param index the numeric column and range index
+     */
+    Range(final boolean size, final long min, final long max,
+          final RangeIndex index)
+    {
+      this.size = size;
+      this.min = min;
+      this.max = max;
+      this.index = index;
+    }
+
+    @Override
+    int estimate(final Statistics statistics)
+    {
+      return size ? statistics.estimateSizeRange(min, max) : statistics
+        .estimateRateRange(min, max);
+    }
+
+    @Override
+    BitSet lookup()
+    {
+      return index.lookupRange(min, max);
+    }
+
+    @Override
+    boolean test(final long recNo, final String[] record)
+    {
+      long value = index.valueOf(recNo);
+      return value != RangeIndex.NO_VALUE && value >= min && value <= max;
+    }
+
+    @Override
+    double testCost()
+    {
+      return 0.5;
+    }
+
+    @Override
+    public String toString()
+    {
+      return (size ? "size" : "rate") + " in [" + min + ", " + max + "]";
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * @(#)RangeIndex.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A typed numeric column together with a sorted range index over a record
+ * field that is stored as a string but represents a number, such as the size
+ * ("7") or the rate ("$90.00") of a contractor. The field values are parsed
+ * only once, when a record enters the cache, so that range queries and
+ * comparisons do not have to reparse them. This class is <em>not</em>
+ * thread-safe; it is guarded by the read/write lock of the {@link Data}
+ * Singleton instance.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class RangeIndex
+{
+  /**
+   * The column value of a record slot that is empty or whose field value
+   * cannot be parsed as a number. Such records never match a range.
+   */
+  static final long NO_VALUE = Long.MIN_VALUE;
+
+  /**
+   * The numeric column, indexed by record number.
+   */
+  private long[] values = new long[0];
+
+  /**
+   * The sorted mapping from distinct numeric values to the record numbers
+   * holding them.
+   */
+  private final TreeMap<Long, BitSet> postings = new TreeMap<Long, BitSet>();
+
+  /**
+   * Parses an integer field value such as the size field.
+   *
+   * @param value the field value
+   * @return the integer value, or {@link #NO_VALUE} if <code>value</code> is
+   *         null or not an integer
+   */
+  static long parseInteger(final String value)
+  {
+    if (value == null)
+    {
+      return NO_VALUE;
+    }
+    try
+    {
+      return Long.parseLong(value.trim());
+    }
+    catch (NumberFormatException e)
+    {
+      return NO_VALUE;
+    }
+  }
+
+  /**
+   * Parses a currency field value such as the rate field into an integer
+   * number of cents. A leading currency symbol and grouping commas are
+   * ignored, so that "$1,090.5" yields 109050.
+   *
+   * @param value the field value
+   * @return the amount in cents, or {@link #NO_VALUE} if <code>value</code>
+   *         is null or not an amount
+   */
+  static long parseCents(final String value)
+  {
+    if (value == null)
+    {
+      return NO_VALUE;
+    }
+    // Skip the currency symbol, i.e., everything up to the first digit.
+    int start = 0;
+    while (start < value.length()
+      && Character.isDigit(value.charAt(start)) == false)
+    {
+      ++start;
+    }
+    try
+    {
+      return new BigDecimal(value.substring(start).trim().replace(",", ""))
+        .movePointRight(2).setScale(0, RoundingMode.HALF_UP)
+        .longValueExact();
+    }
+    catch (NumberFormatException e)
+    {
+      return NO_VALUE;
+    }
+    catch (ArithmeticException e)
+    {
+      return NO_VALUE;
+    }
+  }
+
+  /**
+   * Sets the column value of a record slot and adds it to the index.
+   *
+   * @param recNo the record number
+   * @param value the parsed value, or {@link #NO_VALUE}
+   */
+  void add(final long recNo, final long value)
+  {
+    int slot = PrefixIndex.toBitIndex(recNo);
+    if (slot >= values.length)
+    {
+      int oldLength = values.length;
+      values = Arrays.copyOf(values, Math.max(slot + 1, 2 * oldLength));
+      Arrays.fill(values, oldLength, values.length, NO_VALUE);
+    }
+    values[slot] = value;
+    if (value != NO_VALUE)
+    {
+      BitSet recNos = postings.get(value);
+      if (recNos == null)
+      {
+        recNos = new BitSet();
+        postings.put(value, recNos);
+      }
+      recNos.set(slot);
+    }
+  }
+
+  /**
+   * Clears the column value of a record slot and removes it from the index.
+   *
+   * @param recNo the record number
+   */
+  void remove(final long recNo)
+  {
+    long value = valueOf(recNo);
+    if (value == NO_VALUE)
+    {
+      return;
+    }
+    int slot = PrefixIndex.toBitIndex(recNo);
+    values[slot] = NO_VALUE;
+    BitSet recNos = postings.get(value);
+    recNos.clear(slot);
+    if (recNos.isEmpty())
+    {
+      postings.remove(value);
+    }
+  }
+
+  /**
+   * Provides the column value of a record slot.
+   *
+   * @param recNo the record number
+   * @return the parsed value, or {@link #NO_VALUE}
+   */
+  long valueOf(final long recNo)
+  {
+    int slot = PrefixIndex.toBitIndex(recNo);
+    return slot < values.length ? values[slot] : NO_VALUE;
+  }
+
+  /**
+   * Provides the record numbers per distinct value in the order of the
+   * values, for reading records off the index in sorted order. Records
+   * without a value are not contained.
+   *
+   * @param descending true for descending, false for ascending order
+   * @return a view of the bit sets of record numbers, which must not be
+   *         modified
+   */
+  Collection<BitSet> postingsInOrder(final boolean descending)
+  {
+    return descending ? postings.descendingMap().values() : postings
+      .values();
+  }
+
+  /**
+   * Provides the record numbers of all records whose value lies within the
+   * closed interval [<code>min</code>, <code>max</code>].
+   *
+   * @param min the lower bound, inclusive
+   * @param max the upper bound, inclusive
+   * @return a newly allocated bit set of matching record numbers
+   */
+  BitSet lookupRange(final long min, final long max)
+  {
+    BitSet result = new BitSet();
+    if (min <= max)
+    {
+      for (BitSet recNos : postings.subMap(min, true, max, true).values())
+      {
+        result.or(recNos);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Builds an equi-depth histogram over the indexed values: the sorted values
+   * are divided into buckets of approximately equal numbers of records. Serves
+   * to estimate the selectivity of ranges without walking the index.
+   *
+   * @param nBuckets the desired number of buckets
+   * @return an array of buckets, each being a { lowest value, highest value,
+   *         number of records } triple, in ascending order of values
+   */
+  long[][] histogram(final int nBuckets)
+  {
+    int total = 0;
+    for (BitSet recNos : postings.values())
+    {
+      total += recNos.cardinality();
+    }
+    long target = Math.max(1, (total + nBuckets - 1) / nBuckets);
+    List<long[]> buckets = new ArrayList<long[]>(nBuckets);
+    long[] bucket = null;
+    for (Map.Entry<Long, BitSet> entry : postings.entrySet())
+    {
+      if (bucket == null)
+      {
+        bucket = new long[] {entry.getKey(), entry.getKey(), 0};
+      }
+      bucket[1] = entry.getKey();
+      bucket[2] += entry.getValue().cardinality();
+      if (bucket[2] >= target)
+      {
+        buckets.add(bucket);
+        bucket = null;
+      }
+    }
+    if (bucket != null)
+    {
+      buckets.add(bucket);
+    }
+    return buckets.toArray(new long[buckets.size()][]);
+  }
+}
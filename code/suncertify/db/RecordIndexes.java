@@ -0,0 +1,344 @@
+/*
+ * @(#)RecordIndexes.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+/**
+ * Bundles all indexes and the columnar copy of the record cache of the
+ * {@link Data} Singleton instance together with the statistics the query
+ * planner bases its decisions on, and keeps them consistent with the cache:
+ * each record entering the cache is added, each record leaving it is removed.
+ * This class is <em>not</em> thread-safe; it is guarded by the read/write lock
+ * of the <code>Data</code> Singleton instance.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class RecordIndexes
+{
+  /**
+   * The estimated memory overhead of a string instance in bytes, beyond its
+   * characters.
+   */
+  private static final int STRING_OVERHEAD = 40;
+
+  /**
+   * The sorted field indexes, one per record field in the order of the
+   * fields' appearance in a record.
+   */
+  private final PrefixIndex[] fieldIndexes;
+
+  /**
+   * The inverted index over the individual specialties contained in the
+   * comma-separated specialties field.
+   */
+  private final SpecialtyIndex specialtyIndex = new SpecialtyIndex();
+
+  /**
+   * The numeric column and range index over the size field (number of
+   * staff).
+   */
+  private final RangeIndex sizeIndex = new RangeIndex();
+
+  /**
+   * The numeric column and range index over the rate field, in cents.
+   */
+  private final RangeIndex rateIndex = new RangeIndex();
+
+  /**
+   * The columnar copy of the cached records, scanned by the field criteria
+   * not answered from an index.
+   */
+  private final ColumnStore columnStore;
+
+  /**
+   * The dictionaries of the fields of low cardinality (location,
+   * specialties, size and rate) by record field, null for the other fields.
+   */
+  private final ValueDictionary[] dictionaries;
+
+  /**
+   * The index of the specialties field within a record, as determined by the
+   * schema section of the database file.
+   */
+  private final int specialtiesField;
+
+  /**
+   * The index of the size field within a record.
+   */
+  private final int sizeField;
+
+  /**
+   * The index of the rate field within a record.
+   */
+  private final int rateField;
+
+  /**
+   * The statistics over the indexed records.
+   */
+  private final Statistics statistics;
+
+  /**
+   * The number of record slots covered, i.e., one more than the highest
+   * record number ever indexed.
+   */
+  private int slotCount = 0;
+
+  /**
+   * The estimated memory taken by the values of the fields not encoded by a
+   * dictionary, in bytes.
+   */
+  private long plainFieldBytes = 0;
+
+  /**
+   * Creates an empty set of indexes. The record meta data must have been read
+   * from the database file already.
+   */
+  RecordIndexes()
+  {
+    fieldIndexes = new PrefixIndex[DBSchema.getNumberOfFields()];
+    for (int i = 0; i < fieldIndexes.length; ++i)
+    {
+      fieldIndexes[i] = new PrefixIndex();
+    }
+    RecordMetaData recordMetaData = RecordMetaData.getInstance();
+    specialtiesField = recordMetaData.getFieldNameIndex(DBSchema
+      .getFieldName(DBSchema.SPECIALTIES_INDEX));
+    sizeField = recordMetaData.getFieldNameIndex(DBSchema
+      .getFieldName(DBSchema.SIZE_INDEX));
+    rateField = recordMetaData.getFieldNameIndex(DBSchema
+      .getFieldName(DBSchema.RATE_INDEX));
+    dictionaries = new ValueDictionary[fieldIndexes.length];
+    for (int schemaIndex : new int[]{DBSchema.LOCATION_INDEX,
+      DBSchema.SPECIALTIES_INDEX, DBSchema.SIZE_INDEX, DBSchema.RATE_INDEX})
+    {
+      dictionaries[recordMetaData.getRecordIndex(schemaIndex)] =
+        new ValueDictionary();
+    }
+    columnStore = new ColumnStore(dictionaries);
+    statistics = new Statistics(this);
+  }
+
+  /**
+   * Replaces the values of the dictionary-encoded fields of a record about to
+   * enter the cache by their canonical instances, so that all cached records
+   * share one string per distinct value.
+   *
+   * @param record the record data to be cached, modified in place
+   */
+  void intern(final String[] record)
+  {
+    for (int i = 0; i < record.length && i < dictionaries.length; ++i)
+    {
+      if (dictionaries[i] != null)
+      {
+        record[i] = dictionaries[i].intern(record[i]);
+      }
+    }
+  }
+
+  /**
+   * Adds the field values of a record entering the cache to all indexes.
+   *
+   * @param recNo  the record number of the record
+   * @param record the cached record data
+   */
+  void add(final long recNo, final String[] record)
+  {
+    for (int i = 0; i < record.length && i < fieldIndexes.length; ++i)
+    {
+      fieldIndexes[i].add(recNo, record[i]);
+      if (dictionaries[i] == null)
+      {
+        plainFieldBytes += bytesOf(record[i]);
+      }
+    }
+    specialtyIndex.add(recNo, record[specialtiesField]);
+    sizeIndex.add(recNo, RangeIndex.parseInteger(record[sizeField]));
+    rateIndex.add(recNo, RangeIndex.parseCents(record[rateField]));
+    columnStore.set(recNo, record);
+    slotCount = Math.max(slotCount, PrefixIndex.toBitIndex(recNo) + 1);
+    statistics.recordAdded();
+  }
+
+  /**
+   * Removes the field values of a record leaving the cache from all indexes.
+   *
+   * @param recNo  the record number of the record
+   * @param record the formerly cached record data
+   */
+  void remove(final long recNo, final String[] record)
+  {
+    for (int i = 0; i < record.length && i < fieldIndexes.length; ++i)
+    {
+      fieldIndexes[i].remove(recNo, record[i]);
+      if (dictionaries[i] == null)
+      {
+        plainFieldBytes -= bytesOf(record[i]);
+      }
+    }
+    specialtyIndex.remove(recNo, record[specialtiesField]);
+    sizeIndex.remove(recNo);
+    rateIndex.remove(recNo);
+    columnStore.clear(recNo);
+    statistics.recordRemoved();
+  }
+
+  /**
+   * Estimates the memory taken by the record data in the cache, kept up to
+   * date as records are added and removed. The values of a dictionary-encoded
+   * field are counted once per distinct value, all other values once per
+   * record.
+   *
+   * @return the estimated size of the cached record data in bytes
+   */
+  long getCacheBytes()
+  {
+    long bytes = plainFieldBytes;
+    for (ValueDictionary dictionary : dictionaries)
+    {
+      if (dictionary != null)
+      {
+        bytes += dictionary.getBytes();
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Estimates the memory taken by a string instance.
+   *
+   * @param value the string, or null
+   * @return the estimated size of the string in bytes, 0 for null
+   */
+  static long bytesOf(final String value)
+  {
+    return value == null ? 0 : STRING_OVERHEAD + 2L * value.length();
+  }
+
+  /**
+   * Provides the sorted index over a record field.
+   *
+   * @param field the index of the field within a record
+   * @return the field index
+   */
+  PrefixIndex getFieldIndex(final int field)
+  {
+    return fieldIndexes[field];
+  }
+
+  /**
+   * Provides the number of indexed record fields.
+   *
+   * @return the number of fields
+   */
+  int getNumberOfFields()
+  {
+    return fieldIndexes.length;
+  }
+
+  /**
+   * Provides the inverted index over the specialties.
+   *
+   * @return the specialty index
+   */
+  SpecialtyIndex getSpecialtyIndex()
+  {
+    return specialtyIndex;
+  }
+
+  /**
+   * Provides the numeric column and range index over the size field.
+   *
+   * @return the size index
+   */
+  RangeIndex getSizeIndex()
+  {
+    return sizeIndex;
+  }
+
+  /**
+   * Provides the numeric column and range index over the rate field.
+   *
+   * @return the rate index
+   */
+  RangeIndex getRateIndex()
+  {
+    return rateIndex;
+  }
+
+  /**
+   * Provides the columnar copy of the cached records.
+   *
+   * @return the column store
+   */
+  ColumnStore getColumnStore()
+  {
+    return columnStore;
+  }
+
+  /**
+   * Provides the index of the specialties field within a record.
+   *
+   * @return the field index
+   */
+  int getSpecialtiesField()
+  {
+    return specialtiesField;
+  }
+
+  /**
+   * Provides the number of record slots covered by the indexes. Record
+   * numbers are recycled, so this is bounded by the number of slots in the
+   * database file.
+   *
+   * @return one more than the highest record number ever indexed
+   */
+  int getSlotCount()
+  {
+    return slotCount;
+  }
+
+  /**
+   * Provides the index of the size field within a record.
+   *
+   * @return the field index
+   */
+  int getSizeField()
+  {
+    return sizeField;
+  }
+
+  /**
+   * Provides the index of the rate field within a record.
+   *
+   * @return the field index
+   */
+  int getRateField()
+  {
+    return rateField;
+  }
+
+  /**
+   * Provides the statistics over the indexed records.
+   *
+   * @return the statistics
+   */
+  Statistics getStatistics()
+  {
+    return statistics;
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * @(#)RecordLockWaitEvent.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.db;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event spanning a wait for a record lock held by
+ * another lock owner. Together with the JDK's own events, a recording shows
+ * which record a thread parked in {@link Data} is waiting for. Like all JFR
+ * events, it costs next to nothing while it is not being recorded.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+@Name("suncertify.RecordLockWait")
+@Label("Record Lock Wait")
+@Category({"Suncertify", "Database"})
+@Description("Wait for a record lock held by another lock owner")
+final class RecordLockWaitEvent extends Event
+{
+  /**
+   * The record number of the record waited for.
+   */
+  @Label("Record Number")
+  long recNo;
+
+  /**
+   * The owner holding the lock when the wait began.
+   */
+  @Label("Holder")
+  String holder;
+
+  /**
+   * The owner waiting for the lock.
+   */
+  @Label("Waiter")
+  String waiter;
+}
@@ -0,0 +1,46 @@
+/*
+ * @(#)RecordMapper.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+/**
+ * Converts matching records into search results directly from the record
+ * cache, see {@link DBSearchFriendlyAccess#find(Query, RecordMapper)}.
+ * <p/>
+ * The record data handed to a mapper is the cached record itself, shared
+ * rather than copied. Cached records are immutable: the cache replaces a
+ * record on update instead of modifying it. A mapper must therefore neither
+ * modify the record data nor let it escape; it should copy out the field
+ * values it needs.
+ *
+ * @param <T> the type of the search results
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public interface RecordMapper<T>
+{
+  /**
+   * Converts a matching record.
+   *
+   * @param recNo   the record number of the record
+   * @param version the version of the record, which changes with every write
+   *                to the record, see
+   *                {@link DBSearchFriendlyAccess#compareAndUpdate(long, long, String[])}
+   * @param record  the shared, read-only record data
+   * @return the search result for the record
+   */
+  T map(long recNo, long version, String[] record);
+}
@@ -19,6 +19,7 @@ package suncertify.db;
 import suncertify.services.Contractor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -70,6 +71,15 @@ public final class RecordMetaData
    */
   private List<Integer> fieldLengths = new ArrayList<Integer>();
 
+  /**
+   * The precomputed permutation from schema field indexes (the constants of
+   * {@link DBSchema}) to record indexes, i.e., the positions within a
+   * record. Spares the conversions between records and contractors the
+   * per-field name lookups.
+   */
+  private final int[] schemaToRecordIndexes =
+    new int[DBSchema.getNumberOfFields()];
+
   /**
    * Private constructor enforcing the usage as a Singleton.
    */
@@ -97,6 +107,7 @@ public final class RecordMetaData
     recordLength = Short.SIZE / Byte.SIZE;
     fieldNamesToIndexes.clear();
     fieldLengths.clear();
+    Arrays.fill(schemaToRecordIndexes, 0);
   }
 
   /**
@@ -110,7 +121,13 @@ public final class RecordMetaData
   public void addField(final String fieldName, final int fieldLength)
   {
     // Index of this field name is the size of the map before adding this.
-    fieldNamesToIndexes.put(fieldName, fieldNamesToIndexes.size());
+    int fieldNameIndex = fieldNamesToIndexes.size();
+    fieldNamesToIndexes.put(fieldName, fieldNameIndex);
+    int schemaIndex = DBSchema.getFieldIndex(fieldName);
+    if (schemaIndex >= 0)
+    {
+      schemaToRecordIndexes[schemaIndex] = fieldNameIndex;
+    }
     // Append field length. The index corresponds to the position in the
     // record.
     fieldLengths.add(fieldLength);
@@ -139,6 +156,18 @@ public final class RecordMetaData
     return fieldNamesToIndexes.get(fieldName);
   }
 
+  /**
+   * Returns the position of a field within a record given its schema index.
+   *
+   * @param schemaIndex the field index as given by the constants of
+   *                    {@link DBSchema}
+   * @return the index of the field within a record
+   */
+  public int getRecordIndex(final int schemaIndex)
+  {
+    return schemaToRecordIndexes[schemaIndex];
+  }
+
   /**
    * Returns the maximum length of a record field given its index.
    *
@@ -162,6 +191,26 @@ public final class RecordMetaData
    *                               record
    */
   public static Contractor recordToContractor(final String[] record)
+  {
+    return recordToContractor(record, null);
+  }
+
+  /**
+   * Converts the projection of a string array-based database record onto some
+   * of its fields to a sparse {@link Contractor} object, whose other
+   * properties are null.
+   *
+   * @param record the string array representing the database record
+   * @param fields the fields to convert, indexed like the field index
+   *               constants of {@link DBSchema}, or null for all fields
+   * @return the corresponding <code>Contractor</code> object
+   * @throws IllegalStateException if the <code>RecordMetaData</code> instance has not been
+   *                               fully initialized or if the length of the record does not
+   *                               correspond to the expected number of fields of a database
+   *                               record
+   */
+  public static Contractor recordToContractor(final String[] record,
+                                              final boolean[] fields)
   {
     if (INSTANCE.fieldNamesToIndexes.size()
       != DBSchema.getNumberOfFields())
@@ -174,21 +223,31 @@ public final class RecordMetaData
         + record.length);
     }
     Contractor contractor = new Contractor();
-    contractor.setName(record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.NAME_INDEX))]);
-    contractor.setLocation(record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.LOCATION_INDEX))]);
-    contractor.setSpecialties(record[INSTANCE.fieldNamesToIndexes
-      .get(DBSchema.getFieldName(DBSchema.SPECIALTIES_INDEX))]);
-    contractor.setSize(record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.SIZE_INDEX))]);
-    contractor.setRate(record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.RATE_INDEX))]);
-    contractor.setOwner(record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.OWNER_INDEX))]);
+    contractor.setName(project(record, fields, DBSchema.NAME_INDEX));
+    contractor.setLocation(project(record, fields, DBSchema.LOCATION_INDEX));
+    contractor.setSpecialties(project(record, fields,
+      DBSchema.SPECIALTIES_INDEX));
+    contractor.setSize(project(record, fields, DBSchema.SIZE_INDEX));
+    contractor.setRate(project(record, fields, DBSchema.RATE_INDEX));
+    contractor.setOwner(project(record, fields, DBSchema.OWNER_INDEX));
     return contractor;
   }
 
+  /**
+   * Provides a field of a record if it is part of a projection.
+   *
+   * @param record      the string array representing the database record
+   * @param fields      the fields of the projection, or null for all fields
+   * @param schemaIndex the field index constant of {@link DBSchema}
+   * @return the field value, or null if the field is not projected
+   */
+  private static String project(final String[] record, final boolean[] fields,
+                                final int schemaIndex)
+  {
+    return fields == null || fields[schemaIndex] ? record[INSTANCE
+      .schemaToRecordIndexes[schemaIndex]] : null;
+  }
+
   /**
    * Converts a {@link Contractor} object to a string array-based record. The
    * order in which the individual properties are organized in the string
@@ -208,21 +267,14 @@ public final class RecordMetaData
     {
       throw new IllegalStateException("INSTANCE not initialized");
     }
+    int[] p = INSTANCE.schemaToRecordIndexes;
     String[] record = new String[DBSchema.getNumberOfFields()];
-    record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.NAME_INDEX))] = contractor.getName();
-    record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.LOCATION_INDEX))] = contractor
-      .getLocation();
-    record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.SPECIALTIES_INDEX))] = contractor
-      .getSpecialties();
-    record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.SIZE_INDEX))] = contractor.getSize();
-    record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.RATE_INDEX))] = contractor.getRate();
-    record[INSTANCE.fieldNamesToIndexes.get(DBSchema
-      .getFieldName(DBSchema.OWNER_INDEX))] = contractor.getOwner();
+    record[p[DBSchema.NAME_INDEX]] = contractor.getName();
+    record[p[DBSchema.LOCATION_INDEX]] = contractor.getLocation();
+    record[p[DBSchema.SPECIALTIES_INDEX]] = contractor.getSpecialties();
+    record[p[DBSchema.SIZE_INDEX]] = contractor.getSize();
+    record[p[DBSchema.RATE_INDEX]] = contractor.getRate();
+    record[p[DBSchema.OWNER_INDEX]] = contractor.getOwner();
     return record;
   }
 }
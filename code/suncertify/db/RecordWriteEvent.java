@@ -0,0 +1,89 @@
+/*
+ * @(#)RecordWriteEvent.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.db;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event spanning a write of one record, or of a group
+ * of records in adjacent slots, to the database file by {@link DBFileAccess}.
+ * The span includes the verification of the valid flags. Like all JFR
+ * events, it costs next to nothing while it is not being recorded.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+@Name("suncertify.RecordWrite")
+@Label("Record Write")
+@Category({"Suncertify", "Database"})
+@Description("Write of records to the database file")
+final class RecordWriteEvent extends Event
+{
+  /**
+   * The kind of write: <code>create</code>, <code>update</code> or
+   * <code>delete</code>.
+   */
+  @Label("Operation")
+  String operation;
+
+  /**
+   * The record number of the (first) record written.
+   */
+  @Label("Record Number")
+  long recNo;
+
+  /**
+   * The number of records written.
+   */
+  @Label("Records")
+  int records;
+
+  /**
+   * The number of bytes written.
+   */
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+
+  /**
+   * Ends the event and commits it with its figures if it is being recorded.
+   *
+   * @param operation the kind of write
+   * @param recNo     the record number of the (first) record written
+   * @param records   the number of records written
+   * @param bytes     the number of bytes written
+   */
+  void commit(final String operation, final long recNo, final int records,
+              final long bytes)
+  {
+    end();
+    if (shouldCommit())
+    {
+      this.operation = operation;
+      this.recNo = recNo;
+      this.records = records;
+      this.bytes = bytes;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * @(#)SearchCache.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of search results, mapping queries to the record numbers of
+ * their matches. Clients tend to repeat the same few searches, so a repeated
+ * query between writes is answered by a hash lookup instead of a scan.
+ * <p/>
+ * Results are validated by version stamps rather than being invalidated
+ * eagerly. Each write bumps a modification counter per record field it
+ * changes, creating or deleting a record bumps a structural counter. A result
+ * carries the sum of the structural counter and the counters of the fields its
+ * query constrains as of its computation; as all counters only ever grow, the
+ * result is still valid if and only if that sum is unchanged. Booking a
+ * record, for instance, changes the owner field only and therefore leaves the
+ * results of searches by name or location valid.
+ * <p/>
+ * Results are cached by the criteria of their queries only. The order and
+ * limit of a query are applied to its matches afterwards, so that all sort
+ * orders and page sizes of the same search share one result.
+ * <p/>
+ * The version counters are modified with the write lock of the {@link Data}
+ * Singleton instance held and read with the read lock held. The map of results
+ * is additionally guarded by this object's monitor since concurrent readers
+ * share it.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class SearchCache
+{
+  /**
+   * The maximum number of cached results.
+   */
+  private static final int MAX_ENTRIES = 64;
+
+  /**
+   * The indexes, which determine the positions of the specialties, size and
+   * rate fields within a record.
+   */
+  private final RecordIndexes indexes;
+
+  /**
+   * The number of records created or deleted so far.
+   */
+  private long structuralVersion = 0;
+
+  /**
+   * The number of changes per record field so far.
+   */
+  private final long[] fieldVersions;
+
+  /**
+   * The cached results in least recently used order.
+   */
+  private final Map<Query, Entry> entries = new LinkedHashMap<Query, Entry>(
+    16, 0.75f, true)
+  {
+    private static final long serialVersionUID = 1L;
+
+    // The entry type is qualified: inside this anonymous subclass, a plain
+    // Entry would resolve to the member type inherited from LinkedHashMap.
+    @Override
+    protected boolean removeEldestEntry(
+      final Map.Entry<Query, SearchCache.Entry> eldest)
+    {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  /**
+   * Creates an empty search cache.
+   *
+   * @param indexes the indexes over the cached records
+   */
+  SearchCache(final RecordIndexes indexes)
+  {
+    this.indexes = indexes;
+    fieldVersions = new long[indexes.getNumberOfFields()];
+  }
+
+  /**
+   * Notes a write to a record. Must be called with the write lock held.
+   *
+   * @param oldRecord the former record data, or null if the record has been
+   *                  created
+   * @param newRecord the new record data, or null if the record has been
+   *                  deleted
+   */
+  void recordChanged(final String[] oldRecord, final String[] newRecord)
+  {
+    if (oldRecord == null || newRecord == null)
+    {
+      ++structuralVersion;
+      return;
+    }
+    for (int i = 0; i < fieldVersions.length; ++i)
+    {
+      String oldValue = i < oldRecord.length ? oldRecord[i] : null;
+      String newValue = i < newRecord.length ? newRecord[i] : null;
+      if (oldValue == null ? newValue != null : oldValue.equals(newValue)
+        == false)
+      {
+        ++fieldVersions[i];
+      }
+    }
+  }
+
+  /**
+   * Looks up the still valid result of a query. Must be called with the read
+   * or write lock held.
+   *
+   * @param query the query
+   * @return a newly allocated bit set of the record numbers of the matching
+   *         records, or null if there is no valid result
+   */
+  BitSet get(final Query query)
+  {
+    Entry entry;
+    Query key = query.isOrdered() || query.getLimit() != Integer.MAX_VALUE
+      ? criteriaOf(query) : query;
+    synchronized (this)
+    {
+      entry = entries.get(key);
+    }
+    if (entry == null || entry.stamp != stamp(query))
+    {
+      return null;
+    }
+    return (BitSet) entry.matches.clone();
+  }
+
+  /**
+   * Caches the result of a query. Must be called with the read or write lock
+   * held, and the same lock must have been held while computing the result.
+   *
+   * @param query   the query
+   * @param matches the bit set of the record numbers of the matching records,
+   *                which is copied
+   */
+  void put(final Query query, final BitSet matches)
+  {
+    Entry entry = new Entry(stamp(query), (BitSet) matches.clone());
+    synchronized (this)
+    {
+      entries.put(criteriaOf(query), entry);
+    }
+  }
+
+  /**
+   * Copies the criteria of a query, leaving out its order and limit.
+   *
+   * @param query the query
+   * @return the copy, in record number order and without a limit
+   */
+  private static Query criteriaOf(final Query query)
+  {
+    Query criteria = new Query(query);
+    criteria.setOrder(Query.NO_ORDER, false);
+    criteria.setLimit(Integer.MAX_VALUE);
+    return criteria;
+  }
+
+  /**
+   * Computes the version stamp of a query: the sum of the structural counter
+   * and the counters of all fields the query constrains.
+   *
+   * @param query the query
+   * @return the version stamp
+   */
+  private long stamp(final Query query)
+  {
+    long stamp = structuralVersion;
+    String[] exact = query.getExactCriteria();
+    String[] prefix = query.getPrefixCriteria();
+    for (int i = 0; i < fieldVersions.length; ++i)
+    {
+      if ((exact != null && i < exact.length && exact[i] != null)
+        || (prefix != null && i < prefix.length && prefix[i] != null))
+      {
+        stamp += fieldVersions[i];
+      }
+    }
+    if (query.getSpecialties() != null)
+    {
+      stamp += fieldVersions[indexes.getSpecialtiesField()];
+    }
+    if (query.isSizeConstrained())
+    {
+      stamp += fieldVersions[indexes.getSizeField()];
+    }
+    if (query.isRateConstrained())
+    {
+      stamp += fieldVersions[indexes.getRateField()];
+    }
+    return stamp;
+  }
+
+  /**
+   * A cached result.
+   */
+  private static final class Entry
+  {
+    /**
+     * The version stamp of the query at the time of computation.
+     */
+    private final long stamp;
+
+    /**
+     * The record numbers of the matching records.
+     */
+    private final BitSet matches;
+
+    /**
+     * Creates a cached result.
+     *
+     * @param stamp   the version stamp of the query
+     * @param matches the record numbers of the matching records
+     */
+    private Entry(final long stamp, final BitSet matches)
+    {
+      this.stamp = stamp;
+      this.matches = matches;
+    }
+  }
+}
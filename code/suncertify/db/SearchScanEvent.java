@@ -0,0 +1,71 @@
+/*
+ * @(#)SearchScanEvent.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.db;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event spanning the selection of the records matching
+ * a query in {@link Data}, whether answered by the search cache, by index
+ * lookups or by a full scan. The criteria are described by their shape only,
+ * e.g. which fields are constrained, never by their values. Like all JFR
+ * events, it costs next to nothing while it is not being recorded.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+@Name("suncertify.SearchScan")
+@Label("Search Scan")
+@Category({"Suncertify", "Database"})
+@Description("Selection of the records matching a query")
+final class SearchScanEvent extends Event
+{
+  /**
+   * The shape of the criteria, see {@link Query#shape()}.
+   */
+  @Label("Criteria")
+  String criteria;
+
+  /**
+   * Whether the matches were taken from the search cache.
+   */
+  @Label("Cached")
+  boolean cached;
+
+  /**
+   * Whether the records were selected by a full scan.
+   */
+  @Label("Full Scan")
+  boolean fullScan;
+
+  /**
+   * The number of record slots examined record by record.
+   */
+  @Label("Rows Scanned")
+  long rowsScanned;
+
+  /**
+   * The number of matching records.
+   */
+  @Label("Rows Matched")
+  long rowsMatched;
+}
@@ -0,0 +1,212 @@
+/*
+ * @(#)SpecialtyIndex.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An inverted index over the comma-separated list of the specialties field.
+ * Each individual specialty (token) such as "Painting" maps to the set of
+ * record numbers whose specialties list contains that token, so that finding
+ * all contractors doing a certain type of work is a lookup rather than a scan.
+ * Tokens are compared case-insensitively and without surrounding blanks. This
+ * class is <em>not</em> thread-safe; it is guarded by the read/write lock of
+ * the {@link Data} Singleton instance.
+ * <p/>
+ * The postings lists are implemented as bit sets over the densely assigned
+ * record numbers, which is both a compact representation (one bit per record
+ * slot) and allows AND/OR combinations to be computed word by word.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class SpecialtyIndex
+{
+  /**
+   * The separator of the individual specialties within the field value.
+   */
+  private static final String SEPARATOR = ",";
+
+  /**
+   * Mapping from normalized tokens to the record numbers of the records
+   * containing them.
+   */
+  private final Map<String, BitSet> postings = new HashMap<String, BitSet>();
+
+  /**
+   * Splits a specialties field value into normalized tokens. Empty tokens are
+   * skipped.
+   *
+   * @param specialties the comma-separated specialties field value
+   * @return the normalized tokens, possibly containing duplicates
+   */
+  static String[] tokenize(final String specialties)
+  {
+    String[] tokens = specialties.split(SEPARATOR);
+    int n = 0;
+    for (String token : tokens)
+    {
+      String normalized = normalize(token);
+      if (normalized.length() > 0)
+      {
+        tokens[n++] = normalized;
+      }
+    }
+    String[] result = new String[n];
+    System.arraycopy(tokens, 0, result, 0, n);
+    return result;
+  }
+
+  /**
+   * Normalizes a single specialty so that it can be used as a key into the
+   * index.
+   *
+   * @param specialty the specialty as given by the record or the caller
+   * @return the trimmed, lower-case specialty
+   */
+  static String normalize(final String specialty)
+  {
+    return specialty.trim().toLowerCase(Locale.US);
+  }
+
+  /**
+   * Adds the tokens of a specialties field value to the index.
+   *
+   * @param recNo       the record number of the record holding the value
+   * @param specialties the specialties field value, ignored if
+   *                    <code>null</code>
+   */
+  void add(final long recNo, final String specialties)
+  {
+    if (specialties == null)
+    {
+      return;
+    }
+    for (String token : tokenize(specialties))
+    {
+      BitSet recNos = postings.get(token);
+      if (recNos == null)
+      {
+        recNos = new BitSet();
+        postings.put(token, recNos);
+      }
+      recNos.set(PrefixIndex.toBitIndex(recNo));
+    }
+  }
+
+  /**
+   * Removes the tokens of a former specialties field value from the index.
+   *
+   * @param recNo       the record number of the record having held the value
+   * @param specialties the former specialties field value, ignored if
+   *                    <code>null</code>
+   */
+  void remove(final long recNo, final String specialties)
+  {
+    if (specialties == null)
+    {
+      return;
+    }
+    for (String token : tokenize(specialties))
+    {
+      BitSet recNos = postings.get(token);
+      if (recNos != null)
+      {
+        recNos.clear(PrefixIndex.toBitIndex(recNo));
+        if (recNos.isEmpty())
+        {
+          postings.remove(token);
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the records containing a given specialty.
+   *
+   * @param specialty the specialty, in any case
+   * @return the number of records containing the specialty
+   */
+  int count(final String specialty)
+  {
+    BitSet recNos = postings.get(normalize(specialty));
+    return recNos == null ? 0 : recNos.cardinality();
+  }
+
+  /**
+   * Provides the record numbers of all records containing all of
+   * (<code>matchAll</code>) or any of the given specialties. The postings
+   * lists are intersected starting with the shortest one.
+   *
+   * @param specialties the specialties to look up, in any case
+   * @param matchAll    <code>true</code> to require all specialties (AND),
+   *                    <code>false</code> to require any of them (OR)
+   * @return a newly allocated bit set of matching record numbers
+   */
+  BitSet lookup(final String[] specialties, final boolean matchAll)
+  {
+    BitSet[] lists = new BitSet[specialties.length];
+    for (int i = 0; i < specialties.length; ++i)
+    {
+      BitSet recNos = postings.get(normalize(specialties[i]));
+      if (recNos == null)
+      {
+        if (matchAll)
+        {
+          return new BitSet(); // One missing specialty empties the AND.
+        }
+        recNos = new BitSet();
+      }
+      lists[i] = recNos;
+    }
+    BitSet result = new BitSet();
+    if (lists.length == 0)
+    {
+      return result;
+    }
+    if (matchAll)
+    {
+      int shortest = 0;
+      for (int i = 1; i < lists.length; ++i)
+      {
+        if (lists[i].cardinality() < lists[shortest].cardinality())
+        {
+          shortest = i;
+        }
+      }
+      result.or(lists[shortest]);
+      for (int i = 0; i < lists.length && result.isEmpty() == false; ++i)
+      {
+        if (i != shortest)
+        {
+          result.and(lists[i]);
+        }
+      }
+    }
+    else
+    {
+      for (BitSet recNos : lists)
+      {
+        result.or(recNos);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,325 @@
+/*
+ * @(#)Statistics.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cheap statistics over the cached records on which the {@link QueryPlanner}
+ * bases its selectivity estimates: the number of rows, the number of distinct
+ * values and the most frequent values per field, and equi-depth histograms
+ * over the numeric size and rate columns. The row count is maintained on every
+ * write; the more expensive figures are recomputed from the indexes once the
+ * number of writes since the last refresh exceeds a tenth of the rows, which
+ * amortizes to a small constant cost per write. This class is <em>not</em>
+ * thread-safe; it is guarded by the read/write lock of the {@link Data}
+ * Singleton instance.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class Statistics
+{
+  /**
+   * The number of most frequent values kept per field.
+   */
+  private static final int TOP_VALUES = 8;
+
+  /**
+   * The number of buckets of the numeric histograms.
+   */
+  private static final int HISTOGRAM_BUCKETS = 16;
+
+  /**
+   * The maximum number of distinct values visited to count a prefix.
+   */
+  private static final int PREFIX_PROBE_KEYS = 32;
+
+  /**
+   * The minimum number of writes between two refreshes.
+   */
+  private static final int MIN_WRITES_BETWEEN_REFRESHES = 16;
+
+  /**
+   * The indexes the statistics are computed from.
+   */
+  private final RecordIndexes indexes;
+
+  /**
+   * The current number of rows (cached records).
+   */
+  private int rowCount = 0;
+
+  /**
+   * The number of writes since the last refresh.
+   */
+  private int writesSinceRefresh = 0;
+
+  /**
+   * Whether the statistics have been refreshed at least once. Until then,
+   * e.g. while the cache is being loaded, no automatic refresh takes place.
+   */
+  private boolean refreshed = false;
+
+  /**
+   * The most frequent values per field, as of the last refresh.
+   */
+  private final List<Map<String, Integer>> topValues =
+    new ArrayList<Map<String, Integer>>();
+
+  /**
+   * The total number of occurrences of the most frequent values per field.
+   */
+  private int[] topTotals;
+
+  /**
+   * The histogram over the size column, as of the last refresh.
+   */
+  private long[][] sizeHistogram = new long[0][];
+
+  /**
+   * The histogram over the rate column, as of the last refresh.
+   */
+  private long[][] rateHistogram = new long[0][];
+
+  /**
+   * Creates the statistics for a set of indexes.
+   *
+   * @param indexes the indexes the statistics are computed from
+   */
+  Statistics(final RecordIndexes indexes)
+  {
+    this.indexes = indexes;
+  }
+
+  /**
+   * Notes that a record has entered the cache.
+   */
+  void recordAdded()
+  {
+    ++rowCount;
+    noteWrite();
+  }
+
+  /**
+   * Notes that a record has left the cache.
+   */
+  void recordRemoved()
+  {
+    --rowCount;
+    noteWrite();
+  }
+
+  /**
+   * Counts a write and refreshes the statistics if enough writes have
+   * accumulated.
+   */
+  private void noteWrite()
+  {
+    if (refreshed
+      && ++writesSinceRefresh > Math.max(MIN_WRITES_BETWEEN_REFRESHES,
+      rowCount / 10))
+    {
+      refresh();
+    }
+  }
+
+  /**
+   * Recomputes the most frequent values and the histograms from the indexes.
+   */
+  void refresh()
+  {
+    topValues.clear();
+    topTotals = new int[indexes.getNumberOfFields()];
+    for (int i = 0; i < indexes.getNumberOfFields(); ++i)
+    {
+      Map<String, Integer> top = indexes.getFieldIndex(i).topValues(
+        TOP_VALUES);
+      topValues.add(top);
+      for (int count : top.values())
+      {
+        topTotals[i] += count;
+      }
+    }
+    sizeHistogram = indexes.getSizeIndex().histogram(HISTOGRAM_BUCKETS);
+    rateHistogram = indexes.getRateIndex().histogram(HISTOGRAM_BUCKETS);
+    writesSinceRefresh = 0;
+    refreshed = true;
+  }
+
+  /**
+   * Provides the current number of rows.
+   *
+   * @return the number of cached records
+   */
+  int getRowCount()
+  {
+    return rowCount;
+  }
+
+  /**
+   * Provides the number of distinct values of a field.
+   *
+   * @param field the index of the field within a record
+   * @return the number of distinct values
+   */
+  int getDistinctCount(final int field)
+  {
+    return indexes.getFieldIndex(field).distinctCount();
+  }
+
+  /**
+   * Provides the most frequent values of a field as of the last refresh.
+   *
+   * @param field the index of the field within a record
+   * @return a map of (value, count) pairs in descending order of counts
+   */
+  Map<String, Integer> getTopValues(final int field)
+  {
+    return topValues.get(field);
+  }
+
+  /**
+   * Estimates the number of records whose field exactly matches a value. A
+   * frequent value is looked up in the top values; any other value is assumed
+   * to be as frequent as the average of the remaining values.
+   *
+   * @param field the index of the field within a record
+   * @param value the value
+   * @return the estimated number of matching records
+   */
+  int estimateExact(final int field, final String value)
+  {
+    Integer count = topValues.get(field).get(value);
+    if (count != null)
+    {
+      return count;
+    }
+    int others = getDistinctCount(field) - topValues.get(field).size();
+    return others <= 0 ? 0 : Math.max(1, (rowCount - topTotals[field])
+      / others);
+  }
+
+  /**
+   * Estimates the number of records whose field begins with a prefix. Narrow
+   * prefixes are counted exactly; a prefix covering many distinct values is
+   * assumed to match half of the records.
+   *
+   * @param field  the index of the field within a record
+   * @param prefix the prefix
+   * @return the estimated number of matching records
+   */
+  int estimatePrefix(final int field, final String prefix)
+  {
+    if (prefix.length() == 0)
+    {
+      return rowCount;
+    }
+    int count = indexes.getFieldIndex(field).countPrefix(prefix,
+      PREFIX_PROBE_KEYS);
+    return count >= 0 ? count : rowCount / 2;
+  }
+
+  /**
+   * Estimates the number of records containing all or any of the given
+   * specialties. The postings list lengths are known exactly; for AND the
+   * shortest list is an upper bound, for OR the sum of the lengths.
+   *
+   * @param specialties the specialties
+   * @param matchAll    <code>true</code> for AND, <code>false</code> for OR
+   * @return the estimated number of matching records
+   */
+  int estimateSpecialties(final String[] specialties, final boolean matchAll)
+  {
+    int estimate = matchAll ? rowCount : 0;
+    for (String specialty : specialties)
+    {
+      int count = indexes.getSpecialtyIndex().count(specialty);
+      estimate = matchAll ? Math.min(estimate, count) : estimate + count;
+    }
+    return Math.min(estimate, rowCount);
+  }
+
+  /**
+   * Estimates the number of records whose size lies within a closed interval.
+   *
+   * @param min the lower bound, inclusive
+   * @param max the upper bound, inclusive
+   * @return the estimated number of matching records
+   */
+  int estimateSizeRange(final long min, final long max)
+  {
+    return estimateRange(sizeHistogram, min, max);
+  }
+
+  /**
+   * Estimates the number of records whose rate lies within a closed interval.
+   *
+   * @param min the lower bound in cents, inclusive
+   * @param max the upper bound in cents, inclusive
+   * @return the estimated number of matching records
+   */
+  int estimateRateRange(final long min, final long max)
+  {
+    return estimateRange(rateHistogram, min, max);
+  }
+
+  /**
+   * Estimates the number of records within a closed interval by means of a
+   * histogram, assuming the values to be uniformly distributed within each
+   * bucket.
+   *
+   * @param histogram the histogram
+   * @param min       the lower bound, inclusive
+   * @param max       the upper bound, inclusive
+   * @return the estimated number of matching records
+   */
+  private static int estimateRange(final long[][] histogram, final long min,
+                                   final long max)
+  {
+    double estimate = 0;
+    for (long[] bucket : histogram)
+    {
+      if (bucket[1] < min || bucket[0] > max)
+      {
+        continue;
+      }
+      double width = (double) bucket[1] - bucket[0] + 1;
+      double overlap = (double) Math.min(bucket[1], max)
+        - Math.max(bucket[0], min) + 1;
+      estimate += bucket[2] * overlap / width;
+    }
+    return (int) Math.ceil(estimate);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("rows=").append(rowCount).append(", distinct=[");
+    for (int i = 0; i < indexes.getNumberOfFields(); ++i)
+    {
+      sb.append(i == 0 ? "" : ", ").append(getDistinctCount(i));
+    }
+    sb.append("], size buckets=").append(sizeHistogram.length)
+      .append(", rate buckets=").append(rateHistogram.length)
+      .append(", writes since refresh=").append(writesSinceRefresh);
+    return sb.toString();
+  }
+}
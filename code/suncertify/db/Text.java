@@ -51,6 +51,14 @@ public final class Text
    */
   static final String CANT_INITIALIZE_DATABASE_CACHE =
     "Can't initialize database cache";
+  /**
+   * Lock profile:.
+   */
+  static final String LOCK_PROFILE = "Lock profile:";
+  /**
+   * Lock profile log timer.
+   */
+  static final String LOCK_PROFILE_LOG_TIMER = "Lock profile log timer";
   /**
    * Database closed.
    */
@@ -157,4 +165,33 @@ public final class Text
    */
   static final String UNEXPECTED_VALID_FLAG_VALUE =
     "Unexpected value of valid flag: %d != %d";
+  /**
+   * Search cursor #%d not found or expired.
+   */
+  static final String CURSOR_NOT_FOUND =
+    "Search cursor #%d not found or expired";
+  /**
+   * Record number %d given more than once.
+   */
+  static final String DUPLICATE_RECORD_NUMBER =
+    "Record number %d given more than once";
+  /**
+   * Negative limit %d.
+   */
+  static final String NEGATIVE_LIMIT = "Negative limit %d";
+  /**
+   * Batch arguments of different lengths: %d != %d.
+   */
+  static final String BATCH_LENGTH_MISMATCH =
+    "Batch arguments of different lengths: %d != %d";
+  /**
+   * Waiting for the lock on record #%d would deadlock.
+   */
+  static final String DEADLOCK_DETECTED =
+    "Waiting for the lock on record #%d would deadlock";
+  /**
+   * Can't restore the records of a failed write.
+   */
+  static final String CANT_RESTORE_RECORDS =
+    "Can't restore the records of a failed write";
 }
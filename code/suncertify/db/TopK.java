@@ -0,0 +1,379 @@
+/*
+ * @(#)TopK.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Selects the first matches of a query in the order and up to the limit of
+ * the query. The first <em>K</em> of <em>n</em> matches are either read off
+ * the sorted index over the order field, which stops as soon as
+ * <em>K</em> matches are found, or selected with a bounded heap in
+ * <em>O(n log K)</em>. Size and rate are compared by their numeric values
+ * as held by the range indexes, so that no field is parsed.
+ * <p/>
+ * This class is <em>not</em> thread-safe; it is guarded by the read/write
+ * lock of the {@link Data} Singleton instance.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class TopK
+{
+  /**
+   * Prohibits instantiation as this is a utility class.
+   */
+  private TopK()
+  {
+  }
+
+  /**
+   * Selects the first matches of a query.
+   *
+   * @param matches       the record numbers of all matches
+   * @param query         the query giving order and limit
+   * @param indexes       the indexes over the cached records
+   * @param cachedRecords the cached records by record number
+   * @return the record numbers of the first matches, in order
+   */
+  static int[] select(final BitSet matches, final Query query,
+                      final RecordIndexes indexes,
+                      final Map<Long, String[]> cachedRecords)
+  {
+    int count = matches.cardinality();
+    int limit = Math.min(query.getLimit(), count);
+    int field = query.getOrderField();
+    if (query.isOrdered() == false || field >= indexes.getNumberOfFields())
+    {
+      return first(matches, limit);
+    }
+    boolean descending = query.isDescending();
+    RangeIndex rangeIndex = null;
+    if (field == indexes.getSizeField())
+    {
+      rangeIndex = indexes.getSizeIndex();
+    }
+    else if (field == indexes.getRateField())
+    {
+      rangeIndex = indexes.getRateIndex();
+    }
+    // Reading off the index visits about limit / (count / slots) records
+    // until enough matches are found; the heap visits all count matches.
+    if ((long) limit * indexes.getSlotCount() <= (long) count * count)
+    {
+      return walk(matches, limit, rangeIndex != null ? rangeIndex
+        .postingsInOrder(descending) : indexes.getFieldIndex(field)
+        .postingsInOrder(descending));
+    }
+    Heap heap = new Heap(limit, rangeIndex != null, descending);
+    for (int recNo = matches.nextSetBit(0); recNo >= 0; recNo = matches
+      .nextSetBit(recNo + 1))
+    {
+      if (rangeIndex != null)
+      {
+        heap.offer(recNo, rangeIndex.valueOf(recNo), null);
+      }
+      else
+      {
+        String[] record = cachedRecords.get((long) recNo);
+        heap.offer(recNo, 0, record.length > field ? record[field] : null);
+      }
+    }
+    return heap.drain();
+  }
+
+  /**
+   * Selects the first matches in record number order.
+   *
+   * @param matches the record numbers of all matches
+   * @param limit   the number of matches to select
+   * @return the record numbers of the first matches
+   */
+  private static int[] first(final BitSet matches, final int limit)
+  {
+    int[] recNos = new int[limit];
+    int n = 0;
+    for (int recNo = matches.nextSetBit(0); n < limit; recNo = matches
+      .nextSetBit(recNo + 1))
+    {
+      recNos[n++] = recNo;
+    }
+    return recNos;
+  }
+
+  /**
+   * Reads the first matches off a sorted index. Matches without a value in
+   * the index come last.
+   *
+   * @param matches  the record numbers of all matches
+   * @param limit    the number of matches to select
+   * @param postings the record numbers per value in the order of the values
+   * @return the record numbers of the first matches, in order
+   */
+  private static int[] walk(final BitSet matches, final int limit,
+                            final Collection<BitSet> postings)
+  {
+    int[] recNos = new int[limit];
+    int n = 0;
+    BitSet taken = new BitSet();
+    for (BitSet posting : postings)
+    {
+      for (int recNo = posting.nextSetBit(0); recNo >= 0 && n < limit;
+           recNo = posting.nextSetBit(recNo + 1))
+      {
+        if (matches.get(recNo))
+        {
+          recNos[n++] = recNo;
+          taken.set(recNo);
+        }
+      }
+      if (n == limit)
+      {
+        return recNos;
+      }
+    }
+    for (int recNo = matches.nextSetBit(0); recNo >= 0 && n < limit;
+         recNo = matches.nextSetBit(recNo + 1))
+    {
+      if (taken.get(recNo) == false)
+      {
+        recNos[n++] = recNo;
+      }
+    }
+    return recNos;
+  }
+
+  /**
+   * A bounded heap keeping the first matches offered, with the last of them
+   * on top so that it is the one to be replaced. Keys are either numeric,
+   * {@link RangeIndex#NO_VALUE} meaning none, or strings, null meaning
+   * none.
+   */
+  private static final class Heap
+  {
+    /**
+     * The record numbers in heap order.
+     */
+    private final int[] recNos;
+
+    /**
+     * The numeric keys, parallel to the record numbers.
+     */
+    private final long[] values;
+
+    /**
+     * The string keys, parallel to the record numbers.
+     */
+    private final String[] strings;
+
+    /**
+     * Whether the keys are numeric rather than strings.
+     */
+    private final boolean numeric;
+
+    /**
+     * Whether the order is descending.
+     */
+    private final boolean descending;
+
+    /**
+     * The number of entries.
+     */
+    private int size = 0;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param capacity   the number of matches to keep
+     * @param numeric    true for numeric, false for string keys
+     * @param descending true for descending, false for ascending order
+     */
+    Heap(final int capacity, final boolean numeric, final boolean descending)
+    {
+      recNos = new int[capacity];
+      values = new long[capacity];
+      strings = new String[capacity];
+      this.numeric = numeric;
+      this.descending = descending;
+    }
+
+    /**
+     * Offers a match.
+     *
+     * @param recNo  the record number
+     * @param value  the numeric key, if any
+     * @param string the string key, if any
+     */
+    void offer(final int recNo, final long value, final String string)
+    {
+      if (size < recNos.length)
+      {
+        set(size, recNo, value, string);
+        siftUp(size++);
+      }
+      else if (size > 0 && compare(value, string, recNo, 0) < 0)
+      {
+        set(0, recNo, value, string);
+        siftDown(0, size);
+      }
+    }
+
+    /**
+     * Empties the heap.
+     *
+     * @return the record numbers kept, in order
+     */
+    int[] drain()
+    {
+      // Heap sort: move the last match to the end, one at a time.
+      for (int n = size - 1; n > 0; --n)
+      {
+        swap(0, n);
+        siftDown(0, n);
+      }
+      int[] result = Arrays.copyOf(recNos, size);
+      size = 0;
+      return result;
+    }
+
+    /**
+     * Compares a key with the key of an entry. Missing keys come last in
+     * either direction.
+     *
+     * @param value  the numeric key
+     * @param string the string key
+     * @param recNo  the record number breaking ties
+     * @param i      the entry
+     * @return less than, equal to or greater than 0 if the key comes before,
+     *         with or after the entry
+     */
+    private int compare(final long value, final String string,
+                        final int recNo, final int i)
+    {
+      boolean missing = numeric ? value == RangeIndex.NO_VALUE
+        : string == null;
+      boolean otherMissing = numeric ? values[i] == RangeIndex.NO_VALUE
+        : strings[i] == null;
+      int c;
+      if (missing || otherMissing)
+      {
+        c = missing == otherMissing ? 0 : missing ? 1 : -1;
+      }
+      else
+      {
+        if (numeric)
+        {
+          c = value < values[i] ? -1 : value > values[i] ? 1 : 0;
+        }
+        else
+        {
+          c = string.compareTo(strings[i]);
+        }
+        if (descending)
+        {
+          c = -c;
+        }
+      }
+      return c != 0 ? c : recNo - recNos[i];
+    }
+
+    /**
+     * Compares two entries.
+     *
+     * @param i the one entry
+     * @param j the other entry
+     * @return less than, equal to or greater than 0 if entry <code>i</code>
+     *         comes before, with or after entry <code>j</code>
+     */
+    private int compare(final int i, final int j)
+    {
+      return compare(values[i], strings[i], recNos[i], j);
+    }
+
+    /**
+     * Restores the heap order upwards from an entry.
+     *
+     * @param i the entry
+     */
+    private void siftUp(final int i)
+    {
+      for (int k = i; k > 0 && compare(k, (k - 1) / 2) > 0; k = (k - 1) / 2)
+      {
+        swap(k, (k - 1) / 2);
+      }
+    }
+
+    /**
+     * Restores the heap order downwards from an entry.
+     *
+     * @param i the entry
+     * @param n the number of entries in the heap
+     */
+    private void siftDown(final int i, final int n)
+    {
+      int k = i;
+      while (2 * k + 1 < n)
+      {
+        int child = 2 * k + 1;
+        if (child + 1 < n && compare(child + 1, child) > 0)
+        {
+          ++child;
+        }
+        if (compare(child, k) <= 0)
+        {
+          return;
+        }
+        swap(k, child);
+        k = child;
+      }
+    }
+
+    /**
+     * Sets an entry.
+     *
+     * @param i      the entry
+     * @param recNo  the record number
+     * @param value  the numeric key
+     * @param string the string key
+     */
+    private void set(final int i, final int recNo, final long value,
+                     final String string)
+    {
+      recNos[i] = recNo;
+      values[i] = value;
+      strings[i] = string;
+    }
+
+    /**
+     * Swaps two entries.
+     *
+     * @param i the one entry
+     * @param j the other entry
+     */
+    private void swap(final int i, final int j)
+    {
+      int recNo = recNos[i];
+      long value = values[i];
+      String string = strings[i];
+      set(i, recNos[j], values[j], strings[j]);
+      set(j, recNo, value, string);
+    }
+  }
+}
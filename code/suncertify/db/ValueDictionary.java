@@ -0,0 +1,201 @@
+/*
+ * @(#)ValueDictionary.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dictionary of the distinct values of a record field with low cardinality,
+ * such as the location or the rate. Each distinct value is assigned a small
+ * integer code and one canonical <code>String</code> instance. Cached records
+ * share the canonical instances instead of holding a string of their own per
+ * field, and the {@link ColumnStore} keeps the codes instead of the bytes, so
+ * that an exact match becomes an integer comparison.
+ * <p/>
+ * The codes are reference-counted by the records stored in the column store.
+ * A value no longer used by any record is removed, and its code is reused for
+ * the next new value, so that a field whose values churn with updates does
+ * not make the dictionary grow for the life of the server. This class is
+ * <em>not</em> thread-safe; it is guarded by the read/write lock of the
+ * {@link Data} Singleton instance.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class ValueDictionary
+{
+  /**
+   * The code denoting the absence of a value.
+   */
+  static final int NO_CODE = -1;
+
+  /**
+   * The codes by value.
+   */
+  private final Map<String, Integer> codes = new HashMap<String, Integer>();
+
+  /**
+   * The canonical values by code, null for a released code.
+   */
+  private final List<String> values = new ArrayList<String>();
+
+  /**
+   * The number of records using each code.
+   */
+  private int[] references = new int[16];
+
+  /**
+   * The released codes, to be reused before new codes are assigned.
+   */
+  private final List<Integer> releasedCodes = new ArrayList<Integer>();
+
+  /**
+   * The estimated memory taken by the values in use, in bytes.
+   */
+  private long bytes = 0;
+
+  /**
+   * Provides the code of a value on behalf of a record using it, assigning a
+   * code to a new value. Each acquisition must be matched by a
+   * {@link #release(int)} once the record no longer uses the value.
+   *
+   * @param value the value, or null
+   * @return the code of the value, or {@link #NO_CODE} for null
+   */
+  int acquire(final String value)
+  {
+    if (value == null)
+    {
+      return NO_CODE;
+    }
+    Integer code = codes.get(value);
+    if (code == null)
+    {
+      if (releasedCodes.isEmpty())
+      {
+        code = values.size();
+        values.add(value);
+        if (code == references.length)
+        {
+          references = Arrays.copyOf(references, 2 * references.length);
+        }
+      }
+      else
+      {
+        code = releasedCodes.remove(releasedCodes.size() - 1);
+        values.set(code, value);
+      }
+      codes.put(value, code);
+      bytes += RecordIndexes.bytesOf(value);
+    }
+    ++references[code];
+    return code;
+  }
+
+  /**
+   * Releases a code acquired by a record that no longer uses the value. The
+   * value is removed once no record uses it any more.
+   *
+   * @param code the code, or {@link #NO_CODE}
+   */
+  void release(final int code)
+  {
+    if (code == NO_CODE)
+    {
+      return;
+    }
+    if (--references[code] == 0)
+    {
+      bytes -= RecordIndexes.bytesOf(values.get(code));
+      codes.remove(values.get(code));
+      values.set(code, null);
+      releasedCodes.add(code);
+    }
+  }
+
+  /**
+   * Looks up the code of a value without assigning a new one.
+   *
+   * @param value the value
+   * @return the code of the value, or {@link #NO_CODE} if the value is not
+   *         contained in the dictionary
+   */
+  int codeOf(final String value)
+  {
+    Integer code = codes.get(value);
+    return code == null ? NO_CODE : code;
+  }
+
+  /**
+   * Provides the canonical instance of a value. A value not contained in the
+   * dictionary is its own canonical instance once acquired.
+   *
+   * @param value the value, or null
+   * @return the canonical instance equal to <code>value</code>, or
+   *         <code>value</code> itself
+   */
+  String intern(final String value)
+  {
+    Integer code = value == null ? null : codes.get(value);
+    return code == null ? value : values.get(code);
+  }
+
+  /**
+   * Determines the codes of all values beginning with a prefix.
+   *
+   * @param prefix the prefix
+   * @return a newly allocated bit set of the matching codes
+   */
+  BitSet codesWithPrefix(final String prefix)
+  {
+    BitSet matching = new BitSet(values.size());
+    for (int code = 0; code < values.size(); ++code)
+    {
+      String value = values.get(code);
+      if (value != null && value.startsWith(prefix))
+      {
+        matching.set(code);
+      }
+    }
+    return matching;
+  }
+
+  /**
+   * Provides the number of distinct values in use.
+   *
+   * @return the size of the dictionary
+   */
+  int size()
+  {
+    return codes.size();
+  }
+
+  /**
+   * Estimates the memory taken by the values in use, each counted once.
+   *
+   * @return the estimated size of the values in bytes
+   */
+  long getBytes()
+  {
+    return bytes;
+  }
+}
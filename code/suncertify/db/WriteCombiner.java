@@ -0,0 +1,260 @@
+/*
+ * @(#)WriteCombiner.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.db;
+
+import suncertify.util.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The combining write path of the {@link Data} Singleton instance. Instead of
+ * each thread acquiring the write lock for its own create or update, threads
+ * publish their requests, {@link Mutation}s, to a shared queue. Whichever
+ * thread gets hold of the write lock becomes the combiner: it applies all
+ * pending requests as one batch, with a single coalesced write to the
+ * database file, and hands the outcomes back. The other threads wait for
+ * their outcomes without queueing up on the write lock at all, so that under
+ * heavy write contention a single lock handoff serves many requests.
+ * <p/>
+ * Waiting threads poll the write lock at short intervals in case no combiner
+ * is active. After a number of unsuccessful attempts they queue up on the
+ * write lock like any other writer, so that a steady stream of readers
+ * cannot starve them.
+ * <p/>
+ * A batch serves many requests, so the spans recorded while applying it
+ * belong to none of them in particular. The combiner's own {@link Trace} is
+ * suspended meanwhile, and each requesting thread instead adds a
+ * {@link #SPAN_NAME} span to its own trace, covering the time from
+ * publishing its mutation until the outcome is there.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class WriteCombiner
+{
+  /**
+   * The number of attempts to acquire the write lock without waiting for it,
+   * before waiting for it.
+   */
+  private static final int MAX_ATTEMPTS = 64;
+
+  /**
+   * The time to pause between two attempts to acquire the write lock, in
+   * nanoseconds.
+   */
+  private static final long PAUSE_NANOS = 20000;
+
+  /**
+   * The maximum number of batches a combiner applies before releasing the
+   * write lock, so that other operations get their turn.
+   */
+  private static final int MAX_BATCHES = 4;
+
+  /**
+   * The name of the span of a request in the combining write path.
+   */
+  static final String SPAN_NAME = "data.COMBINED_WRITE";
+
+  /**
+   * The applier of a batch of mutations, called with the write lock held.
+   */
+  interface Applier
+  {
+    /**
+     * Applies a batch of mutations and completes or fails each of them.
+     *
+     * @param batch the mutations in the order of their publication
+     */
+    void apply(List<Mutation> batch);
+  }
+
+  /**
+   * The write lock of the <code>Data</code> Singleton instance.
+   */
+  private final Lock writeLock;
+
+  /**
+   * The applier of the batches.
+   */
+  private final Applier applier;
+
+  /**
+   * The published mutations not yet applied.
+   */
+  private final Queue<Mutation> pending = new ConcurrentLinkedQueue<Mutation>();
+
+  /**
+   * Creates a write combiner.
+   *
+   * @param writeLock the write lock guarding the records
+   * @param applier   the applier of the batches
+   */
+  WriteCombiner(final Lock writeLock, final Applier applier)
+  {
+    this.writeLock = writeLock;
+    this.applier = applier;
+  }
+
+  /**
+   * Publishes a mutation and waits until it has been applied, either by a
+   * combining thread or, on getting hold of the write lock, by the current
+   * thread as the combiner.
+   *
+   * @param mutation the mutation
+   * @return the record number of a new record, or the new version of an
+   *         updated record
+   * @throws RecordNotFoundException if the mutation has failed with this
+   *                                 exception
+   */
+  long submit(final Mutation mutation) throws RecordNotFoundException
+  {
+    long start = System.nanoTime();
+    pending.add(mutation);
+    try
+    {
+      await(mutation);
+    }
+    finally
+    {
+      Trace.addSpan(SPAN_NAME, System.nanoTime() - start);
+    }
+    return mutation.getResult();
+  }
+
+  /**
+   * Publishes several mutations at once and waits until all of them have been
+   * applied, so that they usually end up in the same batch and thus in a
+   * single write lock acquisition and a single coalesced write. The outcome
+   * of each mutation is left to be queried from the mutation itself.
+   *
+   * @param mutations the mutations
+   */
+  void submitAll(final List<Mutation> mutations)
+  {
+    long start = System.nanoTime();
+    pending.addAll(mutations);
+    try
+    {
+      for (Mutation mutation : mutations)
+      {
+        await(mutation);
+      }
+    }
+    finally
+    {
+      Trace.addSpan(SPAN_NAME, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Waits until a published mutation has been applied, either by a combining
+   * thread or, on getting hold of the write lock, by the current thread as
+   * the combiner.
+   *
+   * @param mutation the mutation
+   */
+  private void await(final Mutation mutation)
+  {
+    int attempts = 0;
+    while (mutation.isDone() == false)
+    {
+      boolean locked;
+      if (++attempts < MAX_ATTEMPTS)
+      {
+        locked = writeLock.tryLock();
+      }
+      else
+      {
+        writeLock.lock();
+        locked = true;
+      }
+      if (locked)
+      {
+        try
+        {
+          combine();
+        }
+        finally
+        {
+          writeLock.unlock();
+        }
+      }
+      else
+      {
+        // Woken up early by the combiner that completes the mutation.
+        LockSupport.parkNanos(this, PAUSE_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Applies the pending mutations batch by batch. Must be called with the
+   * write lock held.
+   */
+  private void combine()
+  {
+    Trace trace = Trace.suspend();
+    try
+    {
+      applyBatches();
+    }
+    finally
+    {
+      Trace.resume(trace);
+    }
+  }
+
+  /**
+   * Applies up to {@link #MAX_BATCHES} batches of pending mutations.
+   */
+  private void applyBatches()
+  {
+    for (int i = 0; i < MAX_BATCHES; ++i)
+    {
+      List<Mutation> batch = new ArrayList<Mutation>();
+      Mutation mutation;
+      while ((mutation = pending.poll()) != null)
+      {
+        batch.add(mutation);
+      }
+      if (batch.isEmpty())
+      {
+        return;
+      }
+      try
+      {
+        applier.apply(batch);
+      }
+      catch (RuntimeException e)
+      {
+        // Do not leave the requesting threads waiting.
+        for (Mutation m : batch)
+        {
+          if (m.isDone() == false)
+          {
+            m.fail(e);
+          }
+        }
+      }
+    }
+  }
+}
@@ -17,7 +17,9 @@
 package suncertify.gui;
 
 import suncertify.db.DBSchema;
+import suncertify.services.BookRequest;
 import suncertify.services.BookResult;
+import suncertify.services.BookStatus;
 import suncertify.services.BusinessServices;
 import suncertify.services.Contractor;
 import suncertify.services.ServicesException;
@@ -41,6 +43,7 @@ import java.awt.event.MouseEvent;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -233,7 +236,8 @@ public class ClientMainFrame extends JFrame
     add(makeContentPane());
 
     // Set table properties.
-    table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    // Several rows may be selected so as to book them all at once.
+    table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
     table.setAutoResizeMode(JTable.AUTO_RESIZE_ALL_COLUMNS);
     table.setToolTipText(Text.TABLE_TOOL_TIP_TEXT);
 
@@ -288,16 +292,16 @@ public class ClientMainFrame extends JFrame
         {
           ListSelectionModel lsm = (ListSelectionModel) e
             .getSource();
-          boolean stillAvailable = false;
+          List<Contractor> selected = new ArrayList<Contractor>();
           if (!lsm.isSelectionEmpty())
           {
-            // Find out which indexes are selected.
-            int selRowVw = lsm.getMinSelectionIndex();
-            int selRow = table.convertRowIndexToModel(selRowVw);
-            Contractor c = tableData.getContractorAt(selRow);
-            stillAvailable = c.getOwner().isEmpty();
+            for (int selRowVw : table.getSelectedRows())
+            {
+              int selRow = table.convertRowIndexToModel(selRowVw);
+              selected.add(tableData.getContractorAt(selRow));
+            }
           }
-          bookButton.setEnabled(stillAvailable
+          bookButton.setEnabled(allAvailable(selected)
             && businessServices != null);
         }
       });
@@ -334,6 +338,93 @@ public class ClientMainFrame extends JFrame
     setVisible(true);
   }
 
+  /**
+   * Determines whether the book button applies to the selected contractors,
+   * that is, whether at least one is selected and all of them are still
+   * available. Package-private for testing.
+   *
+   * @param selected the selected contractors
+   * @return true if all selected contractors may be booked
+   */
+  static boolean allAvailable(final List<Contractor> selected)
+  {
+    if (selected.isEmpty())
+    {
+      return false;
+    }
+    for (Contractor contractor : selected)
+    {
+      if (contractor.getOwner().isEmpty() == false)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks a customer ID entered for booking several contractors at once.
+   * Package-private for testing.
+   *
+   * @param owner the customer ID, trimmed
+   * @return true if the customer ID consists of exactly as many digits as
+   *         the owner field holds
+   */
+  static boolean isValidCustomerId(final String owner)
+  {
+    return owner.matches("\\d{"
+      + DBSchema.getFieldLength(DBSchema.OWNER_INDEX) + "}");
+  }
+
+  /**
+   * Creates the request to book a contractor shown in the table, leaving the
+   * table's contractor untouched. Package-private for testing.
+   *
+   * @param recNo      the record number of the contractor
+   * @param contractor the contractor as shown in the table
+   * @param owner      the customer ID with which to book the contractor
+   * @return the booking request
+   */
+  static BookRequest bookRequest(final long recNo,
+                                 final Contractor contractor,
+                                 final String owner)
+  {
+    Contractor booking = new Contractor();
+    booking.setName(contractor.getName());
+    booking.setLocation(contractor.getLocation());
+    booking.setSpecialties(contractor.getSpecialties());
+    booking.setSize(contractor.getSize());
+    booking.setRate(contractor.getRate());
+    booking.setOwner(owner);
+    booking.setVersion(contractor.getVersion());
+    return new BookRequest(recNo, booking);
+  }
+
+  /**
+   * Counts the results of a batch booking per status. Package-private for
+   * testing.
+   *
+   * @param bookResults the booking results
+   * @return the number of results per status, including the statuses that
+   *         did not occur
+   */
+  static Map<BookStatus, Integer> countBookResults(
+    final List<BookResult> bookResults)
+  {
+    Map<BookStatus, Integer> counts =
+      new EnumMap<BookStatus, Integer>(BookStatus.class);
+    for (BookStatus status : BookStatus.values())
+    {
+      counts.put(status, 0);
+    }
+    for (BookResult bookResult : bookResults)
+    {
+      BookStatus status = bookResult.getBookStatus();
+      counts.put(status, counts.get(status) + 1);
+    }
+    return counts;
+  }
+
   /**
    * Makes the menu bar.
    *
@@ -680,7 +771,12 @@ public class ClientMainFrame extends JFrame
     //        @Override
     public void actionPerformed(final ActionEvent ae)
     {
-      if (Text.BOOK_BUTTON_TEXT.equals(ae.getActionCommand()))
+      if (Text.BOOK_BUTTON_TEXT.equals(ae.getActionCommand())
+        && table.getSelectedRowCount() > 1)
+      {
+        bookSelectedContractors();
+      }
+      else if (Text.BOOK_BUTTON_TEXT.equals(ae.getActionCommand()))
       {
         // Get the selected row (there should be one).
         int selRowVw = table.getSelectedRow();
@@ -733,6 +829,80 @@ public class ClientMainFrame extends JFrame
         }
       }
     }
+
+    /**
+     * Books all selected contractors for one customer with a single
+     * <code>bookBatch</code> request, then notifies the user of the outcome
+     * and refreshes the table once.
+     */
+    private void bookSelectedContractors()
+    {
+      String owner = JOptionPane.showInputDialog(ClientMainFrame.this,
+        Text.CUSTOMER_ID_PROMPT, Text.BOOK_CONTRACTORS_TITLE,
+        JOptionPane.QUESTION_MESSAGE);
+      if (owner == null)
+      {
+        // Cancelled.
+        table.requestFocusInWindow();
+        return;
+      }
+      owner = owner.trim();
+      if (isValidCustomerId(owner) == false)
+      {
+        JOptionPane.showMessageDialog(ClientMainFrame.this,
+          Text.INVALID_CUSTOMER_ID, Text.WARNING,
+          JOptionPane.WARNING_MESSAGE);
+        table.requestFocusInWindow();
+        return;
+      }
+
+      List<BookRequest> requests = new ArrayList<BookRequest>();
+      for (int selRowVw : table.getSelectedRows())
+      {
+        int selRow = table.convertRowIndexToModel(selRowVw);
+        requests.add(bookRequest(tableData.getRecordNumberAt(selRow),
+          tableData.getContractorAt(selRow), owner));
+      }
+
+      try
+      {
+        Map<BookStatus, Integer> counts = countBookResults(businessServices
+          .bookBatch(requests));
+        log.fine(counts.get(BookStatus.SUCCESSFULLY_BOOKED) + " of "
+          + requests.size() + " records successfully booked.");
+        JOptionPane.showMessageDialog(ClientMainFrame.this, String.format(
+          Text.CONTRACTORS_BOOKED, counts.get(BookStatus.SUCCESSFULLY_BOOKED),
+          requests.size(), counts.get(BookStatus.INTERMITTENTLY_GRABBED),
+          counts.get(BookStatus.INTERMITTENTLY_UPDATED), counts
+          .get(BookStatus.INTERMITTENTLY_DELETED)),
+          counts.get(BookStatus.SUCCESSFULLY_BOOKED) == requests.size()
+            ? Text.SUCCESS_NOTIFICATION : Text.WARNING,
+          counts.get(BookStatus.SUCCESSFULLY_BOOKED) == requests.size()
+            ? JOptionPane.INFORMATION_MESSAGE
+            : JOptionPane.WARNING_MESSAGE);
+      }
+      catch (ServicesException e)
+      {
+        log.log(Level.SEVERE, "Can't book selected records", e);
+        JOptionPane.showMessageDialog(ClientMainFrame.this,
+          Text.BOOK_OPERATION_FAILED + Text.NESTED_EXCEPTION_IS
+            + e.getMessage(), Text.ERROR, JOptionPane.ERROR_MESSAGE);
+      }
+      catch (RemoteException e)
+      {
+        log.log(Level.SEVERE, "Can't book selected records", e);
+        JOptionPane.showMessageDialog(ClientMainFrame.this,
+          Text.BOOK_OPERATION_FAILED + Text.NESTED_EXCEPTION_IS
+            + e.getMessage(), Text.ERROR, JOptionPane.ERROR_MESSAGE);
+      }
+      table.requestFocusInWindow();
+
+      if (businessServices != null)
+      {
+        // Refresh table by repeating the most recent search.
+        doSearch();
+      }
+    }
   }
 
   /**
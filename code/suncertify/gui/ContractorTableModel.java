@@ -48,6 +48,10 @@ public class ContractorTableModel extends AbstractTableModel
    * The list of record numbers corresponding to the contractors' list.
    */
   private ArrayList<Long> recordNumbers = new ArrayList<Long>();
+  /**
+   * The list of record versions corresponding to the contractors' list.
+   */
+  private ArrayList<Long> versions = new ArrayList<Long>();
 
   /**
    * Creates new instance of a table model to display contractor records.
@@ -118,6 +122,7 @@ public class ContractorTableModel extends AbstractTableModel
     Iterator<Map.Entry<Long, Contractor>> it = contractors.entrySet()
       .iterator();
     recordNumbers.clear();
+    versions.clear();
     this.contractors.clear();
     while (it.hasNext())
     {
@@ -133,6 +138,7 @@ public class ContractorTableModel extends AbstractTableModel
       data[DBSchema.OWNER_INDEX] = c.getOwner();
 
       recordNumbers.add(recNo);
+      versions.add(c.getVersion());
       this.contractors.add(data);
     }
   }
@@ -153,6 +159,7 @@ public class ContractorTableModel extends AbstractTableModel
     c.setSize(data[DBSchema.SIZE_INDEX]);
     c.setRate(data[DBSchema.RATE_INDEX]);
     c.setOwner(data[DBSchema.OWNER_INDEX]);
+    c.setVersion(versions.get(row));
     return c;
   }
 
@@ -186,6 +193,7 @@ public class ContractorTableModel extends AbstractTableModel
     data[DBSchema.OWNER_INDEX] = c.getOwner();
 
     contractors.set(row, data);
+    versions.set(row, c.getVersion());
   }
 
   /**
@@ -198,5 +206,6 @@ public class ContractorTableModel extends AbstractTableModel
   {
     contractors.remove(row);
     recordNumbers.remove(row);
+    versions.remove(row);
   }
 }
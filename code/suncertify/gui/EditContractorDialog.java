@@ -31,6 +31,7 @@ import java.awt.event.KeyListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.rmi.RemoteException;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,6 +58,13 @@ public class EditContractorDialog extends JDialog
    */
   static final int BUTTON_HOLD_DOWN_TIME = 200;
 
+  /**
+   * The number of attempts to send a booking request before giving up on a
+   * failing remote invocation. Retrying is safe as booking requests are
+   * idempotent. Package-private for testing.
+   */
+  static final int MAX_BOOK_ATTEMPTS = 3;
+
   /**
    * Logger object to log messages in the scope of this class.
    */
@@ -290,7 +298,7 @@ public class EditContractorDialog extends JDialog
     validOwner = false;
 
     BookActionHandler bookActionHandler = new BookActionHandler(recNo,
-      businessServices);
+      contractor.getVersion(), businessServices);
     okButton.addActionListener(bookActionHandler);
 
     okButton.setEnabled(validOwner);
@@ -374,6 +382,11 @@ public class EditContractorDialog extends JDialog
      * The record number needed for reference purposes.
      */
     private long recNo;
+    /**
+     * The version of the record as displayed, needed to detect interim
+     * changes.
+     */
+    private long version;
     /**
      * The business services interface to the model.
      */
@@ -387,12 +400,14 @@ public class EditContractorDialog extends JDialog
      * Creates an instance of a book action handler.
      *
      * @param recNo            the number of the record to book
+     * @param version          the version of the record as displayed
      * @param businessServices the business services model interface
      */
-    public BookActionHandler(final long recNo,
+    public BookActionHandler(final long recNo, final long version,
                              final BusinessServices businessServices)
     {
       this.recNo = recNo;
+      this.version = version;
       this.businessServices = businessServices;
       bookResult = null;
     }
@@ -413,12 +428,13 @@ public class EditContractorDialog extends JDialog
       contractor.setSize(sizeField.getText());
       contractor.setRate(rateField.getText());
       contractor.setOwner(ownerField.getText());
+      contractor.setVersion(version);
 
       // Activate controller book method, then display success or
       // failure info dialog (notification).
       try
       {
-        bookResult = businessServices.book(recNo, contractor);
+        bookResult = bookWithRetries(businessServices, recNo, contractor);
 
         switch (bookResult.getBookStatus())
         {
@@ -487,6 +503,44 @@ public class EditContractorDialog extends JDialog
     }
   }
 
+  /**
+   * Sends a booking request, repeating it on a failing remote invocation up
+   * to {@link #MAX_BOOK_ATTEMPTS} times in all. All attempts carry the same
+   * request ID, which makes a retry return the outcome of an attempt that
+   * did reach the server. Package-private for testing.
+   *
+   * @param businessServices the business services model interface
+   * @param recNo            the number of the record to book
+   * @param contractor       the contractor with which to book the record
+   * @return the result of the booking operation
+   * @throws ServicesException if the booking operation has failed
+   * @throws RemoteException   if the last attempt has failed to reach the
+   *                           server
+   */
+  static BookResult bookWithRetries(final BusinessServices businessServices,
+                                    final long recNo,
+                                    final Contractor contractor)
+    throws ServicesException, RemoteException
+  {
+    String requestId = UUID.randomUUID().toString();
+    for (int attempt = 1; ; ++attempt)
+    {
+      try
+      {
+        return businessServices.book(requestId, recNo, contractor);
+      }
+      catch (RemoteException e)
+      {
+        if (attempt >= MAX_BOOK_ATTEMPTS)
+        {
+          throw e;
+        }
+        Logger.getLogger(EditContractorDialog.class.getName()).log(
+          Level.WARNING, "Retrying to book record #" + recNo, e);
+      }
+    }
+  }
+
   /**
    * Sets the dialog's value for further reference before changing its
    * visibility status to invisible.
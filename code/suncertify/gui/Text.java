@@ -64,7 +64,8 @@ public final class Text
   /**
    * Book selected contractor.
    */
-  static final String BOOK_BUTTON_TOOL_TIP = "Book selected contractor";
+  static final String BOOK_BUTTON_TOOL_TIP =
+    "Book selected contractor(s)";
   /**
    * Select a contractor record.
    */
@@ -126,6 +127,27 @@ public final class Text
    * Book Contractor.
    */
   static final String BOOK_CONTRACTOR_TITLE = "Book Contractor";
+  /**
+   * Book Contractors.
+   */
+  static final String BOOK_CONTRACTORS_TITLE = "Book Contractors";
+  /**
+   * Customer ID (8 digits) for all selected contractors:.
+   */
+  static final String CUSTOMER_ID_PROMPT =
+    "Customer ID (8 digits) for all selected contractors:";
+  /**
+   * Invalid customer ID. A customer ID consists of 8 digits.
+   */
+  static final String INVALID_CUSTOMER_ID =
+    "Invalid customer ID. A customer ID consists of 8 digits";
+  /**
+   * %d of %d contractors successfully booked.\n
+   * %d grabbed, %d updated, %d deleted intermittently.
+   */
+  static final String CONTRACTORS_BOOKED =
+    "%d of %d contractors successfully booked.\n"
+      + "%d grabbed, %d updated, %d deleted intermittently";
   /**
    * OK.
    */
@@ -16,12 +16,24 @@
 
 package suncertify.rmi;
 
+import suncertify.services.BookResult;
+import suncertify.services.Contractor;
+import suncertify.services.ServicesException;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+
 /**
  * The <code>ContractorManagerRemote</code> interface enables the network client
  * not only to remotely access the business services methods (by extending
  * <code>Remote</code> and <code>BusinessServices</code>), but also to be a
  * remote observer itself getting notification about an imminent server shutdown
  * (by implementing <code>RemoteObservable</code>).
+ * <p/>
+ * Network clients may moreover pass a trace ID along with a search or a
+ * booking. The server logs slow requests under this ID, so that the time
+ * observed by the client can be lined up with the server-side breakdown;
+ * the difference is spent on the network and in RMI marshalling.
  *
  * @author Lars Kuettner
  * @version 1.0
@@ -29,4 +41,43 @@ package suncertify.rmi;
 public interface ContractorManagerRemote extends java.rmi.Remote,
   suncertify.services.BusinessServices, suncertify.util.RemoteObservable
 {
+  /**
+   * Searches just like
+   * {@link suncertify.services.BusinessServices#search(String, String)},
+   * tracing the request under a given trace ID.
+   *
+   * @param traceId  the trace ID chosen by the client, or null to have one
+   *                 assigned
+   * @param name     A string representing the contractor name to search for,
+   *                 or null
+   * @param location A string representing the location to search for, or null
+   * @return a map of all matching (record number, contractor) pairs
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered
+   */
+  Map<Long, Contractor> searchTraced(String traceId, String name,
+                                     String location)
+    throws RemoteException, ServicesException;
+
+  /**
+   * Books a record just like
+   * {@link suncertify.services.BusinessServices#book(long, Contractor)},
+   * tracing the request under a given trace ID.
+   *
+   * @param traceId    the trace ID chosen by the client, or null to have one
+   *                   assigned
+   * @param recNo      the record number of the record to book
+   * @param contractor the <code>Contractor</code> object with which to update
+   *                   the record
+   * @return A <code>BookResult</code> object representing the result of the
+   *         booking operation
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered
+   */
+  BookResult bookTraced(String traceId, long recNo, Contractor contractor)
+    throws RemoteException, ServicesException;
 }
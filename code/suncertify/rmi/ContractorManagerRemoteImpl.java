@@ -16,17 +16,22 @@
 
 package suncertify.rmi;
 
+import suncertify.services.BookRequest;
 import suncertify.services.BookResult;
 import suncertify.services.Contractor;
+import suncertify.services.ContractorBatch;
 import suncertify.services.ContractorManager;
+import suncertify.services.SearchQuery;
 import suncertify.services.ServicesException;
 import suncertify.util.Observable;
 import suncertify.util.RemoteObserver;
+import suncertify.util.Trace;
 
 import java.io.Serializable;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -36,7 +41,10 @@ import java.util.Map;
  * In addition: (i) Throws RemoteException (unlike
  * <code>ContractorManager</code> which doesn't know anything about remote
  * stuff). (ii) Remote observable being observed by client views and used to
- * broadcast the termination message.
+ * broadcast the termination message. (iii) Starts a {@link Trace} for each
+ * client request, so that requests exceeding the slow threshold are logged
+ * with the breakdown of their time. (iv) Returns search results as a
+ * {@link ContractorBatch}, the compact wire form of a search result.
  *
  * @author Lars Kuettner
  * @version 1.0
@@ -134,14 +142,197 @@ public class ContractorManagerRemoteImpl extends UnicastRemoteObject implements
                                             final String location)
     throws ServicesException, RemoteException
   {
-    return contractorManager.search(name, location);
+    return searchTraced(null, name, location);
+  }
+
+  @Override
+  public final Map<Long, Contractor> searchTraced(final String traceId,
+                                                  final String name,
+                                                  final String location)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("search", traceId);
+    try
+    {
+      return new ContractorBatch(contractorManager.search(name, location));
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final Map<Long, Contractor> search(final String name,
+                                            final String location,
+                                            final String[] specialties,
+                                            final boolean matchAll)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("searchBySpecialties", null);
+    try
+    {
+      return new ContractorBatch(contractorManager.search(name, location,
+        specialties, matchAll));
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final Map<Long, Contractor> search(final String name,
+                                            final String location,
+                                            final long minSize,
+                                            final long maxSize,
+                                            final long minRate,
+                                            final long maxRate)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("searchByRange", null);
+    try
+    {
+      return new ContractorBatch(contractorManager.search(name, location,
+        minSize, maxSize, minRate, maxRate));
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final Map<Long, Contractor> search(final SearchQuery query)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("searchByQuery", null);
+    try
+    {
+      return new ContractorBatch(contractorManager.search(query));
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final long openSearch(final String name, final String location)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("openSearch", null);
+    try
+    {
+      return contractorManager.openSearch(name, location);
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final Map<Long, Contractor> fetchSearch(final long searchId,
+                                                 final int pageSize)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("fetchSearch", null);
+    try
+    {
+      return new ContractorBatch(contractorManager.fetchSearch(searchId,
+        pageSize));
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final void closeSearch(final long searchId)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("closeSearch", null);
+    try
+    {
+      contractorManager.closeSearch(searchId);
+    }
+    finally
+    {
+      trace.finish();
+    }
   }
 
   @Override
   public final BookResult book(final long recNo, final Contractor contractor)
     throws ServicesException, RemoteException
   {
-    return contractorManager.book(recNo, contractor);
+    return bookTraced(null, recNo, contractor);
+  }
+
+  @Override
+  public final BookResult bookTraced(final String traceId, final long recNo,
+                                     final Contractor contractor)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("book", traceId);
+    try
+    {
+      return contractorManager.book(recNo, contractor);
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final BookResult book(final String requestId, final long recNo,
+                               final Contractor contractor)
+    throws ServicesException, RemoteException
+  {
+    // The request ID doubles as the trace ID.
+    Trace trace = Trace.start("book", requestId);
+    try
+    {
+      return contractorManager.book(requestId, recNo, contractor);
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final Map<Long, BookResult> bookAll(
+    final Map<Long, Contractor> contractors, final String owner)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("bookAll", null);
+    try
+    {
+      return contractorManager.bookAll(contractors, owner);
+    }
+    finally
+    {
+      trace.finish();
+    }
+  }
+
+  @Override
+  public final List<BookResult> bookBatch(final List<BookRequest> requests)
+    throws ServicesException, RemoteException
+  {
+    Trace trace = Trace.start("bookBatch", null);
+    try
+    {
+      return contractorManager.bookBatch(requests);
+    }
+    finally
+    {
+      trace.finish();
+    }
   }
 
   @Override
@@ -0,0 +1,306 @@
+/*
+ * @(#)BookOutcomeRegistry.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.services;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The registry of the outcomes of recent booking requests by their
+ * client-generated request IDs, making booking idempotent. A client that
+ * does not know whether a booking request has gone through, for instance
+ * after a timed-out remote call, simply sends it again with the same request
+ * ID and gets the original result back, rather than having its own booking
+ * reported as grabbed by some other agent. The repeated request is answered
+ * from this registry without any access to the database.
+ * <p/>
+ * Duplicates arriving while the original request is still being processed,
+ * such as hedged requests sent to reduce latency, wait for its result rather
+ * than booking a second time. A request that fails with an exception leaves
+ * no outcome behind, so that it may be retried for real.
+ * <p/>
+ * A request ID identifies the whole request, that is, the record together
+ * with the contractor sent. Reusing it for a different request is refused,
+ * rather than answering it with the outcome of another booking.
+ * <p/>
+ * The registry is bounded: an outcome expires after the timeout, and the
+ * oldest outcomes are dropped once the capacity is exceeded. Expired outcomes
+ * are purged whenever a new request is registered. Pending outcomes are
+ * never dropped, so that a duplicate never books a second time; while all of
+ * them are pending, the registry may exceed its capacity. This class is
+ * thread-safe.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+final class BookOutcomeRegistry
+{
+  /**
+   * The default maximum number of outcomes remembered.
+   */
+  static final int DEFAULT_CAPACITY = 10000;
+
+  /**
+   * The default time after which an outcome expires, in milliseconds.
+   */
+  static final long DEFAULT_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+  /**
+   * The maximum number of outcomes remembered.
+   */
+  private final int capacity;
+
+  /**
+   * The time after which an outcome expires, in milliseconds.
+   */
+  private final long timeoutMillis;
+
+  /**
+   * The outcomes by request ID, the oldest first. Guarded by this registry.
+   */
+  private final LinkedHashMap<String, Outcome> outcomes =
+    new LinkedHashMap<String, Outcome>();
+
+  /**
+   * Creates an empty registry.
+   *
+   * @param capacity      the maximum number of outcomes remembered
+   * @param timeoutMillis the time after which an outcome expires, in
+   *                      milliseconds
+   */
+  BookOutcomeRegistry(final int capacity, final long timeoutMillis)
+  {
+    this.capacity = capacity;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Performs a booking request unless a request with the same ID has been
+   * performed or is being performed, in which case its result is returned
+   * instead.
+   *
+   * @param requestId the request ID generated by the client
+   * @param request   the record to book together with the contractor sent
+   * @param booking   the booking operation
+   * @return the result of the booking operation, the original one for a
+   *         duplicate request
+   * @throws ServicesException if the request ID has already been used for
+   *                           another request, or if the booking operation
+   *                           has failed
+   */
+  BookResult book(final String requestId, final BookRequest request,
+                  final Callable<BookResult> booking)
+    throws ServicesException
+  {
+    Outcome outcome;
+    boolean original = false;
+    synchronized (this)
+    {
+      purgeExpired();
+      outcome = outcomes.get(requestId);
+      if (outcome == null)
+      {
+        outcome = new Outcome(request, booking);
+        outcomes.put(requestId, outcome);
+        original = true;
+        if (outcomes.size() > capacity)
+        {
+          removeEldestDone();
+        }
+      }
+    }
+    if (outcome.matches(request) == false)
+    {
+      throw new ServicesException(String.format(Text.REQUEST_ID_REUSED,
+        requestId, outcome.recNo));
+    }
+    if (original)
+    {
+      outcome.task.run();
+    }
+    try
+    {
+      return outcome.task.get();
+    }
+    catch (ExecutionException e)
+    {
+      if (original)
+      {
+        remove(requestId, outcome);
+      }
+      if (e.getCause() instanceof ServicesException)
+      {
+        throw (ServicesException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new ServicesException(Text.CANT_BOOK + Text.NESTED_EXCEPTION_IS
+        + e.getCause().getMessage(), e.getCause());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new ServicesException(Text.CANT_BOOK + Text.NESTED_EXCEPTION_IS
+        + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Removes the outcome of a failed request, unless it has been replaced in
+   * the meantime.
+   *
+   * @param requestId the request ID
+   * @param outcome   the outcome to remove
+   */
+  private synchronized void remove(final String requestId,
+                                   final Outcome outcome)
+  {
+    if (outcomes.get(requestId) == outcome)
+    {
+      outcomes.remove(requestId);
+    }
+  }
+
+  /**
+   * Removes the expired outcomes, except for pending ones. Since the outcomes
+   * are ordered by age, the scan stops at the first one not expired. Must be
+   * called with this registry locked.
+   */
+  private void purgeExpired()
+  {
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<String, Outcome>> it = outcomes.entrySet().iterator();
+    while (it.hasNext())
+    {
+      Outcome outcome = it.next().getValue();
+      if (now - outcome.created <= timeoutMillis)
+      {
+        return;
+      }
+      if (outcome.task.isDone())
+      {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest outcome that is no longer pending, if any. Must be
+   * called with this registry locked.
+   */
+  private void removeEldestDone()
+  {
+    Iterator<Outcome> it = outcomes.values().iterator();
+    while (it.hasNext())
+    {
+      if (it.next().task.isDone())
+      {
+        it.remove();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Provides the number of outcomes remembered. Package-private for testing.
+   *
+   * @return the number of outcomes
+   */
+  synchronized int size()
+  {
+    return outcomes.size();
+  }
+
+  /**
+   * The outcome of a booking request, pending until the booking operation
+   * has been performed.
+   */
+  private static final class Outcome
+  {
+    /**
+     * The record number of the record booked.
+     */
+    private final long recNo;
+
+    /**
+     * The fields and the version of the contractor sent, copied so that the
+     * client's later changes to it do not count.
+     */
+    private final String[] contractor;
+
+    /**
+     * The booking operation together with its result.
+     */
+    private final FutureTask<BookResult> task;
+
+    /**
+     * The time of the registration of the request.
+     */
+    private final long created = System.currentTimeMillis();
+
+    /**
+     * Creates a pending outcome.
+     *
+     * @param request the record to book together with the contractor sent
+     * @param booking the booking operation
+     */
+    private Outcome(final BookRequest request,
+                    final Callable<BookResult> booking)
+    {
+      this.recNo = request.getRecNo();
+      this.contractor = describe(request.getContractor());
+      this.task = new FutureTask<BookResult>(booking);
+    }
+
+    /**
+     * Determines whether a request is the one this outcome belongs to.
+     *
+     * @param request the record to book together with the contractor sent
+     * @return true if both the record number and the contractor are the same
+     */
+    private boolean matches(final BookRequest request)
+    {
+      return recNo == request.getRecNo()
+        && Arrays.equals(contractor, describe(request.getContractor()));
+    }
+
+    /**
+     * Lists the fields and the version of a contractor.
+     *
+     * @param contractor the contractor, or null
+     * @return the field values followed by the version, or null
+     */
+    private static String[] describe(final Contractor contractor)
+    {
+      if (contractor == null)
+      {
+        return null;
+      }
+      return new String[]{contractor.getName(), contractor.getLocation(),
+        contractor.getSpecialties(), contractor.getSize(),
+        contractor.getRate(), contractor.getOwner(),
+        String.valueOf(contractor.getVersion())};
+    }
+  }
+}
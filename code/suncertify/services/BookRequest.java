@@ -0,0 +1,80 @@
+/*
+ * @(#)BookRequest.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.services;
+
+import java.io.Serializable;
+
+/**
+ * A single item of a batch booking: the record to book together with the
+ * contractor as last seen by the client, the owner field set to the customer
+ * ID with which to book the record.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ * @see BusinessServices#bookBatch(java.util.List)
+ */
+public class BookRequest implements Serializable
+{
+  /**
+   * Declared for serialization compatibility between version. Automatically
+   * generated.
+   */
+  private static final long serialVersionUID = 4711L;
+
+  /**
+   * The record number of the record to book.
+   */
+  private final long recNo;
+
+  /**
+   * The contractor with which to update the record.
+   */
+  private final Contractor contractor;
+
+  /**
+   * Creates a booking request.
+   *
+   * @param recNo      the record number of the record to book
+   * @param contractor the contractor with which to update the record, see
+   *                   {@link BusinessServices#book(long, Contractor)}
+   */
+  public BookRequest(final long recNo, final Contractor contractor)
+  {
+    this.recNo = recNo;
+    this.contractor = contractor;
+  }
+
+  /**
+   * Returns the record number of the record to book.
+   *
+   * @return the record number
+   */
+  public final long getRecNo()
+  {
+    return recNo;
+  }
+
+  /**
+   * Returns the contractor with which to update the record.
+   *
+   * @return the contractor
+   */
+  public final Contractor getContractor()
+  {
+    return contractor;
+  }
+}
@@ -16,6 +16,9 @@
 
 package suncertify.services;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 /**
@@ -27,6 +30,9 @@ import java.io.Serializable;
  * reflected in the <code>BookResult</code>. Furthermore, the post-booking
  * contractor is also part of the <code>BookResult</code> so that, after an
  * attempted booking request, the respective record may be immediately updated.
+ * <p/>
+ * Like the contractor, a book result travels over the network in a compact
+ * form: the status as a single byte followed by the contractor's fields.
  *
  * @author Lars Kuettner
  * @version 1.0
@@ -39,19 +45,19 @@ public class BookResult implements Serializable
    * without worrying about the underlying class changing between
    * serialization and deserialization.
    */
-  private static final long serialVersionUID = 4711L;
+  private static final long serialVersionUID = 4712L;
 
   /**
    * The status of the booking operation indicating success, contractor
    * intermittently grabbed, updated, or deleted.
    */
-  private BookStatus bookStatus;
+  private transient BookStatus bookStatus;
 
   /**
    * The post-booking contractor. If the contractor record turns out to have
    * been intermittently deleted, this field will be null.
    */
-  private Contractor contractor;
+  private transient Contractor contractor;
 
   /**
    * Creates a <code>BookResult</code> object and is the only means of
@@ -97,4 +103,40 @@ public class BookResult implements Serializable
   {
     return contractor;
   }
+
+  /**
+   * Writes this book result in its compact form.
+   *
+   * @param out the stream to write to
+   * @throws IOException if an I/O error occurs
+   */
+  private void writeObject(final ObjectOutputStream out) throws IOException
+  {
+    out.defaultWriteObject();
+    out.writeByte(bookStatus.ordinal());
+    out.writeBoolean(contractor != null);
+    if (contractor != null)
+    {
+      contractor.writeFields(out, null);
+    }
+  }
+
+  /**
+   * Reads this book result from its compact form.
+   *
+   * @param in the stream to read from
+   * @throws IOException            if an I/O error occurs
+   * @throws ClassNotFoundException never, as no objects are read
+   */
+  private void readObject(final ObjectInputStream in) throws IOException,
+    ClassNotFoundException
+  {
+    in.defaultReadObject();
+    bookStatus = BookStatus.values()[in.readByte()];
+    if (in.readBoolean())
+    {
+      contractor = new Contractor();
+      contractor.readFields(in, null);
+    }
+  }
 }
@@ -44,5 +44,11 @@ public enum BookStatus
    * numbers are recycled. No booking performed. May be retried on the basis
    * of the new record data.
    */
-  INTERMITTENTLY_UPDATED
+  INTERMITTENTLY_UPDATED,
+  /**
+   * Contractor record available but not booked because another record of the
+   * same group booking could not be booked. A group is booked either as a
+   * whole or not at all.
+   */
+  ABORTED
 }
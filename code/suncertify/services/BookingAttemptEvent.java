@@ -0,0 +1,78 @@
+/*
+ * @(#)BookingAttemptEvent.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event spanning an attempt to book a record by the
+ * {@link ContractorManager}. A group booking yields one event per record,
+ * each spanning the whole group booking. Like all JFR events, it costs next
+ * to nothing while it is not being recorded.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+@Name("suncertify.BookingAttempt")
+@Label("Booking Attempt")
+@Category({"Suncertify", "Services"})
+@Description("Attempt to book a contractor record")
+final class BookingAttemptEvent extends Event
+{
+  /**
+   * The record number of the record to book.
+   */
+  @Label("Record Number")
+  long recNo;
+
+  /**
+   * The outcome, the name of a {@link BookStatus}.
+   */
+  @Label("Outcome")
+  String outcome;
+
+  /**
+   * The number of records booked together, 1 for a single booking.
+   */
+  @Label("Group Size")
+  int groupSize;
+
+  /**
+   * Ends the event and commits it with the result if it is being recorded.
+   *
+   * @param recNo      the record number of the record to book
+   * @param bookResult the result of the booking
+   * @param groupSize  the number of records booked together
+   */
+  void commit(final long recNo, final BookResult bookResult,
+              final int groupSize)
+  {
+    end();
+    if (shouldCommit())
+    {
+      this.recNo = recNo;
+      this.outcome = bookResult.getBookStatus().name();
+      this.groupSize = groupSize;
+      commit();
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package suncertify.services;
 
 import java.rmi.RemoteException;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -52,6 +53,142 @@ public interface BusinessServices
   Map<Long, Contractor> search(String name, String location)
     throws RemoteException, ServicesException;
 
+  /**
+   * Searches the database for all contractor records with a given name and/or
+   * location that perform all of (or any of) the given specialties. Name and
+   * location are matched just like with {@link #search(String, String)}. The
+   * specialties are matched against the individual items of a contractor's
+   * comma-separated list of specialties, ignoring case, so that searching for
+   * "painting" finds a contractor with "Roofing, Painting".
+   *
+   * @param name        A string representing the contractor name to search for. If
+   *                    not null, an exact match is required. If null, embraces all
+   *                    records.
+   * @param location    A string representing the location to search for. If not null,
+   *                    an exact match is required. If null, embraces all records.
+   * @param specialties The specialties to search for. If null or empty, embraces all
+   *                    records.
+   * @param matchAll    true if a contractor must perform all of the specialties,
+   *                    false if performing any one of them is sufficient
+   * @return a map of all matching (record number, contractor) pairs
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered
+   */
+  Map<Long, Contractor> search(String name, String location,
+                               String[] specialties, boolean matchAll)
+    throws RemoteException, ServicesException;
+
+  /**
+   * Searches the database for all contractor records with a given name and/or
+   * location whose size and hourly rate lie within the given ranges, such as
+   * "rate between $40 and $80" or "at least 10 staff". Name and location are
+   * matched just like with {@link #search(String, String)}. All bounds are
+   * inclusive; pass <code>Long.MIN_VALUE</code> or <code>Long.MAX_VALUE</code>
+   * to leave a bound open.
+   *
+   * @param name     A string representing the contractor name to search for. If
+   *                 not null, an exact match is required. If null, embraces all
+   *                 records.
+   * @param location A string representing the location to search for. If not null,
+   *                 an exact match is required. If null, embraces all records.
+   * @param minSize  the minimum number of staff
+   * @param maxSize  the maximum number of staff
+   * @param minRate  the minimum hourly charge in cents (4000 meaning $40.00)
+   * @param maxRate  the maximum hourly charge in cents
+   * @return a map of all matching (record number, contractor) pairs
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered
+   */
+  Map<Long, Contractor> search(String name, String location, long minSize,
+                               long maxSize, long minRate, long maxRate)
+    throws RemoteException, ServicesException;
+
+  /**
+   * Searches the database for all contractor records matching all criteria of
+   * a search query, for instance the unbooked contractors performing
+   * electrical work for less than $60 an hour. The query is evaluated by the
+   * data access class as a whole, by a single pass over the cached records or
+   * by means of its indexes, so that only the matching records are returned.
+   *
+   * @param query the criteria to match
+   * @return a map of the matching (record number, contractor) pairs, in the
+   *         order and up to the limit of the query
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered
+   */
+  Map<Long, Contractor> search(SearchQuery query) throws RemoteException,
+    ServicesException;
+
+  /**
+   * Opens a paginated search for all contractor records with a given name
+   * and/or location, matched just like with {@link #search(String, String)}.
+   * Instead of returning all matches at once, the matches are fetched page
+   * by page with {@link #fetchSearch(long, int)}, so that the first results
+   * arrive early and no complete result set is built. The search works on a
+   * consistent snapshot as of its opening. It should be closed with
+   * {@link #closeSearch(long)}; a search not accessed for a while expires.
+   *
+   * @param name     A string representing the contractor name to search for. If
+   *                 not null, an exact match is required. If null, embraces all
+   *                 records.
+   * @param location A string representing the location to search for. If not null,
+   *                 an exact match is required. If null, embraces all records.
+   * @return the id of the search
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered
+   */
+  long openSearch(String name, String location) throws RemoteException,
+    ServicesException;
+
+  /**
+   * Fetches the next page of matches of a paginated search.
+   *
+   * @param searchId the id of the search as returned by
+   *                 {@link #openSearch(String, String)}
+   * @param pageSize the maximum number of matches to fetch
+   * @return a map of (record number, contractor) pairs in ascending record
+   *         number order, empty once all matches have been fetched
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if the search is unknown or has expired, or if an
+   *                           unexpected problem with the data access class is
+   *                           encountered
+   */
+  Map<Long, Contractor> fetchSearch(long searchId, int pageSize)
+    throws RemoteException, ServicesException;
+
+  /**
+   * Closes a paginated search. Closing an unknown or expired search has no
+   * effect.
+   *
+   * @param searchId the id of the search
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered
+   */
+  void closeSearch(long searchId) throws RemoteException, ServicesException;
+
   /**
    * Attempts to book a record given by its record number. Successfully
    * booking the record in this context means updating the record with the
@@ -80,4 +217,86 @@ public interface BusinessServices
    */
   BookResult book(long recNo, final Contractor contractor)
     throws RemoteException, ServicesException;
+
+  /**
+   * Attempts to book a record just like {@link #book(long, Contractor)}, but
+   * idempotently: the request is identified by an ID generated by the client,
+   * unique per booking attempt. Sending the request again with the same ID,
+   * for instance after a remote call has timed out or as a hedged request,
+   * does not book a second time but returns the result of the original
+   * request, which is remembered for a while. A request that has failed with
+   * an exception may be retried with the same ID.
+   *
+   * @param requestId  the ID of the booking request, such as a random UUID, or
+   *                   null to book without remembering the result
+   * @param recNo      the record number of the record to book acting as the primary
+   *                   key into the database
+   * @param contractor the <code>Contractor</code> object with which to update the
+   *                   record pending the constraints of
+   *                   {@link #book(long, Contractor)}
+   * @return A <code>BookResult</code> object representing the result of the
+   *         original booking operation with this request ID
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if the request ID has already been used for
+   *                           another request, that is, another record or
+   *                           contractor, or if an unexpected problem with the
+   *                           data access class is encountered
+   */
+  BookResult book(String requestId, long recNo, Contractor contractor)
+    throws RemoteException, ServicesException;
+
+  /**
+   * Attempts to book several records as a whole, for instance a crew of
+   * subcontractors for one job. Either all records are booked or none is:
+   * each record must satisfy the constraints of {@link #book(long, Contractor)},
+   * otherwise no record at all is updated. The records are locked in ascending
+   * record number order, verified, and written together.
+   *
+   * @param contractors a map of (record number, contractor) pairs representing
+   *                    the records to book as last seen by the client, owner
+   *                    fields excluded
+   * @param owner       the customer ID with which to book the records
+   * @return A map of (record number, <code>BookResult</code>) pairs in
+   *         ascending record number order. Either all results are successful,
+   *         or those of the records that could have been booked have the
+   *         status {@link BookStatus#ABORTED}.
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered. Records having been intermittently deleted do
+   *                           not trigger this exception as this should be reckoned with.
+   */
+  Map<Long, BookResult> bookAll(Map<Long, Contractor> contractors,
+                                String owner)
+    throws RemoteException, ServicesException;
+
+  /**
+   * Attempts to book several records in a single request, for instance all
+   * rows selected by the user at once. Unlike with
+   * {@link #bookAll(Map, String)}, the bookings are independent of each
+   * other: each record is booked or not on its own, subject to the
+   * constraints of {@link #book(long, Contractor)}. All records are read and
+   * updated together, in one pass through the data access class. A record
+   * requested more than once is booked by the first of these requests that
+   * succeeds; the others find it grabbed.
+   *
+   * @param requests the records to book together with the contractors with
+   *                 which to update them
+   * @return the <code>BookResult</code> objects in the order of
+   *         <code>requests</code>
+   * @throws RemoteException   if a problem with the remote invocation via RMI is
+   *                           encountered. Only relevant in a network setting. In a
+   *                           standalone setting, this exception is guaranteed never to be
+   *                           thrown.
+   * @throws ServicesException if an unexpected problem with the data access class is
+   *                           encountered. Records having been intermittently deleted do
+   *                           not trigger this exception as this should be reckoned with.
+   */
+  List<BookResult> bookBatch(List<BookRequest> requests)
+    throws RemoteException, ServicesException;
 }
@@ -16,7 +16,15 @@
 
 package suncertify.services;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Property-based representation of a database record, and also used for search
@@ -28,6 +36,12 @@ import java.io.Serializable;
  * section of the database file. As a client does not have access to the
  * database file, the <code>Contractor</code> object is the means to exchange
  * information with the server, or between model and view.
+ * <p/>
+ * Contractors travel over the network in a compact form of their own: each
+ * field is written as its length followed by its ASCII bytes, rather than
+ * as a string object, and batches of contractors are written without any
+ * per-object overhead and with recurring field values written just once,
+ * see {@link ContractorBatch}.
  *
  * @author Lars Kuettner
  * @version 1.0
@@ -38,43 +52,66 @@ public class Contractor implements Serializable
    * Declared for serialization compatibility between version. Automatically
    * generated.
    */
-  private static final long serialVersionUID = 4711L;
+  private static final long serialVersionUID = 4712L;
+
+  /**
+   * The length written for a null field.
+   */
+  private static final short NULL_FIELD = -1;
+
+  /**
+   * The length written for a field that is not pure ASCII and is therefore
+   * written in modified UTF-8 instead.
+   */
+  private static final short UTF_FIELD = -2;
+
+  /**
+   * The length written for a field value that has occurred before within a
+   * batch and is therefore written as a reference.
+   */
+  private static final short REFERENCE_FIELD = -3;
 
   /**
    * Subcontractor name. The name of the subcontractor the corresponding
    * record relates to.
    */
-  private String name;
+  private transient String name;
 
   /**
    * City. The locality in which this contractor works.
    */
-  private String location;
+  private transient String location;
 
   /**
    * Types of work performed. Comma separated list of types of work this
    * contractor can perform.
    */
-  private String specialties;
+  private transient String specialties;
 
   /**
    * Number of staff in organization. The number of workers available when the
    * corresponding record is booked.
    */
-  private String size;
+  private transient String size;
 
   /**
    * Hourly charge. Charge per hour for the subcontractor. This field includes
    * the currency symbol.
    */
-  private String rate;
+  private transient String rate;
 
   /**
    * Customer holding the corresponding record. The id value (an 8 digit
    * number) of the customer who has booked this. If this field is all blanks,
    * the record is available for sale.
    */
-  private String owner;
+  private transient String owner;
+
+  /**
+   * The version of the corresponding record as of reading it, which changes
+   * with every write to the record. Zero if unknown.
+   */
+  private transient long version;
 
   /**
    * Gets the subcontractor name.
@@ -207,4 +244,186 @@ public class Contractor implements Serializable
   {
     this.owner = owner;
   }
+
+  /**
+   * Gets the version.
+   *
+   * @return the version of the corresponding record as of reading it, which
+   *         changes with every write to the record. Zero if unknown.
+   */
+  public final long getVersion()
+  {
+    return version;
+  }
+
+  /**
+   * Sets the version.
+   *
+   * @param version the version of the corresponding record as of reading it,
+   *                which changes with every write to the record. Zero if
+   *                unknown.
+   */
+  public final void setVersion(final long version)
+  {
+    this.version = version;
+  }
+
+  /**
+   * Writes this contractor in its compact form.
+   *
+   * @param out the stream to write to
+   * @throws IOException if an I/O error occurs
+   */
+  private void writeObject(final ObjectOutputStream out) throws IOException
+  {
+    out.defaultWriteObject();
+    writeFields(out, null);
+  }
+
+  /**
+   * Reads this contractor from its compact form.
+   *
+   * @param in the stream to read from
+   * @throws IOException            if an I/O error occurs
+   * @throws ClassNotFoundException never, as no objects are read
+   */
+  private void readObject(final ObjectInputStream in) throws IOException,
+    ClassNotFoundException
+  {
+    in.defaultReadObject();
+    readFields(in, null);
+  }
+
+  /**
+   * Writes the fields and the version of this contractor. Within a batch of
+   * contractors, a field value written before is written as a reference to
+   * its first occurrence; values such as the location or the rate recur
+   * often.
+   *
+   * @param out     the output to write to
+   * @param written the indexes of the field values written before in the
+   *                same batch, updated by this method, or null outside a
+   *                batch
+   * @throws IOException if an I/O error occurs
+   */
+  final void writeFields(final DataOutput out,
+                         final Map<String, Integer> written)
+    throws IOException
+  {
+    writeField(out, name, written);
+    writeField(out, location, written);
+    writeField(out, specialties, written);
+    writeField(out, size, written);
+    writeField(out, rate, written);
+    writeField(out, owner, written);
+    out.writeLong(version);
+  }
+
+  /**
+   * Reads the fields and the version of this contractor as written by
+   * {@link #writeFields(DataOutput, Map)}.
+   *
+   * @param in   the input to read from
+   * @param read the field values read before in the same batch, in the
+   *             order of their first occurrence, updated by this method, or
+   *             null outside a batch
+   * @throws IOException if an I/O error occurs
+   */
+  final void readFields(final DataInput in, final List<String> read)
+    throws IOException
+  {
+    name = readField(in, read);
+    location = readField(in, read);
+    specialties = readField(in, read);
+    size = readField(in, read);
+    rate = readField(in, read);
+    owner = readField(in, read);
+    version = in.readLong();
+  }
+
+  /**
+   * Writes a field as its length followed by its ASCII bytes, or as a
+   * reference to its first occurrence within a batch. Database fields are
+   * always ASCII; other values fall back to modified UTF-8.
+   *
+   * @param out     the output to write to
+   * @param value   the field value, or null
+   * @param written the indexes of the field values written before, or null
+   * @throws IOException if an I/O error occurs
+   */
+  private static void writeField(final DataOutput out, final String value,
+                                 final Map<String, Integer> written)
+    throws IOException
+  {
+    if (value == null)
+    {
+      out.writeShort(NULL_FIELD);
+      return;
+    }
+    if (written != null)
+    {
+      Integer index = written.get(value);
+      if (index != null)
+      {
+        out.writeShort(REFERENCE_FIELD);
+        out.writeInt(index);
+        return;
+      }
+      written.put(value, written.size());
+    }
+    boolean ascii = value.length() <= Short.MAX_VALUE;
+    for (int i = 0; i < value.length() && ascii; ++i)
+    {
+      ascii = value.charAt(i) < 0x80;
+    }
+    if (ascii)
+    {
+      out.writeShort(value.length());
+      out.writeBytes(value);
+    }
+    else
+    {
+      out.writeShort(UTF_FIELD);
+      out.writeUTF(value);
+    }
+  }
+
+  /**
+   * Reads a field as written by
+   * {@link #writeField(DataOutput, String, Map)}.
+   *
+   * @param in   the input to read from
+   * @param read the field values read before, or null
+   * @return the field value, or null
+   * @throws IOException if an I/O error occurs
+   */
+  private static String readField(final DataInput in, final List<String> read)
+    throws IOException
+  {
+    short length = in.readShort();
+    String value;
+    if (length == NULL_FIELD)
+    {
+      return null;
+    }
+    else if (length == REFERENCE_FIELD)
+    {
+      return read.get(in.readInt());
+    }
+    else if (length == UTF_FIELD)
+    {
+      value = in.readUTF();
+    }
+    else
+    {
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      value = new String(bytes, StandardCharsets.US_ASCII);
+    }
+    if (read != null)
+    {
+      read.add(value);
+    }
+    return value;
+  }
 }
@@ -0,0 +1,152 @@
+/*
+ * @(#)ContractorBatch.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.services;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read-only view of a search result, a map of (record number, contractor)
+ * pairs, that travels over the network as one compact batch: the number of
+ * contractors followed by each record number as a primitive
+ * <code>long</code> and the contractor's fields as ASCII bytes, where a field
+ * value recurring within the batch, such as a location, is written as a
+ * reference to its first occurrence. Unlike a serialized
+ * <code>HashMap</code>, the batch carries no boxed keys and no per-object
+ * headers. It is read back as a <code>LinkedHashMap</code> in
+ * the original order.
+ * <p/>
+ * The server wraps its search results just before returning them to a
+ * network client; the wrapping costs no copy.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public final class ContractorBatch extends AbstractMap<Long, Contractor>
+  implements Serializable
+{
+  /**
+   * A magic version number for this class so that serialization can occur
+   * without worrying about the underlying class changing between
+   * serialization and deserialization.
+   */
+  private static final long serialVersionUID = 4711L;
+
+  /**
+   * The search result; none of the values may be null.
+   */
+  private transient Map<Long, Contractor> contractors;
+
+  /**
+   * Creates a batch view of a search result.
+   *
+   * @param contractors the map of (record number, contractor) pairs, whose
+   *                    values must not be null
+   */
+  public ContractorBatch(final Map<Long, Contractor> contractors)
+  {
+    this.contractors = contractors;
+  }
+
+  @Override
+  public Set<Map.Entry<Long, Contractor>> entrySet()
+  {
+    return contractors.entrySet();
+  }
+
+  @Override
+  public int size()
+  {
+    return contractors.size();
+  }
+
+  @Override
+  public boolean containsKey(final Object key)
+  {
+    return contractors.containsKey(key);
+  }
+
+  @Override
+  public Contractor get(final Object key)
+  {
+    return contractors.get(key);
+  }
+
+  /**
+   * Writes the batch.
+   *
+   * @param out the stream to write to
+   * @throws IOException if an I/O error occurs
+   */
+  private void writeObject(final ObjectOutputStream out) throws IOException
+  {
+    out.defaultWriteObject();
+    out.writeInt(contractors.size());
+    Map<String, Integer> written = new HashMap<String, Integer>();
+    for (Map.Entry<Long, Contractor> entry : contractors.entrySet())
+    {
+      out.writeLong(entry.getKey());
+      entry.getValue().writeFields(out, written);
+    }
+  }
+
+  /**
+   * Reads the batch.
+   *
+   * @param in the stream to read from
+   * @throws IOException            if an I/O error occurs
+   * @throws ClassNotFoundException never, as no objects are read
+   */
+  private void readObject(final ObjectInputStream in) throws IOException,
+    ClassNotFoundException
+  {
+    in.defaultReadObject();
+    int size = in.readInt();
+    // Sized so that the map never needs to be rehashed.
+    contractors = new LinkedHashMap<Long, Contractor>(size * 4 / 3 + 1);
+    List<String> read = new ArrayList<String>();
+    for (int i = 0; i < size; ++i)
+    {
+      long recNo = in.readLong();
+      Contractor contractor = new Contractor();
+      contractor.readFields(in, read);
+      contractors.put(recNo, contractor);
+    }
+  }
+
+  /**
+   * Replaces the deserialized batch with the plain map read, so that the
+   * receiver may modify it.
+   *
+   * @return the map of (record number, contractor) pairs
+   * @throws ObjectStreamException never
+   */
+  private Object readResolve() throws ObjectStreamException
+  {
+    return contractors;
+  }
+}
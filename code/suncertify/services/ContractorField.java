@@ -0,0 +1,80 @@
+/*
+ * @(#)ContractorField.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.services;
+
+import suncertify.db.DBSchema;
+
+/**
+ * Enumerates the fields of a {@link Contractor}, for instance to project
+ * search results onto the fields a client actually needs.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ * @see SearchQuery#setProjection(ContractorField[])
+ */
+public enum ContractorField
+{
+  /**
+   * The subcontractor name.
+   */
+  NAME(DBSchema.NAME_INDEX),
+  /**
+   * The location.
+   */
+  LOCATION(DBSchema.LOCATION_INDEX),
+  /**
+   * The types of work performed.
+   */
+  SPECIALTIES(DBSchema.SPECIALTIES_INDEX),
+  /**
+   * The number of staff.
+   */
+  SIZE(DBSchema.SIZE_INDEX),
+  /**
+   * The hourly charge.
+   */
+  RATE(DBSchema.RATE_INDEX),
+  /**
+   * The customer holding the record.
+   */
+  OWNER(DBSchema.OWNER_INDEX);
+
+  /**
+   * The field index of the database schema.
+   */
+  private final int schemaIndex;
+
+  /**
+   * Creates a contractor field.
+   *
+   * @param schemaIndex the field index of the database schema
+   */
+  private ContractorField(final int schemaIndex)
+  {
+    this.schemaIndex = schemaIndex;
+  }
+
+  /**
+   * Provides the field index of the database schema.
+   *
+   * @return one of the field index constants of {@link DBSchema}
+   */
+  int getSchemaIndex()
+  {
+    return schemaIndex;
+  }
+}
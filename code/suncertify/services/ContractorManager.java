@@ -16,15 +16,32 @@
 
 package suncertify.services;
 
+import suncertify.db.DBSchema;
 import suncertify.db.DBSearchFriendlyAccess;
 import suncertify.db.Data;
 import suncertify.db.DatabaseException;
+import suncertify.db.LockOwner;
+import suncertify.db.Query;
+import suncertify.db.RecordMapper;
 import suncertify.db.RecordMetaData;
 import suncertify.db.RecordNotFoundException;
+import suncertify.util.JmxUtilities;
+import suncertify.util.OperationMetrics;
+import suncertify.util.OperationStatistics;
+import suncertify.util.Trace;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Actually implements the <code>BusinessServices</code> interface designed to
@@ -42,8 +59,21 @@ import java.util.Map;
  * @author Lars Kuettner
  * @version 1.0
  */
-public class ContractorManager implements BusinessServices
+public class ContractorManager implements BusinessServices,
+  ContractorManagerMXBean
 {
+  /**
+   * Converts matching records straight from the record cache into
+   * <code>Contractor</code> objects, the one copy a search makes. The
+   * versions are passed on so that bookings can detect interim changes.
+   */
+  private static final RecordMapper<Contractor> CONTRACTOR_MAPPER =
+    new ContractorMapper(null);
+
+  /**
+   * The type under which the contractor manager is registered as an MXBean.
+   */
+  private static final String MXBEAN_TYPE = "ContractorManager";
 
   /**
    * The link to the data access class implementing the extended
@@ -51,6 +81,36 @@ public class ContractorManager implements BusinessServices
    */
   private DBSearchFriendlyAccess dBSearchFriendlyAccess = null;
 
+  /**
+   * The client requests whose invocations are counted and timed.
+   */
+  private enum Operation
+  {
+    SEARCH, OPEN_SEARCH, FETCH_SEARCH, CLOSE_SEARCH, BOOK, BOOK_ALL,
+    BOOK_BATCH
+  }
+
+  /**
+   * The number and latencies of the client requests per operation, recorded
+   * lock-free.
+   */
+  private final OperationMetrics<Operation> operationMetrics =
+    new OperationMetrics<Operation>(Operation.class, "services");
+
+  /**
+   * The outcomes of recent booking requests by request ID, so that repeated
+   * requests are answered without booking again.
+   */
+  private final BookOutcomeRegistry bookOutcomes = new BookOutcomeRegistry(
+    BookOutcomeRegistry.DEFAULT_CAPACITY,
+    BookOutcomeRegistry.DEFAULT_TIMEOUT_MILLIS);
+
+  /**
+   * The number of booking results per status.
+   */
+  private final Map<BookStatus, LongAdder> bookResultCounts =
+    new EnumMap<BookStatus, LongAdder>(BookStatus.class);
+
   /**
    * Creates an instance of the contractor manager that provides an
    * implementation for the <code>BusinessServices</code> interface.
@@ -74,6 +134,11 @@ public class ContractorManager implements BusinessServices
       throw new ServicesException(Text.CANT_GET_DATA_INSTANCE
         + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
     }
+    for (BookStatus bookStatus : BookStatus.values())
+    {
+      bookResultCounts.put(bookStatus, new LongAdder());
+    }
+    JmxUtilities.register(MXBEAN_TYPE, this);
   }
 
   /**
@@ -82,6 +147,7 @@ public class ContractorManager implements BusinessServices
    */
   public final void terminate()
   {
+    JmxUtilities.unregister(MXBEAN_TYPE);
     Data.terminateInstance();
   }
 
@@ -89,110 +155,720 @@ public class ContractorManager implements BusinessServices
   public final Map<Long, Contractor> search(final String name,
                                             final String location) throws ServicesException
   {
+    SearchQuery searchQuery = new SearchQuery();
+    searchQuery.setName(name);
+    searchQuery.setLocation(location);
+    return search(searchQuery);
+  }
+
+  @Override
+  public final Map<Long, Contractor> search(final String name,
+                                            final String location,
+                                            final String[] specialties,
+                                            final boolean matchAll)
+    throws ServicesException
+  {
+    SearchQuery searchQuery = new SearchQuery();
+    searchQuery.setName(name);
+    searchQuery.setLocation(location);
+    searchQuery.setSpecialties(specialties, matchAll);
+    return search(searchQuery);
+  }
+
+  @Override
+  public final Map<Long, Contractor> search(final String name,
+                                            final String location,
+                                            final long minSize,
+                                            final long maxSize,
+                                            final long minRate,
+                                            final long maxRate)
+    throws ServicesException
+  {
+    SearchQuery searchQuery = new SearchQuery();
+    searchQuery.setName(name);
+    searchQuery.setLocation(location);
+    searchQuery.setSizeRange(minSize, maxSize);
+    searchQuery.setRateRange(minRate, maxRate);
+    return search(searchQuery);
+  }
+
+  @Override
+  public final Map<Long, Contractor> search(final SearchQuery searchQuery)
+    throws ServicesException
+  {
+    long start = System.nanoTime();
+    // Convert contractor-style templates to database record-style criteria.
+    // An unbooked record has an empty owner field.
+    Contractor exactTemplate = new Contractor();
+    exactTemplate.setName(searchQuery.getName());
+    exactTemplate.setLocation(searchQuery.getLocation());
+    if (searchQuery.isUnbookedOnly())
+    {
+      exactTemplate.setOwner("");
+    }
+    Contractor prefixTemplate = new Contractor();
+    prefixTemplate.setName(searchQuery.getNamePrefix());
+    prefixTemplate.setLocation(searchQuery.getLocationPrefix());
+    Query query = new Query();
+    query.setExactCriteria(RecordMetaData.contractorToRecord(exactTemplate));
+    query.setPrefixCriteria(RecordMetaData.contractorToRecord(prefixTemplate));
+    query.setSpecialties(searchQuery.getSpecialties(), searchQuery
+      .isMatchAllSpecialties());
+    query.setSizeRange(searchQuery.getMinSize(), searchQuery.getMaxSize());
+    query.setRateRange(searchQuery.getMinRate(), searchQuery.getMaxRate());
+    if (searchQuery.getOrderField() != null)
+    {
+      query.setOrder(RecordMetaData.getInstance().getRecordIndex(searchQuery
+        .getOrderField().getSchemaIndex()), searchQuery.isDescending());
+    }
+    query.setLimit(searchQuery.getLimit());
+    try
+    {
+      return dBSearchFriendlyAccess.find(query, mapperFor(searchQuery
+        .getProjection()));
+    }
+    catch (DatabaseException e)
+    {
+      throw new ServicesException(Text.CANT_FIND_BY_SEARCH_QUERY
+        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+    }
+    finally
+    {
+      operationMetrics.record(Operation.SEARCH, start);
+    }
+  }
+
+  @Override
+  public final long openSearch(final String name, final String location)
+    throws ServicesException
+  {
+    long start = System.nanoTime();
     // Convert contractor-style template to database record-style criteria.
     Contractor searchTemplate = new Contractor();
     searchTemplate.setName(name);
     searchTemplate.setLocation(location);
-    String[] criteria = RecordMetaData.contractorToRecord(searchTemplate);
-    Map<Long, String[]> matches;
+    Query query = new Query();
+    query.setExactCriteria(RecordMetaData.contractorToRecord(searchTemplate));
     try
     {
-      matches = dBSearchFriendlyAccess
-        .findByCriteriaExactMatches(criteria);
+      return dBSearchFriendlyAccess.openCursor(query);
     }
     catch (DatabaseException e)
     {
-      throw new ServicesException(Text.CANT_FIND_EXACT_MATCHES
+      throw new ServicesException(Text.CANT_OPEN_SEARCH
         + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
     }
-    // Convert record-based matches map to contractor-based results map.
-    Map<Long, Contractor> results = new HashMap<Long, Contractor>();
-    Iterator<Map.Entry<Long, String[]>> it = matches.entrySet().iterator();
-    while (it.hasNext())
+    finally
     {
-      Map.Entry<Long, String[]> pairs = it.next();
-      Long recNo = pairs.getKey();
-      String[] record = pairs.getValue();
-      Contractor contractor = RecordMetaData.recordToContractor(record);
-      results.put(recNo, contractor);
+      operationMetrics.record(Operation.OPEN_SEARCH, start);
+    }
+  }
+
+  @Override
+  public final Map<Long, Contractor> fetchSearch(final long searchId,
+                                                 final int pageSize)
+    throws ServicesException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return dBSearchFriendlyAccess.fetch(searchId, pageSize,
+        CONTRACTOR_MAPPER);
+    }
+    catch (DatabaseException e)
+    {
+      throw new ServicesException(Text.CANT_FETCH_SEARCH
+        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+    }
+    finally
+    {
+      operationMetrics.record(Operation.FETCH_SEARCH, start);
+    }
+  }
+
+  @Override
+  public final void closeSearch(final long searchId) throws ServicesException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      dBSearchFriendlyAccess.closeCursor(searchId);
+    }
+    catch (DatabaseException e)
+    {
+      throw new ServicesException(Text.CANT_CLOSE_SEARCH
+        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+    }
+    finally
+    {
+      operationMetrics.record(Operation.CLOSE_SEARCH, start);
     }
-    return results;
   }
 
   @Override
   public final BookResult book(final long recNo, final Contractor contractor)
     throws ServicesException
+  {
+    long start = System.nanoTime();
+    BookingAttemptEvent event = new BookingAttemptEvent();
+    event.begin();
+    try
+    {
+      BookResult bookResult = bookRecord(recNo, contractor);
+      countBookResult(bookResult);
+      event.commit(recNo, bookResult, 1);
+      return bookResult;
+    }
+    finally
+    {
+      operationMetrics.record(Operation.BOOK, start);
+    }
+  }
+
+  @Override
+  public final BookResult book(final String requestId, final long recNo,
+                               final Contractor contractor)
+    throws ServicesException
+  {
+    if (requestId == null)
+    {
+      return book(recNo, contractor);
+    }
+    // Duplicates get the original result; only the original request is
+    // counted and timed as a booking.
+    return bookOutcomes.book(requestId, new BookRequest(recNo, contractor),
+      new Callable<BookResult>()
+      {
+        @Override
+        public BookResult call() throws ServicesException
+        {
+          return book(recNo, contractor);
+        }
+      });
+  }
+
+  @Override
+  public final Map<Long, BookResult> bookAll(
+    final Map<Long, Contractor> contractors, final String owner)
+    throws ServicesException
+  {
+    long start = System.nanoTime();
+    // One event per record, each spanning the whole group booking.
+    Map<Long, BookingAttemptEvent> events =
+      new TreeMap<Long, BookingAttemptEvent>();
+    for (Long recNo : contractors.keySet())
+    {
+      BookingAttemptEvent event = new BookingAttemptEvent();
+      event.begin();
+      events.put(recNo, event);
+    }
+    try
+    {
+      Map<Long, BookResult> bookResults = bookRecords(contractors, owner);
+      for (Map.Entry<Long, BookResult> entry : bookResults.entrySet())
+      {
+        countBookResult(entry.getValue());
+        BookingAttemptEvent event = events.get(entry.getKey());
+        if (event != null)
+        {
+          event.commit(entry.getKey(), entry.getValue(), contractors.size());
+        }
+      }
+      return bookResults;
+    }
+    finally
+    {
+      operationMetrics.record(Operation.BOOK_ALL, start);
+    }
+  }
+
+  @Override
+  public final List<BookResult> bookBatch(final List<BookRequest> requests)
+    throws ServicesException
+  {
+    long start = System.nanoTime();
+    List<BookingAttemptEvent> events =
+      new ArrayList<BookingAttemptEvent>(requests.size());
+    for (int i = 0; i < requests.size(); ++i)
+    {
+      BookingAttemptEvent event = new BookingAttemptEvent();
+      event.begin();
+      events.add(event);
+    }
+    try
+    {
+      List<BookResult> bookResults = bookRecordBatch(requests);
+      for (int i = 0; i < bookResults.size(); ++i)
+      {
+        countBookResult(bookResults.get(i));
+        events.get(i).commit(requests.get(i).getRecNo(), bookResults.get(i),
+          requests.size());
+      }
+      return bookResults;
+    }
+    finally
+    {
+      operationMetrics.record(Operation.BOOK_BATCH, start);
+    }
+  }
+
+  @Override
+  public final Map<String, OperationStatistics> getOperationStatistics()
+  {
+    return operationMetrics.snapshot();
+  }
+
+  @Override
+  public final Map<String, Long> getBookResultCounts()
+  {
+    Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    for (Map.Entry<BookStatus, LongAdder> entry : bookResultCounts
+      .entrySet())
+    {
+      counts.put(entry.getKey().name(), entry.getValue().sum());
+    }
+    return counts;
+  }
+
+  /**
+   * Attempts to book a record, see {@link #book(long, Contractor)}.
+   *
+   * @param recNo      the record number of the record to book
+   * @param contractor the contractor with which to update the record
+   * @return the result of the booking operation
+   * @throws ServicesException if an unexpected problem with the data access
+   *                           class is encountered
+   */
+  private BookResult bookRecord(final long recNo, final Contractor contractor)
+    throws ServicesException
   {
     // Before updating the record given by its record #, there must be an
     // integrity check as there is a chance that the record has already been
-    // modified or even deleted for some other client.
-    BookResult bookResult = null;
-    long cookie = -1;
+    // modified or even deleted for some other client. The record is updated
+    // only if its version is still the one verified, so check and update
+    // need no record lock.
     try
     {
-      cookie = dBSearchFriendlyAccess.lockRecord(recNo);
+      Contractor currDBContractor = dBSearchFriendlyAccess.readRecord(recNo,
+        CONTRACTOR_MAPPER);
+      BookResult failure = verifyBookable(currDBContractor, contractor);
+      if (failure != null)
+      {
+        // Rejected without ever taking the write lock. This is a regular
+        // outcome of invoking this method rather than an exceptional
+        // condition.
+        return failure;
+      }
+      currDBContractor.setOwner(contractor.getOwner());
+      long version = dBSearchFriendlyAccess.compareAndUpdate(recNo,
+        currDBContractor.getVersion(), RecordMetaData
+        .contractorToRecord(currDBContractor));
+      if (version < 0)
+      {
+        // Written or locked by another client since being read.
+        long readVersion = currDBContractor.getVersion();
+        currDBContractor = dBSearchFriendlyAccess.readRecord(recNo,
+          CONTRACTOR_MAPPER);
+        failure = verifyBookable(currDBContractor, contractor);
+        if (failure != null)
+        {
+          return failure;
+        }
+        if (currDBContractor.getVersion() == readVersion)
+        {
+          // Not written, hence locked by another client, such as a group
+          // booking in progress: wait for the lock and book under it.
+          return bookLockedRecord(recNo, contractor);
+        }
+        // Written, yet still available. Report the current state; the
+        // booking may be retried.
+        return new BookResult(BookStatus.INTERMITTENTLY_UPDATED,
+          currDBContractor);
+      }
+      currDBContractor.setVersion(version);
+      return new BookResult(BookStatus.SUCCESSFULLY_BOOKED, currDBContractor);
+    }
+    catch (RecordNotFoundException e)
+    {
+      // Record might have been intermittently deleted.
+      return new BookResult(BookStatus.INTERMITTENTLY_DELETED, null);
+    }
+    catch (DatabaseException e)
+    {
+      throw new ServicesException(Text.CANT_BOOK
+        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+    }
+  }
 
-      // Verify that record (still) matches the contractor. We know that
-      // when calling the search method, it did indeed match. However,
-      // there might have been changes to the database record in the
-      // meantime. A mismatch is possible and perfectly legal.
-      String[] currDBRecord = dBSearchFriendlyAccess.readRecord(recNo);
-      Contractor currDBContractor = RecordMetaData
-        .recordToContractor(currDBRecord);
+  /**
+   * Books a record under its record lock, waiting for another client to
+   * release the lock first. Used when a booking without record lock has
+   * failed only because the record is locked, so that the lock conflict is
+   * not mistaken for an intermittent update.
+   *
+   * @param recNo      the record number of the record to book
+   * @param contractor the contractor with which to update the record
+   * @return the result of the booking operation
+   * @throws RecordNotFoundException if the record has been deleted meanwhile
+   */
+  private BookResult bookLockedRecord(final long recNo,
+                                      final Contractor contractor)
+    throws RecordNotFoundException
+  {
+    // The lock belongs to this booking, not to the serving thread. Holding
+    // no other lock, it cannot take part in a deadlock.
+    LockOwner owner = new LockOwner();
+    long cookie = dBSearchFriendlyAccess.lockRecord(recNo, owner);
+    try
+    {
+      Contractor currDBContractor = dBSearchFriendlyAccess.readRecord(recNo,
+        CONTRACTOR_MAPPER);
+      BookResult failure = verifyBookable(currDBContractor, contractor);
+      if (failure != null)
+      {
+        return failure;
+      }
+      currDBContractor.setOwner(contractor.getOwner());
+      long version = dBSearchFriendlyAccess.compareAndUpdate(recNo,
+        currDBContractor.getVersion(), RecordMetaData
+        .contractorToRecord(currDBContractor), owner);
+      if (version < 0)
+      {
+        // Cannot happen while holding the lock.
+        return new BookResult(BookStatus.INTERMITTENTLY_UPDATED,
+          dBSearchFriendlyAccess.readRecord(recNo, CONTRACTOR_MAPPER));
+      }
+      currDBContractor.setVersion(version);
+      return new BookResult(BookStatus.SUCCESSFULLY_BOOKED, currDBContractor);
+    }
+    finally
+    {
+      dBSearchFriendlyAccess.unlockRecord(recNo, cookie);
+    }
+  }
 
-      if (!currDBContractor.getOwner().equals(""))
+  /**
+   * Attempts to book several records independently of each other, see
+   * {@link #bookBatch(List)}. The records are verified just like with
+   * {@link #bookRecord(long, Contractor)}, but read, updated and, where the
+   * update fails, read again with one call to the data access class each. A
+   * record requested more than once is booked in the batch for its first
+   * request only; each further request is booked on its own afterwards,
+   * against the record as left by the requests before.
+   *
+   * @param requests the records to book
+   * @return the booking results in the order of <code>requests</code>
+   * @throws ServicesException if an unexpected problem with the data access
+   *                           class is encountered
+   */
+  private List<BookResult> bookRecordBatch(final List<BookRequest> requests)
+    throws ServicesException
+  {
+    int size = requests.size();
+    long[] recNos = new long[size];
+    for (int i = 0; i < size; ++i)
+    {
+      recNos[i] = requests.get(i).getRecNo();
+    }
+    BookResult[] bookResults = new BookResult[size];
+    List<Integer> repeated = new ArrayList<Integer>();
+    try
+    {
+      Map<Long, Contractor> currDBContractors = dBSearchFriendlyAccess
+        .readRecords(recNos, CONTRACTOR_MAPPER);
+      // Verify all records first; only the bookable ones are updated.
+      List<Integer> bookable = new ArrayList<Integer>(size);
+      Set<Long> requested = new HashSet<Long>();
+      for (int i = 0; i < size; ++i)
       {
-        // Contractor from database already owned by someone.
-        bookResult = new BookResult(BookStatus.INTERMITTENTLY_GRABBED,
-          currDBContractor);
+        if (requested.add(recNos[i]) == false)
+        {
+          // Each request needs a snapshot of its own.
+          repeated.add(i);
+          continue;
+        }
+        Contractor currDBContractor = currDBContractors.get(recNos[i]);
+        Contractor contractor = requests.get(i).getContractor();
+        bookResults[i] = verifyBookable(currDBContractor, contractor);
+        if (bookResults[i] == null)
+        {
+          currDBContractor.setOwner(contractor.getOwner());
+          bookable.add(i);
+        }
       }
-      else
+      long[] bookableRecNos = new long[bookable.size()];
+      long[] expectedVersions = new long[bookable.size()];
+      String[][] data = new String[bookable.size()][];
+      for (int j = 0; j < bookable.size(); ++j)
       {
-        // Contractor from database not owned by anyone.
-        // Conduct integrity check: compare the two contractors. Do not
-        // use the Contractor.equals method directly, though.
-        // Spare the owner fields from comparison.
-        boolean unchanged = compareContractorsExcludingOwnerField(
-          currDBContractor, contractor);
-        if (unchanged)
+        Contractor currDBContractor = currDBContractors.get(recNos[bookable
+          .get(j)]);
+        bookableRecNos[j] = recNos[bookable.get(j)];
+        expectedVersions[j] = currDBContractor.getVersion();
+        data[j] = RecordMetaData.contractorToRecord(currDBContractor);
+      }
+      long[] versions = dBSearchFriendlyAccess.compareAndUpdateRecords(
+        bookableRecNos, expectedVersions, data);
+      List<Integer> failed = new ArrayList<Integer>();
+      Map<Integer, Long> readVersions = new HashMap<Integer, Long>();
+      for (int j = 0; j < bookable.size(); ++j)
+      {
+        int i = bookable.get(j);
+        if (versions[j] < 0)
         {
-          String[] record = RecordMetaData
-            .contractorToRecord(contractor);
-          dBSearchFriendlyAccess.updateRecord(recNo, record, cookie);
-          bookResult = new BookResult(BookStatus.SUCCESSFULLY_BOOKED,
-            contractor);
+          failed.add(i);
+          readVersions.put(i, expectedVersions[j]);
         }
         else
         {
-          bookResult = new BookResult(
-            BookStatus.INTERMITTENTLY_UPDATED,
+          Contractor currDBContractor = currDBContractors.get(recNos[i]);
+          currDBContractor.setVersion(versions[j]);
+          bookResults[i] = new BookResult(BookStatus.SUCCESSFULLY_BOOKED,
             currDBContractor);
         }
       }
-      // Otherwise:
-      // Contractors and thus records do not match anymore. Interim
-      // change of database record. Contractor/record cannot be
-      // booked. This is a regular outcome of invoking this method
-      // rather than an exceptional condition.
+      if (failed.isEmpty() == false)
+      {
+        // Written, locked or deleted by another client since being read.
+        // Report the current state; the bookings may be retried if still
+        // available.
+        long[] failedRecNos = new long[failed.size()];
+        for (int j = 0; j < failed.size(); ++j)
+        {
+          failedRecNos[j] = recNos[failed.get(j)];
+        }
+        currDBContractors = dBSearchFriendlyAccess.readRecords(failedRecNos,
+          CONTRACTOR_MAPPER);
+        for (int i : failed)
+        {
+          Contractor currDBContractor = currDBContractors.get(recNos[i]);
+          Contractor contractor = requests.get(i).getContractor();
+          bookResults[i] = verifyBookable(currDBContractor, contractor);
+          if (bookResults[i] != null)
+          {
+            continue;
+          }
+          if (currDBContractor.getVersion() == readVersions.get(i))
+          {
+            // Not written, hence locked by another client: wait for the
+            // lock and book under it, as with a single booking.
+            try
+            {
+              bookResults[i] = bookLockedRecord(recNos[i], contractor);
+            }
+            catch (RecordNotFoundException e)
+            {
+              bookResults[i] = new BookResult(
+                BookStatus.INTERMITTENTLY_DELETED, null);
+            }
+          }
+          else
+          {
+            bookResults[i] = new BookResult(
+              BookStatus.INTERMITTENTLY_UPDATED, currDBContractor);
+          }
+        }
+      }
+    }
+    catch (DatabaseException e)
+    {
+      throw new ServicesException(Text.CANT_BOOK_BATCH
+        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
+    }
+    for (int i : repeated)
+    {
+      bookResults[i] = bookRecord(recNos[i], requests.get(i).getContractor());
+    }
+    List<BookResult> results = new ArrayList<BookResult>(size);
+    for (BookResult bookResult : bookResults)
+    {
+      results.add(bookResult);
+    }
+    return results;
+  }
+
+  /**
+   * Books several records as a whole, see
+   * {@link #bookAll(Map, String)}.
+   *
+   * @param contractors the records to book as last seen by the client
+   * @param owner       the customer ID with which to book the records
+   * @return the booking results in ascending record number order
+   * @throws ServicesException if an unexpected problem with the data access
+   *                           class is encountered
+   */
+  private Map<Long, BookResult> bookRecords(
+    final Map<Long, Contractor> contractors, final String owner)
+    throws ServicesException
+  {
+    // Lock in ascending record number order so that group bookings never
+    // wait for each other in a cycle.
+    SortedMap<Long, Contractor> sortedContractors =
+      new TreeMap<Long, Contractor>(contractors);
+    long[] recNos = new long[sortedContractors.size()];
+    int i = 0;
+    for (long recNo : sortedContractors.keySet())
+    {
+      recNos[i++] = recNo;
+    }
+    Map<Long, BookResult> bookResults = new LinkedHashMap<Long, BookResult>();
+    long[] cookies = null;
+    try
+    {
+      Map<Long, String[]> currDBRecords;
+      try
+      {
+        // The locks belong to this booking job, not to the serving thread.
+        cookies = dBSearchFriendlyAccess.lockRecords(recNos, new LockOwner());
+        currDBRecords = dBSearchFriendlyAccess.readRecords(recNos);
+      }
+      catch (RecordNotFoundException e)
+      {
+        // At least one record has been intermittently deleted, and none has
+        // been locked. Read the others anyway to report on them.
+        currDBRecords = new LinkedHashMap<Long, String[]>();
+        for (long recNo : recNos)
+        {
+          try
+          {
+            currDBRecords.put(recNo, dBSearchFriendlyAccess
+              .readRecord(recNo));
+          }
+          catch (RecordNotFoundException e2)
+          {
+            // Deleted. Reported as such below.
+            ;
+          }
+        }
+      }
+      // Verify all records before writing any of them.
+      boolean bookable = cookies != null;
+      for (long recNo : recNos)
+      {
+        String[] currDBRecord = currDBRecords.get(recNo);
+        BookResult failure = verifyBookable(currDBRecord == null ? null
+          : RecordMetaData.recordToContractor(currDBRecord),
+          sortedContractors.get(recNo));
+        if (failure != null)
+        {
+          bookable = false;
+        }
+        bookResults.put(recNo, failure);
+      }
+      if (bookable)
+      {
+        String[][] records = new String[recNos.length][];
+        for (int k = 0; k < recNos.length; ++k)
+        {
+          Contractor bookedContractor = RecordMetaData
+            .recordToContractor(currDBRecords.get(recNos[k]));
+          bookedContractor.setOwner(owner);
+          records[k] = RecordMetaData.contractorToRecord(bookedContractor);
+          bookResults.put(recNos[k], new BookResult(
+            BookStatus.SUCCESSFULLY_BOOKED, bookedContractor));
+        }
+        dBSearchFriendlyAccess.updateRecords(recNos, records, cookies);
+      }
+      else
+      {
+        for (Map.Entry<Long, BookResult> entry : bookResults.entrySet())
+        {
+          if (entry.getValue() == null)
+          {
+            entry.setValue(new BookResult(BookStatus.ABORTED, RecordMetaData
+              .recordToContractor(currDBRecords.get(entry.getKey()))));
+          }
+        }
+      }
     }
     catch (RecordNotFoundException e)
     {
-      // Record might have been intermittently deleted.
-      bookResult = new BookResult(BookStatus.INTERMITTENTLY_DELETED, null);
+      // Records are locked, so none of them can have been deleted.
+      throw new ServicesException(Text.CANT_BOOK_ALL
+        + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
     }
     catch (DatabaseException e)
     {
-      throw new ServicesException(Text.CANT_BOOK
+      throw new ServicesException(Text.CANT_BOOK_ALL
         + Text.NESTED_EXCEPTION_IS + e.getMessage(), e);
     }
     finally
     {
-      if (cookie >= 0)
+      if (cookies != null)
       { // meaning the lock op has been successful
-        dBSearchFriendlyAccess.unlockRecord(recNo, cookie);
+        dBSearchFriendlyAccess.unlockRecords(recNos, cookies);
       }
     }
-    return bookResult;
+    return bookResults;
+  }
+
+  /**
+   * Provides the mapper converting records into the contractors of a search
+   * result projected onto some fields. Package-private for testing.
+   *
+   * @param projection the fields to convert, or null for all fields
+   * @return the mapper
+   */
+  static RecordMapper<Contractor> mapperFor(
+    final Set<ContractorField> projection)
+  {
+    if (projection == null
+      || projection.size() == ContractorField.values().length)
+    {
+      return CONTRACTOR_MAPPER;
+    }
+    boolean[] fields = new boolean[DBSchema.getNumberOfFields()];
+    for (ContractorField field : projection)
+    {
+      fields[field.getSchemaIndex()] = true;
+    }
+    return new ContractorMapper(fields);
+  }
+
+  /**
+   * Counts the result of booking a record.
+   *
+   * @param bookResult the booking result
+   */
+  private void countBookResult(final BookResult bookResult)
+  {
+    bookResultCounts.get(bookResult.getBookStatus()).increment();
+  }
+
+  /**
+   * Verifies that a record can be booked: it must still exist, must not be
+   * owned by anyone, and must not have changed since the client has seen it.
+   * A change is detected by the version if the client knows it, otherwise by
+   * comparing the fields.
+   *
+   * @param currDBContractor the current contractor, or null if the record has
+   *                         been deleted
+   * @param contractor       the contractor as seen by the client
+   * @return null if the record can be booked, otherwise the result of the
+   *         failed booking
+   */
+  private BookResult verifyBookable(final Contractor currDBContractor,
+                                    final Contractor contractor)
+  {
+    if (currDBContractor == null)
+    {
+      return new BookResult(BookStatus.INTERMITTENTLY_DELETED, null);
+    }
+    if (currDBContractor.getOwner().equals("") == false)
+    {
+      return new BookResult(BookStatus.INTERMITTENTLY_GRABBED,
+        currDBContractor);
+    }
+    boolean unchanged = contractor.getVersion() != 0
+      && currDBContractor.getVersion() != 0 ? contractor.getVersion()
+      == currDBContractor.getVersion()
+      : compareContractorsExcludingOwnerField(currDBContractor, contractor);
+    if (unchanged == false)
+    {
+      return new BookResult(BookStatus.INTERMITTENTLY_UPDATED,
+        currDBContractor);
+    }
+    return null;
   }
 
   /**
@@ -214,4 +890,46 @@ public class ContractorManager implements BusinessServices
       && c1.getSize().equals(c2.getSize())
       && c1.getRate().equals(c2.getRate());
   }
+
+  /**
+   * Converts records straight from the record cache into
+   * <code>Contractor</code> objects carrying their versions, optionally
+   * projected onto some fields.
+   */
+  private static final class ContractorMapper implements
+    RecordMapper<Contractor>
+  {
+    /**
+     * The fields to convert, indexed like the field index constants of
+     * {@link DBSchema}, or null for all fields.
+     */
+    private final boolean[] fields;
+
+    /**
+     * Creates a contractor mapper.
+     *
+     * @param fields the fields to convert, or null for all fields
+     */
+    ContractorMapper(final boolean[] fields)
+    {
+      this.fields = fields;
+    }
+
+    @Override
+    public Contractor map(final long recNo, final long version,
+                          final String[] record)
+    {
+      // Converting is timed only while a request is being traced.
+      Trace trace = Trace.current();
+      long start = trace == null ? 0 : System.nanoTime();
+      Contractor contractor = RecordMetaData.recordToContractor(record,
+        fields);
+      contractor.setVersion(version);
+      if (trace != null)
+      {
+        trace.add("services.CONVERT", System.nanoTime() - start);
+      }
+      return contractor;
+    }
+  }
 }
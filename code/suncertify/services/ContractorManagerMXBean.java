@@ -0,0 +1,52 @@
+/*
+ * @(#)ContractorManagerMXBean.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.services;
+
+import suncertify.util.OperationStatistics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the contractor manager, through which standard
+ * JVM tooling such as JConsole watches the client requests at runtime. The
+ * most recently created {@link ContractorManager} is registered as
+ * <code>suncertify:type=ContractorManager</code> until it is terminated. All
+ * figures are cumulative since the contractor manager was created.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public interface ContractorManagerMXBean
+{
+  /**
+   * Provides the number and the latencies of the client requests per
+   * operation, such as <code>SEARCH</code> or <code>BOOK</code>. The
+   * latencies are measured on the server side and thus exclude the network.
+   *
+   * @return a map of (operation name, statistics) pairs
+   */
+  Map<String, OperationStatistics> getOperationStatistics();
+
+  /**
+   * Provides the number of booking results per status, counting each record
+   * of a group booking separately.
+   *
+   * @return a map of (booking status name, count) pairs
+   */
+  Map<String, Long> getBookResultCounts();
+}
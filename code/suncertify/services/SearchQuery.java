@@ -0,0 +1,420 @@
+/*
+ * @(#)SearchQuery.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.services;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * The criteria of a contractor search, combining everything a client may
+ * want to narrow a search down to, such as "available electricians under
+ * $60/hour": exact and prefix matches of the name and location, specialties,
+ * ranges of size and rate, and unbooked contractors only. A contractor
+ * matches if it meets all criteria set; unset criteria match any contractor.
+ * <p/>
+ * A search query is evaluated by the server as a whole, so that only the
+ * matching contractors are transferred to the client. A projection restricts
+ * the results further to the fields a client actually needs, and an order
+ * together with a limit to the first few, such as "the 20 cheapest painters
+ * in Smallville".
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ * @see BusinessServices#search(SearchQuery)
+ */
+public class SearchQuery implements Serializable
+{
+  /**
+   * Declared for serialization compatibility between version. Automatically
+   * generated.
+   */
+  private static final long serialVersionUID = 4711L;
+
+  /**
+   * The exact name, or null.
+   */
+  private String name;
+
+  /**
+   * The exact location, or null.
+   */
+  private String location;
+
+  /**
+   * The prefix of the name, or null.
+   */
+  private String namePrefix;
+
+  /**
+   * The prefix of the location, or null.
+   */
+  private String locationPrefix;
+
+  /**
+   * The specialties to look for, or null.
+   */
+  private String[] specialties;
+
+  /**
+   * Whether all of the specialties are required rather than any of them.
+   */
+  private boolean matchAllSpecialties = true;
+
+  /**
+   * The minimum number of staff, inclusive.
+   */
+  private long minSize = Long.MIN_VALUE;
+
+  /**
+   * The maximum number of staff, inclusive.
+   */
+  private long maxSize = Long.MAX_VALUE;
+
+  /**
+   * The minimum hourly charge in cents, inclusive.
+   */
+  private long minRate = Long.MIN_VALUE;
+
+  /**
+   * The maximum hourly charge in cents, inclusive.
+   */
+  private long maxRate = Long.MAX_VALUE;
+
+  /**
+   * Whether only contractors not booked by any customer match.
+   */
+  private boolean unbookedOnly;
+
+  /**
+   * The fields to return, or null for all fields.
+   */
+  private EnumSet<ContractorField> projection;
+
+  /**
+   * The field to order the results by, or null for record number order.
+   */
+  private ContractorField orderField;
+
+  /**
+   * Whether the results are ordered descending.
+   */
+  private boolean descending;
+
+  /**
+   * The maximum number of results.
+   */
+  private int limit = Integer.MAX_VALUE;
+
+  /**
+   * Gets the exact name.
+   *
+   * @return the name a contractor must have, or null
+   */
+  public final String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Sets the exact name.
+   *
+   * @param name the name a contractor must have, or null for any name
+   */
+  public final void setName(final String name)
+  {
+    this.name = name;
+  }
+
+  /**
+   * Gets the exact location.
+   *
+   * @return the location a contractor must work in, or null
+   */
+  public final String getLocation()
+  {
+    return location;
+  }
+
+  /**
+   * Sets the exact location.
+   *
+   * @param location the location a contractor must work in, or null for any
+   *                 location
+   */
+  public final void setLocation(final String location)
+  {
+    this.location = location;
+  }
+
+  /**
+   * Gets the prefix of the name.
+   *
+   * @return the string the name must begin with, or null
+   */
+  public final String getNamePrefix()
+  {
+    return namePrefix;
+  }
+
+  /**
+   * Sets the prefix of the name, e.g. "Buon" for "Buonarotti &amp; Company".
+   *
+   * @param namePrefix the string the name must begin with, or null for any
+   *                   name
+   */
+  public final void setNamePrefix(final String namePrefix)
+  {
+    this.namePrefix = namePrefix;
+  }
+
+  /**
+   * Gets the prefix of the location.
+   *
+   * @return the string the location must begin with, or null
+   */
+  public final String getLocationPrefix()
+  {
+    return locationPrefix;
+  }
+
+  /**
+   * Sets the prefix of the location.
+   *
+   * @param locationPrefix the string the location must begin with, or null
+   *                       for any location
+   */
+  public final void setLocationPrefix(final String locationPrefix)
+  {
+    this.locationPrefix = locationPrefix;
+  }
+
+  /**
+   * Gets the specialties to look for.
+   *
+   * @return the specialties, or null
+   */
+  public final String[] getSpecialties()
+  {
+    return specialties;
+  }
+
+  /**
+   * Sets the specialties to look for. They are matched against the individual
+   * items of a contractor's comma-separated list of specialties, ignoring
+   * case.
+   *
+   * @param specialties the specialties, or null or empty for any specialties
+   * @param matchAll    true if a contractor must perform all of the
+   *                    specialties, false if performing any one of them is
+   *                    sufficient
+   */
+  public final void setSpecialties(final String[] specialties,
+                                   final boolean matchAll)
+  {
+    this.specialties = specialties;
+    this.matchAllSpecialties = matchAll;
+  }
+
+  /**
+   * Tells whether all of the specialties are required.
+   *
+   * @return true for all, false for any
+   */
+  public final boolean isMatchAllSpecialties()
+  {
+    return matchAllSpecialties;
+  }
+
+  /**
+   * Constrains the size (number of staff) to a closed interval.
+   *
+   * @param min the minimum, or <code>Long.MIN_VALUE</code> for none
+   * @param max the maximum, or <code>Long.MAX_VALUE</code> for none
+   */
+  public final void setSizeRange(final long min, final long max)
+  {
+    minSize = min;
+    maxSize = max;
+  }
+
+  /**
+   * Gets the minimum size.
+   *
+   * @return the minimum number of staff, inclusive
+   */
+  public final long getMinSize()
+  {
+    return minSize;
+  }
+
+  /**
+   * Gets the maximum size.
+   *
+   * @return the maximum number of staff, inclusive
+   */
+  public final long getMaxSize()
+  {
+    return maxSize;
+  }
+
+  /**
+   * Constrains the hourly rate to a closed interval.
+   *
+   * @param min the minimum in cents (4000 meaning $40.00), or
+   *            <code>Long.MIN_VALUE</code> for none
+   * @param max the maximum in cents, or <code>Long.MAX_VALUE</code> for none
+   */
+  public final void setRateRange(final long min, final long max)
+  {
+    minRate = min;
+    maxRate = max;
+  }
+
+  /**
+   * Gets the minimum rate.
+   *
+   * @return the minimum hourly charge in cents, inclusive
+   */
+  public final long getMinRate()
+  {
+    return minRate;
+  }
+
+  /**
+   * Gets the maximum rate.
+   *
+   * @return the maximum hourly charge in cents, inclusive
+   */
+  public final long getMaxRate()
+  {
+    return maxRate;
+  }
+
+  /**
+   * Tells whether only unbooked contractors match.
+   *
+   * @return true if booked contractors are excluded
+   */
+  public final boolean isUnbookedOnly()
+  {
+    return unbookedOnly;
+  }
+
+  /**
+   * Sets whether only unbooked contractors match, that is, contractors
+   * available for booking.
+   *
+   * @param unbookedOnly true to exclude booked contractors
+   */
+  public final void setUnbookedOnly(final boolean unbookedOnly)
+  {
+    this.unbookedOnly = unbookedOnly;
+  }
+
+  /**
+   * Gets the projection.
+   *
+   * @return the fields to return, or null for all fields
+   */
+  public final EnumSet<ContractorField> getProjection()
+  {
+    return projection == null ? null : EnumSet.copyOf(projection);
+  }
+
+  /**
+   * Sets the projection, that is, the fields of the matching contractors to
+   * return. The other fields are null in the results, which saves both their
+   * copying and their transfer; the versions are always returned. A view
+   * checking availability, for instance, may need just the name, location
+   * and owner.
+   *
+   * @param fields the fields to return, or null for all fields
+   */
+  public final void setProjection(final ContractorField... fields)
+  {
+    projection = fields == null ? null : EnumSet.noneOf(ContractorField.class);
+    if (fields != null)
+    {
+      projection.addAll(Arrays.asList(fields));
+    }
+  }
+
+  /**
+   * Gets the field the results are ordered by.
+   *
+   * @return the order field, or null for record number order
+   */
+  public final ContractorField getOrderField()
+  {
+    return orderField;
+  }
+
+  /**
+   * Tells whether the results are ordered descending.
+   *
+   * @return true for descending, false for ascending order
+   */
+  public final boolean isDescending()
+  {
+    return descending;
+  }
+
+  /**
+   * Orders the results by a field. Size and rate are ordered by their
+   * numeric values, the other fields alphabetically. Contractors lacking a
+   * valid value come last.
+   *
+   * @param field      the order field, or null for record number order
+   * @param descending true for descending, false for ascending order
+   */
+  public final void setOrder(final ContractorField field,
+                             final boolean descending)
+  {
+    this.orderField = field;
+    this.descending = descending;
+  }
+
+  /**
+   * Gets the maximum number of results.
+   *
+   * @return the limit, <code>Integer.MAX_VALUE</code> for none
+   */
+  public final int getLimit()
+  {
+    return limit;
+  }
+
+  /**
+   * Limits the results to the first ones in the order of the search query.
+   * The server selects them without sorting all matches and returns only
+   * those.
+   *
+   * @param limit the maximum number of results, or
+   *              <code>Integer.MAX_VALUE</code> for none
+   * @throws IllegalArgumentException if the limit is negative
+   */
+  public final void setLimit(final int limit)
+  {
+    if (limit < 0)
+    {
+      throw new IllegalArgumentException(String.format(Text.NEGATIVE_LIMIT,
+        limit));
+    }
+    this.limit = limit;
+  }
+}
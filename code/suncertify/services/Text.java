@@ -42,12 +42,46 @@ public final class Text
   static final String CANT_GET_DATA_INSTANCE =
     "Can't get the Singleton instance of the data access class";
   /**
-   * Can't perform the find by criteria exact matches operation.
+   * Can't perform the find by search query operation.
    */
-  static final String CANT_FIND_EXACT_MATCHES =
-    "Can't perform the find by criteria exact matches operation";
+  static final String CANT_FIND_BY_SEARCH_QUERY =
+    "Can't perform the find by search query operation";
+  /**
+   * Negative limit %d.
+   */
+  static final String NEGATIVE_LIMIT = "Negative limit %d";
+  /**
+   * Can't open the paginated search.
+   */
+  static final String CANT_OPEN_SEARCH = "Can't open the paginated search";
+  /**
+   * Can't fetch from the paginated search.
+   */
+  static final String CANT_FETCH_SEARCH =
+    "Can't fetch from the paginated search";
+  /**
+   * Can't close the paginated search.
+   */
+  static final String CANT_CLOSE_SEARCH = "Can't close the paginated search";
   /**
    * Can't perform the book operation.
    */
   static final String CANT_BOOK = "Can't perform the book operation";
+  /**
+   * Can't perform the group book operation.
+   */
+  static final String CANT_BOOK_ALL =
+    "Can't perform the group book operation";
+  /**
+   * Can't perform the batch book operation.
+   */
+  static final String CANT_BOOK_BATCH =
+    "Can't perform the batch book operation";
+  /**
+   * Request ID %s has already been used for another request to book record
+   * #%d.
+   */
+  static final String REQUEST_ID_REUSED =
+    "Request ID %s has already been used for another request to book record"
+      + " #%d";
 }
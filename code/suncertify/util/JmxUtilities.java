@@ -0,0 +1,119 @@
+/*
+ * @(#)JmxUtilities.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Utility class to expose runtime figures to standard JVM tooling such as
+ * JConsole or VisualVM by registering MXBeans with the platform MBean server.
+ * The MXBeans are named <code>suncertify:type=</code><em>type</em>.
+ * <p/>
+ * Monitoring must never keep the application from working; therefore,
+ * failures to register or unregister are logged rather than thrown.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public final class JmxUtilities
+{
+  /**
+   * Logger object to log messages in the scope of this class.
+   */
+  private static final Logger LOG = Logger.getLogger(JmxUtilities.class
+    .getName());
+
+  /**
+   * The domain of the object names.
+   */
+  private static final String DOMAIN = "suncertify";
+
+  /**
+   * Prohibits instantiation as this is a utility class.
+   */
+  private JmxUtilities()
+  {
+  }
+
+  /**
+   * Registers an MXBean, replacing an MXBean already registered with the same
+   * type.
+   *
+   * @param type   the type part of the object name, e.g. "Data"
+   * @param mxBean the MXBean, an object implementing an interface whose name
+   *               ends with <code>MXBean</code>
+   */
+  public static synchronized void register(final String type,
+                                           final Object mxBean)
+  {
+    try
+    {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = objectName(type);
+      if (server.isRegistered(name))
+      {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(mxBean, name);
+    }
+    catch (JMException e)
+    {
+      LOG.log(Level.WARNING, "Can't register MXBean of type " + type, e);
+    }
+  }
+
+  /**
+   * Unregisters an MXBean. Unregistering an MXBean that is not registered has
+   * no effect.
+   *
+   * @param type the type part of the object name
+   */
+  public static synchronized void unregister(final String type)
+  {
+    try
+    {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = objectName(type);
+      if (server.isRegistered(name))
+      {
+        server.unregisterMBean(name);
+      }
+    }
+    catch (JMException e)
+    {
+      LOG.log(Level.WARNING, "Can't unregister MXBean of type " + type, e);
+    }
+  }
+
+  /**
+   * Builds the object name of an MXBean.
+   *
+   * @param type the type part of the object name
+   * @return the object name
+   * @throws JMException if the type is not valid in an object name
+   */
+  private static ObjectName objectName(final String type) throws JMException
+  {
+    return new ObjectName(DOMAIN + ":type=" + type);
+  }
+}
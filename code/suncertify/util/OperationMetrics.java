@@ -0,0 +1,220 @@
+/*
+ * @(#)OperationMetrics.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.util;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the number and the latencies of the invocations of a fixed set of
+ * operations, given by an enum type. The latencies go into histograms with
+ * buckets of powers of two nanoseconds, from which the
+ * {@link OperationStatistics} are derived.
+ * <p/>
+ * Recording is lock-free and designed for hot paths: the histograms consist
+ * of {@link LongAdder}s, so that threads recording concurrently rarely touch
+ * the same cells. A recording costs two reads of the clock and two
+ * additions. Each recording is also added as a span to the
+ * {@link Trace} of the current request, if any, named after the scope and
+ * the operation, e.g. "file.READ_RECORD". This class is thread-safe.
+ *
+ * @param <E> the enum type of the operations
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public final class OperationMetrics<E extends Enum<E>>
+{
+  /**
+   * The number of histogram buckets. Bucket <code>k</code> counts latencies
+   * of less than 2<sup>k</sup> nanoseconds (and at least 2<sup>k-1</sup>);
+   * the last bucket counts all longer latencies as well.
+   */
+  private static final int BUCKETS = 40;
+
+  /**
+   * The recorders by operation.
+   */
+  private final Map<E, Recorder> recorders;
+
+  /**
+   * Creates the metrics of a set of operations.
+   *
+   * @param operations the enum type of the operations
+   * @param scope      the prefix of the span names, e.g. "file"
+   */
+  public OperationMetrics(final Class<E> operations, final String scope)
+  {
+    recorders = new EnumMap<E, Recorder>(operations);
+    for (E operation : operations.getEnumConstants())
+    {
+      recorders.put(operation, new Recorder(scope + "." + operation.name()));
+    }
+  }
+
+  /**
+   * Records an invocation of an operation that has just completed, whether
+   * successfully or not.
+   *
+   * @param operation  the operation
+   * @param startNanos the value of <code>System.nanoTime()</code> taken when
+   *                   the operation was invoked
+   */
+  public void record(final E operation, final long startNanos)
+  {
+    long nanos = System.nanoTime() - startNanos;
+    Recorder recorder = recorders.get(operation);
+    recorder.record(nanos);
+    Trace.addSpan(recorder.spanName, nanos);
+  }
+
+  /**
+   * Takes a snapshot of the statistics of all operations.
+   *
+   * @return a map of (operation name, statistics) pairs in the order of the
+   *         enum constants
+   */
+  public Map<String, OperationStatistics> snapshot()
+  {
+    Map<String, OperationStatistics> statistics =
+      new LinkedHashMap<String, OperationStatistics>();
+    for (Map.Entry<E, Recorder> entry : recorders.entrySet())
+    {
+      statistics.put(entry.getKey().name(), entry.getValue().snapshot());
+    }
+    return statistics;
+  }
+
+  /**
+   * The recorder of a single operation.
+   */
+  private static final class Recorder
+  {
+    /**
+     * The total latency.
+     */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * The number of latencies per bucket.
+     */
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    /**
+     * The maximum latency. Contended only while the maximum grows.
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * The name of the spans of the operation.
+     */
+    private final String spanName;
+
+    /**
+     * Creates a recorder.
+     *
+     * @param spanName the name of the spans of the operation
+     */
+    Recorder(final String spanName)
+    {
+      this.spanName = spanName;
+      for (int k = 0; k < BUCKETS; ++k)
+      {
+        buckets[k] = new LongAdder();
+      }
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    void record(final long nanos)
+    {
+      totalNanos.add(nanos);
+      buckets[bucketOf(nanos)].increment();
+      long max;
+      while ((max = maxNanos.get()) < nanos
+        && maxNanos.compareAndSet(max, nanos) == false)
+      {
+        ;
+      }
+    }
+
+    /**
+     * Takes a snapshot of the statistics. The snapshot is not atomic;
+     * latencies recorded meanwhile may or may not be included.
+     *
+     * @return the statistics
+     */
+    OperationStatistics snapshot()
+    {
+      long total = totalNanos.sum();
+      long[] counts = new long[BUCKETS];
+      long count = 0;
+      for (int k = 0; k < BUCKETS; ++k)
+      {
+        counts[k] = buckets[k].sum();
+        count += counts[k];
+      }
+      return new OperationStatistics(count, count == 0 ? 0
+        : total / 1e3 / count, maxNanos.get() / 1e3, percentile(counts,
+        count, 0.5), percentile(counts, count, 0.9), percentile(counts,
+        count, 0.99));
+    }
+
+    /**
+     * Determines the bucket of a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     * @return the bucket
+     */
+    private static int bucketOf(final long nanos)
+    {
+      return Math.min(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)),
+        BUCKETS - 1);
+    }
+
+    /**
+     * Approximates a percentile by the upper bound of the bucket it falls
+     * into.
+     *
+     * @param buckets  the bucket counts
+     * @param count    the total count
+     * @param fraction the percentile as a fraction, e.g. 0.99
+     * @return the percentile in microseconds, or 0 without invocations
+     */
+    private static double percentile(final long[] buckets, final long count,
+                                     final double fraction)
+    {
+      long rank = (long) Math.ceil(count * fraction);
+      long seen = 0;
+      for (int k = 0; k < BUCKETS && count > 0; ++k)
+      {
+        seen += buckets[k];
+        if (seen >= rank)
+        {
+          return (1L << k) / 1e3;
+        }
+      }
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * @(#)OperationStatistics.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+
+package suncertify.util;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * A snapshot of the number and the latencies of the invocations of an
+ * operation, as recorded by {@link OperationMetrics}. The percentiles are
+ * approximations: they are the upper bounds of the histogram buckets the
+ * percentiles fall into, which are powers of two nanoseconds, so they may
+ * overestimate by up to a factor of two. Instances are immutable and map to
+ * composite data in JMX MXBeans.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public final class OperationStatistics implements Serializable
+{
+  /**
+   * Serial version UID.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The number of invocations.
+   */
+  private final long count;
+
+  /**
+   * The mean latency in microseconds.
+   */
+  private final double meanMicros;
+
+  /**
+   * The maximum latency in microseconds.
+   */
+  private final double maxMicros;
+
+  /**
+   * The approximate median latency in microseconds.
+   */
+  private final double p50Micros;
+
+  /**
+   * The approximate 90th percentile latency in microseconds.
+   */
+  private final double p90Micros;
+
+  /**
+   * The approximate 99th percentile latency in microseconds.
+   */
+  private final double p99Micros;
+
+  /**
+   * Creates the statistics of an operation.
+   *
+   * @param count      the number of invocations
+   * @param meanMicros the mean latency in microseconds
+   * @param maxMicros  the maximum latency in microseconds
+   * @param p50Micros  the approximate median latency in microseconds
+   * @param p90Micros  the approximate 90th percentile latency in microseconds
+   * @param p99Micros  the approximate 99th percentile latency in microseconds
+   */
+  @ConstructorProperties({"count", "meanMicros", "maxMicros", "p50Micros",
+    "p90Micros", "p99Micros"})
+  public OperationStatistics(final long count, final double meanMicros,
+                             final double maxMicros, final double p50Micros,
+                             final double p90Micros, final double p99Micros)
+  {
+    this.count = count;
+    this.meanMicros = meanMicros;
+    this.maxMicros = maxMicros;
+    this.p50Micros = p50Micros;
+    this.p90Micros = p90Micros;
+    this.p99Micros = p99Micros;
+  }
+
+  /**
+   * Provides the number of invocations.
+   *
+   * @return the number of invocations
+   */
+  public long getCount()
+  {
+    return count;
+  }
+
+  /**
+   * Provides the mean latency.
+   *
+   * @return the mean latency in microseconds, or 0 without invocations
+   */
+  public double getMeanMicros()
+  {
+    return meanMicros;
+  }
+
+  /**
+   * Provides the maximum latency.
+   *
+   * @return the maximum latency in microseconds
+   */
+  public double getMaxMicros()
+  {
+    return maxMicros;
+  }
+
+  /**
+   * Provides the approximate median latency.
+   *
+   * @return the median latency in microseconds
+   */
+  public double getP50Micros()
+  {
+    return p50Micros;
+  }
+
+  /**
+   * Provides the approximate 90th percentile latency.
+   *
+   * @return the 90th percentile latency in microseconds
+   */
+  public double getP90Micros()
+  {
+    return p90Micros;
+  }
+
+  /**
+   * Provides the approximate 99th percentile latency.
+   *
+   * @return the 99th percentile latency in microseconds
+   */
+  public double getP99Micros()
+  {
+    return p99Micros;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("count %d, mean %.1f us, p50 %.1f us, p90 %.1f us, "
+      + "p99 %.1f us, max %.1f us", count, meanMicros, p50Micros, p90Micros,
+      p99Micros, maxMicros);
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * @(#)Trace.java    1.0 21/06/2010
+ *
+ * Candidate: Lars Kuettner
+ * Prometric ID: sr6168243
+ * Candidate ID: SUN581781
+ *
+ * Sun Certified Developer for Java 2 Platform, Standard Edition Programming
+ * Assignment (CX-310-252A)
+ *
+ * This class is part of the Programming Assignment of the Sun Certified
+ * Developer for Java 2 Platform, Standard Edition certification program, must
+ * not be used out of this context and may be used exclusively by Sun
+ * Microsystems.
+ */
+
+package suncertify.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The trace of a single client request, accumulating the time spent in its
+ * spans, such as waiting for locks, file I/O or converting results. A trace
+ * is started by the server when a request comes in and is bound to the
+ * thread serving the request until it is finished; meanwhile, any layer may
+ * add spans to the current trace without it being passed along.
+ * <p/>
+ * Spans are identified by name, e.g. "file.READ_RECORD". The spans of the
+ * same name are summed up, as are their counts. Spans may nest: a span of
+ * the services layer includes the spans of the database layer it causes.
+ * <p/>
+ * A request taking at least the slow threshold is logged on finishing with
+ * its breakdown in a single line of <em>key=value</em> pairs. The threshold
+ * is given in milliseconds by the system property
+ * {@value #SLOW_THRESHOLD_PROPERTY}, by default
+ * {@value #DEFAULT_SLOW_THRESHOLD_MILLIS}, and may be changed at runtime.
+ * <p/>
+ * A trace is confined to its thread and therefore not thread-safe. Adding
+ * a span without a current trace costs a thread-local lookup.
+ *
+ * @author Lars Kuettner
+ * @version 1.0
+ */
+public final class Trace
+{
+  /**
+   * The system property giving the slow threshold in milliseconds.
+   */
+  public static final String SLOW_THRESHOLD_PROPERTY =
+    "suncertify.trace.slowThresholdMillis";
+
+  /**
+   * The default slow threshold in milliseconds.
+   */
+  public static final long DEFAULT_SLOW_THRESHOLD_MILLIS = 500;
+
+  /**
+   * Logger object to log messages in the scope of this class.
+   */
+  private static final Logger LOG = Logger.getLogger(Trace.class.getName());
+
+  /**
+   * The trace bound to the current thread, if any.
+   */
+  private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<Trace>();
+
+  /**
+   * The number of the next trace started without a trace ID.
+   */
+  private static final AtomicLong NEXT_NUMBER = new AtomicLong();
+
+  /**
+   * The slow threshold in nanoseconds.
+   */
+  private static volatile long slowThresholdNanos = TimeUnit.MILLISECONDS
+    .toNanos(Long.getLong(SLOW_THRESHOLD_PROPERTY,
+      DEFAULT_SLOW_THRESHOLD_MILLIS));
+
+  /**
+   * The name of the traced request, e.g. "book".
+   */
+  private final String operation;
+
+  /**
+   * The ID of the trace.
+   */
+  private final String traceId;
+
+  /**
+   * The value of <code>System.nanoTime()</code> when the trace was started.
+   */
+  private final long startNanos;
+
+  /**
+   * The trace bound to the thread before this one, restored on finishing.
+   */
+  private final Trace outer;
+
+  /**
+   * The spans by name, each a pair of count and total nanoseconds, in the
+   * order of their first occurrence.
+   */
+  private final Map<String, long[]> spans = new LinkedHashMap<String, long[]>();
+
+  /**
+   * Creates a trace.
+   *
+   * @param operation the name of the traced request
+   * @param traceId   the ID of the trace
+   * @param outer     the trace bound to the thread so far, or null
+   */
+  private Trace(final String operation, final String traceId,
+                final Trace outer)
+  {
+    this.operation = operation;
+    this.traceId = traceId;
+    this.outer = outer;
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Starts a trace and binds it to the current thread. The trace must be
+   * finished by the same thread, preferably in a <code>finally</code> block.
+   *
+   * @param operation the name of the traced request, e.g. "book"
+   * @param traceId   the ID passed by the client so that its own timing can
+   *                  be lined up with the trace, or null to have an ID
+   *                  assigned
+   * @return the trace
+   */
+  public static Trace start(final String operation, final String traceId)
+  {
+    Trace trace = new Trace(operation, traceId == null ? "s"
+      + NEXT_NUMBER.incrementAndGet() : traceId, CURRENT.get());
+    CURRENT.set(trace);
+    return trace;
+  }
+
+  /**
+   * Provides the trace bound to the current thread.
+   *
+   * @return the current trace, or null if there is none
+   */
+  public static Trace current()
+  {
+    return CURRENT.get();
+  }
+
+  /**
+   * Adds a span to the trace bound to the current thread, if any.
+   *
+   * @param name  the name of the span
+   * @param nanos the duration of the span in nanoseconds
+   */
+  public static void addSpan(final String name, final long nanos)
+  {
+    Trace trace = CURRENT.get();
+    if (trace != null)
+    {
+      trace.add(name, nanos);
+    }
+  }
+
+  /**
+   * Unbinds the trace bound to the current thread, if any, while the thread
+   * works on behalf of other requests. The trace must be bound again with
+   * {@link #resume(Trace)} by the same thread, preferably in a
+   * <code>finally</code> block.
+   *
+   * @return the trace unbound, or null if there was none
+   */
+  public static Trace suspend()
+  {
+    Trace trace = CURRENT.get();
+    CURRENT.remove();
+    return trace;
+  }
+
+  /**
+   * Binds a trace unbound by {@link #suspend()} to the current thread again.
+   *
+   * @param trace the trace returned by <code>suspend</code>, or null
+   */
+  public static void resume(final Trace trace)
+  {
+    if (trace != null)
+    {
+      CURRENT.set(trace);
+    }
+  }
+
+  /**
+   * Sets the slow threshold. Requests taking at least that long are logged.
+   *
+   * @param millis the threshold in milliseconds
+   */
+  public static void setSlowThreshold(final long millis)
+  {
+    slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  /**
+   * Adds a span to this trace.
+   *
+   * @param name  the name of the span
+   * @param nanos the duration of the span in nanoseconds
+   */
+  public void add(final String name, final long nanos)
+  {
+    long[] span = spans.get(name);
+    if (span == null)
+    {
+      span = new long[2];
+      spans.put(name, span);
+    }
+    ++span[0];
+    span[1] += nanos;
+  }
+
+  /**
+   * Provides the number of spans of a name added to this trace so far.
+   *
+   * @param name the name of the spans
+   * @return the number of spans
+   */
+  public long getSpanCount(final String name)
+  {
+    long[] span = spans.get(name);
+    return span == null ? 0 : span[0];
+  }
+
+  /**
+   * Finishes this trace, unbinding it from the current thread, and logs it
+   * if it has taken at least the slow threshold.
+   *
+   * @return the duration of the trace in nanoseconds
+   */
+  public long finish()
+  {
+    long nanos = System.nanoTime() - startNanos;
+    if (outer == null)
+    {
+      CURRENT.remove();
+    }
+    else
+    {
+      CURRENT.set(outer);
+    }
+    if (nanos >= slowThresholdNanos && LOG.isLoggable(Level.WARNING))
+    {
+      LOG.warning(format(nanos));
+    }
+    return nanos;
+  }
+
+  /**
+   * Provides the ID of this trace.
+   *
+   * @return the trace ID
+   */
+  public String getTraceId()
+  {
+    return traceId;
+  }
+
+  /**
+   * Provides the name of the traced request.
+   *
+   * @return the operation
+   */
+  public String getOperation()
+  {
+    return operation;
+  }
+
+  /**
+   * Formats this trace as a single line of <em>key=value</em> pairs, e.g.
+   * <code>slowOperation=book traceId=c7 totalMicros=812345
+   * file.READ_RECORD.count=1 file.READ_RECORD.micros=40123 ...</code>.
+   *
+   * @param nanos the duration of the trace in nanoseconds
+   * @return the formatted trace
+   */
+  private String format(final long nanos)
+  {
+    StringBuilder line = new StringBuilder();
+    line.append("slowOperation=").append(operation).append(" traceId=")
+      .append(traceId).append(" totalMicros=").append(nanos / 1000);
+    for (Map.Entry<String, long[]> span : spans.entrySet())
+    {
+      line.append(' ').append(span.getKey()).append(".count=")
+        .append(span.getValue()[0]).append(' ').append(span.getKey())
+        .append(".micros=").append(span.getValue()[1] / 1000);
+    }
+    return line.toString();
+  }
+}
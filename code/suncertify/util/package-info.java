@@ -21,7 +21,13 @@
  * interfaces ({@link suncertify.util.RemoteObservable},
  * {@link suncertify.util.RemoteObserver}) and
  * one class {@link suncertify.util.Observable} to model a distributed
- * RMI-based version of the Java standard observer/observable framework.   
+ * RMI-based version of the Java standard observer/observable framework.
+ * <p/>
+ * Besides, the package provides lock-free runtime metrics
+ * ({@link suncertify.util.OperationMetrics},
+ * {@link suncertify.util.OperationStatistics}) and their exposure to
+ * standard JVM tooling via JMX ({@link suncertify.util.JmxUtilities}), as
+ * well as the tracing of single requests ({@link suncertify.util.Trace}).
  *
  * @author Lars Kuettner
  * @version 1.0
@@ -2,6 +2,11 @@ package suncertify.db;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.TreeMap;
 
 import org.junit.After;
@@ -13,11 +18,12 @@ import suncertify.util.TestUtils;
 
 public class DBFileAccessTest {
 
+    private String databaseLocation;
     private DBFileAccess dBFileAccess;
 
     @Before
     public void setUp() throws Exception {
-        String databaseLocation = TestUtils.provideTestDB();
+        databaseLocation = TestUtils.provideTestDB();
 
         System.out
                 .println("DBFileAccess.getInstance(" + databaseLocation + ")");
@@ -102,4 +108,163 @@ public class DBFileAccessTest {
         // Print the final set of valid records.
         TestUtils.printRecords(records);
     }
+
+    private static String[] record(String name) {
+        Contractor c = new Contractor();
+        c.setName(name);
+        c.setLocation("Smallville");
+        c.setSpecialties("Roofing");
+        c.setSize("4");
+        c.setRate("$40.00");
+        c.setOwner("");
+        return RecordMetaData.contractorToRecord(c);
+    }
+
+    private byte[] fileContents() throws Exception {
+        return Files.readAllBytes(new File(databaseLocation).toPath());
+    }
+
+    @Test
+    public void testWriteRecords() throws Exception {
+        System.out.println("testWriteRecords");
+        for (long recNo : new long[]{3, 5, 10}) {
+            dBFileAccess.deleteRecord(recNo);
+        }
+        String[] untouched = dBFileAccess.readRecord(7);
+        // Adjacent slots 3 to 6, and 11, 20 and the appended 28 on their
+        // own; deliberately not in record number order.
+        long[] newRecNos = new long[]{28, 5, 3};
+        String[][] newData = new String[][]{record("New 28"),
+                record("New 5"), record("New 3")};
+        long[] recNos = new long[]{20, 6, 4, 11};
+        String[][] data = new String[][]{record("Updated 20"),
+                record("Updated 6"), record("Updated 4"),
+                record("Updated 11")};
+        dBFileAccess.placeNewAndUpdateRecords(newRecNos, newData, recNos,
+                data);
+        for (int k = 0; k < newRecNos.length; ++k) {
+            assertArrayEquals(newData[k],
+                    dBFileAccess.readRecord(newRecNos[k]));
+        }
+        for (int k = 0; k < recNos.length; ++k) {
+            assertArrayEquals(data[k], dBFileAccess.readRecord(recNos[k]));
+        }
+        assertArrayEquals(untouched, dBFileAccess.readRecord(7));
+        try {
+            dBFileAccess.readRecord(10);
+            fail("RecordNotFoundException expected");
+        } catch (RecordNotFoundException e) {
+            // expected: still deleted
+        }
+        assertEquals(28, TestUtils.readRecords(dBFileAccess).size());
+    }
+
+    @Test
+    public void testWriteRecordsVerifiesFlags() throws Exception {
+        System.out.println("testWriteRecordsVerifiesFlags");
+        dBFileAccess.deleteRecord(10);
+        byte[] contents = fileContents();
+        // One wrong valid flag among otherwise correct slots, appended ones
+        // included: nothing is written. Slot 11 is not empty.
+        try {
+            dBFileAccess.placeNewAndUpdateRecords(new long[]{10, 28, 11},
+                    new String[][]{record("New 10"), record("New 28"),
+                            record("New 11")},
+                    new long[]{9, 12},
+                    new String[][]{record("Updated 9"), record("Updated 12")});
+            fail("RecordNotFoundException expected");
+        } catch (RecordNotFoundException e) {
+            // expected
+        }
+        assertArrayEquals(contents, fileContents());
+        // Record 10 is not valid.
+        try {
+            dBFileAccess.updateRecords(new long[]{9, 10, 11},
+                    new String[][]{record("Updated 9"), record("Updated 10"),
+                            record("Updated 11")});
+            fail("RecordNotFoundException expected");
+        } catch (RecordNotFoundException e) {
+            // expected
+        }
+        assertArrayEquals(contents, fileContents());
+        try {
+            dBFileAccess.placeNewRecords(new long[]{10, 11},
+                    new String[][]{record("New 10"), record("New 11")});
+            fail("RecordNotFoundException expected");
+        } catch (RecordNotFoundException e) {
+            // expected
+        }
+        assertArrayEquals(contents, fileContents());
+    }
+
+    @Test
+    public void testWriteRecordsVerifiesRecNos() throws Exception {
+        System.out.println("testWriteRecordsVerifiesRecNos");
+        byte[] contents = fileContents();
+        // An append leaving a gap.
+        try {
+            dBFileAccess.placeNewRecords(new long[]{28, 30},
+                    new String[][]{record("New 28"), record("New 30")});
+            fail("RecordNotFoundException expected");
+        } catch (RecordNotFoundException e) {
+            // expected
+        }
+        // A duplicate record number.
+        try {
+            dBFileAccess.placeNewRecords(new long[]{28, 28},
+                    new String[][]{record("New 28"), record("New 28")});
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        // An append failing on another slot does not extend the file.
+        try {
+            dBFileAccess.placeNewRecords(new long[]{28, 4},
+                    new String[][]{record("New 28"), record("New 4")});
+            fail("RecordNotFoundException expected");
+        } catch (RecordNotFoundException e) {
+            // expected
+        }
+        assertArrayEquals(contents, fileContents());
+        try {
+            dBFileAccess.placeNewRecord(29, record("New 29"));
+            fail("RecordNotFoundException expected");
+        } catch (RecordNotFoundException e) {
+            // expected: 28 is still the first slot to append
+        }
+
+        // A successful append extends the file, contiguously.
+        dBFileAccess.placeNewRecords(new long[]{29, 28},
+                new String[][]{record("New 29"), record("New 28")});
+        assertEquals(30, TestUtils.readRecords(dBFileAccess).size());
+        assertEquals("New 29", dBFileAccess.readRecord(29)[0]);
+        dBFileAccess.placeNewRecord(30, record("New 30"));
+        assertEquals(31, TestUtils.readRecords(dBFileAccess).size());
+    }
+
+    @Test
+    public void testRestoreRecords() throws Exception {
+        System.out.println("testRestoreRecords");
+        byte[] contents = fileContents();
+        int recordLength = RecordMetaData.getInstance().getRecordLength();
+        int offsetToStart = contents.length - 28 * recordLength;
+        // As if the write of slots 4 and 5 and the appended 28 had failed
+        // midway, with the former contents as read before.
+        long[] recNos = new long[]{28, 5, 4};
+        Integer[] order = new Integer[]{2, 1, 0};
+        List<Integer> groupStarts = Arrays.asList(0, 2);
+        List<byte[]> originals = new ArrayList<byte[]>();
+        originals.add(Arrays.copyOfRange(contents,
+                offsetToStart + 4 * recordLength,
+                offsetToStart + 6 * recordLength));
+        originals.add(new byte[0]);
+        dBFileAccess.placeNewAndUpdateRecords(new long[]{28},
+                new String[][]{record("New 28")}, new long[]{5, 4},
+                new String[][]{record("Updated 5"), record("Updated 4")});
+        assertFalse(Arrays.equals(contents, fileContents()));
+
+        dBFileAccess.restoreRecords(recNos, order, groupStarts, originals, 1,
+                contents.length);
+        assertArrayEquals(contents, fileContents());
+    }
 }
@@ -5,10 +5,13 @@ import org.junit.Before;
 import org.junit.Test;
 import suncertify.services.Contractor;
 import suncertify.util.TestUtils;
+import suncertify.util.Trace;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -17,6 +20,7 @@ public class DataTest {
     // # of records originally in database
     private final long nRecords = 28;
 
+    private String databaseLocation;
     private Data DATA;
     private final Contractor contractor = new Contractor();
     // Concurrency tests - fixed thread pool size.
@@ -24,7 +28,7 @@ public class DataTest {
 
     @Before
     public void setUp() throws Exception {
-        String databaseLocation = TestUtils.provideTestDB();
+        databaseLocation = TestUtils.provideTestDB();
 
         DATA = Data.getInstance(databaseLocation);
         assertNotNull(DATA);
@@ -181,6 +185,56 @@ public class DataTest {
                 records.size() == nRecords);
     }
 
+    @Test
+    public void testConcurrentCompareAndUpdate() throws Exception {
+        System.out.println("testConcurrentCompareAndUpdate w/ " + nThreads
+                + " threads.");
+        final int owner = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.OWNER_INDEX);
+        final RecordMapper<Object[]> versionedMapper =
+                new RecordMapper<Object[]>() {
+                    public Object[] map(long recNo, long version,
+                            String[] record) {
+                        return new Object[]{version, record.clone()};
+                    }
+                };
+        final AtomicInteger retries = new AtomicInteger();
+        ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+        long t = TestUtils.time(threadPool, nThreads, new Runnable() {
+            public void run() {
+                for (long recNo = 0; recNo < nRecords; ++recNo) {
+                    try {
+                        // Optimistic increment: retry on interim changes.
+                        while (true) {
+                            Object[] read = DATA.readRecord(recNo,
+                                    versionedMapper);
+                            String[] data = (String[]) read[1];
+                            data[owner] = String.valueOf((data[owner]
+                                    .equals("") ? 0 : Integer
+                                    .valueOf(data[owner])) + 1);
+                            if (DATA.compareAndUpdate(recNo, (Long) read[0],
+                                    data) >= 0) {
+                                break;
+                            }
+                            retries.incrementAndGet();
+                        }
+                    } catch (RecordNotFoundException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        });
+        threadPool.shutdown();
+        System.out.format(Locale.US, "All threads terminated after %.3f secs"
+                + " with %d retries.%n", (double) t / 1e9, retries.get());
+
+        // No increment has been lost.
+        String[] criteria = new String[DBSchema.getNumberOfFields()];
+        criteria[owner] = String.valueOf(nThreads);
+        assertEquals(nRecords,
+                DATA.findByCriteriaExactMatches(criteria).size());
+    }
+
     @Test
     public void testConcurrentCreateRecord() {
         System.out.println("testConcurrentCreateRecord w/ " + nThreads
@@ -360,4 +414,934 @@ public class DataTest {
         assertTrue("nThreadsSucceeded=" + nThreadsSucceeded, nThreadsSucceeded
                 .intValue() == nThreads);
     }
+
+    @Test
+    public void testFindByCriteriaAfterUpdate() throws Exception {
+        System.out.println("testFindByCriteriaAfterUpdate");
+        Contractor c = new Contractor();
+        c.setName("Dogs W");
+        String[] criteria = RecordMetaData.contractorToRecord(c);
+        assertEquals(6, DATA.findByCriteria(criteria).length);
+
+        // Rename record #0 and verify that the index follows.
+        long cookie = DATA.lockRecord(0);
+        String[] data = DATA.readRecord(0);
+        String[] renamed = RecordMetaData.contractorToRecord(contractor);
+        DATA.updateRecord(0, renamed, cookie);
+        DATA.unlockRecord(0, cookie);
+        // Modifying the caller's array must not affect the cache.
+        Arrays.fill(renamed, "Dogs W");
+        long[] recNos = DATA.findByCriteria(criteria);
+        assertTrue(Arrays.equals(new long[]{4, 5, 8, 16, 25}, recNos));
+
+        c = new Contractor();
+        c.setName("Wendelin");
+        criteria = RecordMetaData.contractorToRecord(c);
+        assertTrue(Arrays.equals(new long[]{0},
+                DATA.findByCriteria(criteria)));
+
+        // Delete record #4 and create a record recycling its number.
+        cookie = DATA.lockRecord(4);
+        DATA.deleteRecord(4, cookie);
+        c = new Contractor();
+        c.setName("Dogs W");
+        criteria = RecordMetaData.contractorToRecord(c);
+        assertTrue(Arrays.equals(new long[]{5, 8, 16, 25},
+                DATA.findByCriteria(criteria)));
+        assertEquals(4, DATA.createRecord(data));
+        assertTrue(Arrays.equals(new long[]{4, 5, 8, 16, 25},
+                DATA.findByCriteria(criteria)));
+    }
+
+    @Test
+    public void testFindBySpecialties() throws Exception {
+        System.out.println("testFindBySpecialties");
+        String[] all = RecordMetaData.contractorToRecord(new Contractor());
+        Map<Long, String[]> records;
+
+        records = DATA.findBySpecialties(all, new String[]{"Painting"}, true);
+        assertEquals(new TreeSet<Long>(Arrays.asList(2L, 8L, 12L, 15L, 27L)),
+                records.keySet());
+        records = DATA.findBySpecialties(all,
+                new String[]{"painting ", "HEATING"}, true);
+        assertEquals(new TreeSet<Long>(Arrays.asList(8L, 12L, 15L, 27L)),
+                records.keySet());
+        records = DATA.findBySpecialties(all,
+                new String[]{"Painting", "Glass"}, false);
+        assertEquals(new TreeSet<Long>(Arrays.asList(2L, 7L, 8L, 12L, 15L,
+                17L, 27L)), records.keySet());
+        records = DATA.findBySpecialties(all,
+                new String[]{"Painting", "Juggling"}, true);
+        assertTrue(records.isEmpty());
+
+        Contractor c = new Contractor();
+        c.setLocation("Whoville");
+        records = DATA.findBySpecialties(RecordMetaData.contractorToRecord(c),
+                new String[]{"Painting"}, true);
+        assertEquals(Collections.singleton(2L), records.keySet());
+
+        // The index follows updates.
+        long cookie = DATA.lockRecord(2);
+        DATA.updateRecord(2, RecordMetaData.contractorToRecord(contractor),
+                cookie);
+        DATA.unlockRecord(2, cookie);
+        records = DATA.findBySpecialties(RecordMetaData.contractorToRecord(c),
+                new String[]{"Painting"}, true);
+        assertTrue(records.isEmpty());
+        records = DATA.findBySpecialties(all,
+                new String[]{"Like-a-bike riding"}, true);
+        assertEquals(Collections.singleton(2L), records.keySet());
+    }
+
+    @Test
+    public void testFindByRanges() throws Exception {
+        System.out.println("testFindByRanges");
+        String[] all = RecordMetaData.contractorToRecord(new Contractor());
+        Map<Long, String[]> records;
+
+        // Rate between $40 and $50.
+        records = DATA.findByRanges(all, Long.MIN_VALUE, Long.MAX_VALUE,
+                4000, 5000);
+        assertEquals(new TreeSet<Long>(Arrays.asList(4L, 8L, 14L, 21L)),
+                records.keySet());
+        // At least 9 staff.
+        records = DATA.findByRanges(all, 9, Long.MAX_VALUE, Long.MIN_VALUE,
+                Long.MAX_VALUE);
+        assertEquals(new TreeSet<Long>(Arrays.asList(1L, 4L, 9L, 10L)),
+                records.keySet());
+        // Both, combined with a location.
+        Contractor c = new Contractor();
+        c.setLocation("Whoville");
+        records = DATA.findByRanges(RecordMetaData.contractorToRecord(c), 9,
+                Long.MAX_VALUE, 4000, 5000);
+        assertEquals(Collections.singleton(4L), records.keySet());
+        // Empty interval.
+        records = DATA.findByRanges(all, 5, 4, Long.MIN_VALUE,
+                Long.MAX_VALUE);
+        assertTrue(records.isEmpty());
+
+        // The index follows updates: record #4 now has 3 staff at $0.00.
+        long cookie = DATA.lockRecord(4);
+        DATA.updateRecord(4, RecordMetaData.contractorToRecord(contractor),
+                cookie);
+        DATA.unlockRecord(4, cookie);
+        records = DATA.findByRanges(all, 9, Long.MAX_VALUE, Long.MIN_VALUE,
+                Long.MAX_VALUE);
+        assertEquals(new TreeSet<Long>(Arrays.asList(1L, 9L, 10L)),
+                records.keySet());
+        records = DATA.findByRanges(all, Long.MIN_VALUE, Long.MAX_VALUE, 0,
+                0);
+        assertEquals(Collections.singleton(4L), records.keySet());
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        System.out.println("testFind");
+        Query query = new Query();
+        query.setPrefixCriteria(new String[]{"Dogs"});
+        query.setSpecialties(new String[]{"Painting"}, true);
+        assertEquals(Collections.singleton(8L), DATA.find(query).keySet());
+        assertTrue(DATA.explain(query).startsWith("INDEX"));
+
+        // A rather unselective range is tested on the few candidates of a
+        // selective name instead of being looked up.
+        query = new Query();
+        query.setExactCriteria(new String[]{"Swanders & Flaughn"});
+        query.setRateRange(8000, Long.MAX_VALUE);
+        assertEquals(Collections.singleton(27L), DATA.find(query).keySet());
+        assertTrue(DATA.explain(query).contains("test"));
+
+        query = new Query();
+        query.setSpecialties(new String[]{"Painting", "Glass"}, false);
+        query.setRateRange(4000, Long.MAX_VALUE);
+        query.setSizeRange(Long.MIN_VALUE, 7);
+        assertEquals(new TreeSet<Long>(Arrays.asList(2L, 7L, 8L, 12L, 15L,
+                17L)), DATA.find(query).keySet());
+
+        // No criteria at all match every record.
+        assertEquals(nRecords, DATA.find(new Query()).size());
+
+        // A criterion beyond the fields of a record never matches.
+        String[] criteria = new String[DBSchema.getNumberOfFields() + 1];
+        criteria[criteria.length - 1] = "";
+        query = new Query();
+        query.setExactCriteria(criteria);
+        assertTrue(DATA.find(query).isEmpty());
+        assertTrue(DATA.explain(query).startsWith("EMPTY"));
+    }
+
+    @Test
+    public void testParallelColumnScan() {
+        System.out.println("testParallelColumnScan");
+        // A sparse cache, large enough to be split into several chunks.
+        int slotCount = 5 * ParallelScan.THRESHOLD + 17;
+        Map<Long, String[]> cache = new HashMap<Long, String[]>();
+        ColumnStore columns = new ColumnStore(
+                new ValueDictionary[DBSchema.getNumberOfFields()]);
+        for (long recNo = 0; recNo < slotCount; recNo += 3) {
+            String[] record = RecordMetaData.contractorToRecord(contractor);
+            record[0] = (recNo % 7 == 0 ? "N\u00e4me " : "Name ") + recNo % 100;
+            cache.put(recNo, record);
+            columns.set(recNo, record);
+        }
+        List<QueryTerm> terms = Collections.<QueryTerm>singletonList(
+                new QueryTerm.Prefix(0, "Name 4", null, columns));
+        BitSet matches = ParallelScan.scan(columns, cache, terms, slotCount);
+        int expected = 0;
+        for (Map.Entry<Long, String[]> entry : cache.entrySet()) {
+            boolean match = entry.getValue()[0].startsWith("Name 4");
+            assertEquals(match, matches.get(entry.getKey().intValue()));
+            expected += match ? 1 : 0;
+        }
+        assertEquals(expected, matches.cardinality());
+    }
+
+    @Test
+    public void testSearchCache() throws Exception {
+        System.out.println("testSearchCache");
+        SearchCache cache = new SearchCache(new RecordIndexes());
+        Query query = new Query();
+        query.setExactCriteria(new String[]{null, "Whoville"});
+        BitSet matches = new BitSet();
+        matches.set(2);
+        cache.put(query, matches);
+        query.setExactCriteria(new String[]{null, "Smallville"});
+        assertNull(cache.get(query));
+        query.setExactCriteria(new String[]{null, "Whoville"});
+        assertEquals(matches, cache.get(query));
+        // Order and limit variants share the result of their criteria.
+        Query sorted = new Query(query);
+        sorted.setOrder(0, true);
+        sorted.setLimit(1);
+        assertEquals(matches, cache.get(sorted));
+        SearchCache shared = new SearchCache(new RecordIndexes());
+        shared.put(sorted, matches);
+        assertEquals(matches, shared.get(query));
+
+        // Booking changes the owner only: the result remains valid.
+        String[] record = RecordMetaData.contractorToRecord(contractor);
+        String[] booked = record.clone();
+        booked[DBSchema.getNumberOfFields() - 1] = "87654321";
+        cache.recordChanged(record, booked);
+        assertEquals(matches, cache.get(query));
+        // A changed location and a new record invalidate it.
+        String[] moved = booked.clone();
+        moved[1] = "Smallville";
+        cache.recordChanged(booked, moved);
+        assertNull(cache.get(query));
+        cache.put(query, matches);
+        cache.recordChanged(null, record);
+        assertNull(cache.get(query));
+
+        // Through the data access class: repeated searches between writes.
+        Map<Long, String[]> records = DATA.findByCriteriaExactMatches(
+                new String[]{null, "Whoville"});
+        assertEquals(new TreeSet<Long>(Arrays.asList(2L, 3L, 4L)),
+                records.keySet());
+        String[] data = DATA.readRecord(3);
+        data[1] = "Smallville";
+        long cookie = DATA.lockRecord(3);
+        DATA.updateRecord(3, data, cookie);
+        DATA.unlockRecord(3, cookie);
+        records = DATA.findByCriteriaExactMatches(
+                new String[]{null, "Whoville"});
+        assertEquals(new TreeSet<Long>(Arrays.asList(2L, 4L)),
+                records.keySet());
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        System.out.println("testCursor");
+        long cursorId = DATA.openCursor(new Query());
+        // Changes after opening do not affect the snapshot.
+        String[] data = DATA.readRecord(0);
+        String name = data[0];
+        data[0] = "Cats With Tools";
+        long cookie = DATA.lockRecord(0);
+        DATA.updateRecord(0, data, cookie);
+        DATA.unlockRecord(0, cookie);
+
+        List<Long> recNos = new ArrayList<Long>();
+        Map<Long, String[]> page = DATA.fetch(cursorId, 10);
+        assertEquals(name, page.get(0L)[0]);
+        while (page.isEmpty() == false) {
+            assertTrue(page.size() <= 10);
+            recNos.addAll(page.keySet());
+            page = DATA.fetch(cursorId, 10);
+        }
+        List<Long> expected = new ArrayList<Long>();
+        for (long recNo = 0; recNo < nRecords; ++recNo) {
+            expected.add(recNo);
+        }
+        assertEquals(expected, recNos);
+
+        DATA.closeCursor(cursorId);
+        try {
+            DATA.fetch(cursorId, 10);
+            fail("Fetched from a closed cursor");
+        } catch (DatabaseException e) {
+            // Expected.
+        }
+
+        // Unused cursors expire.
+        CursorRegistry registry = new CursorRegistry(0);
+        cursorId = registry.open(new BitSet(), new HashMap<Long, String[]>(),
+                new HashMap<Long, Long>());
+        Thread.sleep(5);
+        try {
+            registry.fetch(cursorId, 10, null);
+            fail("Fetched from an expired cursor");
+        } catch (DatabaseException e) {
+            // Expected.
+        }
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testFindWithMapper() throws Exception {
+        System.out.println("testFindWithMapper");
+        Query query = new Query();
+        query.setExactCriteria(new String[]{"Dogs With Tools"});
+        Map<Long, Contractor> contractors = DATA.find(query,
+                new RecordMapper<Contractor>() {
+                    public Contractor map(long recNo, long version,
+                            String[] record) {
+                        return RecordMetaData.recordToContractor(record);
+                    }
+                });
+        assertEquals(Arrays.asList(0L, 4L, 5L, 8L, 16L, 25L),
+                new ArrayList<Long>(contractors.keySet()));
+        Contractor c = contractors.get(8L);
+        assertEquals("Dogs With Tools", c.getName());
+        assertEquals("Pleasantville", c.getLocation());
+        assertEquals("Heating, Painting", c.getSpecialties());
+        assertEquals("$45.00", c.getRate());
+        assertArrayEquals(DATA.readRecord(8),
+                RecordMetaData.contractorToRecord(c));
+    }
+
+    @Test
+    public void testDictionaryEncoding() throws Exception {
+        System.out.println("testDictionaryEncoding");
+        int location = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.LOCATION_INDEX);
+        // Cached records share one instance per distinct location.
+        final List<String> locations = new ArrayList<String>();
+        for (String[] record : DATA.find(new Query(),
+                new RecordMapper<String[]>() {
+                    public String[] map(long recNo, long version,
+                            String[] record) {
+                        return record;
+                    }
+                }).values()) {
+            locations.add(record[location]);
+        }
+        assertSame(locations.get(25), locations.get(26));
+
+        // Exact and prefix matches against a code column.
+        ValueDictionary[] dictionaries =
+                new ValueDictionary[DBSchema.getNumberOfFields()];
+        dictionaries[location] = new ValueDictionary();
+        ColumnStore columns = new ColumnStore(dictionaries);
+        Map<Long, String[]> cache = new HashMap<Long, String[]>();
+        for (long recNo = 0; recNo < nRecords; ++recNo) {
+            cache.put(recNo, DATA.readRecord(recNo));
+            columns.set(recNo, cache.get(recNo));
+        }
+        BitSet selection = (BitSet) columns.getPresent().clone();
+        columns.selectExact(location, "Lendmarch", selection, 0,
+                (int) nRecords, cache);
+        assertEquals("{25, 26, 27}", selection.toString());
+        selection = (BitSet) columns.getPresent().clone();
+        columns.selectPrefix(location, "X", selection, 0, (int) nRecords,
+                cache);
+        assertEquals("{18, 19, 20}", selection.toString());
+        selection = (BitSet) columns.getPresent().clone();
+        columns.selectExact(location, "Nowhere", selection, 0,
+                (int) nRecords, cache);
+        assertTrue(selection.isEmpty());
+        assertEquals(12, dictionaries[location].size());
+    }
+
+    @Test
+    public void testBatchOperations() throws Exception {
+        System.out.println("testBatchOperations");
+        int owner = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.OWNER_INDEX);
+        long[] recNos = new long[]{9, 3, 4, 5, 20};
+        long[] cookies = DATA.lockRecords(recNos);
+        assertEquals(recNos.length, cookies.length);
+        Map<Long, String[]> records = DATA.readRecords(recNos);
+        assertEquals(Arrays.asList(9L, 3L, 4L, 5L, 20L),
+                new ArrayList<Long>(records.keySet()));
+        String[][] data = new String[recNos.length][];
+        for (int k = 0; k < recNos.length; ++k) {
+            data[k] = records.get(recNos[k]);
+            data[k][owner] = "8765432" + k;
+        }
+        long[] wrongCookies = cookies.clone();
+        ++wrongCookies[2];
+        try {
+            DATA.updateRecords(recNos, data, wrongCookies);
+            fail("SecurityException expected");
+        } catch (SecurityException e) {
+            // Nothing has been written at all.
+            assertEquals("", DATA.readRecord(9)[owner]);
+        }
+        DATA.updateRecords(recNos, data, cookies);
+        DATA.unlockRecords(recNos, cookies);
+        DATA.unlockRecords(new long[]{3}, DATA.lockRecords(new long[]{3}));
+
+        // The gaps left by deleted records are filled first, then records
+        // are appended.
+        DATA.deleteRecord(7, DATA.lockRecord(7));
+        DATA.deleteRecord(2, DATA.lockRecord(2));
+        String[] record = RecordMetaData.contractorToRecord(contractor);
+        long[] created = DATA.createRecords(new String[][]{record.clone(),
+                record.clone(), record.clone()});
+        assertArrayEquals(new long[]{2, 7, nRecords}, created);
+        try {
+            DATA.readRecords(new long[]{0, nRecords + 1});
+            fail("RecordNotFoundException expected");
+        } catch (RecordNotFoundException e) {
+            // expected
+        }
+
+        // The coalesced writes have reached the database file.
+        Data.terminateInstance();
+        DATA = Data.getInstance(databaseLocation);
+        for (int k = 0; k < recNos.length; ++k) {
+            assertArrayEquals(data[k], DATA.readRecord(recNos[k]));
+        }
+        assertEquals(DATA.readRecord(2)[owner], record[owner]);
+        assertEquals(nRecords + 1,
+                DATA.findByCriteria(new String[0]).length);
+    }
+
+    @Test
+    public void testDeadlockDetection() throws Exception {
+        System.out.println("testDeadlockDetection");
+        final CountDownLatch locked = new CountDownLatch(1);
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    long cookie1 = DATA.lockRecord(1);
+                    locked.countDown();
+                    // Blocks until the main thread releases record 2.
+                    long cookie2 = DATA.lockRecord(2);
+                    DATA.unlockRecord(2, cookie2);
+                    DATA.unlockRecord(1, cookie1);
+                } catch (RecordNotFoundException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        long cookie2 = DATA.lockRecord(2);
+        other.start();
+        locked.await();
+        while (other.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        try {
+            DATA.lockRecord(1);
+            fail("DeadlockException expected");
+        } catch (DeadlockException e) {
+            // expected
+        }
+        try {
+            DATA.lockRecords(new long[]{0, 1});
+            fail("DeadlockException expected");
+        } catch (DeadlockException e) {
+            // expected
+        }
+        // Releasing record 2 breaks the cycle.
+        DATA.unlockRecord(2, cookie2);
+        other.join(10000);
+        assertFalse(other.isAlive());
+        DATA.unlockRecord(0, DATA.lockRecord(0));
+        DATA.unlockRecord(1, DATA.lockRecord(1));
+    }
+
+    @Test
+    public void testDeadlockDetectionSharedOwner() throws Exception {
+        System.out.println("testDeadlockDetectionSharedOwner");
+        final LockOwner shared = new LockOwner();
+        final long sharedCookie = DATA.lockRecord(3, shared);
+        long cookie1 = DATA.lockRecord(1);
+        long cookie2 = DATA.lockRecord(2);
+        // Two threads acting for the same owner wait at once.
+        Thread[] waiters = new Thread[2];
+        for (int i = 0; i < waiters.length; ++i) {
+            final long recNo = i + 1;
+            waiters[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        DATA.unlockRecord(recNo,
+                                DATA.lockRecord(recNo, shared));
+                    } catch (RecordNotFoundException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            waiters[i].start();
+        }
+        for (Thread waiter : waiters) {
+            while (waiter.getState() != Thread.State.WAITING) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(2, DATA.getLockWaiterCount());
+        LockProfile profile = DATA.getLockProfile(3);
+        assertEquals(Integer.valueOf(1), profile.getCurrentWaiters().get(1L));
+        assertEquals(Integer.valueOf(1), profile.getCurrentWaiters().get(2L));
+
+        // The first thread is done, the second still waits for record 2.
+        DATA.unlockRecord(1, cookie1);
+        waiters[0].join(10000);
+        assertFalse(waiters[0].isAlive());
+        assertEquals(1, DATA.getLockWaiterCount());
+        try {
+            DATA.lockRecord(3);
+            fail("DeadlockException expected");
+        } catch (DeadlockException e) {
+            // expected
+        }
+
+        DATA.unlockRecord(2, cookie2);
+        waiters[1].join(10000);
+        assertFalse(waiters[1].isAlive());
+        assertEquals(0, DATA.getLockWaiterCount());
+        DATA.unlockRecord(3, sharedCookie);
+        DATA.unlockRecord(3, DATA.lockRecord(3));
+    }
+
+    @Test
+    public void testLockOwner() throws Exception {
+        System.out.println("testLockOwner");
+        final LockOwner owner = new LockOwner();
+        final long cookie = DATA.lockRecord(3, owner);
+        // Another thread acting for the same owner reenters the lock.
+        final long[] reentered = new long[1];
+        Thread sameOwner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    reentered[0] = DATA.lockRecords(new long[]{3}, owner)[0];
+                    String[] data = DATA.readRecord(3);
+                    data[RecordMetaData.getInstance().getRecordIndex(
+                            DBSchema.OWNER_INDEX)] = "87654321";
+                    RecordMapper<Long> versionMapper = new RecordMapper<Long>() {
+                        public Long map(long recNo, long version, String[] record) {
+                            return version;
+                        }
+                    };
+                    long version = DATA.readRecord(3, versionMapper);
+                    // Not updated for the thread's own owner ...
+                    assertEquals(-1, DATA.compareAndUpdate(3, version, data));
+                    // ... but for the owner of the lock.
+                    assertTrue(DATA.compareAndUpdate(3, version, data, owner) > version);
+                } catch (RecordNotFoundException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        sameOwner.start();
+        sameOwner.join(10000);
+        assertFalse(sameOwner.isAlive());
+        assertEquals(cookie, reentered[0]);
+        assertEquals("87654321", DATA.readRecord(3)[RecordMetaData.getInstance()
+                .getRecordIndex(DBSchema.OWNER_INDEX)]);
+
+        // The current thread's own owner has to wait.
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread otherOwner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    DATA.unlockRecord(3, DATA.lockRecord(3));
+                    acquired.countDown();
+                } catch (RecordNotFoundException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        otherOwner.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        // Unlocking is a matter of the cookie, once per lock.
+        DATA.unlockRecord(3, cookie);
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        DATA.unlockRecord(3, cookie);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        otherOwner.join(10000);
+    }
+
+    @Test
+    public void testLockProfile() throws Exception {
+        System.out.println("testLockProfile");
+        long cookie = DATA.lockRecord(5);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    DATA.unlockRecord(5, DATA.lockRecord(5));
+                } catch (RecordNotFoundException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        LockProfile profile = DATA.getLockProfile(3);
+        assertEquals(Integer.valueOf(1), profile.getCurrentWaiters().get(5L));
+        Thread.sleep(20);
+        DATA.unlockRecord(5, cookie);
+        waiter.join(10000);
+        assertFalse(waiter.isAlive());
+
+        profile = DATA.getLockProfile(3);
+        System.out.print(profile);
+        assertTrue(profile.getCurrentWaiters().isEmpty());
+        LockProfile.RecordContention hottest = profile.getHottestRecords().get(0);
+        assertEquals(5, hottest.getRecNo());
+        assertEquals(2, hottest.getAcquisitions());
+        assertEquals(1, hottest.getWaits());
+        assertTrue(hottest.getTotalWaitNanos() >= 20000000L);
+        assertEquals(0, hottest.getCurrentWaiters());
+        assertTrue(profile.getWriteLockWaits().getAcquisitions() > 0);
+        assertTrue(profile.getReadLockWaits().getAcquisitions() > 0);
+    }
+
+    @Test
+    public void testCompareAndUpdate() throws Exception {
+        System.out.println("testCompareAndUpdate");
+        RecordMapper<Long> versionMapper = new RecordMapper<Long>() {
+            public Long map(long recNo, long version, String[] record) {
+                return version;
+            }
+        };
+        Query query = new Query();
+        query.setExactCriteria(new String[]{"Dogs With Tools"});
+        long version = DATA.find(query, versionMapper).get(8L);
+        assertEquals(version, (long) DATA.readRecord(8, versionMapper));
+
+        String[] data = DATA.readRecord(8);
+        data[RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.OWNER_INDEX)] = "12345678";
+        long newVersion = DATA.compareAndUpdate(8, version, data);
+        assertTrue(newVersion > version);
+        assertArrayEquals(data, DATA.readRecord(8));
+        // The old version is stale now.
+        assertEquals(-1, DATA.compareAndUpdate(8, version, data));
+        // A record locked by another client is not updated.
+        final long[] cookie = new long[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    cookie[0] = DATA.lockRecord(8);
+                } catch (RecordNotFoundException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        other.start();
+        other.join();
+        assertEquals(-1, DATA.compareAndUpdate(8, newVersion, data));
+        DATA.unlockRecord(8, cookie[0]);
+        assertTrue(DATA.compareAndUpdate(8, newVersion, data) > newVersion);
+
+        // Recycled record numbers never reuse a version.
+        long version3 = DATA.readRecord(3, versionMapper);
+        DATA.deleteRecord(3, DATA.lockRecord(3));
+        assertEquals(3, DATA.createRecord(data));
+        assertEquals(-1, DATA.compareAndUpdate(3, version3, data));
+    }
+
+    @Test
+    public void testCompareAndUpdateRecords() throws Exception {
+        System.out.println("testCompareAndUpdateRecords");
+        RecordMapper<Long> versionMapper = new RecordMapper<Long>() {
+            public Long map(long recNo, long version, String[] record) {
+                return version;
+            }
+        };
+        // Records that do not exist are left out.
+        Map<Long, Long> versions = DATA.readRecords(
+                new long[]{6, 9999, 5}, versionMapper);
+        assertEquals(Arrays.asList(6L, 5L),
+                new ArrayList<Long>(versions.keySet()));
+
+        int owner = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.OWNER_INDEX);
+        String[] data5 = DATA.readRecord(5);
+        data5[owner] = "11111111";
+        String[] data6 = DATA.readRecord(6);
+        data6[owner] = "22222222";
+        long v5 = versions.get(5L);
+        long v6 = versions.get(6L);
+        // Each update succeeds or fails on its own: a stale version, a
+        // missing record and a record updated earlier in the same batch
+        // do not keep the others from being updated.
+        long[] newVersions = DATA.compareAndUpdateRecords(
+                new long[]{5, 6, 9999, 5},
+                new long[]{v5, v6 - 1, 0, v5},
+                new String[][]{data5, data6, data6, data5});
+        assertEquals(4, newVersions.length);
+        assertTrue(newVersions[0] > v5);
+        assertEquals(-1, newVersions[1]);
+        assertEquals(-1, newVersions[2]);
+        assertEquals(-1, newVersions[3]);
+        assertArrayEquals(data5, DATA.readRecord(5));
+        assertEquals(v6, (long) DATA.readRecord(6, versionMapper));
+
+        newVersions = DATA.compareAndUpdateRecords(new long[]{6},
+                new long[]{v6}, new String[][]{data6});
+        assertTrue(newVersions[0] > v6);
+        assertArrayEquals(data6, DATA.readRecord(6));
+    }
+
+    @Test
+    public void testCombinedWriteFailsAsAWhole() throws Exception {
+        System.out.println("testCombinedWriteFailsAsAWhole");
+        long cookie = DATA.lockRecord(8);
+        String[] data = DATA.readRecord(8);
+        // Let the database file disagree with the cache behind its back.
+        DBFileAccess.getInstance(databaseLocation).deleteRecord(8);
+        Mutation create = Mutation.create(DATA.readRecord(3));
+        Mutation update = Mutation.update(8, data, cookie);
+        DATA.writeCombiner.submitAll(Arrays.asList(create, update));
+        for (Mutation mutation : Arrays.asList(create, update)) {
+            try {
+                mutation.getResult();
+                fail("Combined write of a deleted record succeeded");
+            } catch (DatabaseException e) {
+                // expected
+            }
+        }
+        // Neither the cache nor the file has taken the new record, so its
+        // slot is still free.
+        assertArrayEquals(data, DATA.readRecord(8));
+        assertEquals(nRecords, DATA.createRecord(DATA.readRecord(3)));
+        DATA.unlockRecord(8, cookie);
+    }
+
+    @Test
+    public void testCombinedUpdatesReturnOwnVersions() throws Exception {
+        System.out.println("testCombinedUpdatesReturnOwnVersions");
+        RecordMapper<Long> versionMapper = new RecordMapper<Long>() {
+            public Long map(long recNo, long version, String[] record) {
+                return version;
+            }
+        };
+        long cookie = DATA.lockRecord(8);
+        String[] first = DATA.readRecord(8);
+        String[] second = first.clone();
+        int owner = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.OWNER_INDEX);
+        first[owner] = "11111111";
+        second[owner] = "22222222";
+        Mutation update1 = Mutation.update(8, first, cookie);
+        Mutation update2 = Mutation.update(8, second, cookie);
+        DATA.writeCombiner.submitAll(Arrays.asList(update1, update2));
+        DATA.unlockRecord(8, cookie);
+        assertArrayEquals(second, DATA.readRecord(8));
+        // Each update reports its own version, as if applied one by one;
+        // only the last one's is cached.
+        long version = DATA.readRecord(8, versionMapper);
+        assertEquals(version, update2.getResult());
+        assertTrue(update1.getResult() < version);
+        assertEquals(-1, DATA.compareAndUpdate(8, update1.getResult(),
+                first));
+    }
+
+    @Test
+    public void testCombinedCompareAndUpdateThenUpdate() throws Exception {
+        System.out.println("testCombinedCompareAndUpdateThenUpdate");
+        RecordMapper<Long> versionMapper = new RecordMapper<Long>() {
+            public Long map(long recNo, long version, String[] record) {
+                return version;
+            }
+        };
+        long cookie = DATA.lockRecord(8);
+        long version = DATA.readRecord(8, versionMapper);
+        String[] swapped = DATA.readRecord(8);
+        String[] updated = swapped.clone();
+        int owner = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.OWNER_INDEX);
+        swapped[owner] = "11111111";
+        updated[owner] = "22222222";
+        Mutation compareAndUpdate = Mutation.compareAndUpdate(8, version,
+                swapped, LockOwner.ofCurrentThread());
+        Mutation update = Mutation.update(8, updated, cookie);
+        DATA.writeCombiner.submitAll(Arrays.asList(compareAndUpdate,
+                update));
+        DATA.unlockRecord(8, cookie);
+        long swappedVersion = compareAndUpdate.getResult();
+        assertTrue(swappedVersion > version);
+        assertTrue(update.getResult() > swappedVersion);
+        assertEquals(update.getResult(),
+                (long) DATA.readRecord(8, versionMapper));
+        // The compare and update's version was superseded by the update,
+        // so a compare and update against it must not overwrite the update.
+        assertEquals(-1, DATA.compareAndUpdate(8, swappedVersion, swapped));
+        assertArrayEquals(updated, DATA.readRecord(8));
+    }
+
+    @Test
+    public void testCombinedWriteTrace() throws Exception {
+        System.out.println("testCombinedWriteTrace");
+        Trace trace = Trace.start("create", null);
+        try {
+            DATA.createRecord(DATA.readRecord(3));
+            // The batch is applied with the trace suspended, so the file
+            // write shows up as the combined write span only.
+            assertEquals(1, trace.getSpanCount(WriteCombiner.SPAN_NAME));
+            assertEquals(1, trace.getSpanCount("data.CREATE_RECORD"));
+            assertEquals(0, trace.getSpanCount(
+                    "file.PLACE_NEW_AND_UPDATE_RECORDS"));
+            assertSame(trace, Trace.current());
+        } finally {
+            trace.finish();
+        }
+    }
+
+    @Test
+    public void testFindTopK() throws Exception {
+        System.out.println("testFindTopK");
+        final int sizeField = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.SIZE_INDEX);
+        final int rateField = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.RATE_INDEX);
+        // Unselective queries are read off the sorted indexes, selective
+        // ones go through the heap; both must agree with a full sort.
+        for (String[] specialties : new String[][]{null, {"Painting"}}) {
+            for (final int field : new int[]{0, sizeField, rateField}) {
+                for (final boolean descending : new boolean[]{false, true}) {
+                    Query query = new Query();
+                    query.setSpecialties(specialties, true);
+                    List<Map.Entry<Long, String[]>> sorted =
+                            new ArrayList<Map.Entry<Long, String[]>>(
+                                    DATA.find(query).entrySet());
+                    Collections.sort(sorted,
+                            new Comparator<Map.Entry<Long, String[]>>() {
+                                public int compare(Map.Entry<Long, String[]> e1,
+                                        Map.Entry<Long, String[]> e2) {
+                                    int c;
+                                    if (field == 0) {
+                                        c = e1.getValue()[0].compareTo(
+                                                e2.getValue()[0]);
+                                    } else {
+                                        c = Long.valueOf(key(e1)).compareTo(
+                                                key(e2));
+                                    }
+                                    c = descending ? -c : c;
+                                    return c != 0 ? c : e1.getKey()
+                                            .compareTo(e2.getKey());
+                                }
+
+                                private long key(Map.Entry<Long, String[]> e) {
+                                    return field == sizeField ? RangeIndex
+                                            .parseInteger(e.getValue()[field])
+                                            : RangeIndex.parseCents(
+                                                    e.getValue()[field]);
+                                }
+                            });
+                    for (int limit : new int[]{0, 1, 3, 5, 100}) {
+                        query.setOrder(field, descending);
+                        query.setLimit(limit);
+                        List<Long> expected = new ArrayList<Long>();
+                        for (Map.Entry<Long, String[]> e : sorted.subList(0,
+                                Math.min(limit, sorted.size()))) {
+                            expected.add(e.getKey());
+                        }
+                        assertEquals(expected, new ArrayList<Long>(DATA.find(
+                                query).keySet()));
+                    }
+                }
+            }
+        }
+
+        // A limit without an order takes the lowest record numbers.
+        Query query = new Query();
+        query.setLimit(3);
+        assertEquals(Arrays.asList(0L, 1L, 2L), new ArrayList<Long>(
+                DATA.find(query).keySet()));
+    }
+
+    @Test
+    public void testValueDictionaryReleasesCodes() throws Exception {
+        System.out.println("testValueDictionaryReleasesCodes");
+        ValueDictionary dictionary = new ValueDictionary();
+        int smallville = dictionary.acquire("Smallville");
+        assertEquals(smallville, dictionary.acquire("Smallville"));
+        dictionary.acquire("Metropolis");
+        assertEquals(2, dictionary.size());
+        dictionary.release(smallville);
+        assertEquals(smallville, dictionary.codeOf("Smallville"));
+        dictionary.release(smallville);
+        assertEquals(1, dictionary.size());
+        assertEquals(ValueDictionary.NO_CODE,
+                dictionary.codeOf("Smallville"));
+        assertTrue(dictionary.codesWithPrefix("Small").isEmpty());
+        // Released codes are reused.
+        assertEquals(smallville, dictionary.acquire("Gotham"));
+
+        // Churning a dictionary-encoded field keeps exact matches right.
+        int location = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.LOCATION_INDEX);
+        long cookie = DATA.lockRecord(3);
+        String[] data = DATA.readRecord(3);
+        for (int i = 0; i < 100; ++i) {
+            data[location] = "Town " + i;
+            DATA.updateRecord(3, data, cookie);
+        }
+        DATA.unlockRecord(3, cookie);
+        String[] criteria = new String[DBSchema.getNumberOfFields()];
+        criteria[location] = "Town 99";
+        Query query = new Query();
+        query.setExactCriteria(criteria);
+        assertEquals(Collections.singleton(3L), DATA.find(query).keySet());
+        criteria[location] = "Town 98";
+        query.setExactCriteria(criteria);
+        assertTrue(DATA.find(query).isEmpty());
+    }
+
+    @Test
+    public void testCacheBytes() throws Exception {
+        System.out.println("testCacheBytes");
+        long bytes = DATA.getCacheBytes();
+        assertTrue(bytes > 0);
+        // A longer name is counted with its additional characters.
+        int name = RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.NAME_INDEX);
+        long cookie = DATA.lockRecord(3);
+        String[] data = DATA.readRecord(3);
+        data[name] = data[name].substring(0, 4) + "1234567890";
+        long before = 2L * DATA.readRecord(3)[name].length();
+        DATA.updateRecord(3, data, cookie);
+        assertEquals(bytes - before + 2L * data[name].length(),
+                DATA.getCacheBytes());
+        // A record leaving the cache is no longer counted, but values it
+        // shares with other records are.
+        bytes = DATA.getCacheBytes();
+        DATA.deleteRecord(3, cookie);
+        assertTrue(DATA.getCacheBytes() < bytes);
+        DATA.createRecord(data);
+        assertEquals(bytes, DATA.getCacheBytes());
+    }
+
+    @Test
+    public void testParseCents() {
+        System.out.println("testParseCents");
+        assertEquals(9000, RangeIndex.parseCents("$90.00"));
+        assertEquals(109050, RangeIndex.parseCents("$1,090.5"));
+        assertEquals(4500, RangeIndex.parseCents("45"));
+        assertEquals(RangeIndex.NO_VALUE, RangeIndex.parseCents("$"));
+        assertEquals(RangeIndex.NO_VALUE, RangeIndex.parseCents(""));
+        assertEquals(RangeIndex.NO_VALUE, RangeIndex.parseInteger("seven"));
+    }
 }
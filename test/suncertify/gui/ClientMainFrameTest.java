@@ -0,0 +1,87 @@
+package suncertify.gui;
+
+import org.junit.Test;
+import suncertify.services.BookRequest;
+import suncertify.services.BookResult;
+import suncertify.services.BookStatus;
+import suncertify.services.Contractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ClientMainFrameTest {
+    private static Contractor contractor(String owner) {
+        Contractor contractor = new Contractor();
+        contractor.setName("Dogs With Tools");
+        contractor.setLocation("Smallville");
+        contractor.setSpecialties("Roofing");
+        contractor.setSize("7");
+        contractor.setRate("$35.00");
+        contractor.setOwner(owner);
+        contractor.setVersion(9);
+        return contractor;
+    }
+
+    @Test
+    public void testAllAvailable() {
+        System.out.println("testAllAvailable");
+        assertFalse(ClientMainFrame.allAvailable(
+                new ArrayList<Contractor>()));
+        assertTrue(ClientMainFrame.allAvailable(Arrays.asList(
+                contractor(""), contractor(""))));
+        // A single booked contractor disables the book button.
+        assertFalse(ClientMainFrame.allAvailable(Arrays.asList(
+                contractor(""), contractor("12345678"))));
+    }
+
+    @Test
+    public void testIsValidCustomerId() {
+        System.out.println("testIsValidCustomerId");
+        assertTrue(ClientMainFrame.isValidCustomerId("12345678"));
+        assertFalse(ClientMainFrame.isValidCustomerId("1234567"));
+        assertFalse(ClientMainFrame.isValidCustomerId("123456789"));
+        assertFalse(ClientMainFrame.isValidCustomerId("1234567a"));
+        assertFalse(ClientMainFrame.isValidCustomerId(""));
+    }
+
+    @Test
+    public void testBookRequest() {
+        System.out.println("testBookRequest");
+        Contractor shown = contractor("");
+        BookRequest request = ClientMainFrame.bookRequest(5, shown,
+                "12345678");
+        assertEquals(5, request.getRecNo());
+        Contractor booking = request.getContractor();
+        assertNotSame(shown, booking);
+        assertEquals("12345678", booking.getOwner());
+        assertEquals(shown.getName(), booking.getName());
+        assertEquals(shown.getLocation(), booking.getLocation());
+        assertEquals(shown.getSpecialties(), booking.getSpecialties());
+        assertEquals(shown.getSize(), booking.getSize());
+        assertEquals(shown.getRate(), booking.getRate());
+        assertEquals(shown.getVersion(), booking.getVersion());
+        // The table's contractor stays available until refreshed.
+        assertEquals("", shown.getOwner());
+    }
+
+    @Test
+    public void testCountBookResults() {
+        System.out.println("testCountBookResults");
+        List<BookResult> results = Arrays.asList(
+                new BookResult(BookStatus.SUCCESSFULLY_BOOKED,
+                        contractor("12345678")),
+                new BookResult(BookStatus.INTERMITTENTLY_DELETED, null),
+                new BookResult(BookStatus.SUCCESSFULLY_BOOKED,
+                        contractor("12345678")));
+        Map<BookStatus, Integer> counts =
+                ClientMainFrame.countBookResults(results);
+        assertEquals(BookStatus.values().length, counts.size());
+        assertEquals(2, (int) counts.get(BookStatus.SUCCESSFULLY_BOOKED));
+        assertEquals(1, (int) counts.get(BookStatus.INTERMITTENTLY_DELETED));
+        assertEquals(0, (int) counts.get(BookStatus.INTERMITTENTLY_GRABBED));
+    }
+}
@@ -0,0 +1,97 @@
+package suncertify.gui;
+
+import org.junit.Test;
+import suncertify.services.BookResult;
+import suncertify.services.BookStatus;
+import suncertify.services.BusinessServices;
+import suncertify.services.Contractor;
+import suncertify.services.ServicesException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EditContractorDialogTest {
+    // Business services whose book method fails a number of times first.
+    private static BusinessServices failing(final int failures,
+                                            final Exception failure,
+                                            final List<String> requestIds) {
+        return (BusinessServices) Proxy.newProxyInstance(
+                BusinessServices.class.getClassLoader(),
+                new Class<?>[]{BusinessServices.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method,
+                                         Object[] args) throws Throwable {
+                        assertEquals("book", method.getName());
+                        requestIds.add((String) args[0]);
+                        if (requestIds.size() <= failures) {
+                            throw failure;
+                        }
+                        return new BookResult(BookStatus.SUCCESSFULLY_BOOKED,
+                                (Contractor) args[2]);
+                    }
+                });
+    }
+
+    @Test
+    public void testRetryWithSameRequestId() throws Exception {
+        System.out.println("testRetryWithSameRequestId");
+        List<String> requestIds = new ArrayList<String>();
+        BusinessServices services = failing(
+                EditContractorDialog.MAX_BOOK_ATTEMPTS - 1,
+                new RemoteException("connection reset"), requestIds);
+        BookResult result = EditContractorDialog.bookWithRetries(services, 5,
+                new Contractor());
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED, result.getBookStatus());
+        assertEquals(EditContractorDialog.MAX_BOOK_ATTEMPTS,
+                requestIds.size());
+        assertNotNull(requestIds.get(0));
+        for (String requestId : requestIds) {
+            assertEquals(requestIds.get(0), requestId);
+        }
+        // The next booking gets a request ID of its own.
+        requestIds.clear();
+        EditContractorDialog.bookWithRetries(failing(0, null, requestIds), 5,
+                new Contractor());
+        List<String> previous = new ArrayList<String>(requestIds);
+        EditContractorDialog.bookWithRetries(failing(0, null, requestIds), 5,
+                new Contractor());
+        assertFalse(previous.get(0).equals(requestIds.get(1)));
+    }
+
+    @Test
+    public void testGiveUpAfterMaxAttempts() throws Exception {
+        System.out.println("testGiveUpAfterMaxAttempts");
+        List<String> requestIds = new ArrayList<String>();
+        RemoteException failure = new RemoteException("connection refused");
+        try {
+            EditContractorDialog.bookWithRetries(failing(Integer.MAX_VALUE,
+                    failure, requestIds), 5, new Contractor());
+            fail("Booking succeeded without reaching the server");
+        } catch (RemoteException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(EditContractorDialog.MAX_BOOK_ATTEMPTS,
+                requestIds.size());
+    }
+
+    @Test
+    public void testNoRetryOnServicesException() throws Exception {
+        System.out.println("testNoRetryOnServicesException");
+        List<String> requestIds = new ArrayList<String>();
+        try {
+            EditContractorDialog.bookWithRetries(failing(1,
+                    new ServicesException("database down"), requestIds), 5,
+                    new Contractor());
+            fail("Failed booking succeeded");
+        } catch (ServicesException e) {
+            assertEquals("database down", e.getMessage());
+        }
+        assertEquals(1, requestIds.size());
+    }
+}
@@ -0,0 +1,200 @@
+package suncertify.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BookOutcomeRegistryTest {
+    private static BookRequest request(long recNo, String owner) {
+        Contractor contractor = new Contractor();
+        contractor.setName("Dogs With Tools");
+        contractor.setLocation("Smallville");
+        contractor.setOwner(owner);
+        contractor.setVersion(9);
+        return new BookRequest(recNo, contractor);
+    }
+
+    // A booking that counts its invocations.
+    private static Callable<BookResult> booking(final AtomicInteger calls) {
+        return new Callable<BookResult>() {
+            public BookResult call() {
+                calls.incrementAndGet();
+                return new BookResult(BookStatus.SUCCESSFULLY_BOOKED, null);
+            }
+        };
+    }
+
+    @Test
+    public void testDuplicate() throws Exception {
+        System.out.println("testDuplicate");
+        BookOutcomeRegistry registry = new BookOutcomeRegistry(
+                BookOutcomeRegistry.DEFAULT_CAPACITY,
+                BookOutcomeRegistry.DEFAULT_TIMEOUT_MILLIS);
+        AtomicInteger calls = new AtomicInteger();
+        BookResult original = registry.book("r1", request(5, "12345678"),
+                booking(calls));
+        BookResult duplicate = registry.book("r1", request(5, "12345678"),
+                booking(calls));
+        assertSame(original, duplicate);
+        assertEquals(1, calls.get());
+
+        // The same ID for another record, or another customer, is refused.
+        try {
+            registry.book("r1", request(6, "12345678"), booking(calls));
+            fail("Request ID reused for another record");
+        } catch (ServicesException e) {
+            // expected
+        }
+        try {
+            registry.book("r1", request(5, "87654321"), booking(calls));
+            fail("Request ID reused for another customer");
+        } catch (ServicesException e) {
+            // expected
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testConcurrentDuplicate() throws Exception {
+        System.out.println("testConcurrentDuplicate");
+        final BookOutcomeRegistry registry = new BookOutcomeRegistry(
+                BookOutcomeRegistry.DEFAULT_CAPACITY,
+                BookOutcomeRegistry.DEFAULT_TIMEOUT_MILLIS);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<BookResult> original = executor.submit(
+                new Callable<BookResult>() {
+                    public BookResult call() throws Exception {
+                        return registry.book("r1", request(5, "12345678"),
+                                new Callable<BookResult>() {
+                                    public BookResult call()
+                                            throws Exception {
+                                        calls.incrementAndGet();
+                                        started.countDown();
+                                        release.await();
+                                        return new BookResult(BookStatus
+                                                .SUCCESSFULLY_BOOKED, null);
+                                    }
+                                });
+                    }
+                });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // The duplicate waits for the original instead of booking again.
+        Future<BookResult> duplicate = executor.submit(
+                new Callable<BookResult>() {
+                    public BookResult call() throws Exception {
+                        return registry.book("r1", request(5, "12345678"),
+                                booking(calls));
+                    }
+                });
+        Thread.sleep(100);
+        assertFalse(duplicate.isDone());
+        release.countDown();
+        assertSame(original.get(10, TimeUnit.SECONDS),
+                duplicate.get(10, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFailureThenRetry() throws Exception {
+        System.out.println("testFailureThenRetry");
+        BookOutcomeRegistry registry = new BookOutcomeRegistry(
+                BookOutcomeRegistry.DEFAULT_CAPACITY,
+                BookOutcomeRegistry.DEFAULT_TIMEOUT_MILLIS);
+        try {
+            registry.book("r1", request(5, "12345678"),
+                    new Callable<BookResult>() {
+                        public BookResult call() throws ServicesException {
+                            throw new ServicesException("database down");
+                        }
+                    });
+            fail("Failed booking succeeded");
+        } catch (ServicesException e) {
+            assertEquals("database down", e.getMessage());
+        }
+        // A failure leaves no outcome behind; the retry books for real.
+        assertEquals(0, registry.size());
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED, registry.book("r1",
+                request(5, "12345678"), booking(calls)).getBookStatus());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testExpiryAndCapacity() throws Exception {
+        System.out.println("testExpiryAndCapacity");
+        BookOutcomeRegistry registry = new BookOutcomeRegistry(2, 500);
+        AtomicInteger calls = new AtomicInteger();
+        registry.book("r1", request(1, "12345678"), booking(calls));
+        registry.book("r2", request(2, "12345678"), booking(calls));
+        registry.book("r3", request(3, "12345678"), booking(calls));
+        // The oldest outcome has been dropped.
+        assertEquals(2, registry.size());
+        registry.book("r1", request(1, "12345678"), booking(calls));
+        assertEquals(4, calls.get());
+
+        // Expired outcomes are purged when the next request comes in.
+        Thread.sleep(600);
+        registry.book("r4", request(4, "12345678"), booking(calls));
+        assertEquals(1, registry.size());
+        registry.book("r3", request(3, "12345678"), booking(calls));
+        assertEquals(6, calls.get());
+    }
+
+    @Test
+    public void testPendingOutcomesAreKept() throws Exception {
+        System.out.println("testPendingOutcomesAreKept");
+        final BookOutcomeRegistry registry = new BookOutcomeRegistry(1, 50);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<BookResult> pending = executor.submit(
+                new Callable<BookResult>() {
+                    public BookResult call() throws Exception {
+                        return registry.book("r1", request(1, "12345678"),
+                                new Callable<BookResult>() {
+                                    public BookResult call()
+                                            throws Exception {
+                                        calls.incrementAndGet();
+                                        started.countDown();
+                                        release.await();
+                                        return new BookResult(BookStatus
+                                                .SUCCESSFULLY_BOOKED, null);
+                                    }
+                                });
+                    }
+                });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // Neither exceeding the capacity nor the timeout drops the pending
+        // outcome, so a duplicate still waits for it.
+        Thread.sleep(100);
+        registry.book("r2", request(2, "12345678"), booking(calls));
+        assertEquals(2, registry.size());
+        Future<BookResult> duplicate = executor.submit(
+                new Callable<BookResult>() {
+                    public BookResult call() throws Exception {
+                        return registry.book("r1", request(1, "12345678"),
+                                booking(calls));
+                    }
+                });
+        Thread.sleep(100);
+        assertFalse(duplicate.isDone());
+        release.countDown();
+        assertSame(pending.get(10, TimeUnit.SECONDS),
+                duplicate.get(10, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,363 @@
+package suncertify.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import suncertify.db.DBSchema;
+import suncertify.db.Data;
+import suncertify.db.RecordMetaData;
+import suncertify.util.TestUtils;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ContractorManagerTest {
+    private ContractorManager manager;
+    private Map<Long, Contractor> contractors;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new ContractorManager(TestUtils.provideTestDB());
+        contractors = manager.search(null, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.terminate();
+
+        TestUtils.deleteTestDB();
+    }
+
+    private Contractor booking(long recNo, String owner) {
+        Contractor contractor = contractors.get(recNo);
+        contractor.setOwner(owner);
+        return contractor;
+    }
+
+    @Test
+    public void testBookLockedRecord() throws Exception {
+        System.out.println("testBookLockedRecord");
+        final Data data = Data.getInstance("test-db-2x2.db");
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // Another client holds the lock on the record without writing it.
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    long cookie = data.lockRecord(5);
+                    locked.countDown();
+                    release.await();
+                    data.unlockRecord(5, cookie);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        other.start();
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Contractor contractor = booking(5, "12345678");
+        Future<BookResult> result = executor.submit(
+                new Callable<BookResult>() {
+                    public BookResult call() throws Exception {
+                        return manager.book(5, contractor);
+                    }
+                });
+        // The booking waits for the lock rather than reporting an update.
+        Thread.sleep(200);
+        assertFalse(result.isDone());
+        release.countDown();
+        BookResult bookResult = result.get(10, TimeUnit.SECONDS);
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED, bookResult.getBookStatus());
+        assertEquals("12345678", bookResult.getContractor().getOwner());
+        executor.shutdown();
+        other.join();
+
+        // A record actually written meanwhile is reported as updated.
+        Contractor stale = booking(6, "12345678");
+        Contractor current = manager.search(null, null).get(6L);
+        current.setOwner("");
+        current.setRate("$1.00");
+        // Version 0 requests a field comparison instead of a version check.
+        stale.setVersion(0);
+        long cookie = data.lockRecord(6);
+        data.updateRecord(6, RecordMetaData.contractorToRecord(current),
+                cookie);
+        data.unlockRecord(6, cookie);
+        assertEquals(BookStatus.INTERMITTENTLY_UPDATED,
+                manager.book(6, stale).getBookStatus());
+    }
+
+    @Test
+    public void testBookBatch() throws Exception {
+        System.out.println("testBookBatch");
+        Data data = Data.getInstance("test-db-2x2.db");
+        // Grabbed by another client since the search.
+        Contractor grabbed = manager.search(null, null).get(3L);
+        grabbed.setOwner("87654321");
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                manager.book(3, grabbed).getBookStatus());
+        // Deleted by another client since the search.
+        data.deleteRecord(4, data.lockRecord(4));
+
+        List<BookResult> results = manager.bookBatch(Arrays.asList(
+                new BookRequest(1, booking(1, "12345678")),
+                new BookRequest(3, booking(3, "12345678")),
+                new BookRequest(4, booking(4, "12345678")),
+                new BookRequest(2, booking(2, "12345678"))));
+        assertEquals(4, results.size());
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                results.get(0).getBookStatus());
+        assertEquals(BookStatus.INTERMITTENTLY_GRABBED,
+                results.get(1).getBookStatus());
+        assertEquals("87654321", results.get(1).getContractor().getOwner());
+        assertEquals(BookStatus.INTERMITTENTLY_DELETED,
+                results.get(2).getBookStatus());
+        assertNull(results.get(2).getContractor());
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                results.get(3).getBookStatus());
+        Map<Long, Contractor> current = manager.search(null, null);
+        assertEquals("12345678", current.get(1L).getOwner());
+        assertEquals("12345678", current.get(2L).getOwner());
+        assertEquals(current.get(2L).getVersion(),
+                results.get(3).getContractor().getVersion());
+        assertTrue(manager.bookBatch(
+                Arrays.<BookRequest>asList()).isEmpty());
+    }
+
+    @Test
+    public void testBookBatchRepeatedRecord() throws Exception {
+        System.out.println("testBookBatchRepeatedRecord");
+        // The second request for a record finds it booked by the first.
+        Contractor first = booking(7, "12345678");
+        Contractor second = manager.search(null, null).get(7L);
+        second.setOwner("87654321");
+        List<BookResult> results = manager.bookBatch(Arrays.asList(
+                new BookRequest(7, first), new BookRequest(7, second)));
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                results.get(0).getBookStatus());
+        assertEquals("12345678", results.get(0).getContractor().getOwner());
+        assertEquals(BookStatus.INTERMITTENTLY_GRABBED,
+                results.get(1).getBookStatus());
+        assertEquals("12345678", results.get(1).getContractor().getOwner());
+        assertEquals("12345678",
+                manager.search(null, null).get(7L).getOwner());
+
+        // Once the first request fails, the second one is still booked on
+        // its own snapshot.
+        Data data = Data.getInstance("test-db-2x2.db");
+        Contractor stale = booking(8, "12345678");
+        long cookie = data.lockRecord(8);
+        String[] record = data.readRecord(8);
+        record[RecordMetaData.getInstance().getRecordIndex(
+                DBSchema.RATE_INDEX)] = "$1.00";
+        data.updateRecord(8, record, cookie);
+        data.unlockRecord(8, cookie);
+        Contractor fresh = manager.search(null, null).get(8L);
+        fresh.setOwner("87654321");
+        results = manager.bookBatch(Arrays.asList(
+                new BookRequest(8, stale), new BookRequest(8, fresh)));
+        assertEquals(BookStatus.INTERMITTENTLY_UPDATED,
+                results.get(0).getBookStatus());
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                results.get(1).getBookStatus());
+        assertEquals("87654321",
+                manager.search(null, null).get(8L).getOwner());
+    }
+
+    @Test
+    public void testBookBatchLockedRecord() throws Exception {
+        System.out.println("testBookBatchLockedRecord");
+        final Data data = Data.getInstance("test-db-2x2.db");
+        final long cookie = data.lockRecord(9);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final List<BookRequest> requests = Arrays.asList(
+                new BookRequest(9, booking(9, "12345678")),
+                new BookRequest(10, booking(10, "12345678")));
+        Future<List<BookResult>> results = executor.submit(
+                new Callable<List<BookResult>>() {
+                    public List<BookResult> call() throws Exception {
+                        return manager.bookBatch(requests);
+                    }
+                });
+        // The locked record is waited for rather than reported as updated.
+        Thread.sleep(200);
+        assertFalse(results.isDone());
+        data.unlockRecord(9, cookie);
+        for (BookResult result : results.get(10, TimeUnit.SECONDS)) {
+            assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                    result.getBookStatus());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        System.out.println("testProjection");
+        SearchQuery query = new SearchQuery();
+        query.setLocation("Whoville");
+        query.setProjection(ContractorField.NAME, ContractorField.LOCATION,
+                ContractorField.OWNER);
+        Map<Long, Contractor> projected = manager.search(query);
+        assertEquals(Arrays.asList(2L, 3L, 4L),
+                Arrays.asList(projected.keySet().toArray(new Long[0])));
+        for (Map.Entry<Long, Contractor> entry : projected.entrySet()) {
+            Contractor full = contractors.get(entry.getKey());
+            Contractor contractor = entry.getValue();
+            assertEquals(full.getName(), contractor.getName());
+            assertEquals(full.getLocation(), contractor.getLocation());
+            assertEquals(full.getOwner(), contractor.getOwner());
+            assertNull(contractor.getSpecialties());
+            assertNull(contractor.getSize());
+            assertNull(contractor.getRate());
+            // The version is always returned.
+            assertEquals(full.getVersion(), contractor.getVersion());
+        }
+
+        // A projected result can be booked, and the booking keeps the
+        // fields left out of the projection.
+        Contractor contractor = projected.get(3L);
+        contractor.setOwner("12345678");
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                manager.book(3, contractor).getBookStatus());
+        Contractor booked = manager.search(null, null).get(3L);
+        assertEquals("12345678", booked.getOwner());
+        assertEquals(contractors.get(3L).getSpecialties(),
+                booked.getSpecialties());
+        assertEquals(contractors.get(3L).getRate(), booked.getRate());
+
+        // No fields at all: just the record numbers and versions.
+        query.setProjection();
+        Contractor empty = manager.search(query).get(4L);
+        assertNull(empty.getName());
+        assertNull(empty.getLocation());
+        assertNull(empty.getOwner());
+        assertEquals(contractors.get(4L).getVersion(), empty.getVersion());
+
+        // All fields: the same as no projection.
+        query.setProjection(ContractorField.values());
+        Contractor all = manager.search(query).get(4L);
+        assertEquals(contractors.get(4L).getSpecialties(),
+                all.getSpecialties());
+        assertEquals(contractors.get(4L).getOwner(), all.getOwner());
+    }
+
+    @Test
+    public void testProjectionMapper() throws Exception {
+        System.out.println("testProjectionMapper");
+        // A full projection shares the mapper of unprojected searches.
+        assertSame(ContractorManager.mapperFor(null),
+                ContractorManager.mapperFor(
+                        EnumSet.allOf(ContractorField.class)));
+        assertNotSame(ContractorManager.mapperFor(null),
+                ContractorManager.mapperFor(
+                        EnumSet.of(ContractorField.NAME)));
+        Contractor contractor = ContractorManager.mapperFor(
+                EnumSet.of(ContractorField.RATE)).map(0, 42,
+                        RecordMetaData.contractorToRecord(contractors.get(0L)));
+        assertEquals("$35.00", contractor.getRate());
+        assertNull(contractor.getName());
+        assertEquals(42, contractor.getVersion());
+    }
+
+    private static List<Long> recNos(Map<Long, Contractor> result) {
+        return Arrays.asList(result.keySet().toArray(new Long[0]));
+    }
+
+    @Test
+    public void testSearchQuery() throws Exception {
+        System.out.println("testSearchQuery");
+        // An empty query matches all contractors.
+        SearchQuery query = new SearchQuery();
+        assertEquals(recNos(contractors), recNos(manager.search(query)));
+
+        // Prefixes of name and location.
+        query.setNamePrefix("Dogs");
+        assertEquals(Arrays.asList(0L, 4L, 5L, 8L, 16L, 25L),
+                recNos(manager.search(query)));
+        query.setLocationPrefix("Metro");
+        assertEquals(Arrays.asList(5L), recNos(manager.search(query)));
+
+        // A prefix combined with a rate range, bounds inclusive.
+        query = new SearchQuery();
+        query.setNamePrefix("Hamner");
+        query.setRateRange(4500, 7500);
+        assertEquals(Arrays.asList(12L, 14L, 18L),
+                recNos(manager.search(query)));
+
+        // A size range.
+        query = new SearchQuery();
+        query.setSizeRange(9, Long.MAX_VALUE);
+        assertEquals(Arrays.asList(1L, 4L, 9L, 10L),
+                recNos(manager.search(query)));
+
+        // Exact name and location.
+        query = new SearchQuery();
+        query.setName("Fred & Nobby");
+        query.setLocation("Whoville");
+        assertEquals(Arrays.asList(3L), recNos(manager.search(query)));
+        query.setName("Fred");
+        assertTrue(manager.search(query).isEmpty());
+    }
+
+    @Test
+    public void testSearchQuerySpecialties() throws Exception {
+        System.out.println("testSearchQuerySpecialties");
+        SearchQuery query = new SearchQuery();
+        query.setSpecialties(new String[]{"Electrical", "Painting"}, true);
+        assertEquals(Arrays.asList(12L), recNos(manager.search(query)));
+        query.setSpecialties(new String[]{"Electrical", "Painting"}, false);
+        assertEquals(Arrays.asList(2L, 8L, 12L, 14L, 15L, 22L, 27L),
+                recNos(manager.search(query)));
+    }
+
+    @Test
+    public void testSearchQueryUnbookedOnly() throws Exception {
+        System.out.println("testSearchQueryUnbookedOnly");
+        SearchQuery query = new SearchQuery();
+        query.setLocation("Whoville");
+        query.setUnbookedOnly(true);
+        assertEquals(Arrays.asList(2L, 3L, 4L), recNos(manager.search(query)));
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                manager.book(3, booking(3, "12345678")).getBookStatus());
+        // Only contractors with an empty owner field match.
+        assertEquals(Arrays.asList(2L, 4L), recNos(manager.search(query)));
+        query.setUnbookedOnly(false);
+        assertEquals(Arrays.asList(2L, 3L, 4L), recNos(manager.search(query)));
+    }
+
+    @Test
+    public void testSearchQueryOrderAndLimit() throws Exception {
+        System.out.println("testSearchQueryOrderAndLimit");
+        SearchQuery query = new SearchQuery();
+        query.setSpecialties(new String[]{"Roofing"}, true);
+        // The order field is mapped onto the record's field index, and the
+        // rate ordered by its numeric value.
+        query.setOrder(ContractorField.RATE, false);
+        query.setLimit(3);
+        assertEquals(Arrays.asList(0L, 16L, 14L),
+                recNos(manager.search(query)));
+        // Ties are broken by record number, in either direction.
+        query.setOrder(ContractorField.RATE, true);
+        query.setLimit(4);
+        assertEquals(Arrays.asList(11L, 20L, 25L, 23L),
+                recNos(manager.search(query)));
+        query.setOrder(ContractorField.NAME, true);
+        query.setLimit(2);
+        assertEquals(Arrays.asList(10L, 2L), recNos(manager.search(query)));
+        query.setLimit(0);
+        assertTrue(manager.search(query).isEmpty());
+    }
+}
@@ -0,0 +1,144 @@
+package suncertify.services;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import suncertify.db.Data;
+import suncertify.db.RecordMetaData;
+import suncertify.util.TestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FlightRecorderTest {
+    private static final String[] EVENT_NAMES = {
+            "suncertify.CacheLoad", "suncertify.SearchScan",
+            "suncertify.RecordLockWait", "suncertify.RecordWrite",
+            "suncertify.BookingAttempt"};
+
+    private Recording recording;
+    private Path dump;
+
+    @Before
+    public void setUp() throws Exception {
+        recording = new Recording();
+        for (String name : EVENT_NAMES) {
+            recording.enable(name).withoutThreshold();
+        }
+        dump = Files.createTempFile("suncertify", ".jfr");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        recording.close();
+        Files.delete(dump);
+
+        TestUtils.deleteTestDB();
+    }
+
+    private List<RecordedEvent> events(List<RecordedEvent> all, String name) {
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : all) {
+            if (event.getEventType().getName().equals(name)) {
+                events.add(event);
+            }
+        }
+        // In the order of their occurrence, not of their chunks.
+        Collections.sort(events, new Comparator<RecordedEvent>() {
+            public int compare(RecordedEvent e1, RecordedEvent e2) {
+                return e1.getStartTime().compareTo(e2.getStartTime());
+            }
+        });
+        return events;
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        System.out.println("testEvents");
+        recording.start();
+        ContractorManager manager = new ContractorManager(
+                TestUtils.provideTestDB());
+        final Data data = Data.getInstance("test-db-2x2.db");
+        int recordLength = RecordMetaData.getInstance().getRecordLength();
+        try {
+            // A search.
+            SearchQuery query = new SearchQuery();
+            query.setLocation("Whoville");
+            Map<Long, Contractor> contractors = manager.search(query);
+            assertEquals(3, contractors.size());
+
+            // A contended lock.
+            long cookie = data.lockRecord(5);
+            Thread waiter = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        data.unlockRecord(5, data.lockRecord(5));
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            waiter.start();
+            while (waiter.getState() != Thread.State.WAITING) {
+                Thread.sleep(10);
+            }
+            data.unlockRecord(5, cookie);
+            waiter.join(10000);
+            assertFalse(waiter.isAlive());
+
+            // A booking, which writes the record, and a second one failing.
+            Contractor contractor = contractors.get(3L);
+            contractor.setOwner("12345678");
+            assertEquals(BookStatus.SUCCESSFULLY_BOOKED,
+                    manager.book(3, contractor).getBookStatus());
+            assertEquals(BookStatus.INTERMITTENTLY_GRABBED,
+                    manager.book(3, contractor).getBookStatus());
+        } finally {
+            manager.terminate();
+        }
+        recording.stop();
+        recording.dump(dump);
+        List<RecordedEvent> all = RecordingFile.readAllEvents(dump);
+
+        List<RecordedEvent> loads = events(all, "suncertify.CacheLoad");
+        assertEquals(1, loads.size());
+        assertEquals(28, loads.get(0).getLong("records"));
+
+        List<RecordedEvent> scans = events(all, "suncertify.SearchScan");
+        assertEquals(1, scans.size());
+        assertEquals(3, scans.get(0).getLong("rowsMatched"));
+        assertFalse(scans.get(0).getBoolean("cached"));
+
+        List<RecordedEvent> waits = events(all, "suncertify.RecordLockWait");
+        assertEquals(1, waits.size());
+        assertEquals(5, waits.get(0).getLong("recNo"));
+
+        List<RecordedEvent> writes = events(all, "suncertify.RecordWrite");
+        assertEquals(1, writes.size());
+        assertEquals("update", writes.get(0).getString("operation"));
+        assertEquals(3, writes.get(0).getLong("recNo"));
+        assertEquals(1, writes.get(0).getInt("records"));
+        assertEquals(recordLength, writes.get(0).getLong("bytes"));
+
+        List<RecordedEvent> bookings = events(all,
+                "suncertify.BookingAttempt");
+        assertEquals(2, bookings.size());
+        assertEquals(3, bookings.get(0).getLong("recNo"));
+        assertEquals(BookStatus.SUCCESSFULLY_BOOKED.name(),
+                bookings.get(0).getString("outcome"));
+        assertEquals(1, bookings.get(0).getInt("groupSize"));
+        assertEquals(BookStatus.INTERMITTENTLY_GRABBED.name(),
+                bookings.get(1).getString("outcome"));
+    }
+}
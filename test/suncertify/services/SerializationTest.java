@@ -0,0 +1,143 @@
+package suncertify.services;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SerializationTest {
+    // "Zurich" with an umlaut and "Tokyo" in Japanese, which must survive
+    // the compact form.
+    private static final String ZURICH = "Z\u00fcrich";
+    private static final String TOKYO = "\u6771\u4eac";
+
+    private static Object roundTrip(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Contractor contractor(String name, String location,
+                                         String owner, long version) {
+        Contractor contractor = new Contractor();
+        contractor.setName(name);
+        contractor.setLocation(location);
+        contractor.setSpecialties("Roofing, Painting");
+        contractor.setSize("7");
+        contractor.setRate("$45.00");
+        contractor.setOwner(owner);
+        contractor.setVersion(version);
+        return contractor;
+    }
+
+    private static void assertContractorEquals(Contractor expected,
+                                               Contractor actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLocation(), actual.getLocation());
+        assertEquals(expected.getSpecialties(), actual.getSpecialties());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getRate(), actual.getRate());
+        assertEquals(expected.getOwner(), actual.getOwner());
+        assertEquals(expected.getVersion(), actual.getVersion());
+    }
+
+    @Test
+    public void testContractorRoundTrip() throws Exception {
+        System.out.println("testContractorRoundTrip");
+        Contractor plain = contractor("Buonarotti & Company", "Smallville",
+                "12345678", 42);
+        assertContractorEquals(plain, (Contractor) roundTrip(plain));
+
+        // Null fields, as in a freshly created contractor.
+        Contractor empty = new Contractor();
+        Contractor copy = (Contractor) roundTrip(empty);
+        assertNull(copy.getName());
+        assertNull(copy.getOwner());
+        assertContractorEquals(empty, copy);
+
+        // Non-ASCII fields fall back to modified UTF-8.
+        Contractor foreign = contractor("M\u00fcller & S\u00f6hne", ZURICH,
+                null, Long.MAX_VALUE);
+        foreign.setSpecialties(TOKYO);
+        assertContractorEquals(foreign, (Contractor) roundTrip(foreign));
+    }
+
+    @Test
+    public void testBookResultRoundTrip() throws Exception {
+        System.out.println("testBookResultRoundTrip");
+        Contractor contractor = contractor(TOKYO, ZURICH, "87654321", 7);
+        BookResult result = (BookResult) roundTrip(new BookResult(
+                BookStatus.INTERMITTENTLY_GRABBED, contractor));
+        assertEquals(BookStatus.INTERMITTENTLY_GRABBED,
+                result.getBookStatus());
+        assertContractorEquals(contractor, result.getContractor());
+
+        // Intermittently deleted: no contractor at all.
+        result = (BookResult) roundTrip(new BookResult(
+                BookStatus.INTERMITTENTLY_DELETED, null));
+        assertEquals(BookStatus.INTERMITTENTLY_DELETED,
+                result.getBookStatus());
+        assertNull(result.getContractor());
+    }
+
+    @Test
+    public void testContractorBatchRoundTrip() throws Exception {
+        System.out.println("testContractorBatchRoundTrip");
+        // Deliberately not in ascending record number order. Values recur
+        // so that they are written as references, non-ASCII ones included.
+        Map<Long, Contractor> contractors =
+                new LinkedHashMap<Long, Contractor>();
+        contractors.put(27L, contractor("Fred & Nobby", ZURICH, null, 3));
+        contractors.put(3L, contractor("Dogs With Tools", "Smallville",
+                "12345678", 1));
+        contractors.put(15L, contractor(TOKYO, ZURICH, "12345678", 2));
+        contractors.put(8L, new Contractor());
+        contractors.put(0L, contractor(TOKYO, "Smallville", null, 5));
+
+        Object copy = roundTrip(new ContractorBatch(contractors));
+        // Resolved to a plain map the receiver may modify.
+        assertTrue(copy instanceof LinkedHashMap);
+        @SuppressWarnings("unchecked")
+        Map<Long, Contractor> map = (Map<Long, Contractor>) copy;
+        assertEquals(new ArrayList<Long>(contractors.keySet()),
+                new ArrayList<Long>(map.keySet()));
+        for (Map.Entry<Long, Contractor> entry : contractors.entrySet()) {
+            assertContractorEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        map.remove(8L);
+        List<Long> expected = Arrays.asList(27L, 3L, 15L, 0L);
+        assertEquals(expected, new ArrayList<Long>(map.keySet()));
+
+        // An empty search result.
+        assertTrue(((Map<?, ?>) roundTrip(new ContractorBatch(
+                new LinkedHashMap<Long, Contractor>()))).isEmpty());
+    }
+
+    @Test
+    public void testBookRequestRoundTrip() throws Exception {
+        System.out.println("testBookRequestRoundTrip");
+        Contractor contractor = contractor("Dogs With Tools", ZURICH,
+                "12345678", 9);
+        BookRequest request = (BookRequest) roundTrip(
+                new BookRequest(8, contractor));
+        assertEquals(8, request.getRecNo());
+        assertContractorEquals(contractor, request.getContractor());
+    }
+}